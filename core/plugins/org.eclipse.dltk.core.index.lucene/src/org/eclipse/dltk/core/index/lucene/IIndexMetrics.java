@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.index.lucene;
+
+/**
+ * Statistics of the Lucene indexes commits and searchers reopening, since the
+ * plug-in start or the last {@link #reset()}. Times are in milliseconds.
+ */
+public interface IIndexMetrics {
+
+	/**
+	 * Returns the number of container commits.
+	 */
+	long getCommitCount();
+
+	/**
+	 * Returns the average time of a container commit.
+	 */
+	long getAverageCommitTime();
+
+	/**
+	 * Returns the longest time of a container commit.
+	 */
+	long getMaxCommitTime();
+
+	/**
+	 * Returns the number of times the searchers were reopened to see new
+	 * changes.
+	 */
+	long getRefreshCount();
+
+	/**
+	 * Returns the average age of the oldest change made visible by reopening
+	 * the searchers.
+	 */
+	long getAverageStaleness();
+
+	/**
+	 * Returns the largest age of a change made visible by reopening the
+	 * searchers.
+	 */
+	long getMaxStaleness();
+
+	/**
+	 * Clears the statistics.
+	 */
+	void reset();
+
+}
@@ -12,6 +12,7 @@ package org.eclipse.dltk.core.index.lucene;
 
 import org.eclipse.core.runtime.Plugin;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.dltk.internal.core.index.lucene.IndexMetrics;
 import org.osgi.framework.BundleContext;
 
 /**
@@ -37,6 +38,15 @@ public class LucenePlugin extends Plugin {
 		return plugin;
 	}
 
+	/**
+	 * Returns the statistics of the index commits and searchers reopening.
+	 * 
+	 * @return index metrics
+	 */
+	public IIndexMetrics getIndexMetrics() {
+		return IndexMetrics.INSTANCE;
+	}
+
 	@Override
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.lucene;
+
+/**
+ * Decides when the changes of an index container are made visible to the
+ * searchers (near-real-time reopen, no commit) and when they are committed.
+ * Changes are counted in indexed or removed source modules.
+ */
+final class CommitPolicy {
+
+	/**
+	 * Interval of the policy checks while there are pending changes.
+	 */
+	static final long CHECK_INTERVAL = 250;
+
+	/**
+	 * Searchers are reopened once that many source modules changed...
+	 */
+	static final int REFRESH_DOCUMENTS = 500;
+
+	/**
+	 * ...or the writers buffered that many bytes...
+	 */
+	static final long REFRESH_BYTES = 4 * 1024 * 1024;
+
+	/**
+	 * ...or the oldest change is not visible for that long.
+	 */
+	static final long MAX_STALENESS = 1000;
+
+	/**
+	 * Changes are committed once the indexer is idle for that long...
+	 */
+	static final long IDLE_DELAY = 1000;
+
+	/**
+	 * ...or that many source modules changed...
+	 */
+	static final int COMMIT_DOCUMENTS = 5000;
+
+	/**
+	 * ...or the last commit is that old.
+	 */
+	static final long MAX_COMMIT_INTERVAL = 60000;
+
+	/**
+	 * Commits are not more frequent than that, whatever the pressure.
+	 */
+	static final long MIN_COMMIT_INTERVAL = 1000;
+
+	private CommitPolicy() {
+	}
+
+	/**
+	 * Returns the current time in milliseconds, for measuring intervals only.
+	 */
+	static long now() {
+		return System.nanoTime() / 1000000;
+	}
+
+	/**
+	 * @param documents
+	 *            source modules changed since the last reopen
+	 * @param bytes
+	 *            bytes buffered by the writers
+	 * @param staleness
+	 *            time since the oldest change not visible to the searchers
+	 */
+	static boolean shouldRefresh(int documents, long bytes, long staleness) {
+		return documents >= REFRESH_DOCUMENTS || bytes >= REFRESH_BYTES
+				|| staleness >= MAX_STALENESS;
+	}
+
+	/**
+	 * Returns whether a search waits for the searcher to be reopened, instead
+	 * of searching the changes visible so far.
+	 *
+	 * @param staleness
+	 *            time since the oldest change not visible to the searchers
+	 */
+	static boolean mustBeCurrent(long staleness) {
+		return staleness >= MAX_STALENESS;
+	}
+
+	/**
+	 * @param documents
+	 *            source modules changed since the last commit
+	 * @param sinceCommit
+	 *            time since the last commit
+	 * @param idleTime
+	 *            time the indexer is idle for, negative while it is running
+	 */
+	static boolean shouldCommit(int documents, long sinceCommit,
+			long idleTime) {
+		if (sinceCommit < MIN_COMMIT_INTERVAL) {
+			return false;
+		}
+		return idleTime >= IDLE_DELAY || documents >= COMMIT_DOCUMENTS
+				|| sinceCommit >= MAX_COMMIT_INTERVAL;
+	}
+
+}
@@ -18,6 +18,8 @@ import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.BDV_PATH;
 import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.BDV_QUALIFIER;
 import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.F_CC_NAME;
 import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.F_ELEMENT_NAME_LC;
+import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.F_ELEMENT_TYPE;
+import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.F_NAME_GRAMS;
 import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.F_PARENT;
 import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.F_PATH;
 import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.F_QUALIFIER;
@@ -68,6 +70,7 @@ public final class DocumentFactory {
 		addStringEntry(doc, F_PARENT, info.parent, false);
 		addStringEntry(doc, F_QUALIFIER, info.qualifier, false);
 		addStringLCEntry(doc, F_ELEMENT_NAME_LC, info.elementName, false);
+		addElementTypeEntry(doc, info.elementType);
 		// Add numeric doc values
 		addLongEntry(doc, NDV_OFFSET, info.offset);
 		addLongEntry(doc, NDV_LENGTH, info.length);
@@ -95,6 +98,8 @@ public final class DocumentFactory {
 		addStringEntry(doc, F_QUALIFIER, info.qualifier, false);
 		addStringLCEntry(doc, F_ELEMENT_NAME_LC, info.elementName, false);
 		addCCNameEntry(doc, info.elementName);
+		addNameGramsEntry(doc, info.elementName);
+		addElementTypeEntry(doc, info.elementType);
 		// Add numeric doc values
 		addLongEntry(doc, NDV_OFFSET, info.offset);
 		addLongEntry(doc, NDV_LENGTH, info.length);
@@ -148,6 +153,19 @@ public final class DocumentFactory {
 		addStringEntry(doc, F_CC_NAME, Utils.getCamelCaseName(name), false);
 	}
 
+	private static void addNameGramsEntry(Document doc, String name) {
+		// Finds the candidates of the substring and fuzzy searches
+		for (String gram : Utils.getNameGrams(name, true)) {
+			addStringEntry(doc, F_NAME_GRAMS, gram, false);
+		}
+	}
+
+	private static void addElementTypeEntry(Document doc, int elementType) {
+		// Tells the element types apart in the consolidated index layout
+		addStringEntry(doc, F_ELEMENT_TYPE, String.valueOf(elementType),
+				false);
+	}
+
 	private static void addBinaryEntry(Document doc, String category,
 			String value) {
 		if (value == null) {
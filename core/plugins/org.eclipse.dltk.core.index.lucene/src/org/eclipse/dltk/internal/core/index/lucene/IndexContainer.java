@@ -14,7 +14,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.lucene.analysis.core.SimpleAnalyzer;
@@ -81,18 +83,28 @@ class IndexContainer {
 	}
 
 	private static final String TIMESTAMPS_DIR = "timestamps"; //$NON-NLS-1$
+	private static final String ALL_ELEMENTS_DIR = "all"; //$NON-NLS-1$
+	private static final int ALL_ELEMENTS = -1;
 	private static final long WRITE_LOCK_TIMEOUT = 3000;
 
 	private final String fIndexRoot;
 	private final String fContainerId;
+	private final boolean fConsolidated;
 	private IndexWriter fTimestampsWriter;
 	private SearcherManager fTimestampsSearcher;
 	private Map<IndexType, Map<Integer, IndexWriter>> fIndexWriters;
 	private Map<IndexType, Map<Integer, SearcherManager>> fIndexSearchers;
+	// Source modules changed since the searchers were reopened/committed
+	private int fUnrefreshedChanges = 0;
+	private long fFirstUnrefreshedChange;
+	private int fUncommittedChanges = 0;
+	private long fLastCommit = CommitPolicy.now();
 
-	public IndexContainer(String indexRoot, String containerId) {
+	public IndexContainer(String indexRoot, String containerId,
+			boolean consolidated) {
 		fIndexRoot = indexRoot;
 		fContainerId = containerId;
+		fConsolidated = consolidated;
 		initialize();
 	}
 
@@ -158,6 +170,18 @@ class IndexContainer {
 		return fContainerId;
 	}
 
+	final Path getPath() {
+		return Paths.get(fIndexRoot, fContainerId);
+	}
+
+	/**
+	 * Returns the key of the writer/searcher for given element type, all types
+	 * share the same one in the consolidated layout.
+	 */
+	private int getIndexKey(int elementType) {
+		return fConsolidated ? ALL_ELEMENTS : elementType;
+	}
+
 	public synchronized IndexWriter getTimestampsWriter() {
 		if (fTimestampsWriter == null) {
 			Path writerPath = Paths.get(fIndexRoot, fContainerId,
@@ -167,49 +191,156 @@ class IndexContainer {
 		return fTimestampsWriter;
 	}
 
-	public synchronized SearcherManager getTimestampsSearcher() {
-		try {
-			if (fTimestampsSearcher == null) {
-				fTimestampsSearcher = new SearcherManager(getTimestampsWriter(),
-						true, new SearcherFactory());
+	public SearcherManager getTimestampsSearcher() {
+		SearcherManager searcher;
+		synchronized (this) {
+			try {
+				if (fTimestampsSearcher == null) {
+					fTimestampsSearcher = new SearcherManager(
+							getTimestampsWriter(), true, new SearcherFactory());
+				}
+			} catch (IOException e) {
+				Logger.logException(e);
 			}
-			// Try to achieve the up-to-date index state
-			fTimestampsSearcher.maybeRefresh();
-		} catch (IOException e) {
-			Logger.logException(e);
+			searcher = fTimestampsSearcher;
 		}
-		return fTimestampsSearcher;
+		// Achieve the up-to-date index state
+		ensureCurrent(searcher);
+		return searcher;
 	}
 
 	public synchronized IndexWriter getIndexWriter(IndexType dataType,
 			int elementType) {
-		IndexWriter writer = fIndexWriters.get(dataType).get(elementType);
+		int key = getIndexKey(elementType);
+		IndexWriter writer = fIndexWriters.get(dataType).get(key);
 		if (writer == null) {
 			Path writerPath = Paths.get(fIndexRoot, fContainerId,
-					dataType.getDirectory(), String.valueOf(elementType));
+					dataType.getDirectory(), fConsolidated ? ALL_ELEMENTS_DIR
+							: String.valueOf(elementType));
 			writer = getWriter(writerPath);
-			fIndexWriters.get(dataType).put(elementType, writer);
+			fIndexWriters.get(dataType).put(key, writer);
 		}
 		return writer;
 	}
 
-	public synchronized SearcherManager getIndexSearcher(IndexType dataType,
+	public SearcherManager getIndexSearcher(IndexType dataType,
 			int elementType) {
-		SearcherManager searcher = fIndexSearchers.get(dataType)
-				.get(elementType);
+		SearcherManager searcher;
+		synchronized (this) {
+			int key = getIndexKey(elementType);
+			searcher = fIndexSearchers.get(dataType).get(key);
+			try {
+				if (searcher == null) {
+					searcher = new SearcherManager(
+							getIndexWriter(dataType, elementType), true,
+							new SearcherFactory());
+					fIndexSearchers.get(dataType).put(key, searcher);
+				}
+			} catch (IOException e) {
+				Logger.logException(e);
+			}
+		}
+		// Achieve the up-to-date index state
+		ensureCurrent(searcher);
+		return searcher;
+	}
+
+	/**
+	 * Reopens the searcher if it does not see all the changes. The reopening
+	 * is near-real-time, it does not need the changes to be committed. Most of
+	 * the changes are already visible thanks to the background refresh, so the
+	 * search only pays for the latest ones. If another thread is reopening the
+	 * searcher, the search does not wait for it unless the changes are older
+	 * than {@link CommitPolicy#MAX_STALENESS}. The refreshes are recorded by
+	 * {@link #refresh()} only, which also covers the changes reopened here.
+	 */
+	private void ensureCurrent(SearcherManager searcher) {
+		if (searcher == null) {
+			return;
+		}
 		try {
-			if (searcher == null) {
-				searcher = new SearcherManager(
-						getIndexWriter(dataType, elementType), true,
-						new SearcherFactory());
-				fIndexSearchers.get(dataType).put(elementType, searcher);
+			if (!searcher.isSearcherCurrent()) {
+				if (CommitPolicy.mustBeCurrent(getStaleness())) {
+					searcher.maybeRefreshBlocking();
+				} else {
+					searcher.maybeRefresh();
+				}
 			}
-			// Try to achieve the up-to-date index state
-			searcher.maybeRefresh();
 		} catch (IOException e) {
 			Logger.logException(e);
 		}
-		return searcher;
+	}
+
+	private synchronized long getStaleness() {
+		return fUnrefreshedChanges != 0
+				? CommitPolicy.now() - fFirstUnrefreshedChange : 0;
+	}
+
+	/**
+	 * Notifies that a source module was indexed or removed.
+	 */
+	synchronized void changed() {
+		if (fUnrefreshedChanges++ == 0) {
+			fFirstUnrefreshedChange = CommitPolicy.now();
+		}
+		fUncommittedChanges++;
+	}
+
+	synchronized boolean shouldRefresh(long now) {
+		return fUnrefreshedChanges != 0 && CommitPolicy.shouldRefresh(
+				fUnrefreshedChanges, getRamBytesUsed(),
+				now - fFirstUnrefreshedChange);
+	}
+
+	synchronized boolean shouldCommit(long now, long idleTime) {
+		return hasChanges() && CommitPolicy.shouldCommit(fUncommittedChanges,
+				now - fLastCommit, idleTime);
+	}
+
+	private long getRamBytesUsed() {
+		long bytes = 0;
+		for (Map<Integer, IndexWriter> dataWriters : fIndexWriters.values()) {
+			for (IndexWriter writer : dataWriters.values()) {
+				if (writer != null) {
+					bytes += writer.ramBytesUsed();
+				}
+			}
+		}
+		if (fTimestampsWriter != null) {
+			bytes += fTimestampsWriter.ramBytesUsed();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Reopens all the open searchers, so that the changes are visible without
+	 * committing them.
+	 */
+	void refresh() {
+		List<SearcherManager> searchers = new ArrayList<>();
+		long staleness;
+		synchronized (this) {
+			if (fUnrefreshedChanges == 0) {
+				return;
+			}
+			staleness = CommitPolicy.now() - fFirstUnrefreshedChange;
+			fUnrefreshedChanges = 0;
+			for (Map<Integer, SearcherManager> dataSearchers : fIndexSearchers
+					.values()) {
+				searchers.addAll(dataSearchers.values());
+			}
+			if (fTimestampsSearcher != null) {
+				searchers.add(fTimestampsSearcher);
+			}
+		}
+		try {
+			for (SearcherManager searcher : searchers) {
+				searcher.maybeRefreshBlocking();
+			}
+			IndexMetrics.INSTANCE.refreshed(staleness);
+		} catch (IOException e) {
+			Logger.logException(e);
+		}
 	}
 
 	public synchronized void delete(String sourceModule) {
@@ -263,17 +394,22 @@ class IndexContainer {
 	}
 
 	synchronized boolean hasChanges() {
+		if (fUncommittedChanges != 0) {
+			return true;
+		}
 		for (Map<Integer, IndexWriter> dataWriters : fIndexWriters.values()) {
 			for (IndexWriter writer : dataWriters.values()) {
 				if (writer != null && writer.hasUncommittedChanges()) {
 					return true;
 				}
 			}
-			if (fTimestampsWriter != null) {
-				return fTimestampsWriter.hasUncommittedChanges();
-			}
 		}
-		return false;
+		return fTimestampsWriter != null
+				&& fTimestampsWriter.hasUncommittedChanges();
+	}
+
+	synchronized boolean hasUnrefreshedChanges() {
+		return fUnrefreshedChanges != 0;
 	}
 
 	synchronized void commit(IProgressMonitor monitor, boolean mergeDeletes) {
@@ -282,6 +418,8 @@ class IndexContainer {
 			ticks += dataWriters.size();
 		}
 		SubMonitor subMonitor = SubMonitor.convert(monitor, ticks);
+		boolean changes = hasChanges();
+		long start = CommitPolicy.now();
 		try {
 			for (Map<Integer, IndexWriter> dataWriters : fIndexWriters
 					.values()) {
@@ -298,6 +436,13 @@ class IndexContainer {
 				fTimestampsWriter.commit();
 				subMonitor.worked(1);
 			}
+			if (!subMonitor.isCanceled()) {
+				fUncommittedChanges = 0;
+				fLastCommit = CommitPolicy.now();
+				if (changes) {
+					IndexMetrics.INSTANCE.committed(fLastCommit - start);
+				}
+			}
 			subMonitor.done();
 		} catch (IOException e) {
 			Logger.logException(e);
@@ -25,8 +25,10 @@ public final class IndexFields {
 	public static final String F_PATH = "path"; //$NON-NLS-1$
 	public static final String F_ELEMENT_NAME_LC = "elementNameLC"; //$NON-NLS-1$
 	public static final String F_CC_NAME = "ccName"; //$NON-NLS-1$
+	public static final String F_NAME_GRAMS = "nameGrams"; //$NON-NLS-1$
 	public static final String F_QUALIFIER = "qualifier"; //$NON-NLS-1$
 	public static final String F_PARENT = "parent"; //$NON-NLS-1$
+	public static final String F_ELEMENT_TYPE = "elementType"; //$NON-NLS-1$
 	// Numeric doc values
 	public static final String NDV_TIMESTAMP = "timestampNDV"; //$NON-NLS-1$
 	public static final String NDV_OFFSET = "offsetNDV"; //$NON-NLS-1$
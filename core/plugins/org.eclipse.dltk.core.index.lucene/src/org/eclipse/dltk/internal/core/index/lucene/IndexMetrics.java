@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.lucene;
+
+import org.eclipse.dltk.core.index.lucene.IIndexMetrics;
+
+/**
+ * Collects the statistics of the commits and searchers reopening of all index
+ * containers.
+ */
+public final class IndexMetrics implements IIndexMetrics {
+
+	public static final IndexMetrics INSTANCE = new IndexMetrics();
+
+	private long fCommitCount;
+	private long fCommitTime;
+	private long fMaxCommitTime;
+	private long fRefreshCount;
+	private long fStaleness;
+	private long fMaxStaleness;
+
+	private IndexMetrics() {
+	}
+
+	synchronized void committed(long time) {
+		fCommitCount++;
+		fCommitTime += time;
+		fMaxCommitTime = Math.max(fMaxCommitTime, time);
+	}
+
+	synchronized void refreshed(long staleness) {
+		fRefreshCount++;
+		fStaleness += staleness;
+		fMaxStaleness = Math.max(fMaxStaleness, staleness);
+	}
+
+	@Override
+	public synchronized long getCommitCount() {
+		return fCommitCount;
+	}
+
+	@Override
+	public synchronized long getAverageCommitTime() {
+		return fCommitCount != 0 ? fCommitTime / fCommitCount : 0;
+	}
+
+	@Override
+	public synchronized long getMaxCommitTime() {
+		return fMaxCommitTime;
+	}
+
+	@Override
+	public synchronized long getRefreshCount() {
+		return fRefreshCount;
+	}
+
+	@Override
+	public synchronized long getAverageStaleness() {
+		return fRefreshCount != 0 ? fStaleness / fRefreshCount : 0;
+	}
+
+	@Override
+	public synchronized long getMaxStaleness() {
+		return fMaxStaleness;
+	}
+
+	@Override
+	public synchronized void reset() {
+		fCommitCount = fCommitTime = fMaxCommitTime = 0;
+		fRefreshCount = fStaleness = fMaxStaleness = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "commits: " + fCommitCount + " (avg " + getAverageCommitTime() //$NON-NLS-1$ //$NON-NLS-2$
+				+ "ms, max " + fMaxCommitTime + "ms), refreshes: " //$NON-NLS-1$ //$NON-NLS-2$
+				+ fRefreshCount + " (avg staleness " + getAverageStaleness() //$NON-NLS-1$
+				+ "ms, max " + fMaxStaleness + "ms)"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+}
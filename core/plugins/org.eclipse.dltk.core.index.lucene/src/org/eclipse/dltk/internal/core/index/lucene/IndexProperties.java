@@ -24,8 +24,36 @@ public final class IndexProperties {
 
 	public static final String KEY_MODEL_VERSION = PREFIX + "model.version"; //$NON-NLS-1$
 	public static final String KEY_LUCENE_VERSION = PREFIX + "lucene.version"; //$NON-NLS-1$
+	public static final String KEY_LAYOUT = PREFIX + "layout"; //$NON-NLS-1$
 
-	public static final String MODEL_VERSION = "1.0"; //$NON-NLS-1$
+	public static final String MODEL_VERSION = "1.1"; //$NON-NLS-1$
 	public static final String LUCENE_VERSION = Version.LATEST.toString();
 
+	/**
+	 * Layout with an index per model element type, in each of the declarations
+	 * and references directories of a container.
+	 */
+	public static final String LAYOUT_SPLIT = "split"; //$NON-NLS-1$
+	/**
+	 * Layout with a single declarations and a single references index per
+	 * container, the model element type being an indexed field. It takes much
+	 * less file handles and memory.
+	 */
+	public static final String LAYOUT_CONSOLIDATED = "consolidated"; //$NON-NLS-1$
+	/**
+	 * System property selecting the layout of the indexes, the split layout is
+	 * used by default.
+	 */
+	public static final String LAYOUT_PROPERTY = LucenePlugin.ID + ".layout"; //$NON-NLS-1$
+
+	/**
+	 * Returns the layout of the indexes selected for this session.
+	 * 
+	 * @return {@link #LAYOUT_SPLIT} or {@link #LAYOUT_CONSOLIDATED}
+	 */
+	public static String getLayout() {
+		return LAYOUT_CONSOLIDATED.equals(System.getProperty(LAYOUT_PROPERTY))
+				? LAYOUT_CONSOLIDATED : LAYOUT_SPLIT;
+	}
+
 }
\ No newline at end of file
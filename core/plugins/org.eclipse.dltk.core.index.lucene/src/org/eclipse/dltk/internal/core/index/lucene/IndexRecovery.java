@@ -13,8 +13,15 @@ package org.eclipse.dltk.internal.core.index.lucene;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.text.MessageFormat;
+import java.util.Collection;
 
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.search.MatchAllDocsQuery;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.dltk.core.index.lucene.LucenePlugin;
 import org.eclipse.dltk.internal.core.search.ProjectIndexerManager;
 
 /**
@@ -28,6 +35,8 @@ public final class IndexRecovery {
 	private static final String RECOVERY_REASON = "Index writer could not be created, index data might be corrupted."; //$NON-NLS-1$
 	private static final String RECOVERY_STARTED = "Recovering index storage: {0}"; //$NON-NLS-1$
 	private static final String RECOVERY_FAILED = "Failed to recover index storage: {0}"; //$NON-NLS-1$
+	private static final String MIGRATION_STARTED = "Migrating index storage to {0} layout"; //$NON-NLS-1$
+	private static final String MIGRATION_FAILED = "Failed to migrate index storage: {0}"; //$NON-NLS-1$
 
 	private IndexRecovery() {
 		// No instance
@@ -69,4 +78,63 @@ public final class IndexRecovery {
 		ProjectIndexerManager.startIndexing();
 	}
 
+	/**
+	 * <p>
+	 * Migrates index containers to another layout of the indexes. The
+	 * migration does the following:
+	 * </p>
+	 * <ul>
+	 * <li>Remove the declarations and references index directories.</li>
+	 * <li>Clean up time stamps data in the index containers.</li>
+	 * <li>Trigger index rebuilding to fill the indexes in the new layout.</li>
+	 * </ul>
+	 * 
+	 * @param indexContainers
+	 * @param layout
+	 */
+	static void migrate(Collection<IndexContainer> indexContainers,
+			String layout) {
+		Logger.log(Logger.INFO, MessageFormat.format(MIGRATION_STARTED, layout));
+		for (IndexContainer indexContainer : indexContainers) {
+			Path containerPath = indexContainer.getPath();
+			try {
+				for (IndexType dataType : IndexType.values()) {
+					Path dataPath = containerPath
+							.resolve(dataType.getDirectory());
+					if (dataPath.toFile().exists()) {
+						Utils.delete(dataPath);
+					}
+				}
+				// Commit right away, not to keep time stamps of deleted data
+				IndexWriter timestampsWriter = indexContainer
+						.getTimestampsWriter();
+				if (timestampsWriter != null) {
+					timestampsWriter.deleteDocuments(new MatchAllDocsQuery());
+					timestampsWriter.commit();
+				}
+			} catch (IOException e) {
+				Logger.logException(MessageFormat.format(MIGRATION_FAILED,
+						containerPath.toString()), e);
+			}
+		}
+		/*
+		 * Re-trigger indexing once the index manager is initialized, it is
+		 * migrating while starting up.
+		 */
+		Job job = new Job("") { //$NON-NLS-1$
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				ProjectIndexerManager.startIndexing();
+				return Status.OK_STATUS;
+			}
+
+			@Override
+			public boolean belongsTo(Object family) {
+				return family == LucenePlugin.LUCENE_JOB_FAMILY;
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+
 }
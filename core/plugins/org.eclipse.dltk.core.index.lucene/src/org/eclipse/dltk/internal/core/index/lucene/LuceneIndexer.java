@@ -166,6 +166,7 @@ public class LuceneIndexer extends AbstractIndexer {
 			Logger.logException(e);
 		}
 		super.indexDocument(sourceModule);
+		LuceneManager.INSTANCE.changed(fContainer);
 	}
 
 	@Override
@@ -177,6 +178,7 @@ public class LuceneIndexer extends AbstractIndexer {
 	public void removeDocument(IPath containerPath, String sourceModulePath) {
 		LuceneManager.INSTANCE.delete(containerPath.toString(),
 				sourceModulePath);
+		LuceneManager.INSTANCE.changed(containerPath.toString());
 	}
 
 	private void resetDocument(ISourceModule sourceModule,
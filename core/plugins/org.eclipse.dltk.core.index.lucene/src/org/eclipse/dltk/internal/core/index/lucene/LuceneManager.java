@@ -76,10 +76,15 @@ public enum LuceneManager {
 	 */
 	INSTANCE;
 
+	/**
+	 * Background job applying the {@link CommitPolicy} to the containers with
+	 * pending changes. It is running periodically while there are any.
+	 */
 	private final class Committer extends Job {
 
-		private final static int DELAY = 5000;
 		private boolean fClosed = false;
+		// Time the indexer is idle since, negative while it is running
+		private volatile long fIdleSince = -1;
 
 		public Committer() {
 			super(""); //$NON-NLS-1$
@@ -89,25 +94,39 @@ public enum LuceneManager {
 
 		@Override
 		public IStatus run(IProgressMonitor monitor) {
-			// Get containers with uncommitted changes only
+			// Get containers with unrefreshed or uncommitted changes only
 			List<IndexContainer> dirtyContainers = getDirtyContainers();
 			if (dirtyContainers.isEmpty()) {
 				return Status.CANCEL_STATUS;
 			}
-			int containersNumber = dirtyContainers.size();
+			long now = CommitPolicy.now();
+			long idleSince = fIdleSince;
+			long idleTime = idleSince < 0 ? -1 : now - idleSince;
 			SubMonitor subMonitor = SubMonitor.convert(monitor,
-					containersNumber);
+					dirtyContainers.size());
 			try {
 				for (IndexContainer indexContainer : dirtyContainers) {
-					if (!monitor.isCanceled()) {
+					if (monitor.isCanceled()) {
+						break;
+					}
+					// Make changes visible without committing them
+					if (indexContainer.shouldRefresh(now)) {
+						indexContainer.refresh();
+					}
+					if (indexContainer.shouldCommit(now, idleTime)) {
 						// Commit index data without merging deletions (better performance)
 						indexContainer.commit(subMonitor.newChild(1), false);
+					} else {
+						subMonitor.worked(1);
 					}
 				}
 				monitor.done();
 			} catch (Exception e) {
 				Logger.logException(e);
 			}
+			if (!getDirtyContainers().isEmpty()) {
+				check();
+			}
 			return Status.OK_STATUS;
 		}
 
@@ -116,24 +135,31 @@ public enum LuceneManager {
 			return family == LucenePlugin.LUCENE_JOB_FAMILY;
 		}
 
-		synchronized void commit() {
+		/**
+		 * Schedules the next policy check, unless one is pending already, so
+		 * that continuous changes do not postpone it.
+		 */
+		synchronized void check() {
 			if (fClosed) {
 				return;
 			}
 			int currentState = getState();
-			if (currentState == NONE) {
-				schedule(DELAY);
-			} else if (currentState == SLEEPING) {
-				wakeUp(DELAY);
-			} else if (currentState == WAITING) {
-				sleep();
-				wakeUp(DELAY);
-			} else {
-				cancel();
-				schedule(DELAY);
+			if (currentState == NONE || currentState == RUNNING) {
+				schedule(CommitPolicy.CHECK_INTERVAL);
 			}
 		}
 
+		void idle() {
+			fIdleSince = CommitPolicy.now();
+			check();
+		}
+
+		void changed() {
+			// Changes are made by the indexer, so it is not idle
+			fIdleSince = -1;
+			check();
+		}
+
 		synchronized void close() {
 			if (!fClosed) {
 				cancel();
@@ -184,7 +210,7 @@ public enum LuceneManager {
 
 		@Override
 		public void aboutToBeIdle() {
-			fCommitter.commit();
+			fCommitter.idle();
 		}
 
 		@Override
@@ -202,12 +228,15 @@ public enum LuceneManager {
 	private final Properties fContainerMappings;
 	private final Map<String, IndexContainer> fIndexContainers;
 	private final Committer fCommitter;
+	private final boolean fConsolidated;
 
 	private LuceneManager() {
 		fIndexProperties = new Properties();
 		fContainerMappings = new Properties();
 		fIndexContainers = new ConcurrentHashMap<>();
 		fCommitter = new Committer();
+		fConsolidated = IndexProperties.LAYOUT_CONSOLIDATED
+				.equals(IndexProperties.getLayout());
 		fIndexRoot = Platform
 				.getStateLocation(LucenePlugin.getDefault().getBundle())
 				.append(INDEX_DIR).toOSString();
@@ -218,6 +247,16 @@ public enum LuceneManager {
 		startup();
 	}
 
+	/**
+	 * Tells if the model element types share the same index in the
+	 * containers, with the element type as a field.
+	 * 
+	 * @return <code>true</code> for the consolidated layout
+	 */
+	public final boolean isConsolidated() {
+		return fConsolidated;
+	}
+
 	/**
 	 * Finds and returns index writer for given container, data type and model
 	 * element.
@@ -290,10 +329,24 @@ public enum LuceneManager {
 		}
 	}
 
+	/**
+	 * Notifies that a source module of given container was indexed or removed,
+	 * the changes are made visible and committed in background.
+	 * 
+	 * @param container
+	 */
+	public final void changed(String container) {
+		if (fContainerMappings.getProperty(container) != null) {
+			getIndexContainer(container).changed();
+			fCommitter.changed();
+		}
+	}
+
 	private synchronized List<IndexContainer> getDirtyContainers() {
 		List<IndexContainer> uncommittedContainers = new ArrayList<>();
 		for (IndexContainer indexContainer : fIndexContainers.values()) {
-			if (indexContainer.hasChanges()) {
+			if (indexContainer.hasUnrefreshedChanges()
+					|| indexContainer.hasChanges()) {
 				uncommittedContainers.add(indexContainer);
 			}
 		}
@@ -309,7 +362,7 @@ public enum LuceneManager {
 			} while (fContainerMappings.containsValue(containerId));
 			fContainerMappings.put(container, containerId);
 			fIndexContainers.put(containerId,
-					new IndexContainer(fIndexRoot, containerId));
+					new IndexContainer(fIndexRoot, containerId, fConsolidated));
 			// Persist mapping
 			saveMappings();
 		}
@@ -349,6 +402,16 @@ public enum LuceneManager {
 		}
 		loadMappings();
 		registerIndexContainers();
+		String layout = fIndexProperties.getProperty(
+				IndexProperties.KEY_LAYOUT, IndexProperties.LAYOUT_SPLIT);
+		if (!layout.equals(IndexProperties.getLayout())) {
+			// Rebuild the indexes of the containers in the selected layout
+			IndexRecovery.migrate(fIndexContainers.values(),
+					IndexProperties.getLayout());
+			fIndexProperties.put(IndexProperties.KEY_LAYOUT,
+					IndexProperties.getLayout());
+			saveProperties();
+		}
 		ModelManager.getModelManager().getIndexManager()
 				.addIndexerThreadListener(new IndexerThreadListener());
 		ModelManager.getModelManager().getIndexManager()
@@ -373,7 +436,7 @@ public enum LuceneManager {
 		for (String container : fContainerMappings.stringPropertyNames()) {
 			String containerId = fContainerMappings.getProperty(container);
 			fIndexContainers.put(containerId,
-					new IndexContainer(fIndexRoot, containerId));
+					new IndexContainer(fIndexRoot, containerId, fConsolidated));
 		}
 	}
 
@@ -425,6 +488,8 @@ public enum LuceneManager {
 				IndexProperties.MODEL_VERSION);
 		fIndexProperties.put(IndexProperties.KEY_LUCENE_VERSION,
 				IndexProperties.LUCENE_VERSION);
+		fIndexProperties.put(IndexProperties.KEY_LAYOUT,
+				IndexProperties.getLayout());
 	}
 
 	private void cleanup() {
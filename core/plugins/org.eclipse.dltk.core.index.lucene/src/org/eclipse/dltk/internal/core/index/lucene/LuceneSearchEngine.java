@@ -10,47 +10,30 @@
  *******************************************************************************/
 package org.eclipse.dltk.internal.core.index.lucene;
 
-import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.BDV_DOC;
-import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.BDV_ELEMENT_NAME;
-import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.BDV_METADATA;
-import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.BDV_PARENT;
-import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.BDV_PATH;
-import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.BDV_QUALIFIER;
 import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.F_CC_NAME;
 import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.F_ELEMENT_NAME_LC;
+import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.F_ELEMENT_TYPE;
 import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.F_PARENT;
 import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.F_PATH;
 import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.F_QUALIFIER;
-import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.NDV_FLAGS;
-import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.NDV_LENGTH;
-import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.NDV_NAME_LENGTH;
-import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.NDV_NAME_OFFSET;
-import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.NDV_OFFSET;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.lucene.index.BinaryDocValues;
-import org.apache.lucene.index.LeafReader;
-import org.apache.lucene.index.LeafReaderContext;
-import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.LeafCollector;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.WildcardQuery;
-import org.apache.lucene.util.BytesRef;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.dltk.core.ScriptModelUtil;
@@ -107,97 +90,37 @@ public class LuceneSearchEngine implements ISearchEngineExtension {
 
 	}
 
-	private static final class ResultsCollector implements Collector {
+	/**
+	 * Compiled queries of the recent searches. The same query is run for
+	 * each container of a scope and is mostly repeated by code assist.
+	 */
+	private static final class QueryCache {
 
-		private static final String[] NUMERIC_FIELDS = new String[] {
-				NDV_OFFSET, NDV_LENGTH, NDV_FLAGS, NDV_NAME_OFFSET,
-				NDV_NAME_LENGTH };
-		private static final String[] BINARY_FIELDS = new String[] { BDV_PATH,
-				BDV_ELEMENT_NAME, BDV_QUALIFIER, BDV_PARENT, BDV_METADATA,
-				BDV_DOC };
-		private Map<String, NumericDocValues> fDocNumericValues;
-		private Map<String, BinaryDocValues> fDocBinaryValues;
-		private String fContainer;
-		private int fElementType;
-		private List<SearchMatch> fResult;
+		private static final int SIZE = 64;
 
-		public ResultsCollector(String container, int elementType,
-				List<SearchMatch> result) {
-			this.fContainer = container;
-			this.fElementType = elementType;
-			this.fResult = result;
-		}
-
-		@Override
-		public boolean needsScores() {
-			return true;
-		}
+		private final Map<List<Object>, Query> fQueries = new LinkedHashMap<List<Object>, Query>(
+				SIZE, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
 
-		@Override
-		public LeafCollector getLeafCollector(final LeafReaderContext context)
-				throws IOException {
-			final LeafReader reader = context.reader();
-			fDocNumericValues = new HashMap<>();
-			for (String field : NUMERIC_FIELDS) {
-				NumericDocValues docValues = reader.getNumericDocValues(field);
-				if (docValues != null) {
-					fDocNumericValues.put(field, docValues);
-				}
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<List<Object>, Query> eldest) {
+				return size() > SIZE;
 			}
-			fDocBinaryValues = new HashMap<>();
-			for (String field : BINARY_FIELDS) {
-				BinaryDocValues docValues = reader.getBinaryDocValues(field);
-				if (docValues != null) {
-					fDocBinaryValues.put(field, docValues);
-				}
-			}
-			return new LeafCollector() {
-				@Override
-				public void setScorer(Scorer scorer) throws IOException {
-					// ignore
-				}
+		};
 
-				@Override
-				public void collect(int docId) throws IOException {
-					addResult(docId);
-				}
-			};
-		}
-
-		private void addResult(int docId) {
-			fResult.add(new SearchMatch(fContainer, fElementType,
-					getNumericValue(NDV_OFFSET, docId),
-					getNumericValue(NDV_LENGTH, docId),
-					getNumericValue(NDV_NAME_OFFSET, docId),
-					getNumericValue(NDV_NAME_LENGTH, docId),
-					getNumericValue(NDV_FLAGS, docId),
-					getStringValue(BDV_ELEMENT_NAME, docId),
-					getStringValue(BDV_PATH, docId),
-					getStringValue(BDV_PARENT, docId),
-					getStringValue(BDV_QUALIFIER, docId),
-					getStringValue(BDV_DOC, docId),
-					getStringValue(BDV_METADATA, docId)));
+		synchronized Query get(List<Object> key) {
+			return fQueries.get(key);
 		}
 
-		private int getNumericValue(String field, int docId) {
-			NumericDocValues docValues = fDocNumericValues.get(field);
-			if (docValues != null) {
-				return (int) docValues.get(docId);
-			}
-			return 0;
+		synchronized void put(List<Object> key, Query query) {
+			fQueries.put(key, query);
 		}
 
-		private String getStringValue(String field, int docId) {
-			BinaryDocValues docValues = fDocBinaryValues.get(field);
-			if (docValues != null) {
-				BytesRef bytesRef = docValues.get(docId);
-				if (bytesRef.length > 0)
-					return bytesRef.utf8ToString();
-			}
-			return null;
-		}
 	}
 
+	private static final QueryCache fQueryCache = new QueryCache();
+
 	@Override
 	public void search(int elementType, String qualifier, String elementName,
 			int trueFlags, int falseFlags, int limit, SearchFor searchFor,
@@ -228,19 +151,37 @@ public class LuceneSearchEngine implements ISearchEngineExtension {
 		}
 	}
 
-	private Query createQuery(final String elementName, final String qualifier,
-			final String parent, final int trueFlags, final int falseFlags,
-			final boolean searchForRefs, MatchRule matchRule,
-			IDLTKSearchScope scope) {
-		BooleanQuery query = new BooleanQuery();
+	private Query getQuery(final int elementType, final String elementName,
+			final String qualifier, final String parent, final int trueFlags,
+			final int falseFlags, MatchRule matchRule,
+			final boolean searchForRefs, IDLTKSearchScope scope) {
+		// The scope is identified by its scripts, as it might change
 		List<String> scripts = SearchScope.getScripts(scope);
+		List<Object> key = Arrays.<Object> asList(elementType, elementName,
+				qualifier, parent, trueFlags, falseFlags, matchRule,
+				searchForRefs, scripts);
+		Query query = fQueryCache.get(key);
+		if (query == null) {
+			query = createQuery(elementType, elementName, qualifier, parent,
+					trueFlags, falseFlags, matchRule, searchForRefs, scripts);
+			fQueryCache.put(key, query);
+		}
+		return query;
+	}
+
+	private Query createQuery(final int elementType, final String elementName,
+			final String qualifier, final String parent, final int trueFlags,
+			final int falseFlags, MatchRule matchRule,
+			final boolean searchForRefs, List<String> scripts) {
+		BooleanQuery query = new BooleanQuery();
+		if (LuceneManager.INSTANCE.isConsolidated()) {
+			// All the element types share the same index
+			query.add(new TermQuery(
+					new Term(F_ELEMENT_TYPE, String.valueOf(elementType))),
+					Occur.FILTER);
+		}
 		if (!scripts.isEmpty()) {
-			BooleanQuery scriptQuery = new BooleanQuery();
-			for (String script : scripts) {
-				scriptQuery.add(new TermQuery(new Term(F_PATH, script)),
-						Occur.FILTER);
-			}
-			query.add(scriptQuery, Occur.FILTER);
+			query.add(new TermSetQuery(F_PATH, scripts), Occur.FILTER);
 		}
 		if (elementName != null && !elementName.isEmpty()) {
 			String elementNameLC = elementName.toLowerCase();
@@ -259,6 +200,14 @@ public class LuceneSearchEngine implements ISearchEngineExtension {
 				nameQuery = new PrefixQuery(new Term(F_CC_NAME, name));
 			} else if (matchRule == MatchRule.PATTERN) {
 				nameQuery = new WildcardQuery(nameCaseInsensitiveTerm);
+			} else if (matchRule == MatchRule.SUBSTRING
+					|| matchRule == MatchRule.FUZZY) {
+				// Only declarations have the n-grams, the names of the
+				// candidates are matched by the collector
+				if (!searchForRefs) {
+					nameQuery = RankedMatches.createCandidatesQuery(
+							elementNameLC, matchRule);
+				}
 			} else {
 				throw new UnsupportedOperationException();
 			}
@@ -276,7 +225,10 @@ public class LuceneSearchEngine implements ISearchEngineExtension {
 		if (trueFlags != 0 || falseFlags != 0) {
 			query.add(new BitFlagsQuery(trueFlags, falseFlags), Occur.FILTER);
 		}
-		return query.clauses().isEmpty() ? null : query;
+		if (query.clauses().isEmpty()) {
+			return new MatchAllDocsQuery();
+		}
+		return query;
 	}
 
 	private void doSearch(final int elementType, String qualifier,
@@ -284,26 +236,27 @@ public class LuceneSearchEngine implements ISearchEngineExtension {
 			final int falseFlags, int limit, final boolean searchForRefs,
 			MatchRule matchRule, IDLTKSearchScope scope,
 			ISearchRequestor requestor, IProgressMonitor monitor) {
-		Query query = createQuery(elementName, qualifier, parent, trueFlags,
-				falseFlags, searchForRefs, matchRule, scope);
-		IndexSearcher indexSearcher = null;
+		Query query = getQuery(elementType, elementName, qualifier, parent,
+				trueFlags, falseFlags, matchRule, searchForRefs, scope);
 		final SearchMatchHandler searchMatchHandler = new SearchMatchHandler(
 				scope, requestor);
-		List<SearchMatch> results = new ArrayList<>();
+		// Matches of the substring and fuzzy searches are passed once ranked
+		final RankedMatches rankedMatches = RankedMatches.isRanked(
+				elementName, matchRule)
+						? new RankedMatches(elementName, matchRule) : null;
 		for (String container : SearchScope.getContainers(scope)) {
 			SearcherManager searcherManager = LuceneManager.INSTANCE
 					.findIndexSearcher(container, searchForRefs
 							? IndexType.REFERENCES : IndexType.DECLARATIONS,
 							elementType);
+			IndexSearcher indexSearcher = null;
 			try {
 				indexSearcher = searcherManager.acquire();
-				ResultsCollector collector = new ResultsCollector(container,
-						elementType, results);
-				if (query != null) {
-					indexSearcher.search(query, collector);
-				} else {
-					indexSearcher.search(new MatchAllDocsQuery(), collector);
-				}
+				// Matches are passed to the handler while collected or ranked
+				indexSearcher.search(query,
+						new ResultsCollector(container, elementType,
+								searchForRefs, searchMatchHandler,
+								rankedMatches));
 			} catch (IOException e) {
 				Logger.logException(e);
 			} finally {
@@ -316,9 +269,8 @@ public class LuceneSearchEngine implements ISearchEngineExtension {
 				}
 			}
 		}
-		// Pass results to entity handler
-		for (SearchMatch result : results) {
-			searchMatchHandler.handle(result, searchForRefs);
+		if (rankedMatches != null) {
+			rankedMatches.flush(searchMatchHandler, searchForRefs, limit);
 		}
 	}
 
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.lucene;
+
+import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.F_NAME_GRAMS;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.eclipse.dltk.core.index2.search.ISearchEngine.MatchRule;
+import org.eclipse.dltk.core.index2.search.NameMatcher;
+
+/**
+ * Matches of a substring or fuzzy search, kept until all the containers are
+ * searched and then passed to the handler, the best matching names first.
+ * <p>
+ * The n-gram query only finds the candidates, the names not matching the
+ * pattern are dropped here.
+ * </p>
+ */
+public final class RankedMatches {
+
+	private static final class Ranked {
+
+		final SearchMatch fMatch;
+		final int fScore;
+
+		Ranked(SearchMatch match, int score) {
+			this.fMatch = match;
+			this.fScore = score;
+		}
+	}
+
+	private static final Comparator<Ranked> ORDER = new Comparator<Ranked>() {
+		@Override
+		public int compare(Ranked r1, Ranked r2) {
+			return Integer.compare(r2.fScore, r1.fScore);
+		}
+	};
+
+	private final String fPattern;
+	private final MatchRule fMatchRule;
+	private final List<Ranked> fMatches = new ArrayList<>();
+
+	/**
+	 * Creates the matches of a search.
+	 *
+	 * @param pattern
+	 * @param matchRule
+	 *            {@link MatchRule#SUBSTRING} or {@link MatchRule#FUZZY}
+	 */
+	public RankedMatches(String pattern, MatchRule matchRule) {
+		this.fPattern = pattern;
+		this.fMatchRule = matchRule;
+	}
+
+	/**
+	 * Returns whether the search ranks its matches.
+	 *
+	 * @param pattern
+	 * @param matchRule
+	 * @return <code>true</code> for the substring and fuzzy searches
+	 */
+	public static boolean isRanked(String pattern, MatchRule matchRule) {
+		return pattern != null && !pattern.isEmpty()
+				&& (matchRule == MatchRule.SUBSTRING
+						|| matchRule == MatchRule.FUZZY);
+	}
+
+	/**
+	 * Creates the query of the declarations having the n-grams of the
+	 * pattern, the candidates of the search.
+	 *
+	 * @param pattern
+	 * @param matchRule
+	 *            {@link MatchRule#SUBSTRING} or {@link MatchRule#FUZZY}
+	 * @return n-grams query
+	 */
+	public static Query createCandidatesQuery(String pattern,
+			MatchRule matchRule) {
+		// Substrings of 3 characters or more are found by their trigrams,
+		// the other patterns by their characters
+		boolean trigrams = matchRule == MatchRule.SUBSTRING
+				&& pattern.length() >= 3;
+		BooleanQuery query = new BooleanQuery();
+		for (String gram : Utils.getNameGrams(pattern, trigrams)) {
+			if (!trigrams || gram.length() == 3) {
+				query.add(new TermQuery(new Term(F_NAME_GRAMS, gram)),
+						Occur.FILTER);
+			}
+		}
+		return query;
+	}
+
+	/**
+	 * Returns the score of the name, or {@link NameMatcher#NO_MATCH}.
+	 *
+	 * @param elementName
+	 * @return the score of the name
+	 */
+	public int score(String elementName) {
+		return NameMatcher.match(fMatchRule, fPattern, elementName);
+	}
+
+	/**
+	 * Adds a match of the specified score.
+	 *
+	 * @param match
+	 * @param score
+	 */
+	public void add(SearchMatch match, int score) {
+		fMatches.add(new Ranked(match, score));
+	}
+
+	/**
+	 * Passes the matches to the handler, the best ones first, and forgets
+	 * them. Matches of the same score keep the index order.
+	 *
+	 * @param handler
+	 * @param isReference
+	 * @param limit
+	 *            maximum number of the matches, or 0
+	 */
+	public void flush(SearchMatchHandler handler, boolean isReference,
+			int limit) {
+		Collections.sort(fMatches, ORDER);
+		int count = limit > 0 ? Math.min(limit, fMatches.size())
+				: fMatches.size();
+		for (int i = 0; i < count; ++i) {
+			handler.handle(fMatches.get(i).fMatch, isReference);
+		}
+		fMatches.clear();
+	}
+
+}
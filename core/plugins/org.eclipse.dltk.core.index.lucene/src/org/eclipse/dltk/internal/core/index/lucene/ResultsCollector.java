@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2017 Zend Technologies and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Zend Technologies - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.lucene;
+
+import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.BDV_DOC;
+import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.BDV_ELEMENT_NAME;
+import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.BDV_METADATA;
+import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.BDV_PARENT;
+import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.BDV_PATH;
+import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.BDV_QUALIFIER;
+import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.NDV_FLAGS;
+import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.NDV_LENGTH;
+import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.NDV_NAME_LENGTH;
+import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.NDV_NAME_OFFSET;
+import static org.eclipse.dltk.internal.core.index.lucene.IndexFields.NDV_OFFSET;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.eclipse.dltk.core.index2.search.NameMatcher;
+
+/**
+ * Streams the hits of a search to a {@link SearchMatchHandler}. The values of
+ * each hit are read from the doc values of its segment, nothing is collected
+ * and the strings are only decoded for the scripts accepted by the handler.
+ * <p>
+ * The hits of the substring and fuzzy searches are matched and added to the
+ * {@link RankedMatches} instead, and passed to the handler once ranked.
+ * </p>
+ */
+public class ResultsCollector extends SimpleCollector {
+
+	private final String fContainer;
+	private final int fElementType;
+	private final boolean fIsReference;
+	private final SearchMatchHandler fHandler;
+	private final RankedMatches fRankedMatches;
+	// Doc values of the current segment
+	private NumericDocValues fOffsets;
+	private NumericDocValues fLengths;
+	private NumericDocValues fFlags;
+	private NumericDocValues fNameOffsets;
+	private NumericDocValues fNameLengths;
+	private BinaryDocValues fPaths;
+	private BinaryDocValues fElementNames;
+	private BinaryDocValues fQualifiers;
+	private BinaryDocValues fParents;
+	private BinaryDocValues fMetadata;
+	private BinaryDocValues fDocs;
+	// Script of the previous hit, hits of a script are mostly adjacent
+	private final BytesRefBuilder fPath = new BytesRefBuilder();
+	private String fPathName;
+	private boolean fHasPath = false;
+	private boolean fAccepted = false;
+
+	public ResultsCollector(String container, int elementType,
+			boolean isReference, SearchMatchHandler handler) {
+		this(container, elementType, isReference, handler, null);
+	}
+
+	public ResultsCollector(String container, int elementType,
+			boolean isReference, SearchMatchHandler handler,
+			RankedMatches rankedMatches) {
+		this.fContainer = container;
+		this.fElementType = elementType;
+		this.fIsReference = isReference;
+		this.fHandler = handler;
+		this.fRankedMatches = rankedMatches;
+	}
+
+	@Override
+	public boolean needsScores() {
+		return false;
+	}
+
+	@Override
+	protected void doSetNextReader(LeafReaderContext context)
+			throws IOException {
+		// Missing fields are read as empty values
+		LeafReader reader = context.reader();
+		fOffsets = DocValues.getNumeric(reader, NDV_OFFSET);
+		fLengths = DocValues.getNumeric(reader, NDV_LENGTH);
+		fFlags = DocValues.getNumeric(reader, NDV_FLAGS);
+		fNameOffsets = DocValues.getNumeric(reader, NDV_NAME_OFFSET);
+		fNameLengths = DocValues.getNumeric(reader, NDV_NAME_LENGTH);
+		fPaths = DocValues.getBinary(reader, BDV_PATH);
+		fElementNames = DocValues.getBinary(reader, BDV_ELEMENT_NAME);
+		fQualifiers = DocValues.getBinary(reader, BDV_QUALIFIER);
+		fParents = DocValues.getBinary(reader, BDV_PARENT);
+		fMetadata = DocValues.getBinary(reader, BDV_METADATA);
+		fDocs = DocValues.getBinary(reader, BDV_DOC);
+	}
+
+	@Override
+	public void collect(int docId) throws IOException {
+		BytesRef path = fPaths.get(docId);
+		if (!fHasPath || !path.bytesEquals(fPath.get())) {
+			fPath.copyBytes(path);
+			fHasPath = true;
+			fPathName = getString(path);
+			fAccepted = fHandler.accept(fContainer, fPathName);
+		}
+		if (!fAccepted) {
+			return;
+		}
+		String elementName = getString(fElementNames.get(docId));
+		if (elementName == null) {
+			return;
+		}
+		if (fRankedMatches != null) {
+			int score = fRankedMatches.score(elementName);
+			if (score != NameMatcher.NO_MATCH) {
+				fRankedMatches.add(new SearchMatch(fContainer, fElementType,
+						(int) fOffsets.get(docId), (int) fLengths.get(docId),
+						(int) fNameOffsets.get(docId),
+						(int) fNameLengths.get(docId),
+						(int) fFlags.get(docId), elementName, fPathName,
+						getString(fParents.get(docId)),
+						getString(fQualifiers.get(docId)),
+						getString(fDocs.get(docId)),
+						getString(fMetadata.get(docId))), score);
+			}
+			return;
+		}
+		fHandler.handle(fElementType, (int) fFlags.get(docId),
+				(int) fOffsets.get(docId), (int) fLengths.get(docId),
+				(int) fNameOffsets.get(docId), (int) fNameLengths.get(docId),
+				elementName, getString(fMetadata.get(docId)),
+				getString(fDocs.get(docId)), getString(fQualifiers.get(docId)),
+				getString(fParents.get(docId)), fIsReference);
+	}
+
+	private static String getString(BytesRef bytesRef) {
+		return bytesRef.length > 0 ? bytesRef.utf8ToString() : null;
+	}
+
+}
@@ -69,6 +69,11 @@ public class SearchMatchHandler {
 	private Map<String, ISourceModule> fSourceModuleCache = new HashMap<>();
 	private ISearchRequestor fSearchRequestor;
 	private IDLTKSearchScope fScope;
+	// Container of the previous match and its path prefix
+	private String fContainer;
+	private String fContainerPath;
+	// Source module of the accepted script
+	private ISourceModule fSourceModule;
 
 	/**
 	 * Creates new search match handler.
@@ -89,20 +94,28 @@ public class SearchMatchHandler {
 	 * @param isReference
 	 */
 	public void handle(SearchMatch match, boolean isReference) {
-		String containerPath = match.container;
-		IDLTKLanguageToolkit toolkit = ((DLTKSearchScope) fScope)
-				.getLanguageToolkit();
-		if (toolkit instanceof IDLTKLanguageToolkitExtension
-				&& ((IDLTKLanguageToolkitExtension) toolkit)
-						.isArchiveFileName(containerPath)) {
-			containerPath = containerPath
-					+ IDLTKSearchScope.FILE_ENTRY_SEPARATOR;
+		if (accept(match.container, match.path)) {
+			handle(match.elementType, match.flags, match.offset, match.length,
+					match.nameOffset, match.nameLength, match.elementName,
+					match.metadata, match.doc, match.qualifier, match.parent,
+					isReference);
 		}
-		if (containerPath.length() != 0 && containerPath
-				.charAt(containerPath.length() - 1) != IPath.SEPARATOR) {
-			containerPath = containerPath + IPath.SEPARATOR;
+	}
+
+	/**
+	 * Resolves the source module of the given script for the following
+	 * matches. Matches of a script are handled only if it is accepted.
+	 * 
+	 * @param container
+	 * @param filePath
+	 * @return <code>true</code> if the script is enclosed in the search scope
+	 */
+	public boolean accept(String container, String filePath) {
+		if (!container.equals(fContainer)) {
+			fContainer = container;
+			fContainerPath = getContainerPath(container);
 		}
-		String filePath = match.path;
+		String containerPath = fContainerPath;
 		final String resourcePath = containerPath + filePath;
 		IProjectFragment projectFragment = fProjectFragmentCache
 				.get(containerPath);
@@ -116,10 +129,10 @@ public class SearchMatchHandler {
 			fProjectFragmentCache.put(containerPath, projectFragment);
 		}
 		if (projectFragment == null) {
-			return;
+			return false;
 		}
 		if (!fScope.encloses(resourcePath)) {
-			return;
+			return false;
 		}
 		ISourceModule sourceModule = fSourceModuleCache.get(resourcePath);
 		if (sourceModule == null) {
@@ -152,18 +165,54 @@ public class SearchMatchHandler {
 			}
 			fSourceModuleCache.put(resourcePath, sourceModule);
 		}
-		String name = match.elementName;
-		if (name == null) {
+		fSourceModule = sourceModule;
+		return true;
+	}
+
+	/**
+	 * Handle search match in the last accepted script.
+	 * 
+	 * @param elementType
+	 * @param flags
+	 * @param offset
+	 * @param length
+	 * @param nameOffset
+	 * @param nameLength
+	 * @param elementName
+	 * @param metadata
+	 * @param doc
+	 * @param qualifier
+	 * @param parent
+	 * @param isReference
+	 */
+	public void handle(int elementType, int flags, int offset, int length,
+			int nameOffset, int nameLength, String elementName,
+			String metadata, String doc, String qualifier, String parent,
+			boolean isReference) {
+		if (elementName == null) {
 			return;
 		}
-		ModelManager modelManager = ModelManager.getModelManager();
-		name = modelManager.intern(name);
+		String name = ModelManager.getModelManager().intern(elementName);
 		// Pass to requestor
-		fSearchRequestor.match(match.elementType, match.flags, match.offset,
-				match.length, match.nameOffset, match.nameLength, name,
-				match.metadata, match.doc, match.qualifier, match.parent,
-				sourceModule, isReference);
+		fSearchRequestor.match(elementType, flags, offset, length, nameOffset,
+				nameLength, name, metadata, doc, qualifier, parent,
+				fSourceModule, isReference);
+	}
 
+	private String getContainerPath(String containerPath) {
+		IDLTKLanguageToolkit toolkit = ((DLTKSearchScope) fScope)
+				.getLanguageToolkit();
+		if (toolkit instanceof IDLTKLanguageToolkitExtension
+				&& ((IDLTKLanguageToolkitExtension) toolkit)
+						.isArchiveFileName(containerPath)) {
+			containerPath = containerPath
+					+ IDLTKSearchScope.FILE_ENTRY_SEPARATOR;
+		}
+		if (containerPath.length() != 0 && containerPath
+				.charAt(containerPath.length() - 1) != IPath.SEPARATOR) {
+			containerPath = containerPath + IPath.SEPARATOR;
+		}
+		return containerPath;
 	}
 
-}
\ No newline at end of file
+}
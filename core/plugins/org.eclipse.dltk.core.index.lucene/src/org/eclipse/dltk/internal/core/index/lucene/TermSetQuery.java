@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.lucene;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.lucene.index.FilteredTermsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Matches documents containing any of a set of terms in a field. The sorted
+ * terms are looked up in a single pass over the terms dictionary of each
+ * segment instead of a boolean clause per term, so sets like the scripts of a
+ * search scope are not limited by the maximum clause count.
+ */
+public class TermSetQuery extends MultiTermQuery {
+
+	private final BytesRef[] fTerms;
+
+	public TermSetQuery(String field, Collection<String> terms) {
+		super(field);
+		SortedSet<BytesRef> sortedTerms = new TreeSet<>();
+		for (String term : terms) {
+			sortedTerms.add(new BytesRef(term));
+		}
+		fTerms = sortedTerms.toArray(new BytesRef[sortedTerms.size()]);
+	}
+
+	@Override
+	protected TermsEnum getTermsEnum(Terms terms, AttributeSource atts)
+			throws IOException {
+		if (fTerms.length == 0) {
+			return TermsEnum.EMPTY;
+		}
+		return new FilteredTermsEnum(terms.iterator()) {
+
+			private int fIndex = 0; // next term of the set
+
+			@Override
+			protected BytesRef nextSeekTerm(BytesRef currentTerm) {
+				return fIndex < fTerms.length ? fTerms[fIndex] : null;
+			}
+
+			@Override
+			protected AcceptStatus accept(BytesRef term) {
+				// the dictionary is positioned at the first term not less than
+				// the seek term, skip the terms of the set which are missing
+				while (fIndex < fTerms.length) {
+					int comparison = fTerms[fIndex].compareTo(term);
+					if (comparison == 0) {
+						fIndex++;
+						return AcceptStatus.YES_AND_SEEK;
+					}
+					if (comparison > 0) {
+						return AcceptStatus.NO_AND_SEEK;
+					}
+					fIndex++;
+				}
+				return AcceptStatus.END;
+			}
+		};
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * super.hashCode() + Arrays.hashCode(fTerms);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		return Arrays.equals(fTerms, ((TermSetQuery) obj).fTerms);
+	}
+
+	@Override
+	public String toString(String field) {
+		StringBuilder builder = new StringBuilder();
+		if (!getField().equals(field)) {
+			builder.append(getField()).append(':');
+		}
+		builder.append('(');
+		for (int i = 0; i < fTerms.length; i++) {
+			if (i > 0) {
+				builder.append(' ');
+			}
+			builder.append(fTerms[i].utf8ToString());
+		}
+		return builder.append(')').toString();
+	}
+
+}
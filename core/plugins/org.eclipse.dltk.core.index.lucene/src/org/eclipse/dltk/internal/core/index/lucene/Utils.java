@@ -16,6 +16,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * Utility class for Lucene indexer.
@@ -68,4 +70,30 @@ public final class Utils {
 		return camelCaseName;
 	}
 
+	/**
+	 * Returns the n-grams indexed for a name: its distinct characters and
+	 * trigrams, in lower case. Every name containing a string has all of its
+	 * n-grams, every name containing the characters of a string has its
+	 * characters, so they are used to find the candidates of the substring and
+	 * fuzzy searches.
+	 * 
+	 * @param name
+	 * @param trigrams
+	 *            whether to return the trigrams, or only the characters
+	 * @return n-grams of the name
+	 */
+	public static Set<String> getNameGrams(String name, boolean trigrams) {
+		String nameLC = name.toLowerCase();
+		Set<String> grams = new LinkedHashSet<>();
+		for (int i = 0; i < nameLC.length(); ++i) {
+			grams.add(nameLC.substring(i, i + 1));
+		}
+		if (trigrams) {
+			for (int i = 0; i + 3 <= nameLC.length(); ++i) {
+				grams.add(nameLC.substring(i, i + 3));
+			}
+		}
+		return grams;
+	}
+
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009 IBM Corporation and others.
+ * Copyright (c) 2009, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,202 +11,272 @@
  *******************************************************************************/
 package org.eclipse.dltk.internal.core.index.sql.h2;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.eclipse.core.runtime.jobs.ILock;
-import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.dltk.core.index.sql.Container;
 import org.eclipse.dltk.core.index.sql.File;
 
 /**
- * This is a cache layer between H2 database and model access
- * 
+ * This is a cache layer between H2 database and model access. Entries are
+ * evicted in the least recently used order once the caches are full, so
+ * lookups may miss and then the DAOs reload the rows from the database.
+ *
  * @author michael
  */
 public class H2Cache {
 
-	private static final ILock containerLock = Job.getJobManager().newLock();
-	private static final Map<Integer, Container> containerById = new HashMap<Integer, Container>();
+	/** Maximal number of cached containers */
+	private static final int MAX_CONTAINERS = 1024;
 
-	private static final ILock fileLock = Job.getJobManager().newLock();
-	private static final Map<Integer, Map<Integer, File>> filesByContainer = new HashMap<Integer, Map<Integer, File>>();
+	/** Maximal number of cached files, in each of the file caches */
+	private static final int MAX_FILES = 50000;
 
-	public static void addContainer(Container container) {
-		containerLock.acquire();
-		try {
-			int containerId = container.getId();
-			containerById.put(containerId, container);
-		} finally {
-			containerLock.release();
+	/** Key of a file by its container and path */
+	private static final class FileKey {
+		final int containerId;
+		final String path;
+
+		FileKey(int containerId, String path) {
+			this.containerId = containerId;
+			this.path = path;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * containerId + path.hashCode();
 		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof FileKey)) {
+				return false;
+			}
+			FileKey other = (FileKey) obj;
+			return containerId == other.containerId && path.equals(other.path);
+		}
+	}
+
+	private static final StripedCache<Integer, Container> containerById = new StripedCache<Integer, Container>(
+			MAX_CONTAINERS);
+	private static final StripedCache<String, Container> containerByPath = new StripedCache<String, Container>(
+			MAX_CONTAINERS);
+
+	private static final StripedCache<Integer, File> fileById = new StripedCache<Integer, File>(
+			MAX_FILES);
+	private static final StripedCache<FileKey, File> fileByPath = new StripedCache<FileKey, File>(
+			MAX_FILES);
+
+	/** Complete lists of the files of containers, weighted by their length */
+	private static final StripedCache<Integer, File[]> filesByContainer = new StripedCache<Integer, File[]>(
+			MAX_FILES) {
+		@Override
+		protected int weigh(File[] value) {
+			return Math.max(1, value.length);
+		}
+	};
+
+	/**
+	 * Incremented on every change of the files, so that a list of files read
+	 * from the database concurrently with a change is not cached.
+	 */
+	private static final AtomicInteger filesVersion = new AtomicInteger();
+
+	public static void addContainer(Container container) {
+		containerById.put(container.getId(), container);
+		containerByPath.put(container.getPath(), container);
 	}
 
 	public static void addFile(File file) {
-		fileLock.acquire();
-		try {
-			int containerId = file.getContainerId();
-			Map<Integer, File> files = filesByContainer.get(containerId);
-			if (files == null) {
-				files = new HashMap<Integer, File>();
-				filesByContainer.put(containerId, files);
+		filesVersion.incrementAndGet();
+		fileById.put(file.getId(), file);
+		fileByPath.put(new FileKey(file.getContainerId(), file.getPath()),
+				file);
+		filesByContainer.remove(file.getContainerId());
+	}
+
+	/**
+	 * Caches a file read from the database.
+	 */
+	public static void cacheFile(File file) {
+		fileById.put(file.getId(), file);
+		fileByPath.put(new FileKey(file.getContainerId(), file.getPath()),
+				file);
+	}
+
+	/**
+	 * Returns the version to pass to
+	 * {@link #addFilesByContainerId(int, File[], int)}, to be read before
+	 * reading the files from the database.
+	 */
+	public static int getFilesVersion() {
+		return filesVersion.get();
+	}
+
+	/**
+	 * Caches the complete list of the files of the container, unless files
+	 * changed since the given version.
+	 */
+	public static void addFilesByContainerId(int containerId, File[] files,
+			int version) {
+		for (File file : files) {
+			cacheFile(file);
+		}
+		if (filesVersion.get() == version) {
+			filesByContainer.put(containerId, files);
+			if (filesVersion.get() != version) {
+				filesByContainer.remove(containerId);
 			}
-			files.put(file.getId(), file);
-		} finally {
-			fileLock.release();
 		}
 	}
 
 	public static void deleteContainerById(int id) {
-		containerLock.acquire();
-		try {
-			containerById.remove(id);
-			deleteFilesByContainerId(id);
-		} finally {
-			containerLock.release();
+		Container container = containerById.remove(id);
+		if (container != null) {
+			containerByPath.remove(container.getPath());
+		} else {
+			final int containerId = id;
+			containerByPath.removeAll(new StripedCache.Filter<Container>() {
+				public boolean accept(Container value) {
+					return value.getId() == containerId;
+				}
+			});
 		}
+		deleteFilesByContainerId(id);
 	}
 
 	public static void deleteContainerByPath(String path) {
-		containerLock.acquire();
-		try {
-			Container container = selectContainerByPath(path);
-			if (container != null) {
-				deleteContainerById(container.getId());
-			}
-		} finally {
-			containerLock.release();
+		Container container = containerByPath.remove(path);
+		if (container != null) {
+			deleteContainerById(container.getId());
+		} else {
+			final String containerPath = path;
+			containerById.removeAll(new StripedCache.Filter<Container>() {
+				public boolean accept(Container value) {
+					if (value.getPath().equals(containerPath)) {
+						deleteFilesByContainerId(value.getId());
+						return true;
+					}
+					return false;
+				}
+			});
 		}
 	}
 
 	public static void deleteFileByContainerIdAndPath(int containerId,
 			String path) {
-		fileLock.acquire();
-		try {
-			File file = selectFileByContainerIdAndPath(containerId, path);
-			if (file != null) {
-				deleteFileById(file.getId());
-			}
-		} finally {
-			fileLock.release();
+		filesVersion.incrementAndGet();
+		File file = fileByPath.remove(new FileKey(containerId, path));
+		if (file != null) {
+			fileById.remove(file.getId());
+		} else {
+			final int fileContainerId = containerId;
+			final String filePath = path;
+			fileById.removeAll(new StripedCache.Filter<File>() {
+				public boolean accept(File value) {
+					return value.getContainerId() == fileContainerId
+							&& value.getPath().equals(filePath);
+				}
+			});
 		}
+		filesByContainer.remove(containerId);
 	}
 
 	public static void deleteFileById(int id) {
-		fileLock.acquire();
-		try {
-			Iterator<Map<Integer, File>> i = filesByContainer.values()
-					.iterator();
-			while (i.hasNext()) {
-				i.next().remove(id);
-			}
-		} finally {
-			fileLock.release();
+		filesVersion.incrementAndGet();
+		File file = fileById.remove(id);
+		if (file != null) {
+			fileByPath.remove(new FileKey(file.getContainerId(), file
+					.getPath()));
+			filesByContainer.remove(file.getContainerId());
+		} else {
+			final int fileId = id;
+			fileByPath.removeAll(new StripedCache.Filter<File>() {
+				public boolean accept(File value) {
+					return value.getId() == fileId;
+				}
+			});
+			filesByContainer.clear();
 		}
 	}
 
 	public static void deleteFilesByContainerId(int id) {
-		fileLock.acquire();
-		try {
-			filesByContainer.remove(id);
-		} finally {
-			fileLock.release();
-		}
+		filesVersion.incrementAndGet();
+		final int containerId = id;
+		StripedCache.Filter<File> filter = new StripedCache.Filter<File>() {
+			public boolean accept(File value) {
+				return value.getContainerId() == containerId;
+			}
+		};
+		fileById.removeAll(filter);
+		fileByPath.removeAll(filter);
+		filesByContainer.remove(id);
 	}
 
 	public static Container selectContainerById(int id) {
-		containerLock.acquire();
-		try {
-			return containerById.get(id);
-		} finally {
-			containerLock.release();
-		}
+		return containerById.get(id);
 	}
 
 	public static Container selectContainerByPath(String path) {
-		containerLock.acquire();
-		try {
-			Iterator<Container> i = containerById.values().iterator();
-			while (i.hasNext()) {
-				Container container = i.next();
-				if (container.getPath().equals(path)) {
-					return container;
-				}
-			}
-			return null;
-		} finally {
-			containerLock.release();
-		}
+		return containerByPath.get(path);
 	}
 
 	public static File selectFileByContainerIdAndPath(int containerId,
 			String path) {
-		fileLock.acquire();
-		try {
-			Map<Integer, File> files = filesByContainer.get(containerId);
-			if (files != null) {
-				Iterator<File> i = files.values().iterator();
-				while (i.hasNext()) {
-					File file = i.next();
-					if (file.getPath().equals(path)) {
-						return file;
-					}
-				}
-			}
-		} finally {
-			fileLock.release();
-		}
-		return null;
+		return fileByPath.get(new FileKey(containerId, path));
 	}
 
 	public static File selectFileById(int id) {
-		fileLock.acquire();
-		try {
-			Iterator<Map<Integer, File>> i = filesByContainer.values()
-					.iterator();
-			while (i.hasNext()) {
-				File file = i.next().get(id);
-				if (file != null) {
-					return file;
-				}
-			}
-			return null;
-		} finally {
-			fileLock.release();
-		}
+		return fileById.get(id);
 	}
 
 	/**
-	 * 
+	 *
 	 * @deprecated Use {@link #selectFilesByContainerIdAsArray(int)}
 	 */
 	public static Collection<File> selectFilesByContainerId(int id) {
-		fileLock.acquire();
-		try {
-			Map<Integer, File> files = filesByContainer.get(id);
-			if (files != null) {
-				return files.values();
-			}
-			return Collections.emptyList();
-		} finally {
-			fileLock.release();
+		File[] files = filesByContainer.get(id);
+		if (files != null) {
+			return Arrays.asList(files);
 		}
+		return Collections.emptyList();
 	}
 
+	/**
+	 * Returns the complete list of the files of the container, or
+	 * <code>null</code> if it is not cached.
+	 */
 	public static File[] selectFilesByContainerIdAsArray(int id) {
-		fileLock.acquire();
-		try {
-			Map<Integer, File> files = filesByContainer.get(id);
-			if (files != null) {
-				return files.values().toArray(new File[files.values().size()]);
-			}
-			return null;
-		} finally {
-			fileLock.release();
-		}
+		File[] files = filesByContainer.get(id);
+		return files != null ? files.clone() : null;
+	}
+
+	/**
+	 * Returns the number of lookups answered by the caches.
+	 */
+	public static long getHitCount() {
+		return containerById.getHitCount() + containerByPath.getHitCount()
+				+ fileById.getHitCount() + fileByPath.getHitCount()
+				+ filesByContainer.getHitCount();
+	}
+
+	/**
+	 * Returns the number of lookups that had to read the database.
+	 */
+	public static long getMissCount() {
+		return containerById.getMissCount() + containerByPath.getMissCount()
+				+ fileById.getMissCount() + fileByPath.getMissCount()
+				+ filesByContainer.getMissCount();
+	}
+
+	public static void resetStatistics() {
+		containerById.resetStatistics();
+		containerByPath.resetStatistics();
+		fileById.resetStatistics();
+		fileByPath.resetStatistics();
+		filesByContainer.resetStatistics();
 	}
 
 }
@@ -13,6 +13,7 @@ package org.eclipse.dltk.internal.core.index.sql.h2;
 
 import java.io.File;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
@@ -40,6 +41,12 @@ public class H2DbFactory extends DbFactory {
 	private static final String DB_NAME = "model"; //$NON-NLS-1$
 	private static final String DB_USER = ""; //$NON-NLS-1$
 	private static final String DB_PASS = ""; //$NON-NLS-1$
+
+	/**
+	 * Minimal number of documents of a bulk load for deferring the elements
+	 * indexes. Below, re-creating the indexes costs more than maintaining them.
+	 */
+	private static final int DEFER_INDEXES_DOCUMENTS = 2000;
 	private JdbcConnectionPool pool;
 
 	public H2DbFactory() throws Exception {
@@ -169,12 +176,57 @@ public class H2DbFactory extends DbFactory {
 	}
 
 	public void dispose() throws SQLException {
+		if (H2Index.DEBUG) {
+			System.out.println("H2 cache: hits = " + H2Cache.getHitCount() //$NON-NLS-1$
+					+ " ; misses = " + H2Cache.getMissCount()); //$NON-NLS-1$
+		}
 		if (pool != null) {
 			pool.dispose();
 			pool = null;
 		}
 	}
 
+	/**
+	 * Defers the elements indexes when the load is large and at least doubles
+	 * the indexed files, as the indexes are then re-created from all the rows.
+	 */
+	public void beginBulkLoad(Connection connection, int documents)
+			throws SQLException {
+		if (documents < DEFER_INDEXES_DOCUMENTS) {
+			return;
+		}
+		int files = 0;
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet result = statement
+					.executeQuery("SELECT COUNT(*) FROM FILES;"); //$NON-NLS-1$
+			try {
+				if (result.next()) {
+					files = result.getInt(1);
+				}
+			} finally {
+				result.close();
+			}
+		} finally {
+			statement.close();
+		}
+		if (shouldDeferIndexes(documents, files)) {
+			new Schema().beginDeferredIndexes();
+		}
+	}
+
+	/**
+	 * Returns whether the elements indexes are deferred for loading the given
+	 * number of documents into a database of the given number of files.
+	 */
+	static boolean shouldDeferIndexes(int documents, int files) {
+		return documents >= DEFER_INDEXES_DOCUMENTS && documents >= files;
+	}
+
+	public void endBulkLoad(Connection connection) throws SQLException {
+		new Schema().createDeferredIndexes(connection);
+	}
+
 	public IContainerDao getContainerDao() {
 		return new H2ContainerDao();
 	}
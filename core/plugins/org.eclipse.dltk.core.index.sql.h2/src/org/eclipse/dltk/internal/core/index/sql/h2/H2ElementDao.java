@@ -16,9 +16,13 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -27,6 +31,7 @@ import org.eclipse.dltk.core.index.sql.IElementDao;
 import org.eclipse.dltk.core.index.sql.IElementHandler;
 import org.eclipse.dltk.core.index.sql.h2.H2Index;
 import org.eclipse.dltk.core.index2.search.ISearchEngine.MatchRule;
+import org.eclipse.dltk.core.index2.search.NameMatcher;
 import org.eclipse.dltk.internal.core.ModelManager;
 import org.eclipse.osgi.util.NLS;
 
@@ -51,12 +56,61 @@ public class H2ElementDao implements IElementDao {
 	/** Cache for insert element reference queries */
 	private static final Map<String, String> D_INSERT_QUERY_CACHE = new HashMap<String, String>();
 
+	/** Cache for multi-row insert element queries */
+	private static final Map<String, String> MULTI_INSERT_QUERY_CACHE = new HashMap<String, String>();
+
+	/** Number of rows inserted by a multi-row insert statement */
+	private static final int INSERT_ROWS = 64;
+
+	/**
+	 * Element found by a substring or fuzzy search, with its score
+	 */
+	private static class RankedElement {
+		final Element element;
+		final int score;
+
+		RankedElement(Element element, int score) {
+			this.element = element;
+			this.score = score;
+		}
+	}
+
+	private static final Comparator<RankedElement> RANK_ORDER = new Comparator<RankedElement>() {
+		public int compare(RankedElement e1, RankedElement e2) {
+			return e1.score > e2.score ? -1 : e1.score < e2.score ? 1 : 0;
+		}
+	};
+
+	/**
+	 * Element rows waiting for {@link H2ElementDao#commitInsertions()}
+	 */
+	private static class Insertions {
+		final Connection connection;
+		final String tableName;
+		final boolean isReference;
+		final List<Object[]> rows = new ArrayList<Object[]>();
+
+		Insertions(Connection connection, String tableName,
+				boolean isReference) {
+			this.connection = connection;
+			this.tableName = tableName;
+			this.isReference = isReference;
+		}
+	}
+
 	private final ModelManager modelManager;
-	private final Map<String, PreparedStatement> batchStatements;
+	private final Map<String, Insertions> insertions;
+	/**
+	 * Tables created, and whose indexes are deferred if needed, since the
+	 * {@link #preparedGeneration} of the deferral of the indexes
+	 */
+	private final Set<String> preparedTables;
+	private int preparedGeneration = -1;
 
 	public H2ElementDao() {
 		this.modelManager = ModelManager.getModelManager();
-		this.batchStatements = new HashMap<String, PreparedStatement>();
+		this.insertions = new HashMap<String, Insertions>();
+		this.preparedTables = new HashSet<String>();
 	}
 
 	private String getTableName(Connection connection, int elementType,
@@ -70,60 +124,33 @@ public class H2ElementDao implements IElementDao {
 		return tableName;
 	}
 
-	private void insertBatch(Connection connection,
-			PreparedStatement statement, int type, int flags, int offset,
-			int length, int nameOffset, int nameLength, String name,
-			String metadata, String doc, String qualifier, String parent,
-			int fileId, String natureId, boolean isReference)
-			throws SQLException {
+	/**
+	 * Returns the name of the table to insert into, creating it and deferring
+	 * its indexes during a bulk load on the first insertion only, so the rows
+	 * do not take the schema lock.
+	 */
+	private String prepareTable(Connection connection, int elementType,
+			String natureId, boolean isReference) throws SQLException {
 
-		int param = 0;
-		if (!isReference) {
-			statement.setInt(++param, flags);
-		}
-		statement.setInt(++param, offset);
-		statement.setInt(++param, length);
-		if (!isReference) {
-			statement.setInt(++param, nameOffset);
-			statement.setInt(++param, nameLength);
-		}
-		statement.setString(++param, name);
-		String camelCaseName = null;
-		if (!isReference) {
-			StringBuilder camelCaseNameBuf = new StringBuilder();
-			for (int i = 0; i < name.length(); ++i) {
-				char ch = name.charAt(i);
-				if (Character.isUpperCase(ch)) {
-					camelCaseNameBuf.append(ch);
-				} else if (i == 0) {
-					// not applicable for camel case search
-					break;
-				}
+		Schema schema = new Schema();
+		String tableName = schema.getTableName(elementType, natureId,
+				isReference);
+		synchronized (preparedTables) {
+			int generation = schema.getDeferralGeneration();
+			if (generation != preparedGeneration) {
+				preparedTables.clear();
+				preparedGeneration = generation;
+			}
+			if (!preparedTables.contains(tableName)) {
+				schema.createTable(connection, tableName, isReference);
+				schema.deferIndexes(connection, tableName, isReference);
+				preparedTables.add(tableName);
 			}
-			camelCaseName = camelCaseNameBuf.length() > 0 ? camelCaseNameBuf
-					.toString() : null;
-			statement.setString(++param, camelCaseName);
-		}
-		statement.setString(++param, metadata);
-		if (!isReference) {
-			statement.setString(++param, doc);
-		}
-		statement.setString(++param, qualifier);
-		if (!isReference) {
-			statement.setString(++param, parent);
 		}
-		statement.setInt(++param, fileId);
-		statement.addBatch();
+		return tableName;
 	}
 
-	public void insert(Connection connection, int type, int flags, int offset,
-			int length, int nameOffset, int nameLength, String name,
-			String metadata, String doc, String qualifier, String parent,
-			int fileId, String natureId, boolean isReference)
-			throws SQLException {
-
-		String tableName = getTableName(connection, type, natureId, isReference);
-
+	private String getInsertQuery(String tableName, boolean isReference) {
 		String query;
 		if (isReference) {
 			query = R_INSERT_QUERY_CACHE.get(tableName);
@@ -138,30 +165,137 @@ public class H2ElementDao implements IElementDao {
 				D_INSERT_QUERY_CACHE.put(tableName, query);
 			}
 		}
-		synchronized (batchStatements) {
-			PreparedStatement statement = batchStatements.get(query);
-			if (statement == null) {
-				statement = connection.prepareStatement(query);
-				batchStatements.put(query, statement);
+		return query;
+	}
+
+	/**
+	 * Returns the insert query of {@link #INSERT_ROWS} rows, made of the
+	 * single row one by repeating its values list.
+	 */
+	private String getMultiInsertQuery(String tableName, boolean isReference) {
+		synchronized (MULTI_INSERT_QUERY_CACHE) {
+			String query = MULTI_INSERT_QUERY_CACHE.get(tableName);
+			if (query == null) {
+				String single = getInsertQuery(tableName, isReference);
+				int end = single.lastIndexOf(')') + 1;
+				String values = single.substring(single.lastIndexOf('('), end);
+				StringBuilder buf = new StringBuilder(single.substring(0, end));
+				for (int i = 1; i < INSERT_ROWS; ++i) {
+					buf.append(',').append(values);
+				}
+				query = buf.toString();
+				MULTI_INSERT_QUERY_CACHE.put(tableName, query);
 			}
-			insertBatch(connection, statement, type, flags, offset, length,
-					nameOffset, nameLength, name, metadata, doc, qualifier,
-					parent, fileId, natureId, isReference);
+			return query;
 		}
 	}
 
-	public void commitInsertions() throws SQLException {
-		synchronized (batchStatements) {
+	private Object[] createRow(int flags, int offset, int length,
+			int nameOffset, int nameLength, String name, String metadata,
+			String doc, String qualifier, String parent, int fileId,
+			boolean isReference) {
+
+		if (isReference) {
+			return new Object[] { offset, length, name, metadata, qualifier,
+					fileId };
+		}
+		StringBuilder camelCaseNameBuf = new StringBuilder();
+		for (int i = 0; i < name.length(); ++i) {
+			char ch = name.charAt(i);
+			if (Character.isUpperCase(ch)) {
+				camelCaseNameBuf.append(ch);
+			} else if (i == 0) {
+				// not applicable for camel case search
+				break;
+			}
+		}
+		String camelCaseName = camelCaseNameBuf.length() > 0 ? camelCaseNameBuf
+				.toString() : null;
+		return new Object[] { flags, offset, length, nameOffset, nameLength,
+				name, camelCaseName, metadata, doc, qualifier, parent, fileId };
+	}
+
+	private int setRow(PreparedStatement statement, int param, Object[] row)
+			throws SQLException {
+		for (Object value : row) {
+			if (value instanceof Integer) {
+				statement.setInt(++param, (Integer) value);
+			} else {
+				statement.setString(++param, (String) value);
+			}
+		}
+		return param;
+	}
+
+	/**
+	 * Inserts the pending rows of a table by {@link #INSERT_ROWS} rows per
+	 * statement, then the remaining ones in a batch of single row statements.
+	 */
+	private void insertRows(Insertions pending) throws SQLException {
+		List<Object[]> rows = pending.rows;
+		int multiRows = rows.size() / INSERT_ROWS * INSERT_ROWS;
+		if (multiRows > 0) {
+			PreparedStatement statement = pending.connection
+					.prepareStatement(getMultiInsertQuery(pending.tableName,
+							pending.isReference));
 			try {
-				for (PreparedStatement statement : batchStatements.values()) {
-					try {
-						statement.executeBatch();
-					} finally {
-						statement.close();
+				for (int i = 0; i < multiRows; i += INSERT_ROWS) {
+					int param = 0;
+					for (int j = i; j < i + INSERT_ROWS; ++j) {
+						param = setRow(statement, param, rows.get(j));
 					}
+					statement.executeUpdate();
+				}
+			} finally {
+				statement.close();
+			}
+		}
+		if (multiRows < rows.size()) {
+			PreparedStatement statement = pending.connection
+					.prepareStatement(getInsertQuery(pending.tableName,
+							pending.isReference));
+			try {
+				for (int i = multiRows; i < rows.size(); ++i) {
+					setRow(statement, 0, rows.get(i));
+					statement.addBatch();
 				}
+				statement.executeBatch();
 			} finally {
-				batchStatements.clear();
+				statement.close();
+			}
+		}
+	}
+
+	public void insert(Connection connection, int type, int flags, int offset,
+			int length, int nameOffset, int nameLength, String name,
+			String metadata, String doc, String qualifier, String parent,
+			int fileId, String natureId, boolean isReference)
+			throws SQLException {
+
+		String tableName = prepareTable(connection, type, natureId,
+				isReference);
+
+		Object[] row = createRow(flags, offset, length, nameOffset,
+				nameLength, name, metadata, doc, qualifier, parent, fileId,
+				isReference);
+		synchronized (insertions) {
+			Insertions pending = insertions.get(tableName);
+			if (pending == null) {
+				pending = new Insertions(connection, tableName, isReference);
+				insertions.put(tableName, pending);
+			}
+			pending.rows.add(row);
+		}
+	}
+
+	public void commitInsertions() throws SQLException {
+		synchronized (insertions) {
+			try {
+				for (Insertions pending : insertions.values()) {
+					insertRows(pending);
+				}
+			} finally {
+				insertions.clear();
 			}
 		}
 	}
@@ -241,7 +375,30 @@ public class H2ElementDao implements IElementDao {
 				parameters.add(escapeLikePattern(pattern).replace('*', '%')
 						.replace('?', '_'));
 			}
+			// Substring
+			else if (matchRule == MatchRule.SUBSTRING) {
+				query.append(" AND LOWER(NAME) LIKE ?");
+				parameters.add("%" + escapeLikePattern(pattern.toLowerCase())
+						+ "%");
+			}
+			// Characters of the pattern in the same order
+			else if (matchRule == MatchRule.FUZZY) {
+				final StringBuilder like = new StringBuilder("%");
+				final String patternLC = pattern.toLowerCase();
+				for (int i = 0; i < patternLC.length(); ++i) {
+					like.append(escapeLikePattern(patternLC.substring(i,
+							i + 1))).append('%');
+				}
+				query.append(" AND LOWER(NAME) LIKE ?");
+				parameters.add(like.toString());
+			}
 		}
+		// Matches of the substring and fuzzy searches are handled once ranked
+		final boolean rank = pattern != null
+				&& pattern.length() > 0
+				&& (matchRule == MatchRule.SUBSTRING || matchRule == MatchRule.FUZZY);
+		final List<RankedElement> ranked = rank ? new ArrayList<RankedElement>()
+				: null;
 
 		// Flags
 		if (trueFlags != 0) {
@@ -284,8 +441,8 @@ public class H2ElementDao implements IElementDao {
 			query = begin;
 		}
 
-		// Records limit
-		if (limit > 0) {
+		// Records limit, applied after ranking to the ranked matches
+		if (limit > 0 && ranked == null) {
 			query.append(" LIMIT ").append(limit);
 		}
 		query.append(";");
@@ -356,7 +513,12 @@ public class H2ElementDao implements IElementDao {
 							modelManager.intern(name), camelCaseName, metadata,
 							doc, qualifier, parent, fileId, isReference);
 
-					handler.handle(element);
+					if (ranked != null) {
+						ranked.add(new RankedElement(element, NameMatcher
+								.match(matchRule, pattern, name)));
+					} else {
+						handler.handle(element);
+					}
 				}
 			} finally {
 				result.close();
@@ -365,6 +527,15 @@ public class H2ElementDao implements IElementDao {
 			statement.close();
 		}
 
+		if (ranked != null) {
+			Collections.sort(ranked, RANK_ORDER);
+			final int rankedCount = limit > 0 ? Math.min(limit, ranked.size())
+					: ranked.size();
+			for (int i = 0; i < rankedCount; ++i) {
+				handler.handle(ranked.get(i).element);
+			}
+		}
+
 		if (H2Index.DEBUG) {
 			System.out.println("Results = " + count + " ; Time taken = "
 					+ (System.currentTimeMillis() - timeStamp) + " ms.");
@@ -80,7 +80,7 @@ public class H2FileDao implements IFileDao {
 						file = new File(result.getInt(1), result.getString(2),
 								result.getLong(3), result.getInt(4));
 
-						H2Cache.addFile(file);
+						H2Cache.cacheFile(file);
 					}
 				} finally {
 					result.close();
@@ -97,6 +97,7 @@ public class H2FileDao implements IFileDao {
 
 		File[] files = H2Cache.selectFilesByContainerIdAsArray(containerId);
 		if (files == null) {
+			int version = H2Cache.getFilesVersion();
 			List<File> containerFiles = new LinkedList<File>();
 
 			PreparedStatement statement = connection
@@ -112,7 +113,6 @@ public class H2FileDao implements IFileDao {
 								result.getInt(4));
 
 						containerFiles.add(file);
-						H2Cache.addFile(file);
 					}
 				} finally {
 					result.close();
@@ -121,6 +121,7 @@ public class H2FileDao implements IFileDao {
 				statement.close();
 			}
 			files = containerFiles.toArray(new File[containerFiles.size()]);
+			H2Cache.addFilesByContainerId(containerId, files.clone(), version);
 		}
 		return files;
 	}
@@ -140,7 +141,7 @@ public class H2FileDao implements IFileDao {
 						file = new File(result.getInt(1), result.getString(2),
 								result.getLong(3), result.getInt(4));
 
-						H2Cache.addFile(file);
+						H2Cache.cacheFile(file);
 					}
 				} finally {
 					result.close();
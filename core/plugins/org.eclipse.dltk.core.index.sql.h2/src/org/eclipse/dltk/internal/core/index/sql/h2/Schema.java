@@ -18,8 +18,14 @@ import java.net.URL;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.Path;
@@ -44,6 +50,22 @@ public class Schema {
 	/** Contains already created tables names */
 	private static final Set<String> TABLES_CACHE = new HashSet<String>();
 
+	private static final Pattern CREATE_INDEX_PATTERN = Pattern.compile(
+			"CREATE INDEX IF NOT EXISTS (\\S+) ON", Pattern.CASE_INSENSITIVE); //$NON-NLS-1$
+
+	/**
+	 * Elements tables whose indexes are dropped until the end of the bulk
+	 * load, mapped to whether they contain references, or <code>null</code>
+	 * if indexes are not deferred. Guarded by {@link #TABLES_CACHE}.
+	 */
+	private static Map<String, Boolean> deferredTables;
+
+	/**
+	 * Incremented when the indexes start or stop being deferred, so the
+	 * callers of {@link #deferIndexes} know when to call it again.
+	 */
+	private static volatile int deferralGeneration;
+
 	/**
 	 * Creates the database schema using given connection.
 	 * 
@@ -133,6 +155,128 @@ public class Schema {
 		}
 	}
 
+	/**
+	 * Starts deferring the secondary indexes of the elements tables: the
+	 * indexes of a table are dropped when {@link #deferIndexes} is first
+	 * called for it, and created again by {@link #createDeferredIndexes}. If
+	 * the load is interrupted, {@link #createTable} creates them on the next
+	 * start.
+	 */
+	public void beginDeferredIndexes() {
+		synchronized (TABLES_CACHE) {
+			if (deferredTables == null) {
+				deferredTables = new HashMap<String, Boolean>();
+				++deferralGeneration;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of times the indexes started or stopped being
+	 * deferred. The tables passed to {@link #deferIndexes} since this number
+	 * last changed do not need to be passed again.
+	 */
+	public int getDeferralGeneration() {
+		return deferralGeneration;
+	}
+
+	/**
+	 * Drops the secondary indexes of the elements table if indexes are
+	 * deferred and it was not done yet.
+	 * 
+	 * @param connection
+	 *            Database connection
+	 * @param tableName
+	 *            Table name
+	 * @param isReference
+	 *            Whether the table contains element references or element
+	 *            declarations
+	 * @throws SQLException
+	 */
+	public void deferIndexes(Connection connection, String tableName,
+			boolean isReference) throws SQLException {
+
+		synchronized (TABLES_CACHE) {
+			if (deferredTables == null
+					|| deferredTables.containsKey(tableName)) {
+				return;
+			}
+			deferredTables.put(tableName, isReference);
+			Statement statement = connection.createStatement();
+			try {
+				for (String index : getIndexStatements(tableName, isReference)) {
+					Matcher matcher = CREATE_INDEX_PATTERN.matcher(index);
+					if (matcher.find()) {
+						statement.executeUpdate("DROP INDEX IF EXISTS " //$NON-NLS-1$
+								+ matcher.group(1));
+					}
+				}
+			} finally {
+				statement.close();
+			}
+		}
+	}
+
+	/**
+	 * Creates the indexes dropped since {@link #beginDeferredIndexes()} and
+	 * stops deferring them.
+	 * 
+	 * @param connection
+	 *            Database connection
+	 * @throws SQLException
+	 */
+	public void createDeferredIndexes(Connection connection)
+			throws SQLException {
+
+		synchronized (TABLES_CACHE) {
+			if (deferredTables == null) {
+				return;
+			}
+			try {
+				Statement statement = connection.createStatement();
+				try {
+					for (Map.Entry<String, Boolean> entry : deferredTables
+							.entrySet()) {
+						for (String index : getIndexStatements(entry.getKey(),
+								entry.getValue())) {
+							statement.executeUpdate(index);
+						}
+					}
+				} finally {
+					statement.close();
+				}
+			} catch (SQLException e) {
+				H2Index.error(
+						"An exception was thrown while creating elements table indexes", //$NON-NLS-1$
+						e);
+				throw e;
+			} finally {
+				deferredTables = null;
+				++deferralGeneration;
+			}
+		}
+	}
+
+	/**
+	 * Returns the statements of the elements table script creating its
+	 * secondary indexes.
+	 */
+	private List<String> getIndexStatements(String tableName,
+			boolean isReference) {
+		String query = isReference ? readSqlFile("resources/element_ref.sql") //$NON-NLS-1$
+				: readSqlFile("resources/element_decl.sql"); //$NON-NLS-1$
+		query = NLS.bind(query, tableName);
+
+		List<String> statements = new ArrayList<String>();
+		for (String statement : query.split(";")) { //$NON-NLS-1$
+			statement = statement.trim();
+			if (CREATE_INDEX_PATTERN.matcher(statement).find()) {
+				statements.add(statement);
+			}
+		}
+		return statements;
+	}
+
 	/**
 	 * Checks whether the schema version is compatible with the stored one.
 	 */
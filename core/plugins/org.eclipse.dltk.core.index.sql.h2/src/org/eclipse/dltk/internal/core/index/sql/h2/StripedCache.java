@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.sql.h2;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of a bounded weight, split into independently locked LRU segments so
+ * that concurrent readers of different keys don't contend.
+ *
+ * @param <K>
+ *            key type
+ * @param <V>
+ *            value type
+ */
+class StripedCache<K, V> {
+
+	interface Filter<V> {
+		boolean accept(V value);
+	}
+
+	private static final int STRIPES = 16;
+
+	private final Segment<K, V>[] segments;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param maxWeight
+	 *            Maximal total weight of the values, see {@link #weigh(Object)}
+	 */
+	@SuppressWarnings("unchecked")
+	StripedCache(int maxWeight) {
+		segments = new Segment[STRIPES];
+		for (int i = 0; i < STRIPES; ++i) {
+			segments[i] = new Segment<K, V>(this,
+					Math.max(1, maxWeight / STRIPES));
+		}
+	}
+
+	/**
+	 * Returns the weight of the value, 1 by default.
+	 */
+	protected int weigh(V value) {
+		return 1;
+	}
+
+	private Segment<K, V> segmentFor(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & (STRIPES - 1)];
+	}
+
+	/**
+	 * Returns the cached value, <code>null</code> if there is none. Counts a
+	 * hit or a miss.
+	 */
+	V get(K key) {
+		V value = segmentFor(key).get(key);
+		if (value != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return value;
+	}
+
+	void put(K key, V value) {
+		segmentFor(key).put(key, value);
+	}
+
+	V remove(K key) {
+		return segmentFor(key).remove(key);
+	}
+
+	/**
+	 * Removes the values accepted by the filter, visiting all the segments.
+	 */
+	void removeAll(Filter<V> filter) {
+		for (Segment<K, V> segment : segments) {
+			segment.removeAll(filter);
+		}
+	}
+
+	void clear() {
+		for (Segment<K, V> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	long getHitCount() {
+		return hits.get();
+	}
+
+	long getMissCount() {
+		return misses.get();
+	}
+
+	void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+	}
+
+	private static class Segment<K, V> {
+
+		private final StripedCache<K, V> cache;
+		private final int maxWeight;
+		private final LinkedHashMap<K, V> map = new LinkedHashMap<K, V>(16,
+				0.75f, true);
+		private int weight;
+
+		Segment(StripedCache<K, V> cache, int maxWeight) {
+			this.cache = cache;
+			this.maxWeight = maxWeight;
+		}
+
+		synchronized V get(Object key) {
+			return map.get(key);
+		}
+
+		synchronized void put(K key, V value) {
+			V old = map.put(key, value);
+			if (old != null) {
+				weight -= cache.weigh(old);
+			}
+			weight += cache.weigh(value);
+			// evict the least recently used values, but the new one
+			Iterator<Map.Entry<K, V>> i = map.entrySet().iterator();
+			while (weight > maxWeight && map.size() > 1) {
+				Map.Entry<K, V> eldest = i.next();
+				weight -= cache.weigh(eldest.getValue());
+				i.remove();
+			}
+		}
+
+		synchronized V remove(Object key) {
+			V value = map.remove(key);
+			if (value != null) {
+				weight -= cache.weigh(value);
+			}
+			return value;
+		}
+
+		synchronized void removeAll(Filter<V> filter) {
+			Iterator<V> i = map.values().iterator();
+			while (i.hasNext()) {
+				V value = i.next();
+				if (filter.accept(value)) {
+					weight -= cache.weigh(value);
+					i.remove();
+				}
+			}
+		}
+
+		synchronized void clear() {
+			map.clear();
+			weight = 0;
+		}
+	}
+}
@@ -128,4 +128,32 @@ public abstract class DbFactory {
 	 */
 	public abstract IContainerDao getContainerDao();
 
+	/**
+	 * Prepares the database for inserting the elements of many documents
+	 * through the given connection, e.g. by deferring the maintenance of
+	 * secondary indexes. Does nothing by default.
+	 * 
+	 * @param connection
+	 *            Database connection used for the insertions
+	 * @param documents
+	 *            Number of documents to be inserted
+	 * @throws SQLException
+	 * @since 5.7.1
+	 */
+	public void beginBulkLoad(Connection connection, int documents)
+			throws SQLException {
+	}
+
+	/**
+	 * Restores what {@link #beginBulkLoad(Connection, int)} deferred, once the
+	 * insertions are committed. Does nothing by default.
+	 * 
+	 * @param connection
+	 *            Database connection used for the insertions
+	 * @throws SQLException
+	 * @since 5.7.1
+	 */
+	public void endBulkLoad(Connection connection) throws SQLException {
+	}
+
 }
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.sql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.eclipse.dltk.core.index.sql.DbFactory;
+import org.eclipse.dltk.core.index.sql.IElementDao;
+
+/**
+ * Connection kept open by the {@link SqlIndexer} during a bulk indexing. The
+ * insertions are committed every {@link #COMMIT_DOCUMENTS} documents instead
+ * of after each one.
+ *
+ * @since 5.7.1
+ */
+public class BulkConnection {
+
+	/**
+	 * Number of documents inserted in a transaction
+	 */
+	public static final int COMMIT_DOCUMENTS = 200;
+
+	private final DbFactory dbFactory;
+	private final Connection connection;
+	private final IElementDao elementDao;
+	private int documents;
+
+	/**
+	 * @param dbFactory
+	 *            Database factory
+	 * @param connection
+	 *            Connection used for the insertions
+	 * @param elementDao
+	 *            DAO buffering the element insertions
+	 */
+	public BulkConnection(DbFactory dbFactory, Connection connection,
+			IElementDao elementDao) {
+		this.dbFactory = dbFactory;
+		this.connection = connection;
+		this.elementDao = elementDao;
+	}
+
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Prepares the database for inserting the given number of documents.
+	 *
+	 * @throws SQLException
+	 */
+	public void begin(int documentCount) throws SQLException {
+		connection.setAutoCommit(false);
+		dbFactory.beginBulkLoad(connection, documentCount);
+		connection.commit();
+	}
+
+	/**
+	 * Notifies that the elements of a document were inserted, commits them
+	 * with the ones of the previous documents every {@link #COMMIT_DOCUMENTS}
+	 * documents.
+	 *
+	 * @throws SQLException
+	 */
+	public void documentIndexed() throws SQLException {
+		if (++documents % COMMIT_DOCUMENTS == 0) {
+			elementDao.commitInsertions();
+			connection.commit();
+		}
+	}
+
+	/**
+	 * Commits the remaining insertions, then restores what
+	 * {@link DbFactory#beginBulkLoad(Connection, int)} deferred. The
+	 * connection is not closed.
+	 *
+	 * @throws SQLException
+	 */
+	public void end() throws SQLException {
+		elementDao.commitInsertions();
+		connection.commit();
+		dbFactory.endBulkLoad(connection);
+		connection.commit();
+	}
+
+}
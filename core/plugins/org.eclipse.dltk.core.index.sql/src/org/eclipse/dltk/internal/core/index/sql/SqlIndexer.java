@@ -30,6 +30,7 @@ import org.eclipse.dltk.core.index.sql.File;
 import org.eclipse.dltk.core.index.sql.IElementDao;
 import org.eclipse.dltk.core.index.sql.SqlIndex;
 import org.eclipse.dltk.core.index2.AbstractIndexer;
+import org.eclipse.dltk.core.index2.IIndexerExtension;
 import org.eclipse.dltk.core.index2.search.ISearchEngine;
 import org.eclipse.dltk.internal.core.ExternalSourceModule;
 import org.eclipse.dltk.internal.core.SourceModule;
@@ -42,9 +43,11 @@ import org.eclipse.osgi.util.NLS;
  * @author michael
  * 
  */
-public class SqlIndexer extends AbstractIndexer {
+public class SqlIndexer extends AbstractIndexer implements IIndexerExtension {
 
 	private Connection connection;
+	/** Connection kept open during a bulk indexing, <code>null</code> otherwise */
+	private BulkConnection bulkConnection;
 	private File file;
 	private String natureId;
 	private IElementDao elementDao;
@@ -93,10 +96,13 @@ public class SqlIndexer extends AbstractIndexer {
 
 		try {
 			DbFactory dbFactory = DbFactory.getInstance();
-			connection = dbFactory.createConnection();
-			try {
+			if (bulkConnection != null) {
+				connection = bulkConnection.getConnection();
+			} else {
+				connection = dbFactory.createConnection();
 				connection.setAutoCommit(false);
-
+			}
+			try {
 				IDLTKLanguageToolkit toolkit = DLTKLanguageManager
 						.getLanguageToolkit(sourceModule);
 				if (toolkit == null) {
@@ -147,15 +153,63 @@ public class SqlIndexer extends AbstractIndexer {
 				super.indexDocument(sourceModule);
 
 			} finally {
-				elementDao.commitInsertions();
-				connection.commit();
-				connection.close();
+				if (bulkConnection == null) {
+					elementDao.commitInsertions();
+					connection.commit();
+					connection.close();
+				} else {
+					bulkConnection.documentIndexed();
+				}
 			}
 		} catch (Exception e) {
 			SqlIndex.error("An exception was thrown while indexing document", e);
 		}
 	}
 
+	public void beginBulkIndexing(IPath containerPath, int documents) {
+		if (bulkConnection != null) {
+			return;
+		}
+		try {
+			DbFactory dbFactory = DbFactory.getInstance();
+			Connection newConnection = dbFactory.createConnection();
+			BulkConnection bulk = new BulkConnection(dbFactory,
+					newConnection, elementDao);
+			try {
+				bulk.begin(documents);
+			} catch (SQLException e) {
+				newConnection.close();
+				throw e;
+			}
+			bulkConnection = bulk;
+		} catch (SQLException e) {
+			SqlIndex.error(
+					NLS.bind(
+							"An exception thrown while starting bulk indexing of container ''{0}''",
+							containerPath.toString()), e);
+		}
+	}
+
+	public void endBulkIndexing(IPath containerPath) {
+		if (bulkConnection == null) {
+			return;
+		}
+		final BulkConnection bulk = bulkConnection;
+		bulkConnection = null;
+		try {
+			try {
+				bulk.end();
+			} finally {
+				bulk.getConnection().close();
+			}
+		} catch (SQLException e) {
+			SqlIndex.error(
+					NLS.bind(
+							"An exception thrown while finishing bulk indexing of container ''{0}''",
+							containerPath.toString()), e);
+		}
+	}
+
 	public Map<String, Long> getDocuments(IPath containerPath) {
 		try {
 			DbFactory dbFactory = DbFactory.getInstance();
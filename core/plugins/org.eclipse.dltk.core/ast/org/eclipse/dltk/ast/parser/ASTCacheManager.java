@@ -13,8 +13,16 @@ public class ASTCacheManager {
 	private static SimpleClassDLTKExtensionManager manager = new SimpleClassDLTKExtensionManager(
 			DLTKCore.PLUGIN_ID + ".astCache");
 
+	/**
+	 * Language of the providers used for all the languages, after their own
+	 * providers.
+	 */
+	private static final String ALL_LANGUAGES = "#"; //$NON-NLS-1$
+
 	private static Map<String, IASTCache[]> providers = null;
 
+	private static IASTCache[] universalProviders = null;
+
 	public synchronized static IASTCache[] getProviders(String lang) {
 		if (providers == null) {
 			providers = new HashMap<String, IASTCache[]>();
@@ -31,13 +39,22 @@ public class ASTCacheManager {
 				}
 				elements.add((IASTCache) manager.getInitObject(infos[i]));
 			}
+			final List<IASTCache> universal = langToElementList
+					.remove(ALL_LANGUAGES);
+			universalProviders = universal != null
+					? universal.toArray(new IASTCache[universal.size()])
+					: null;
 			for (Map.Entry<String, List<IASTCache>> entry : langToElementList
 					.entrySet()) {
 				List<IASTCache> list = entry.getValue();
+				if (universal != null) {
+					list.addAll(universal);
+				}
 				IASTCache[] result = list.toArray(new IASTCache[list.size()]);
 				providers.put(entry.getKey(), result);
 			}
 		}
-		return providers.get(lang);
+		final IASTCache[] result = providers.get(lang);
+		return result != null ? result : universalProviders;
 	}
 }
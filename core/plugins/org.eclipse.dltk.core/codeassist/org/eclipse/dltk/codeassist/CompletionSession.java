@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.codeassist;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.dltk.compiler.CharOperation;
+import org.eclipse.dltk.core.IMember;
+
+/**
+ * Remembers the candidates of the completions of a token being typed, so the
+ * next completions at the same position only narrow them as the token grows.
+ * <p>
+ * A session is kept by the owner of the completion engines, usually one per
+ * editor, and passed to them with
+ * {@link ScriptCompletionEngine#setSession(CompletionSession)}. The
+ * {@link ScriptCompletionEngine} methods finding methods, fields and types
+ * then reuse the names, flags and parameter names of the candidates matching
+ * the previous token instead of computing them again. An engine can also skip
+ * querying its candidates if
+ * {@link ScriptCompletionEngine#canNarrow(int, char[])} returns
+ * <code>true</code>, and pass <code>null</code> instead of them.
+ * </p>
+ * The names of the candidates must not depend on the token. The candidates of
+ * a proposal kind found more than once in a completion, e.g. in several
+ * lists, are not narrowed. The owner calls {@link #reset()} when the source is
+ * changed elsewhere than in the completed token.
+ *
+ * @since 5.7.1
+ */
+public class CompletionSession {
+
+	/**
+	 * Candidate of a completion, with its values needed by the proposals.
+	 */
+	static class Candidate {
+		final IMember element;
+		final String name;
+		final String completion;
+		boolean resolved;
+		int flags;
+		String[] parameterNames;
+
+		Candidate(IMember element, String name, String completion) {
+			this.element = element;
+			this.name = name;
+			this.completion = completion;
+		}
+	}
+
+	private static class Entry {
+		final int position;
+		final char[] token;
+		final List<? extends IMember> elements;
+		final List<Candidate> matches;
+
+		Entry(int position, char[] token, List<? extends IMember> elements,
+				List<Candidate> matches) {
+			this.position = position;
+			this.token = token;
+			this.elements = elements;
+			this.matches = matches;
+		}
+	}
+
+	private final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+
+	/**
+	 * Returns the candidates of the kind matching the previous token, if the
+	 * token continues it at the same position and the elements are the same
+	 * as the previous ones, or <code>null</code>.
+	 *
+	 * @param elements
+	 *            the candidate elements, or <code>null</code> to reuse the
+	 *            previous ones
+	 */
+	synchronized List<Candidate> narrow(int kind, int position, char[] token,
+			List<? extends IMember> elements) {
+		final Entry entry = entries.get(kind);
+		if (entry == null || entry.position != position
+				|| entry.token.length > token.length
+				|| !CharOperation.prefixEquals(entry.token, token, false)) {
+			return null;
+		}
+		if (elements != null && !elements.equals(entry.elements)) {
+			return null;
+		}
+		return entry.matches;
+	}
+
+	/**
+	 * @param elements
+	 *            the elements the candidates were found in, <code>null</code>
+	 *            if they were narrowed from the previous ones
+	 */
+	synchronized void remember(int kind, int position, char[] token,
+			List<? extends IMember> elements, List<Candidate> matches) {
+		if (elements == null) {
+			final Entry previous = entries.get(kind);
+			if (previous == null) {
+				return;
+			}
+			elements = previous.elements;
+		}
+		entries.put(kind, new Entry(position, token, elements, matches));
+	}
+
+	/**
+	 * Forgets the candidates of the kind.
+	 */
+	synchronized void forget(int kind) {
+		entries.remove(kind);
+	}
+
+	/**
+	 * Forgets all the candidates, the next completions query them again.
+	 */
+	public synchronized void reset() {
+		entries.clear();
+	}
+
+}
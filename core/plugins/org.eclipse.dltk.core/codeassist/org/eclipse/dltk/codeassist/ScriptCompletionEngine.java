@@ -8,6 +8,8 @@
  *******************************************************************************/
 package org.eclipse.dltk.codeassist;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,6 +17,7 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.dltk.ast.declarations.Argument;
 import org.eclipse.dltk.ast.declarations.MethodDeclaration;
+import org.eclipse.dltk.codeassist.CompletionSession.Candidate;
 import org.eclipse.dltk.compiler.CharOperation;
 import org.eclipse.dltk.compiler.env.IModuleSource;
 import org.eclipse.dltk.compiler.problem.CategorizedProblem;
@@ -23,6 +26,7 @@ import org.eclipse.dltk.core.CompletionRequestor;
 import org.eclipse.dltk.core.DLTKCore;
 import org.eclipse.dltk.core.IAccessRule;
 import org.eclipse.dltk.core.IField;
+import org.eclipse.dltk.core.IMember;
 import org.eclipse.dltk.core.IMethod;
 import org.eclipse.dltk.core.IScriptProject;
 import org.eclipse.dltk.core.ISearchableEnvironment;
@@ -94,6 +98,12 @@ public abstract class ScriptCompletionEngine extends Engine implements
 
 	protected char[] source;
 	private IProgressMonitor progressMonitor;
+	private CompletionSession session;
+	/**
+	 * Number of times the candidates of each proposal kind were found since
+	 * the requestor was set, i.e. in the current completion
+	 */
+	private final Map<Integer, Integer> completions = new HashMap<Integer, Integer>();
 
 	public ScriptCompletionEngine(/*
 								 * ISearchableEnvironment nameEnvironment,
@@ -438,12 +448,15 @@ public abstract class ScriptCompletionEngine extends Engine implements
 
 	protected void findMethods(char[] token, boolean canCompleteEmptyToken,
 			List<IMethod> methods, int kind) {
-		if (methods == null || methods.size() == 0)
-			return;
-
 		int length = token.length;
-		String tok = new String(token);
-		if (canCompleteEmptyToken || length > 0) {
+		if (!canCompleteEmptyToken && length == 0)
+			return;
+		List<Candidate> candidates = narrow(kind, token, methods);
+		if (candidates == null) {
+			if (methods == null || methods.size() == 0)
+				return;
+			String tok = new String(token);
+			candidates = new ArrayList<Candidate>();
 			for (int i = 0; i < methods.size(); i++) {
 				IMethod method = methods.get(i);
 				String qname = processMethodName(method, tok);
@@ -451,49 +464,57 @@ public abstract class ScriptCompletionEngine extends Engine implements
 				if (DEBUG) {
 					System.out.println("Completion:" + qname); //$NON-NLS-1$
 				}
-				if (length <= name.length()
-						&& CharOperation.prefixEquals(token, name, false)) {
-					int relevance = computeBaseRelevance();
-					relevance += computeRelevanceForInterestingProposal();
-					relevance += computeRelevanceForCaseMatching(token, name);
-					relevance += computeRelevanceForRestrictions(IAccessRule.K_ACCESSIBLE); // no
-
-					// accept result
-					this.noProposal = false;
-					if (!this.requestor.isIgnored(kind)) {
-						CompletionProposal proposal = this.createProposal(kind,
-								this.actualCompletionPosition);
-						// proposal.setSignature(getSignature(typeBinding));
-						// proposal.setPackageName(q);
-						// proposal.setTypeName(displayName);
-						proposal.setModelElement(method);
-						try {
-							proposal.setFlags(method.getFlags());
-						} catch (ModelException e1) {
-							if (DLTKCore.DEBUG) {
-								e1.printStackTrace();
-							}
-						}
-						String[] arguments = null;
-
-						try {
-							arguments = method.getParameterNames();
-						} catch (ModelException e) {
-							if (DLTKCore.DEBUG) {
-								e.printStackTrace();
-							}
+				if (isPrefix(token, name)) {
+					candidates.add(new Candidate(method, name, name));
+				}
+			}
+			remember(kind, token, methods, candidates);
+		}
+		for (Candidate candidate : candidates) {
+			String name = candidate.name;
+			int relevance = computeBaseRelevance();
+			relevance += computeRelevanceForInterestingProposal();
+			relevance += computeRelevanceForCaseMatching(token, name);
+			relevance += computeRelevanceForRestrictions(IAccessRule.K_ACCESSIBLE); // no
+
+			// accept result
+			this.noProposal = false;
+			if (!this.requestor.isIgnored(kind)) {
+				CompletionProposal proposal = this.createProposal(kind,
+						this.actualCompletionPosition);
+				// proposal.setSignature(getSignature(typeBinding));
+				// proposal.setPackageName(q);
+				// proposal.setTypeName(displayName);
+				IMethod method = (IMethod) candidate.element;
+				proposal.setModelElement(method);
+				if (!candidate.resolved) {
+					candidate.resolved = true;
+					try {
+						candidate.flags = method.getFlags();
+					} catch (ModelException e1) {
+						if (DLTKCore.DEBUG) {
+							e1.printStackTrace();
 						}
-						if (arguments != null && arguments.length > 0) {
-							proposal.setParameterNames(arguments);
+					}
+					try {
+						candidate.parameterNames = method.getParameterNames();
+					} catch (ModelException e) {
+						if (DLTKCore.DEBUG) {
+							e.printStackTrace();
 						}
-
-						proposal.setName(name);
-						proposal.setCompletion(name);
-						// proposal.setFlags(Flags.AccDefault);
-						proposal.setRelevance(relevance);
-						accept(proposal);
 					}
 				}
+				proposal.setFlags(candidate.flags);
+				String[] arguments = candidate.parameterNames;
+				if (arguments != null && arguments.length > 0) {
+					proposal.setParameterNames(arguments);
+				}
+
+				proposal.setName(name);
+				proposal.setCompletion(name);
+				// proposal.setFlags(Flags.AccDefault);
+				proposal.setRelevance(relevance);
+				accept(proposal);
 			}
 		}
 	}
@@ -501,14 +522,16 @@ public abstract class ScriptCompletionEngine extends Engine implements
 	public void findFields(char[] token, boolean canCompleteEmptyToken,
 			List<IField> fields, int kind,
 			ICompletionNameProvider<IField> nameProvider) {
-		if (fields == null || fields.size() == 0)
-			return;
-		if (nameProvider == null)
-			nameProvider = CompletionNameProviders.defaultProvider();
-
 		int length = token.length;
-		// String tok = new String(token);
-		if (canCompleteEmptyToken || length > 0) {
+		if (!canCompleteEmptyToken && length == 0)
+			return;
+		List<Candidate> candidates = narrow(kind, token, fields);
+		if (candidates == null) {
+			if (fields == null || fields.size() == 0)
+				return;
+			if (nameProvider == null)
+				nameProvider = CompletionNameProviders.defaultProvider();
+			candidates = new ArrayList<Candidate>();
 			for (int i = 0; i < fields.size(); i++) {
 				IField field = fields.get(i);
 				String qname = nameProvider.getName(field);
@@ -516,31 +539,35 @@ public abstract class ScriptCompletionEngine extends Engine implements
 				if (DEBUG) {
 					System.out.println("Completion:" + qname); //$NON-NLS-1$
 				}
-				if (length <= name.length()
-						&& CharOperation.prefixEquals(token, name, false)) {
-					int relevance = computeBaseRelevance();
-					relevance += computeRelevanceForInterestingProposal();
-					relevance += computeRelevanceForCaseMatching(token, name);
-					relevance += computeRelevanceForRestrictions(IAccessRule.K_ACCESSIBLE); // no
-
-					// accept result
-					this.noProposal = false;
-					if (!this.requestor.isIgnored(kind)) {
-						CompletionProposal proposal = this.createProposal(kind,
-								this.actualCompletionPosition);
-						// proposal.setSignature(getSignature(typeBinding));
-						// proposal.setPackageName(q);
-						// proposal.setTypeName(displayName);
-						proposal.setModelElement(field);
-						proposal.setName(name);
-						proposal.setCompletion(nameProvider
-								.getCompletion(field));
-						// proposal.setFlags(Flags.AccDefault);
-						proposal.setRelevance(relevance);
-						accept(proposal);
-					}
+				if (isPrefix(token, name)) {
+					candidates.add(new Candidate(field, name, nameProvider
+							.getCompletion(field)));
 				}
 			}
+			remember(kind, token, fields, candidates);
+		}
+		for (Candidate candidate : candidates) {
+			String name = candidate.name;
+			int relevance = computeBaseRelevance();
+			relevance += computeRelevanceForInterestingProposal();
+			relevance += computeRelevanceForCaseMatching(token, name);
+			relevance += computeRelevanceForRestrictions(IAccessRule.K_ACCESSIBLE); // no
+
+			// accept result
+			this.noProposal = false;
+			if (!this.requestor.isIgnored(kind)) {
+				CompletionProposal proposal = this.createProposal(kind,
+						this.actualCompletionPosition);
+				// proposal.setSignature(getSignature(typeBinding));
+				// proposal.setPackageName(q);
+				// proposal.setTypeName(displayName);
+				proposal.setModelElement(candidate.element);
+				proposal.setName(name);
+				proposal.setCompletion(candidate.completion);
+				// proposal.setFlags(Flags.AccDefault);
+				proposal.setRelevance(relevance);
+				accept(proposal);
+			}
 		}
 	}
 
@@ -584,12 +611,16 @@ public abstract class ScriptCompletionEngine extends Engine implements
 
 	public void findTypes(char[] token, boolean canCompleteEmptyToken,
 			List<IType> types) {
-		if (types == null || types.size() == 0)
-			return;
-
 		int length = token.length;
-		String tok = new String(token);
-		if (canCompleteEmptyToken || length > 0) {
+		if (!canCompleteEmptyToken && length == 0)
+			return;
+		List<Candidate> candidates = narrow(CompletionProposal.TYPE_REF, token,
+				types);
+		if (candidates == null) {
+			if (types == null || types.size() == 0)
+				return;
+			String tok = new String(token);
+			candidates = new ArrayList<Candidate>();
 			for (int i = 0; i < types.size(); i++) {
 				IType type = types.get(i);
 				String qname = processTypeName(type, tok);
@@ -597,33 +628,119 @@ public abstract class ScriptCompletionEngine extends Engine implements
 				if (DEBUG) {
 					System.out.println("Completion:" + qname); //$NON-NLS-1$
 				}
-				if (length <= name.length()
-						&& CharOperation.prefixEquals(token, name, false)) {
-					int relevance = computeBaseRelevance();
-					relevance += computeRelevanceForInterestingProposal();
-					relevance += computeRelevanceForCaseMatching(token, name);
-					relevance += computeRelevanceForRestrictions(IAccessRule.K_ACCESSIBLE); // no
+				if (isPrefix(token, name)) {
+					candidates.add(new Candidate(type, name, name));
+				}
+			}
+			remember(CompletionProposal.TYPE_REF, token, types, candidates);
+		}
+		for (Candidate candidate : candidates) {
+			String name = candidate.name;
+			int relevance = computeBaseRelevance();
+			relevance += computeRelevanceForInterestingProposal();
+			relevance += computeRelevanceForCaseMatching(token, name);
+			relevance += computeRelevanceForRestrictions(IAccessRule.K_ACCESSIBLE); // no
+
+			// accept result
+			this.noProposal = false;
+			if (!this.requestor.isIgnored(CompletionProposal.TYPE_REF)) {
+
+				CompletionProposal proposal = this.createProposal(
+						CompletionProposal.TYPE_REF,
+						this.actualCompletionPosition);
+				// proposal.setSignature(getSignature(typeBinding));
+				// proposal.setPackageName(q);
+				// proposal.setTypeName(displayName);
+				proposal.setModelElement(candidate.element);
+				proposal.setName(name);
+				proposal.setCompletion(name);
+				// proposal.setFlags(Flags.AccDefault);
+				proposal.setRelevance(relevance);
+				accept(proposal);
+			}
+		}
+	}
 
-					// accept result
-					this.noProposal = false;
-					if (!this.requestor.isIgnored(CompletionProposal.TYPE_REF)) {
+	// Completion session
 
-						CompletionProposal proposal = this.createProposal(
-								CompletionProposal.TYPE_REF,
-								this.actualCompletionPosition);
-						// proposal.setSignature(getSignature(typeBinding));
-						// proposal.setPackageName(q);
-						// proposal.setTypeName(displayName);
-						proposal.setModelElement(type);
-						proposal.setName(name);
-						proposal.setCompletion(name);
-						// proposal.setFlags(Flags.AccDefault);
-						proposal.setRelevance(relevance);
-						accept(proposal);
-					}
-				}
+	/**
+	 * Sets the session remembering the candidates of the previous completions,
+	 * <code>null</code> to find all the candidates every time. A completion
+	 * starts when the requestor is set.
+	 *
+	 * @since 5.7.1
+	 */
+	public void setSession(CompletionSession session) {
+		this.session = session;
+	}
+
+	/**
+	 * @since 5.7.1
+	 */
+	public CompletionSession getSession() {
+		return session;
+	}
+
+	/**
+	 * Answers if the candidates of the kind are narrowed from the previous
+	 * completion, so <code>null</code> can be passed instead of querying
+	 * them again. The candidates of a kind found more than once in a
+	 * completion are not narrowed.
+	 *
+	 * @since 5.7.1
+	 */
+	protected boolean canNarrow(int kind, char[] token) {
+		return session != null && !completions.containsKey(kind)
+				&& session.narrow(kind,
+						this.actualCompletionPosition - token.length, token,
+						null) != null;
+	}
+
+	/**
+	 * Returns the candidates of the kind matching the token, narrowed from
+	 * the previous completion, or <code>null</code> if they are to be found
+	 * in the elements. If the kind was already found in this completion, the
+	 * session forgets it, as it would only remember the last candidates.
+	 */
+	private List<Candidate> narrow(int kind, char[] token,
+			List<? extends IMember> elements) {
+		if (session == null) {
+			return null;
+		}
+		final Integer count = completions.get(kind);
+		completions.put(kind, count == null ? 1 : count + 1);
+		if (count != null) {
+			session.forget(kind);
+			return null;
+		}
+		final List<Candidate> previous = session.narrow(kind,
+				this.actualCompletionPosition - token.length, token, elements);
+		if (previous == null) {
+			return null;
+		}
+		final List<Candidate> candidates = new ArrayList<Candidate>();
+		for (Candidate candidate : previous) {
+			if (isPrefix(token, candidate.name)) {
+				candidates.add(candidate);
 			}
 		}
+		session.remember(kind, this.actualCompletionPosition - token.length,
+				token, null, candidates);
+		return candidates;
+	}
+
+	private void remember(int kind, char[] token,
+			List<? extends IMember> elements, List<Candidate> candidates) {
+		if (session != null && completions.get(kind) == 1) {
+			session.remember(kind, this.actualCompletionPosition
+					- token.length, token, new ArrayList<IMember>(elements),
+					candidates);
+		}
+	}
+
+	private static boolean isPrefix(char[] token, String name) {
+		return token.length <= name.length()
+				&& CharOperation.prefixEquals(token, name, false);
 	}
 
 	// Relevance
@@ -695,6 +812,7 @@ public abstract class ScriptCompletionEngine extends Engine implements
 	@Override
 	public void setRequestor(CompletionRequestor requestor) {
 		this.requestor = requestor;
+		completions.clear();
 	}
 
 	/**
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.index2;
+
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Indexer that loads many documents of a container faster when told about it,
+ * e.g. during the initial indexing of a project or a library.
+ * 
+ * @since 5.7.1
+ */
+public interface IIndexerExtension extends IIndexer {
+
+	/**
+	 * Notifies that many documents of the container are about to be indexed.
+	 * Every call is followed by {@link #endBulkIndexing(IPath)}, the documents
+	 * may not be visible to the searches until then.
+	 * 
+	 * @param containerPath
+	 *            Container path
+	 * @param documents
+	 *            Number of documents to be indexed
+	 */
+	public void beginBulkIndexing(IPath containerPath, int documents);
+
+	/**
+	 * Notifies that the bulk indexing of the container is finished or
+	 * cancelled.
+	 * 
+	 * @param containerPath
+	 *            Container path
+	 */
+	public void endBulkIndexing(IPath containerPath);
+}
@@ -47,6 +47,25 @@ public interface ISearchEngine {
 		 * The name is a POSIX pattern ('*' - any string, '?' - any character)
 		 */
 		PATTERN,
+
+		/**
+		 * The pattern name is contained in the search result, ignoring case.
+		 * Engines supporting it pass the results best matching the pattern
+		 * first, as ranked by {@link NameMatcher}.
+		 *
+		 * @since 5.7.1
+		 */
+		SUBSTRING,
+
+		/**
+		 * The characters of the pattern name appear in the search result in
+		 * the same order, ignoring case. Engines supporting it pass the
+		 * results best matching the pattern first, as ranked by
+		 * {@link NameMatcher}.
+		 *
+		 * @since 5.7.1
+		 */
+		FUZZY,
 	}
 
 	public enum SearchFor {
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.index2.search;
+
+import org.eclipse.dltk.core.index2.search.ISearchEngine.MatchRule;
+
+/**
+ * Matches names with the {@link MatchRule#SUBSTRING} and
+ * {@link MatchRule#FUZZY} rules and ranks them, so the search engines pass the
+ * best matching names first.
+ * <p>
+ * Every matched character scores, more if it starts a word of the name (after
+ * a separator or a camel case hump) or follows the previous matched
+ * character. Characters skipped between the matched ones, before them and
+ * after them lower the score, so the names matching at their start and the
+ * shorter names rank first.
+ * </p>
+ *
+ * @since 5.7.1
+ */
+public final class NameMatcher {
+
+	/**
+	 * Returned by {@link #match(MatchRule, String, String)} when the name does
+	 * not match.
+	 */
+	public static final int NO_MATCH = Integer.MIN_VALUE;
+
+	private static final int MATCH = 16;
+	private static final int WORD_START = 10;
+	private static final int CONSECUTIVE = 6;
+	private static final int SAME_CASE = 1;
+	private static final int GAP = 2;
+	private static final int LEADING = 3;
+	private static final int TRAILING = 1;
+
+	private NameMatcher() {
+		// Utility class
+	}
+
+	/**
+	 * Returns the score of the name matching the pattern, higher for the
+	 * better matches, or {@link #NO_MATCH}.
+	 *
+	 * @param matchRule
+	 *            {@link MatchRule#SUBSTRING} or {@link MatchRule#FUZZY}
+	 * @throws IllegalArgumentException
+	 *             for the other match rules
+	 */
+	public static int match(MatchRule matchRule, String pattern, String name) {
+		if (pattern.length() == 0) {
+			return 0;
+		}
+		final int[] positions;
+		if (matchRule == MatchRule.SUBSTRING) {
+			positions = findSubstring(pattern, name);
+		} else if (matchRule == MatchRule.FUZZY) {
+			positions = findSubsequence(pattern, name);
+		} else {
+			throw new IllegalArgumentException(String.valueOf(matchRule));
+		}
+		return positions != null ? score(pattern, name, positions) : NO_MATCH;
+	}
+
+	private static int[] findSubstring(String pattern, String name) {
+		final int last = name.length() - pattern.length();
+		for (int start = 0; start <= last; ++start) {
+			int i = 0;
+			while (i < pattern.length()
+					&& equalsIgnoreCase(pattern.charAt(i),
+							name.charAt(start + i))) {
+				++i;
+			}
+			if (i == pattern.length()) {
+				final int[] positions = new int[pattern.length()];
+				for (i = 0; i < positions.length; ++i) {
+					positions[i] = start + i;
+				}
+				return positions;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the first occurrence of the pattern characters, then the shortest
+	 * one ending at the same position.
+	 */
+	private static int[] findSubsequence(String pattern, String name) {
+		int end = -1;
+		for (int i = 0, j = 0; j < name.length(); ++j) {
+			if (equalsIgnoreCase(pattern.charAt(i), name.charAt(j))
+					&& ++i == pattern.length()) {
+				end = j;
+				break;
+			}
+		}
+		if (end < 0) {
+			return null;
+		}
+		final int[] positions = new int[pattern.length()];
+		for (int i = pattern.length() - 1, j = end; i >= 0; --j) {
+			if (equalsIgnoreCase(pattern.charAt(i), name.charAt(j))) {
+				positions[i--] = j;
+			}
+		}
+		return positions;
+	}
+
+	private static int score(String pattern, String name, int[] positions) {
+		int score = 0;
+		for (int i = 0; i < positions.length; ++i) {
+			final int position = positions[i];
+			score += MATCH;
+			if (isWordStart(name, position)) {
+				score += WORD_START;
+			}
+			if (i > 0) {
+				if (position == positions[i - 1] + 1) {
+					score += CONSECUTIVE;
+				} else {
+					score -= GAP * (position - positions[i - 1] - 1);
+				}
+			}
+			if (pattern.charAt(i) == name.charAt(position)) {
+				score += SAME_CASE;
+			}
+		}
+		score -= LEADING * positions[0];
+		score -= TRAILING * (name.length() - positions[positions.length - 1] - 1);
+		return score;
+	}
+
+	private static boolean isWordStart(String name, int position) {
+		if (position == 0) {
+			return true;
+		}
+		final char c = name.charAt(position);
+		final char previous = name.charAt(position - 1);
+		return !Character.isLetterOrDigit(previous)
+				&& Character.isLetterOrDigit(c)
+				|| Character.isUpperCase(c) && Character.isLowerCase(previous);
+	}
+
+	private static boolean equalsIgnoreCase(char c1, char c2) {
+		return c1 == c2 || Character.toLowerCase(c1) == Character
+				.toLowerCase(c2);
+	}
+
+}
@@ -22,6 +22,7 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.core.index2.IIndexer;
+import org.eclipse.dltk.core.index2.IIndexerExtension;
 import org.eclipse.dltk.core.index2.ProjectIndexer2;
 
 /**
@@ -34,6 +35,12 @@ import org.eclipse.dltk.core.index2.ProjectIndexer2;
  */
 public class SourceModulesRequest extends AbstractIndexRequest {
 
+	/**
+	 * Minimal number of source modules to re-index for telling the indexer
+	 * about a bulk indexing.
+	 */
+	private static final int BULK_THRESHOLD = 50;
+
 	private final IPath containerPath;
 	private final Set<ISourceModule> sourceModules;
 
@@ -72,11 +79,23 @@ public class SourceModulesRequest extends AbstractIndexRequest {
 		Collections.sort(toReindex, (m1, m2) -> m1.getPath().toString()
 				.compareTo(m2.getPath().toString()));
 
-		for (final ISourceModule sourceModule : toReindex) {
-			if (isCancelled)
-				return;
-			reportToProgress(sourceModule);
-			indexer.indexDocument(sourceModule);
+		final boolean bulk = indexer instanceof IIndexerExtension
+				&& toReindex.size() >= BULK_THRESHOLD;
+		if (bulk) {
+			((IIndexerExtension) indexer).beginBulkIndexing(containerPath,
+					toReindex.size());
+		}
+		try {
+			for (final ISourceModule sourceModule : toReindex) {
+				if (isCancelled)
+					return;
+				reportToProgress(sourceModule);
+				indexer.indexDocument(sourceModule);
+			}
+		} finally {
+			if (bulk) {
+				((IIndexerExtension) indexer).endBulkIndexing(containerPath);
+			}
 		}
 	}
 
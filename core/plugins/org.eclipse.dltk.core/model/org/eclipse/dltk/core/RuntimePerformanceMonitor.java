@@ -73,6 +73,45 @@ public class RuntimePerformanceMonitor {
 		entry.time += time;
 	}
 
+	/**
+	 * Adds the data of several operations at once.
+	 *
+	 * @noreference This method is not intended to be referenced by clients.
+	 * @since 5.7.1
+	 */
+	public static synchronized void addData(String language, String kind,
+			long count, long time, long value) {
+		Map<String, DataEntry> attrs = internalGetEntries(language);
+		DataEntry entry = attrs.get(kind);
+		if (entry == null) {
+			entry = new DataEntry();
+			attrs.put(kind, entry);
+		}
+		entry.count += count;
+		entry.total += value;
+		entry.time += time;
+	}
+
+	/**
+	 * Replaces the data of the kind, which measures a state rather than the
+	 * operations done.
+	 *
+	 * @noreference This method is not intended to be referenced by clients.
+	 * @since 5.7.1
+	 */
+	public static synchronized void setData(String language, String kind,
+			long count, long time, long value) {
+		Map<String, DataEntry> attrs = internalGetEntries(language);
+		DataEntry entry = attrs.get(kind);
+		if (entry == null) {
+			entry = new DataEntry();
+			attrs.put(kind, entry);
+		}
+		entry.count = count;
+		entry.total = value;
+		entry.time = time;
+	}
+
 	/**
 	 * @noreference This method is not intended to be referenced by clients.
 	 */
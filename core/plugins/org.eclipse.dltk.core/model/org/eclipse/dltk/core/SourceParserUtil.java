@@ -25,6 +25,8 @@ import org.eclipse.dltk.compiler.util.Util;
 import org.eclipse.dltk.core.ISourceModuleInfoCache.ISourceModuleInfo;
 import org.eclipse.dltk.core.RuntimePerformanceMonitor.PerformanceNode;
 import org.eclipse.dltk.internal.core.ModelManager;
+import org.eclipse.dltk.internal.core.SourceModuleInfoCache;
+import org.eclipse.dltk.ti.GoalCost;
 
 public class SourceParserUtil {
 	private static final String AST = "ast"; //$NON-NLS-1$
@@ -39,7 +41,10 @@ public class SourceParserUtil {
 		final ISourceParser parser = DLTKLanguageManager.getSourceParser(
 				element != null ? element.getScriptProject().getProject()
 						: null, natureId);
-		return parser.parse(module, reporter);
+		final IModuleDeclaration moduleDeclaration = parser.parse(module,
+				reporter);
+		GoalCost.moduleParsed();
+		return moduleDeclaration;
 	}
 
 	public static IModuleDeclaration parse(final ISourceModule module,
@@ -68,32 +73,9 @@ public class SourceParserUtil {
 					}
 				}
 			}
-			if (moduleDeclaration == null && useASTPersistenceCaching) {
-				// Try to retrieve information from persistence cache.
-				IASTCache[] providers = ASTCacheManager.getProviders(toolkit
-						.getNatureId());
-				if (providers != null) {
-					for (IASTCache provider : providers) {
-						ASTCacheEntry restored = provider.restoreModule(module);
-						if (restored != null) {
-							if (reporter != null) {
-								if (restored.problems != null) {
-									restored.problems.copyTo(reporter);
-								}
-							}
-							// Store to local cache.
-							mifo.put(astKey, restored.module);
-							if (restored.problems != null
-									&& !restored.problems.isEmpty()) {
-								mifo.put(errorKey, restored.problems);
-							} else {
-								mifo.remove(errorKey);
-							}
-							moduleDeclaration = restored.module;
-							break;
-						}
-					}
-				}
+			if (moduleDeclaration == null) {
+				moduleDeclaration = restoreModule(toolkit, module, mifo,
+						reporter);
 			}
 		} else {
 			errorKey = null;
@@ -148,23 +130,14 @@ public class SourceParserUtil {
 				}
 				moduleDeclaration = sourceParser.parse(source,
 						collector != null ? collector : reporter);
+				GoalCost.moduleParsed();
 				if (collector != null && reporter != null) {
 					collector.copyTo(reporter);
 				}
 				p1.done(toolkit.getNatureId(), "AST parse time", 0);
 				if (moduleDeclaration != null && mifo != null && useASTCaching) {
 					mifo.put(astKey, moduleDeclaration);
-					if (useASTPersistenceCaching) {
-						// Store to persistence cache
-						IASTCache[] providers = ASTCacheManager
-								.getProviders(toolkit.getNatureId());
-						if (providers != null) {
-							for (IASTCache provider : providers) {
-								provider.storeModule(module, moduleDeclaration,
-										collector);
-							}
-						}
-					}
+					storeModule(toolkit, module, moduleDeclaration, collector);
 					if (collector != null && !collector.isEmpty()) {
 						mifo.put(errorKey, collector);
 					} else {
@@ -173,9 +146,96 @@ public class SourceParserUtil {
 				}
 			}
 		}
+		if (RuntimePerformanceMonitor.isActive()) {
+			final ISourceModuleInfoCache cache = getCache();
+			if (cache instanceof SourceModuleInfoCache) {
+				((SourceModuleInfoCache) cache).publishStatistics();
+			}
+		}
 		return moduleDeclaration;
 	}
 
+	/**
+	 * Restores the AST of the module from the persistent caches and puts it
+	 * into the module info.
+	 *
+	 * @param module
+	 * @param mifo
+	 *            the info of the module
+	 * @param reporter
+	 *            receives the problems of the AST, or <code>null</code>
+	 * @return the AST or <code>null</code>
+	 * @since 5.7.1
+	 */
+	public static IModuleDeclaration restoreModule(ISourceModule module,
+			ISourceModuleInfo mifo, IProblemReporter reporter) {
+		final IDLTKLanguageToolkit toolkit = DLTKLanguageManager
+				.getLanguageToolkit(module);
+		if (toolkit == null || mifo == null) {
+			return null;
+		}
+		return restoreModule(toolkit, module, mifo, reporter);
+	}
+
+	private static IModuleDeclaration restoreModule(
+			IDLTKLanguageToolkit toolkit, ISourceModule module,
+			ISourceModuleInfo mifo, IProblemReporter reporter) {
+		if (!useASTCaching || !useASTPersistenceCaching) {
+			return null;
+		}
+		final IASTCache[] providers = ASTCacheManager
+				.getProviders(toolkit.getNatureId());
+		if (providers == null) {
+			return null;
+		}
+		for (IASTCache provider : providers) {
+			final ASTCacheEntry restored = provider.restoreModule(module);
+			if (restored != null) {
+				if (reporter != null && restored.problems != null) {
+					restored.problems.copyTo(reporter);
+				}
+				// Store to local cache.
+				putModuleToCache(mifo, restored.module, restored.problems);
+				return restored.module;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stores the AST of the module into the persistent caches.
+	 *
+	 * @param module
+	 * @param moduleDeclaration
+	 * @param problems
+	 *            the problems reported while parsing, or <code>null</code>
+	 * @since 5.7.1
+	 */
+	public static void storeModule(ISourceModule module,
+			IModuleDeclaration moduleDeclaration, ProblemCollector problems) {
+		final IDLTKLanguageToolkit toolkit = DLTKLanguageManager
+				.getLanguageToolkit(module);
+		if (toolkit != null) {
+			storeModule(toolkit, module, moduleDeclaration, problems);
+		}
+	}
+
+	private static void storeModule(IDLTKLanguageToolkit toolkit,
+			ISourceModule module, IModuleDeclaration moduleDeclaration,
+			ProblemCollector problems) {
+		if (moduleDeclaration == null || !useASTCaching
+				|| !useASTPersistenceCaching) {
+			return;
+		}
+		final IASTCache[] providers = ASTCacheManager
+				.getProviders(toolkit.getNatureId());
+		if (providers != null) {
+			for (IASTCache provider : providers) {
+				provider.storeModule(module, moduleDeclaration, problems);
+			}
+		}
+	}
+
 	public static ModuleDeclaration getModuleDeclaration(ISourceModule module) {
 		return getModuleDeclaration(module, null);
 	}
@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.builder;
+
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * @since 5.7.1
+ */
+public interface IBuildContextExtension2 extends IBuildContextExtension {
+
+	/**
+	 * Records the dependency of the current module on the element of the
+	 * specified file.
+	 * 
+	 * @param dependency
+	 * @param element
+	 *            the name of the element, unique in that file
+	 * @param flags
+	 * @see IBuildStateExtension#recordDependency(IPath, IPath, String, int)
+	 */
+	void recordDependency(IPath dependency, String element, int flags);
+
+}
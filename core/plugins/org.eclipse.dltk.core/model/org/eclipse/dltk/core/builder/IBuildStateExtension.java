@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.builder;
+
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Extension of the {@link IBuildState} recording the dependencies on the
+ * elements (types, methods, etc) of the modules, so only the modules depending
+ * on the changed elements of a module are rebuilt.
+ * 
+ * @since 5.7.1
+ */
+public interface IBuildStateExtension extends IBuildState {
+
+	/**
+	 * Records the dependency of the module on the element of another module.
+	 * The dependency is triggered by the structural change of that element,
+	 * recorded by {@link #recordStructuralChange(IPath, String)}, or by any
+	 * structural change of the module if its changed elements are not
+	 * recorded.
+	 * 
+	 * @param path
+	 *            module path
+	 * @param dependency
+	 *            path of the module it depends on
+	 * @param element
+	 *            the name of the element, unique in that module
+	 * @param flags
+	 * @see IBuildState#recordDependency(IPath, IPath, int)
+	 */
+	void recordDependency(IPath path, IPath dependency, String element,
+			int flags);
+
+	/**
+	 * Records the structural change of the element of the module at the
+	 * specified path. The change of the whole module recorded by
+	 * {@link #recordStructuralChange(IPath)} takes precedence.
+	 * 
+	 * @param path
+	 * @param element
+	 *            the name of the element
+	 */
+	void recordStructuralChange(IPath path, String element);
+
+}
@@ -76,6 +76,15 @@ public class ParserBuildParticipantFactory extends AbstractBuildParticipantType
 						moduleDeclaration);
 				return;
 			}
+			// check if there is persisted AST
+			moduleDeclaration = SourceParserUtil.restoreModule(
+					context.getSourceModule(), cacheEntry,
+					context.getProblemReporter());
+			if (moduleDeclaration != null) {
+				context.set(IBuildContext.ATTR_MODULE_DECLARATION,
+						moduleDeclaration);
+				return;
+			}
 			// create problem collector
 			final ProblemCollector problemCollector = new ProblemCollector();
 			// parse
@@ -85,6 +94,8 @@ public class ParserBuildParticipantFactory extends AbstractBuildParticipantType
 			// put result to the cache
 			SourceParserUtil.putModuleToCache(cacheEntry, moduleDeclaration,
 					problemCollector);
+			SourceParserUtil.storeModule(context.getSourceModule(),
+					moduleDeclaration, problemCollector);
 			context.set(IBuildContext.ATTR_MODULE_DECLARATION,
 					moduleDeclaration);
 			// report errors to the build context
@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.caching;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.dltk.ast.declarations.ModuleDeclaration;
+import org.eclipse.dltk.ast.parser.IASTCache;
+import org.eclipse.dltk.ast.parser.IModuleDeclaration;
+import org.eclipse.dltk.ast.parser.ISourceParser;
+import org.eclipse.dltk.ast.parser.SourceParserManager;
+import org.eclipse.dltk.compiler.env.IModuleSource;
+import org.eclipse.dltk.compiler.problem.ProblemCollector;
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.DLTKLanguageManager;
+import org.eclipse.dltk.core.IDLTKContributedExtension;
+import org.eclipse.dltk.core.IDLTKLanguageToolkit;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.ModelException;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * Persistent {@link IASTCache} keeping the ASTs in the
+ * {@link BinaryASTFormat} in the workspace metadata area, so the modules not
+ * changed since the previous session are not parsed again.
+ * <p>
+ * The ASTs are keyed by the hash of the module contents, of the language and
+ * of the id, class and bundle version of the source parser selected for the
+ * project of the module, so a changed or differently selected parser does not
+ * read the ASTs of the previous one. The languages whose parsers build their
+ * own module declarations are detected on their first AST, then skipped, and
+ * the ASTs holding other nodes than the core ones are not stored, nor the ASTs
+ * of the working copies, as their contents are still being edited. The least
+ * recently used files are deleted when a language has more than
+ * {@value #MAX_FILES} of them.
+ * </p>
+ *
+ * @since 5.7.1
+ */
+public class BinaryASTCache implements IASTCache {
+
+	/**
+	 * Maximum number of the files of a language
+	 */
+	public static final int MAX_FILES = 20000;
+
+	private static final String EXTENSION = ".ast"; //$NON-NLS-1$
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray(); //$NON-NLS-1$
+
+	private final class Language {
+		final String natureId;
+		final File directory;
+		/**
+		 * Salts of the hashes by the id of the source parser
+		 */
+		final ConcurrentHashMap<String, byte[]> salts = new ConcurrentHashMap<String, byte[]>();
+		volatile boolean hasFiles;
+		volatile boolean unsupported;
+		int fileCount = -1;
+
+		Language(String natureId) {
+			this.natureId = natureId;
+			this.directory = new File(root,
+					natureId.replaceAll("[^\\w.-]", "_")); //$NON-NLS-1$ //$NON-NLS-2$
+			this.hasFiles = directory.isDirectory();
+		}
+
+		/**
+		 * Returns the salt of the hashes of the modules parsed by the source
+		 * parser selected for the project, or <code>null</code> if there is
+		 * none.
+		 */
+		byte[] getSalt(IProject project) {
+			final SourceParserManager manager = SourceParserManager
+					.getInstance();
+			final IDLTKContributedExtension contribution = manager
+					.getSelectedContribution(project, natureId);
+			if (contribution == null) {
+				return null;
+			}
+			final String parserId = contribution.getId();
+			byte[] salt = salts.get(parserId);
+			if (salt == null) {
+				final ISourceParser parser = manager
+						.getSourceParserById(parserId);
+				if (parser == null) {
+					return null;
+				}
+				final Class<?> parserClass = parser.getClass();
+				final Bundle bundle = FrameworkUtil.getBundle(parserClass);
+				salt = (natureId + '/' + parserId + '/' + parserClass.getName()
+						+ '/' + (bundle != null
+								? bundle.getSymbolicName() + '/'
+										+ bundle.getVersion()
+								: "")).getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+				salts.put(parserId, salt);
+			}
+			return salt;
+		}
+
+		/**
+		 * Counts the added file, then deletes the least recently used files if
+		 * there are too many of them.
+		 */
+		synchronized void added() {
+			if (fileCount < 0) {
+				final String[] names = directory.list();
+				fileCount = names != null ? names.length : 0;
+			} else {
+				++fileCount;
+			}
+			if (fileCount <= maxFiles) {
+				return;
+			}
+			final File[] files = directory.listFiles();
+			if (files == null) {
+				return;
+			}
+			final long[] modified = new long[files.length];
+			final Integer[] order = new Integer[files.length];
+			for (int i = 0; i < files.length; ++i) {
+				modified[i] = files[i].lastModified();
+				order[i] = Integer.valueOf(i);
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer i1, Integer i2) {
+					return Long.compare(modified[i1.intValue()],
+							modified[i2.intValue()]);
+				}
+			});
+			fileCount = files.length;
+			for (int i = 0; i < order.length
+					&& fileCount > maxFiles * 3 / 4; ++i) {
+				if (files[order[i].intValue()].delete()) {
+					--fileCount;
+				}
+			}
+		}
+	}
+
+	private final File root;
+	private final int maxFiles;
+	private final ConcurrentHashMap<String, Language> languages = new ConcurrentHashMap<String, Language>();
+
+	public BinaryASTCache() {
+		this(DLTKCore.getDefault().getStateLocation().append("astCache") //$NON-NLS-1$
+				.toFile(), MAX_FILES);
+	}
+
+	/**
+	 * @param root
+	 *            the directory of the files
+	 * @param maxFiles
+	 *            maximum number of the files of a language
+	 */
+	public BinaryASTCache(File root, int maxFiles) {
+		this.root = root;
+		this.maxFiles = maxFiles;
+	}
+
+	private Language getLanguage(ISourceModule module) {
+		final IDLTKLanguageToolkit toolkit = DLTKLanguageManager
+				.getLanguageToolkit(module);
+		if (toolkit == null) {
+			return null;
+		}
+		final String natureId = toolkit.getNatureId();
+		Language language = languages.get(natureId);
+		if (language == null) {
+			language = new Language(natureId);
+			final Language previous = languages.putIfAbsent(natureId,
+					language);
+			if (previous != null) {
+				language = previous;
+			}
+		}
+		return language;
+	}
+
+	@Override
+	public ASTCacheEntry restoreModule(ISourceModule module) {
+		if (module.isWorkingCopy()) {
+			return null;
+		}
+		final Language language = getLanguage(module);
+		if (language == null || !language.hasFiles || language.unsupported) {
+			return null;
+		}
+		final File file = getFile(language, module);
+		if (file == null || !file.isFile()) {
+			return null;
+		}
+		try {
+			final ASTCacheEntry entry = BinaryASTFormat.read(
+					Files.readAllBytes(file.toPath()), getFileName(module));
+			file.setLastModified(System.currentTimeMillis());
+			return entry;
+		} catch (IOException e) {
+			// corrupted or of another version
+			file.delete();
+			return null;
+		} catch (RuntimeException e) {
+			// corrupted
+			file.delete();
+			return null;
+		}
+	}
+
+	@Override
+	public void storeModule(ISourceModule module,
+			IModuleDeclaration moduleDeclaration, ProblemCollector problems) {
+		if (module.isWorkingCopy()) {
+			return;
+		}
+		final Language language = getLanguage(module);
+		if (language == null || language.unsupported) {
+			return;
+		}
+		if (moduleDeclaration == null
+				|| moduleDeclaration.getClass() != ModuleDeclaration.class) {
+			language.unsupported = true;
+			return;
+		}
+		final byte[] bytes = BinaryASTFormat.write(moduleDeclaration,
+				problems);
+		if (bytes == null) {
+			return;
+		}
+		final File file = getFile(language, module);
+		if (file == null || file.exists()) {
+			return;
+		}
+		try {
+			language.directory.mkdirs();
+			final File temp = File.createTempFile("ast", null, //$NON-NLS-1$
+					language.directory);
+			Files.write(temp.toPath(), bytes);
+			try {
+				Files.move(temp.toPath(), file.toPath(),
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				// stored concurrently
+				temp.delete();
+				return;
+			}
+		} catch (IOException e) {
+			DLTKCore.error("Error storing AST of " + module.getPath(), e); //$NON-NLS-1$
+			return;
+		}
+		language.hasFiles = true;
+		language.added();
+	}
+
+	/**
+	 * Returns the file name the parser reports the problems of the module in.
+	 */
+	private static String getFileName(ISourceModule module) {
+		return module instanceof IModuleSource
+				? ((IModuleSource) module).getFileName()
+				: module.getPath().toString();
+	}
+
+	/**
+	 * Returns the file of the AST of the current contents of the module.
+	 */
+	private File getFile(Language language, ISourceModule module) {
+		final byte[] salt = language
+				.getSalt(module.getScriptProject().getProject());
+		if (salt == null) {
+			return null;
+		}
+		final char[] contents;
+		try {
+			contents = module.getSourceAsCharArray();
+		} catch (ModelException e) {
+			return null;
+		}
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+		digest.update(salt);
+		final byte[] buffer = new byte[8192];
+		for (int i = 0; i < contents.length;) {
+			int length = 0;
+			for (; length < buffer.length && i < contents.length; ++i) {
+				buffer[length++] = (byte) (contents[i] >> 8);
+				buffer[length++] = (byte) contents[i];
+			}
+			digest.update(buffer, 0, length);
+		}
+		final byte[] hash = digest.digest();
+		final char[] name = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; ++i) {
+			name[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+			name[i * 2 + 1] = HEX[hash[i] & 0xF];
+		}
+		return new File(language.directory, new String(name) + EXTENSION);
+	}
+
+}
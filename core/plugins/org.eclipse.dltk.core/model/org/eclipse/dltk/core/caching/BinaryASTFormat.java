@@ -0,0 +1,827 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.caching;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.dltk.ast.ASTListNode;
+import org.eclipse.dltk.ast.ASTNode;
+import org.eclipse.dltk.ast.declarations.Argument;
+import org.eclipse.dltk.ast.declarations.Declaration;
+import org.eclipse.dltk.ast.declarations.FieldDeclaration;
+import org.eclipse.dltk.ast.declarations.MethodDeclaration;
+import org.eclipse.dltk.ast.declarations.ModuleDeclaration;
+import org.eclipse.dltk.ast.declarations.TypeDeclaration;
+import org.eclipse.dltk.ast.expressions.BigNumericLiteral;
+import org.eclipse.dltk.ast.expressions.BooleanLiteral;
+import org.eclipse.dltk.ast.expressions.CallArgumentsList;
+import org.eclipse.dltk.ast.expressions.CallExpression;
+import org.eclipse.dltk.ast.expressions.ExpressionList;
+import org.eclipse.dltk.ast.expressions.FloatNumericLiteral;
+import org.eclipse.dltk.ast.expressions.MethodCallExpression;
+import org.eclipse.dltk.ast.expressions.NilLiteral;
+import org.eclipse.dltk.ast.expressions.NumericLiteral;
+import org.eclipse.dltk.ast.expressions.StringLiteral;
+import org.eclipse.dltk.ast.parser.IASTCache.ASTCacheEntry;
+import org.eclipse.dltk.ast.parser.IModuleDeclaration;
+import org.eclipse.dltk.ast.references.ConstantReference;
+import org.eclipse.dltk.ast.references.SimpleReference;
+import org.eclipse.dltk.ast.references.TypeReference;
+import org.eclipse.dltk.ast.references.VariableKind;
+import org.eclipse.dltk.ast.references.VariableReference;
+import org.eclipse.dltk.ast.statements.Block;
+import org.eclipse.dltk.compiler.problem.DefaultProblem;
+import org.eclipse.dltk.compiler.problem.DefaultProblemIdentifier;
+import org.eclipse.dltk.compiler.problem.IProblem;
+import org.eclipse.dltk.compiler.problem.ProblemCollector;
+import org.eclipse.dltk.compiler.problem.ProblemSeverity;
+
+/**
+ * Compact binary format of the ASTs built of the core
+ * <code>org.eclipse.dltk.ast</code> node classes, with the problems reported
+ * while parsing them.
+ * <p>
+ * Only the nodes of these exact classes are written, through their public API.
+ * The trees holding other nodes, e.g. of language specific subclasses, or
+ * state which can not be restored, are not written. The nodes are written
+ * depth first, their positions relative to the previous one, and the strings
+ * and the nodes found in several places once.
+ * </p>
+ *
+ * @since 5.7.1
+ */
+public final class BinaryASTFormat {
+
+	private static final int MAGIC = 0x44415354; // DAST
+
+	/**
+	 * Version of the format, to increment when it changes
+	 */
+	public static final int VERSION = 2;
+
+	private static final int NULL = 0;
+	private static final int REFERENCE = 1;
+	private static final int MODULE = 2;
+	private static final int BLOCK = 3;
+	private static final int TYPE = 4;
+	private static final int METHOD = 5;
+	private static final int ARGUMENT = 6;
+	private static final int FIELD = 7;
+	private static final int SIMPLE_REFERENCE = 8;
+	private static final int VARIABLE_REFERENCE = 9;
+	private static final int CONSTANT_REFERENCE = 10;
+	private static final int TYPE_REFERENCE = 11;
+	private static final int STRING_LITERAL = 12;
+	private static final int NUMERIC_LITERAL = 13;
+	private static final int FLOAT_LITERAL = 14;
+	private static final int BIG_LITERAL = 15;
+	private static final int BOOLEAN_LITERAL = 16;
+	private static final int NIL_LITERAL = 17;
+	private static final int CALL = 18;
+	private static final int METHOD_CALL = 19;
+	private static final int CALL_ARGUMENTS = 20;
+	private static final int EMPTY_CALL_ARGUMENTS = 21;
+	private static final int LIST = 22;
+	private static final int EXPRESSION_LIST = 23;
+
+	private static final VariableKind[] VARIABLE_KINDS = {
+			VariableKind.UNKNOWN, VariableKind.LOCAL, VariableKind.GLOBAL,
+			VariableKind.INSTANCE, VariableKind.CLASS, VariableKind.MIXIN,
+			VariableKind.ARGUMENT };
+
+	private static final ProblemSeverity[] SEVERITIES = ProblemSeverity
+			.values();
+
+	/**
+	 * Thrown when a tree can not be written.
+	 */
+	@SuppressWarnings("serial")
+	private static final class UnsupportedException extends IOException {
+		UnsupportedException() {
+			super(null, null);
+		}
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+	}
+
+	private static final UnsupportedException UNSUPPORTED = new UnsupportedException();
+
+	private BinaryASTFormat() {
+		// Utility class
+	}
+
+	/**
+	 * Writes the AST and its problems.
+	 *
+	 * @param module
+	 * @param problems
+	 *            the problems or <code>null</code>
+	 * @return the bytes or <code>null</code> if the AST or its problems can
+	 *         not be written in this format
+	 */
+	public static byte[] write(IModuleDeclaration module,
+			ProblemCollector problems) {
+		if (module == null || module.getClass() != ModuleDeclaration.class) {
+			return null;
+		}
+		final Writer writer = new Writer();
+		try {
+			writer.out.writeInt(MAGIC);
+			writer.writeInt(VERSION);
+			writer.writeNode((ModuleDeclaration) module);
+			writer.writeProblems(problems);
+			writer.out.flush();
+		} catch (IOException e) {
+			// not supported
+			return null;
+		}
+		return writer.bytes.toByteArray();
+	}
+
+	/**
+	 * Reads the AST and its problems.
+	 *
+	 * @param bytes
+	 * @return the AST and its problems
+	 * @throws IOException
+	 *             if the bytes are not in this format or this version of it
+	 */
+	public static ASTCacheEntry read(byte[] bytes) throws IOException {
+		return read(bytes, null);
+	}
+
+	/**
+	 * Reads the AST and its problems, reported in the specified file. The
+	 * file names of the problems are not written, as the same bytes are read
+	 * for all the modules with the same contents.
+	 *
+	 * @param bytes
+	 * @param fileName
+	 *            the file name of the problems or <code>null</code>
+	 * @return the AST and its problems
+	 * @throws IOException
+	 *             if the bytes are not in this format or this version of it
+	 */
+	public static ASTCacheEntry read(byte[] bytes, String fileName)
+			throws IOException {
+		final Reader reader = new Reader(bytes);
+		if (reader.in.readInt() != MAGIC || reader.readInt() != VERSION) {
+			throw new IOException("Unsupported format"); //$NON-NLS-1$
+		}
+		final ASTNode module = reader.readNode();
+		if (!(module instanceof ModuleDeclaration)) {
+			throw new IOException("Module expected"); //$NON-NLS-1$
+		}
+		final ASTCacheEntry entry = new ASTCacheEntry();
+		entry.module = (ModuleDeclaration) module;
+		entry.problems = reader.readProblems(fileName);
+		return entry;
+	}
+
+	private static final class Writer {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		final Map<String, Integer> strings = new HashMap<String, Integer>();
+		final Map<ASTNode, Integer> nodes = new IdentityHashMap<ASTNode, Integer>();
+		int position;
+
+		void writeInt(int value) throws IOException {
+			while ((value & ~0x7F) != 0) {
+				out.writeByte((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.writeByte(value);
+		}
+
+		void writeSigned(int value) throws IOException {
+			writeInt((value << 1) ^ (value >> 31));
+		}
+
+		void writeLong(long value) throws IOException {
+			value = (value << 1) ^ (value >> 63);
+			while ((value & ~0x7FL) != 0) {
+				out.writeByte((int) (value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.writeByte((int) value);
+		}
+
+		void writeBoolean(boolean value) throws IOException {
+			out.writeByte(value ? 1 : 0);
+		}
+
+		void writePosition(int value) throws IOException {
+			writeSigned(value - position);
+			position = value;
+		}
+
+		void writeRange(ASTNode node) throws IOException {
+			writePosition(node.sourceStart());
+			writeSigned(node.sourceEnd() - node.sourceStart());
+		}
+
+		/**
+		 * Writes 0 for <code>null</code>, the index of the strings already
+		 * written, or the new strings.
+		 */
+		void writeString(String value) throws IOException {
+			if (value == null) {
+				writeInt(0);
+				return;
+			}
+			final Integer index = strings.get(value);
+			if (index != null) {
+				writeInt(index.intValue());
+				return;
+			}
+			strings.put(value, Integer.valueOf(strings.size() + 2));
+			writeInt(1);
+			final byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+			writeInt(utf8.length);
+			out.write(utf8);
+		}
+
+		void writeNodes(List<?> list) throws IOException {
+			if (list == null) {
+				writeInt(0);
+				return;
+			}
+			writeInt(list.size() + 1);
+			for (Object node : list) {
+				writeNode(node);
+			}
+		}
+
+		void writeNode(Object object) throws IOException {
+			if (object == null) {
+				writeInt(NULL);
+				return;
+			}
+			if (!(object instanceof ASTNode)) {
+				throw UNSUPPORTED;
+			}
+			final ASTNode node = (ASTNode) object;
+			final Integer id = nodes.get(node);
+			if (id != null) {
+				writeInt(REFERENCE);
+				writeInt(id.intValue());
+				return;
+			}
+			if (node == CallArgumentsList.EMPTY) {
+				writeInt(EMPTY_CALL_ARGUMENTS);
+				return;
+			}
+			nodes.put(node, Integer.valueOf(nodes.size()));
+			final Class<?> c = node.getClass();
+			if (c == ModuleDeclaration.class) {
+				writeModule((ModuleDeclaration) node);
+			} else if (c == Block.class) {
+				writeInt(BLOCK);
+				writeRange(node);
+				writeNodes(((Block) node).getStatements());
+			} else if (c == TypeDeclaration.class) {
+				writeType((TypeDeclaration) node);
+			} else if (c == MethodDeclaration.class) {
+				writeMethod((MethodDeclaration) node);
+			} else if (c == Argument.class) {
+				final Argument argument = (Argument) node;
+				if (argument.getRef() == null) {
+					throw UNSUPPORTED;
+				}
+				writeInt(ARGUMENT);
+				writeRange(node);
+				writeNode(argument.getRef());
+				writeNode(argument.getInitialization());
+				writeModifiers(argument);
+			} else if (c == FieldDeclaration.class) {
+				writeInt(FIELD);
+				writeRange(node);
+				writeName((Declaration) node);
+				writeModifiers((Declaration) node);
+			} else if (c == SimpleReference.class) {
+				writeInt(SIMPLE_REFERENCE);
+				writeRange(node);
+				writeString(((SimpleReference) node).getName());
+			} else if (c == VariableReference.class) {
+				final VariableReference reference = (VariableReference) node;
+				writeInt(VARIABLE_REFERENCE);
+				writeRange(node);
+				writeString(reference.getName());
+				writeVariableKind(reference.getVariableKind());
+			} else if (c == ConstantReference.class) {
+				writeInt(CONSTANT_REFERENCE);
+				writeRange(node);
+				writeString(((SimpleReference) node).getName());
+			} else if (c == TypeReference.class) {
+				writeInt(TYPE_REFERENCE);
+				writeRange(node);
+				writeString(((SimpleReference) node).getName());
+			} else if (c == StringLiteral.class) {
+				writeInt(STRING_LITERAL);
+				writeRange(node);
+				writeString(((StringLiteral) node).getValue());
+			} else if (c == NumericLiteral.class) {
+				writeInt(NUMERIC_LITERAL);
+				writeRange(node);
+				writeLong(((NumericLiteral) node).getIntValue());
+			} else if (c == FloatNumericLiteral.class) {
+				writeInt(FLOAT_LITERAL);
+				writeRange(node);
+				out.writeDouble(((FloatNumericLiteral) node).getDoubleValue());
+			} else if (c == BigNumericLiteral.class) {
+				writeInt(BIG_LITERAL);
+				writeRange(node);
+				writeString(((BigNumericLiteral) node).getValue());
+			} else if (c == BooleanLiteral.class) {
+				final BooleanLiteral literal = (BooleanLiteral) node;
+				if (!Boolean.toString(literal.boolValue())
+						.equals(literal.getValue())) {
+					throw UNSUPPORTED;
+				}
+				writeInt(BOOLEAN_LITERAL);
+				writeRange(node);
+				writeBoolean(literal.boolValue());
+			} else if (c == NilLiteral.class) {
+				writeInt(NIL_LITERAL);
+				writeRange(node);
+			} else if (c == CallExpression.class) {
+				final CallExpression call = (CallExpression) node;
+				writeInt(CALL);
+				writeRange(node);
+				writeNode(call.getReceiver());
+				writeNode(call.getCallName());
+				writeNode(call.getArgs());
+			} else if (c == MethodCallExpression.class) {
+				writeMethodCall((MethodCallExpression) node);
+			} else if (c == CallArgumentsList.class) {
+				writeInt(CALL_ARGUMENTS);
+				writeRange(node);
+				writeNodes(((ASTListNode) node).getChilds());
+			} else if (c == ASTListNode.class) {
+				writeInt(LIST);
+				writeRange(node);
+				writeNodes(((ASTListNode) node).getChilds());
+			} else if (c == ExpressionList.class) {
+				writeInt(EXPRESSION_LIST);
+				writeRange(node);
+				writeNodes(((ExpressionList) node).getExpressions());
+			} else {
+				throw UNSUPPORTED;
+			}
+		}
+
+		private void writeModule(ModuleDeclaration module) throws IOException {
+			if (module.scope != null) {
+				throw UNSUPPORTED;
+			}
+			// the body is restored with the range of the module
+			final List<ASTNode> childs = module.getChilds();
+			if (childs.size() != 1 || !childs.get(0).locationMatches(module)) {
+				throw UNSUPPORTED;
+			}
+			writeInt(MODULE);
+			writeRange(module);
+			writeNodes(module.getStatements());
+			writeNodes(module.getTypeList());
+			writeNodes(module.getFunctionList());
+			writeNodes(module.getVariablesList());
+		}
+
+		private void writeType(TypeDeclaration type) throws IOException {
+			if (type.getParentStart() != 0 || type.getParentEnd() != 0
+					|| type.getBody() == null && (type.getBodyStart() != 0
+							|| type.getBodyEnd() != 0)) {
+				throw UNSUPPORTED;
+			}
+			writeInt(TYPE);
+			writeRange(type);
+			writeName(type);
+			writeModifiers(type);
+			writeString(type.getEnclosingTypeName());
+			writeNode(type.getSuperClasses());
+			writeNode(type.getBody());
+			writeNodes(type.getMethodList());
+			writeNodes(type.getTypeList());
+			writeNodes(type.getFieldList());
+		}
+
+		private void writeMethod(MethodDeclaration method) throws IOException {
+			if (method.scope != null) {
+				throw UNSUPPORTED;
+			}
+			writeInt(METHOD);
+			writeRange(method);
+			if (method.getRef() != null) {
+				writeBoolean(true);
+				writeName(method);
+			} else {
+				writeBoolean(false);
+			}
+			writeModifiers(method);
+			writeString(method.getDeclaringTypeName());
+			writeNodes(method.getArguments());
+			writeNode(method.getBody());
+			writeNodes(method.getDecorators());
+		}
+
+		private void writeMethodCall(MethodCallExpression call)
+				throws IOException {
+			// the name is restored with the range of the call
+			final SimpleReference name = call.getCallName();
+			if (name == null || name.getClass() != SimpleReference.class
+					|| !name.locationMatches(call)) {
+				throw UNSUPPORTED;
+			}
+			writeInt(METHOD_CALL);
+			writeRange(call);
+			writeNode(call.getReceiver());
+			writeString(name.getName());
+			writeNode(call.getArgs());
+			writeString(call.getDeclaringTypeName());
+		}
+
+		/**
+		 * Writes the name of the declarations creating their own name
+		 * reference.
+		 */
+		private void writeName(Declaration declaration) throws IOException {
+			final SimpleReference ref = declaration.getRef();
+			if (ref == null || ref.getClass() != SimpleReference.class) {
+				throw UNSUPPORTED;
+			}
+			writeString(ref.getName());
+			writePosition(ref.sourceStart());
+			writeSigned(ref.sourceEnd() - ref.sourceStart());
+		}
+
+		private void writeModifiers(Declaration declaration)
+				throws IOException {
+			writeInt(declaration.getModifiers());
+			writeString(declaration.getComments());
+		}
+
+		private void writeVariableKind(VariableKind kind) throws IOException {
+			if (kind == null) {
+				writeInt(0);
+				return;
+			}
+			for (int i = 0; i < VARIABLE_KINDS.length; ++i) {
+				if (VARIABLE_KINDS[i] == kind) {
+					writeInt(i + 1);
+					return;
+				}
+			}
+			throw UNSUPPORTED;
+		}
+
+		void writeProblems(ProblemCollector collector) throws IOException {
+			final List<IProblem> problems = collector != null
+					? collector.getProblems() : null;
+			if (problems == null) {
+				writeInt(0);
+				return;
+			}
+			writeInt(problems.size());
+			for (IProblem problem : problems) {
+				if (problem.getClass() != DefaultProblem.class) {
+					throw UNSUPPORTED;
+				}
+				final DefaultProblem p = (DefaultProblem) problem;
+				writeString(p.getMessage());
+				writeString(DefaultProblemIdentifier.encode(p.getID()));
+				final String[] arguments = p.getArguments();
+				if (arguments == null) {
+					writeInt(0);
+				} else {
+					writeInt(arguments.length + 1);
+					for (String argument : arguments) {
+						writeString(argument);
+					}
+				}
+				writeInt(p.getSeverity() != null
+						? p.getSeverity().ordinal() + 1 : 0);
+				writePosition(p.getSourceStart());
+				writeSigned(p.getSourceEnd() - p.getSourceStart());
+				writeSigned(p.getSourceLineNumber());
+				writeSigned(p.getColumn());
+			}
+		}
+	}
+
+	private static final class Reader {
+		final DataInputStream in;
+		final List<String> strings = new ArrayList<String>();
+		final List<ASTNode> nodes = new ArrayList<ASTNode>();
+		int position;
+
+		Reader(byte[] bytes) {
+			this.in = new DataInputStream(new ByteArrayInputStream(bytes));
+		}
+
+		int readInt() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				final int b = in.readUnsignedByte();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Malformed number"); //$NON-NLS-1$
+		}
+
+		int readSigned() throws IOException {
+			final int value = readInt();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		long readLong() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 70; shift += 7) {
+				final int b = in.readUnsignedByte();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return (value >>> 1) ^ -(value & 1);
+				}
+			}
+			throw new IOException("Malformed number"); //$NON-NLS-1$
+		}
+
+		boolean readBoolean() throws IOException {
+			return in.readByte() != 0;
+		}
+
+		int readPosition() throws IOException {
+			position += readSigned();
+			return position;
+		}
+
+		String readString() throws IOException {
+			final int index = readInt();
+			if (index == 0) {
+				return null;
+			} else if (index == 1) {
+				final byte[] utf8 = new byte[readInt()];
+				in.readFully(utf8);
+				final String value = new String(utf8, StandardCharsets.UTF_8);
+				strings.add(value);
+				return value;
+			} else if (index - 2 < strings.size()) {
+				return strings.get(index - 2);
+			} else {
+				throw new IOException("Malformed string"); //$NON-NLS-1$
+			}
+		}
+
+		List<ASTNode> readNodes() throws IOException {
+			final int size = readInt() - 1;
+			if (size < 0) {
+				return null;
+			}
+			final List<ASTNode> result = new ArrayList<ASTNode>(size);
+			for (int i = 0; i < size; ++i) {
+				result.add(readNode());
+			}
+			return result;
+		}
+
+		@SuppressWarnings("unchecked")
+		<T> T readNode(Class<T> expected) throws IOException {
+			final ASTNode node = readNode();
+			if (node != null && !expected.isInstance(node)) {
+				throw new IOException(expected.getName() + " expected"); //$NON-NLS-1$
+			}
+			return (T) node;
+		}
+
+		ASTNode readNode() throws IOException {
+			final int tag = readInt();
+			if (tag == NULL) {
+				return null;
+			} else if (tag == REFERENCE) {
+				final int id = readInt();
+				if (id >= nodes.size() || nodes.get(id) == null) {
+					throw new IOException("Malformed reference"); //$NON-NLS-1$
+				}
+				return nodes.get(id);
+			} else if (tag == EMPTY_CALL_ARGUMENTS) {
+				return CallArgumentsList.EMPTY;
+			}
+			// the id is taken before the children, as when writing
+			final int id = nodes.size();
+			nodes.add(null);
+			final ASTNode node = readNode(tag);
+			nodes.set(id, node);
+			return node;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private ASTNode readNode(int tag) throws IOException {
+			final int start = readPosition();
+			final int end = start + readSigned();
+			switch (tag) {
+			case MODULE: {
+				final ModuleDeclaration module = new ModuleDeclaration(end);
+				module.setStart(start);
+				addAll(module.getStatements(), readNodes());
+				addAll(module.getTypeList(), readNodes());
+				addAll(module.getFunctionList(), readNodes());
+				addAll(module.getVariablesList(), readNodes());
+				return module;
+			}
+			case BLOCK:
+				return new Block(start, end, readNodes());
+			case TYPE: {
+				final String name = readString();
+				final int nameStart = readPosition();
+				final int nameEnd = nameStart + readSigned();
+				final TypeDeclaration type = new TypeDeclaration(name,
+						nameStart, nameEnd, start, end);
+				readModifiers(type);
+				final String enclosingTypeName = readString();
+				if (enclosingTypeName != null) {
+					type.setEnclosingTypeName(enclosingTypeName);
+				}
+				type.setSuperClasses(readNode(ASTListNode.class));
+				type.setBody(readNode(Block.class));
+				addAll(type.getMethodList(), readNodes());
+				addAll(type.getTypeList(), readNodes());
+				addAll(type.getFieldList(), readNodes());
+				return type;
+			}
+			case METHOD: {
+				final MethodDeclaration method;
+				if (readBoolean()) {
+					final String name = readString();
+					final int nameStart = readPosition();
+					final int nameEnd = nameStart + readSigned();
+					method = new MethodDeclaration(name, nameStart, nameEnd,
+							start, end);
+				} else {
+					method = new MethodDeclaration(start, end);
+				}
+				readModifiers(method);
+				method.setDeclaringTypeName(readString());
+				final List<ASTNode> arguments = readNodes();
+				method.acceptArguments(arguments != null ? arguments
+						: new ArrayList<ASTNode>());
+				method.acceptBody(readNode(Block.class));
+				method.setDecorators(readNodes());
+				return method;
+			}
+			case ARGUMENT: {
+				final Argument argument = new Argument();
+				final SimpleReference ref = readNode(SimpleReference.class);
+				if (ref == null) {
+					throw new IOException("Argument name expected"); //$NON-NLS-1$
+				}
+				argument.set(ref, readNode());
+				argument.setStart(start);
+				argument.setEnd(end);
+				readModifiers(argument);
+				return argument;
+			}
+			case FIELD: {
+				final String name = readString();
+				final int nameStart = readPosition();
+				final int nameEnd = nameStart + readSigned();
+				final FieldDeclaration field = new FieldDeclaration(name,
+						nameStart, nameEnd, start, end);
+				readModifiers(field);
+				return field;
+			}
+			case SIMPLE_REFERENCE:
+				return new SimpleReference(start, end, readString());
+			case VARIABLE_REFERENCE: {
+				final String name = readString();
+				final int kind = readInt();
+				if (kind > VARIABLE_KINDS.length) {
+					throw new IOException("Malformed variable kind"); //$NON-NLS-1$
+				}
+				return new VariableReference(start, end, name,
+						kind != 0 ? VARIABLE_KINDS[kind - 1] : null);
+			}
+			case CONSTANT_REFERENCE:
+				return new ConstantReference(start, end, readString());
+			case TYPE_REFERENCE:
+				return new TypeReference(start, end, readString());
+			case STRING_LITERAL:
+				return new StringLiteral(start, end, readString());
+			case NUMERIC_LITERAL:
+				return new NumericLiteral(start, end, readLong());
+			case FLOAT_LITERAL:
+				return new FloatNumericLiteral(start, end, in.readDouble());
+			case BIG_LITERAL:
+				return new BigNumericLiteral(start, end,
+						new BigInteger(readString()));
+			case BOOLEAN_LITERAL:
+				return new BooleanLiteral(start, end, readBoolean());
+			case NIL_LITERAL:
+				return new NilLiteral(start, end);
+			case CALL: {
+				final ASTNode receiver = readNode();
+				final SimpleReference name = readNode(SimpleReference.class);
+				return new CallExpression(start, end, receiver, name,
+						readNode(CallArgumentsList.class));
+			}
+			case METHOD_CALL: {
+				final ASTNode receiver = readNode();
+				final String name = readString();
+				final MethodCallExpression call = new MethodCallExpression(
+						start, end, receiver, name,
+						readNode(CallArgumentsList.class));
+				call.setDeclaringTypeName(readString());
+				return call;
+			}
+			case CALL_ARGUMENTS:
+				return addNodes(new CallArgumentsList(start, end), readNodes());
+			case LIST:
+				return addNodes(new ASTListNode(start, end), readNodes());
+			case EXPRESSION_LIST: {
+				final ExpressionList list = new ExpressionList();
+				list.setStart(start);
+				list.setEnd(end);
+				final List expressions = readNodes();
+				if (expressions != null) {
+					list.setExpresssions(expressions);
+				}
+				return list;
+			}
+			default:
+				throw new IOException("Unknown node " + tag); //$NON-NLS-1$
+			}
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private static void addAll(List target, List<ASTNode> nodes) {
+			if (nodes != null) {
+				target.addAll(nodes);
+			}
+		}
+
+		private static ASTNode addNodes(ASTListNode list, List<ASTNode> nodes) {
+			if (nodes != null) {
+				for (ASTNode node : nodes) {
+					list.addNode(node);
+				}
+			}
+			return list;
+		}
+
+		private void readModifiers(Declaration declaration) throws IOException {
+			declaration.setModifiers(readInt());
+			declaration.setComments(readString());
+		}
+
+		ProblemCollector readProblems(String fileName) throws IOException {
+			final ProblemCollector collector = new ProblemCollector();
+			final int size = readInt();
+			for (int i = 0; i < size; ++i) {
+				final String message = readString();
+				final String id = readString();
+				final int argumentCount = readInt() - 1;
+				String[] arguments = null;
+				if (argumentCount >= 0) {
+					arguments = new String[argumentCount];
+					for (int j = 0; j < argumentCount; ++j) {
+						arguments[j] = readString();
+					}
+				}
+				final int severity = readInt();
+				if (severity > SEVERITIES.length) {
+					throw new IOException("Malformed severity"); //$NON-NLS-1$
+				}
+				final int start = readPosition();
+				final int end = start + readSigned();
+				final int line = readSigned();
+				final int column = readSigned();
+				collector.reportProblem(new DefaultProblem(fileName, message,
+						DefaultProblemIdentifier.decode(id), arguments,
+						severity != 0 ? SEVERITIES[severity - 1] : null, start,
+						end, line, column));
+			}
+			return collector;
+		}
+	}
+
+}
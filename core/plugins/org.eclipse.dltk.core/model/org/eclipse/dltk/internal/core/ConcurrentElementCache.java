@@ -0,0 +1,469 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.dltk.core.IModelElement;
+
+/**
+ * A cache of the infos of open <code>ModelElements</code>, which can be used
+ * concurrently.
+ * <p>
+ * The elements are spread over shards by their hash code, each shard having
+ * its own lock, so an element is read with a single lookup in its shard. The
+ * cache is a segmented LRU: new elements enter the probation segment, elements
+ * used again move to the protected segment, and the elements evicted are the
+ * least recently added ones of the probation segment, then the least recently
+ * used ones of the protected segment. So elements used once, e.g. by a search
+ * going through many modules, do not push out the ones used repeatedly.
+ * </p>
+ * <p>
+ * The space limit is shared by the shards: an element is evicted when the
+ * whole cache exceeds it, the oldest probation element of all the shards
+ * first, so the children of an opened parent do not push each other out when
+ * they hash to the same shard.
+ * </p>
+ * <p>
+ * The space of an element is given by a {@link Weigher}, e.g. its estimated
+ * size in bytes. As with the {@link ElementCache}, an element is evicted by
+ * closing it, which removes it from the cache, and the elements which can not
+ * be closed yet are kept in the cache even if it exceeds its limit. The
+ * elements are closed without holding the lock of their shard.
+ * </p>
+ */
+public class ConcurrentElementCache {
+
+	/**
+	 * Computes the space taken by the elements of the cache.
+	 */
+	public interface Weigher {
+		/**
+		 * Returns the space taken by the element and its info, at least 1.
+		 */
+		int weigh(Object element, Object info);
+	}
+
+	/**
+	 * Part of the space limit for the protected segment
+	 */
+	private static final double PROTECTED_RATIO = 0.8;
+
+	/**
+	 * Space reserved for the children of an opened parent over the space they
+	 * take, so they do not push each other out.
+	 */
+	private static final double LOAD_FACTOR = 0.333;
+
+	private static final class Entry {
+		final Object key;
+		final Object value;
+		final int weight;
+		boolean isProtected;
+		/**
+		 * Order of the entry in the probation segments of all the shards
+		 */
+		long stamp;
+		Entry previous;
+		Entry next;
+
+		Entry(Object key, Object value, int weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * Doubly linked list of entries, the least recently used first.
+	 */
+	private static final class Segment {
+		final Entry head = new Entry(null, null, 0);
+		long weight;
+
+		Segment() {
+			head.previous = head;
+			head.next = head;
+		}
+
+		void add(Entry entry) {
+			entry.previous = head.previous;
+			entry.next = head;
+			head.previous.next = entry;
+			head.previous = entry;
+			weight += entry.weight;
+		}
+
+		void remove(Entry entry) {
+			entry.previous.next = entry.next;
+			entry.next.previous = entry.previous;
+			entry.previous = null;
+			entry.next = null;
+			weight -= entry.weight;
+		}
+
+		/**
+		 * Returns the least recently used entry, skipping the specified keys.
+		 */
+		Entry first(Object added, Set<Object> skipped) {
+			for (Entry entry = head.next; entry != head; entry = entry.next) {
+				if (entry.key != added
+						&& (skipped == null || !skipped.contains(entry.key))) {
+					return entry;
+				}
+			}
+			return null;
+		}
+	}
+
+	private final class Shard {
+		final HashMap<Object, Entry> entries = new HashMap<Object, Entry>();
+		final Segment probation = new Segment();
+		final Segment protect = new Segment();
+		long hits;
+		long misses;
+
+		synchronized Object get(Object key) {
+			final Entry entry = entries.get(key);
+			if (entry == null) {
+				++misses;
+				return null;
+			}
+			++hits;
+			if (entry.isProtected) {
+				if (entry.next != protect.head) {
+					protect.remove(entry);
+					protect.add(entry);
+				}
+			} else {
+				probation.remove(entry);
+				entry.isProtected = true;
+				protect.add(entry);
+				protectedWeight.addAndGet(entry.weight);
+				demote(entry);
+			}
+			return entry.value;
+		}
+
+		synchronized Object peek(Object key) {
+			final Entry entry = entries.get(key);
+			return entry != null ? entry.value : null;
+		}
+
+		synchronized void put(Object key, Object value, int newWeight) {
+			final Entry previous = remove(key);
+			final Entry entry = new Entry(key, value, newWeight);
+			entries.put(key, entry);
+			weight.addAndGet(newWeight);
+			if (previous != null && previous.isProtected) {
+				entry.isProtected = true;
+				protect.add(entry);
+				protectedWeight.addAndGet(newWeight);
+				demote(entry);
+			} else {
+				entry.stamp = clock.incrementAndGet();
+				probation.add(entry);
+			}
+		}
+
+		synchronized Entry remove(Object key) {
+			final Entry entry = entries.remove(key);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.isProtected) {
+				protect.remove(entry);
+				protectedWeight.addAndGet(-entry.weight);
+			} else {
+				probation.remove(entry);
+			}
+			weight.addAndGet(-entry.weight);
+			return entry;
+		}
+
+		synchronized void removeEntry(Entry entry) {
+			if (entries.get(entry.key) == entry) {
+				remove(entry.key);
+			}
+		}
+
+		/**
+		 * Moves the least recently used protected entries of this shard to the
+		 * probation segment while the protected segments exceed their limit,
+		 * the entry just used excepted.
+		 */
+		private void demote(Entry used) {
+			final long limit = (long) (spaceLimit * PROTECTED_RATIO);
+			Entry entry;
+			while (protectedWeight.get() > limit
+					&& (entry = protect.head.next) != used) {
+				protect.remove(entry);
+				protectedWeight.addAndGet(-entry.weight);
+				entry.isProtected = false;
+				entry.stamp = clock.incrementAndGet();
+				probation.add(entry);
+			}
+		}
+
+		synchronized Entry firstProbation(Object added, Set<Object> skipped) {
+			return probation.first(added, skipped);
+		}
+
+		synchronized Entry firstProtected(Object added, Set<Object> skipped) {
+			return protect.first(added, skipped);
+		}
+
+		synchronized long protectedWeight() {
+			return protect.weight;
+		}
+
+		synchronized int size() {
+			return entries.size();
+		}
+
+		synchronized long hits() {
+			return hits;
+		}
+
+		synchronized long misses() {
+			return misses;
+		}
+	}
+
+	private final Shard[] shards;
+	private final Weigher weigher;
+	private volatile long spaceLimit;
+	private IModelElement spaceLimitParent;
+	/**
+	 * Space taken by the elements of all the shards, and by their protected
+	 * segments
+	 */
+	private final AtomicLong weight = new AtomicLong();
+	private final AtomicLong protectedWeight = new AtomicLong();
+	private final AtomicLong clock = new AtomicLong();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Constructs a new cache.
+	 *
+	 * @param spaceLimit
+	 *            the space the elements can take, as given by the weigher
+	 * @param shardCount
+	 *            the number of shards, rounded down to a power of two
+	 * @param weigher
+	 *            computes the space of the elements
+	 */
+	public ConcurrentElementCache(long spaceLimit, int shardCount,
+			Weigher weigher) {
+		this.spaceLimit = spaceLimit;
+		this.weigher = weigher;
+		this.shards = new Shard[Integer.highestOneBit(Math.max(1,
+				shardCount))];
+		for (int i = 0; i < shards.length; ++i) {
+			shards[i] = new Shard();
+		}
+	}
+
+	private Shard shard(Object key) {
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		return shards[h & (shards.length - 1)];
+	}
+
+	/**
+	 * Returns the info of the element, or <code>null</code>, and marks the
+	 * element as used.
+	 */
+	public Object get(Object key) {
+		return shard(key).get(key);
+	}
+
+	/**
+	 * Returns the info of the element, or <code>null</code>, without marking
+	 * the element as used.
+	 */
+	public Object peek(Object key) {
+		return shard(key).peek(key);
+	}
+
+	/**
+	 * Puts the info of the element, then evicts other elements if the cache
+	 * exceeds its limit.
+	 */
+	public Object put(Object key, Object value) {
+		shard(key).put(key, value, Math.max(1, weigher.weigh(key, value)));
+		evict(key);
+		return value;
+	}
+
+	/**
+	 * Removes the info of the element and returns it, or <code>null</code>.
+	 */
+	public Object remove(Object key) {
+		final Entry entry = shard(key).remove(key);
+		return entry != null ? entry.value : null;
+	}
+
+	private void evict(Object added) {
+		Set<Object> skipped = null;
+		Entry victim;
+		while (weight.get() > spaceLimit
+				&& (victim = victim(added, skipped)) != null) {
+			if (close(victim.key, victim.value)) {
+				// closing usually removes it already
+				shard(victim.key).removeEntry(victim);
+				evictions.increment();
+			} else {
+				if (skipped == null) {
+					skipped = new HashSet<Object>();
+				}
+				skipped.add(victim.key);
+			}
+		}
+	}
+
+	/**
+	 * Returns the oldest probation entry of all the shards, or if there is
+	 * none the least recently used protected entry of the shard with the
+	 * largest protected segment, skipping the specified keys.
+	 */
+	private Entry victim(Object added, Set<Object> skipped) {
+		Entry result = null;
+		for (Shard shard : shards) {
+			final Entry entry = shard.firstProbation(added, skipped);
+			if (entry != null
+					&& (result == null || entry.stamp < result.stamp)) {
+				result = entry;
+			}
+		}
+		if (result != null) {
+			return result;
+		}
+		long largest = 0;
+		for (Shard shard : shards) {
+			final long protectWeight = shard.protectedWeight();
+			if (protectWeight > largest) {
+				final Entry entry = shard.firstProtected(added, skipped);
+				if (entry != null) {
+					result = entry;
+					largest = protectWeight;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns <code>true</code> if the evicted element is closed, otherwise
+	 * <code>false</code> and the element is kept in the cache.
+	 * <p>
+	 * NOTE: closing the element is expected to remove it from the cache.
+	 * </p>
+	 */
+	protected boolean close(Object key, Object value) {
+		return ElementCache.close((Openable) key);
+	}
+
+	/**
+	 * Ensures that there is enough room for adding the given number of
+	 * children, of the given average space. If the space limit must be
+	 * increased, record the parent that needed this space limit.
+	 */
+	public synchronized void ensureSpaceLimit(int childrenSize,
+			int childSpace, IModelElement parent) {
+		final long spaceNeeded = 1 + (long) ((1 + LOAD_FACTOR)
+				* childrenSize * childSpace);
+		if (spaceLimit < spaceNeeded) {
+			spaceLimit = spaceNeeded;
+			spaceLimitParent = parent;
+		}
+	}
+
+	/**
+	 * If the given parent was the one that increased the space limit, reset
+	 * the space limit to the given default value.
+	 */
+	public void resetSpaceLimit(long defaultLimit, IModelElement parent) {
+		synchronized (this) {
+			if (!parent.equals(spaceLimitParent)) {
+				return;
+			}
+			spaceLimit = defaultLimit;
+			spaceLimitParent = null;
+		}
+		evict(null);
+	}
+
+	public long getSpaceLimit() {
+		return spaceLimit;
+	}
+
+	/**
+	 * Returns the space taken by the elements.
+	 */
+	public long getCurrentSpace() {
+		return weight.get();
+	}
+
+	public int size() {
+		int result = 0;
+		for (Shard shard : shards) {
+			result += shard.size();
+		}
+		return result;
+	}
+
+	public double fillingRatio() {
+		return getCurrentSpace() * 100.0 / spaceLimit;
+	}
+
+	/**
+	 * Returns the number of the {@link #get(Object)} calls which found the
+	 * element.
+	 */
+	public long getHitCount() {
+		long result = 0;
+		for (Shard shard : shards) {
+			result += shard.hits();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of the {@link #get(Object)} calls which did not find
+	 * the element.
+	 */
+	public long getMissCount() {
+		long result = 0;
+		for (Shard shard : shards) {
+			result += shard.misses();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of the elements closed to make space.
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "ConcurrentElementCache " + size() + " elements, " //$NON-NLS-1$ //$NON-NLS-2$
+				+ getCurrentSpace() + "/" + spaceLimit + ", hits " //$NON-NLS-1$ //$NON-NLS-2$
+				+ getHitCount() + ", misses " + getMissCount() //$NON-NLS-1$
+				+ ", evictions " + getEvictionCount(); //$NON-NLS-1$
+	}
+
+}
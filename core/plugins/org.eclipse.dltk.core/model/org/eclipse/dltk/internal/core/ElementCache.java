@@ -45,7 +45,14 @@ public class ElementCache extends OverflowingLRUCache {
 	 */
 	@Override
 	protected boolean close(LRUCacheEntry entry) {
-		Openable element = (Openable) entry._fKey;
+		return close((Openable) entry._fKey);
+	}
+
+	/**
+	 * Closes the element evicted from a cache, returns <code>false</code> if
+	 * it can not be closed now.
+	 */
+	static boolean close(Openable element) {
 		try {
 			if (!element.canBeRemovedFromCache()) {
 				return false;
@@ -10,8 +10,8 @@
 package org.eclipse.dltk.internal.core;
 
 import java.text.NumberFormat;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.dltk.core.DLTKCore;
 import org.eclipse.dltk.core.IModelElement;
@@ -39,30 +39,71 @@ public class ModelCache {
 	public static final int DEFAULT_CHILDREN_SIZE = 500 * 20; // average 20
 	// children per
 	// openable
+
+	/**
+	 * Estimated bytes of a project fragment info
+	 */
+	static final int ROOT_BYTES = 2590;
+	/**
+	 * Estimated bytes of a script folder info
+	 */
+	static final int FOLDER_BYTES = 1782;
+	/**
+	 * Estimated bytes of an openable info without children, and of each of
+	 * its children, 6629 bytes for the average 20 children
+	 */
+	static final int OPENABLE_BYTES = 1629;
+	static final int OPENABLE_CHILD_BYTES = 250;
+	static final int AVERAGE_OPENABLE_BYTES = OPENABLE_BYTES + 20
+			* OPENABLE_CHILD_BYTES;
+
+	private static final ConcurrentElementCache.Weigher WEIGHER = new ConcurrentElementCache.Weigher() {
+		@Override
+		public int weigh(Object element, Object info) {
+			switch (((IModelElement) element).getElementType()) {
+			case IModelElement.PROJECT_FRAGMENT:
+				return ROOT_BYTES;
+			case IModelElement.SCRIPT_FOLDER:
+				return FOLDER_BYTES;
+			default:
+				return OPENABLE_BYTES + (info instanceof ModelElementInfo
+						? ((ModelElementInfo) info).size()
+								* OPENABLE_CHILD_BYTES
+						: 0);
+			}
+		}
+	};
+
 	/**
 	 * Active script Model Info
 	 */
-	protected ModelInfo modelInfo;
+	protected volatile ModelInfo modelInfo;
 	/**
 	 * Cache of open projects.
 	 */
-	protected HashMap projectCache;
+	protected Map projectCache;
 	/**
 	 * Cache of open package fragment roots.
 	 */
-	protected ElementCache rootCache;
+	protected ConcurrentElementCache rootCache;
 	/**
 	 * Cache of open package fragments
 	 */
-	protected ElementCache pkgCache;
+	protected ConcurrentElementCache pkgCache;
 	/**
 	 * Cache of open compilation unit and class files
 	 */
-	protected ElementCache openableCache;
+	protected ConcurrentElementCache openableCache;
 	/**
 	 * Cache of open children of openable script Model elements
 	 */
 	protected Map childrenCache;
+	/**
+	 * Space limits of the caches in bytes
+	 */
+	private final long rootBytes;
+	private final long pkgBytes;
+	private final long openableBytes;
 
 	public ModelCache() {
 		// set the size of the caches in function of the maximum amount of
@@ -79,7 +120,7 @@ public class ModelCache {
 		// for
 		// most
 		// JInterpreter
-		this.projectCache = new HashMap(DEFAULT_PROJECT_SIZE); // NB: Don't use
+		this.projectCache = new ConcurrentHashMap(DEFAULT_PROJECT_SIZE); // NB: Don't use
 		// a LRUCache
 		// for projects
 		// as they are
@@ -88,11 +129,22 @@ public class ModelCache {
 		// (e.g. during
 		// delta
 		// processing)
-		this.rootCache = new ElementCache((int) (DEFAULT_ROOT_SIZE * ratio));
-		this.pkgCache = new ElementCache((int) (DEFAULT_PKG_SIZE * ratio));
-		this.openableCache = new ElementCache(
-				(int) (DEFAULT_OPENABLE_SIZE * ratio));
-		this.childrenCache = new HashMap((int) (DEFAULT_CHILDREN_SIZE * ratio));
+		this.rootBytes = (long) (DEFAULT_ROOT_SIZE * ROOT_BYTES * ratio);
+		this.pkgBytes = (long) (DEFAULT_PKG_SIZE * FOLDER_BYTES * ratio);
+		this.openableBytes = (long) (DEFAULT_OPENABLE_SIZE
+				* AVERAGE_OPENABLE_BYTES * ratio);
+		// the caches are read without the model manager lock, a shard per
+		// processor or two is enough to avoid contention
+		final int shardCount = Math.min(16,
+				2 * Runtime.getRuntime().availableProcessors());
+		this.rootCache = new ConcurrentElementCache(rootBytes,
+				Math.min(4, shardCount), WEIGHER);
+		this.pkgCache = new ConcurrentElementCache(pkgBytes, shardCount,
+				WEIGHER);
+		this.openableCache = new ConcurrentElementCache(openableBytes,
+				shardCount, WEIGHER);
+		this.childrenCache = new ConcurrentHashMap(
+				(int) (DEFAULT_CHILDREN_SIZE * ratio));
 	}
 
 	/**
@@ -148,17 +200,17 @@ public class ModelCache {
 		case IModelElement.SCRIPT_PROJECT:
 			this.projectCache.put(element, info);
 			this.rootCache.ensureSpaceLimit(((ModelElementInfo) info).size(),
-					element);
+					ROOT_BYTES, element);
 			break;
 		case IModelElement.PROJECT_FRAGMENT:
 			this.rootCache.put(element, info);
 			this.pkgCache.ensureSpaceLimit(((ModelElementInfo) info).size(),
-					element);
+					FOLDER_BYTES, element);
 			break;
 		case IModelElement.SCRIPT_FOLDER:
 			this.pkgCache.put(element, info);
 			this.openableCache.ensureSpaceLimit(((ModelElementInfo) info)
-					.size(), element);
+					.size(), AVERAGE_OPENABLE_BYTES, element);
 			break;
 		case IModelElement.SOURCE_MODULE:
 		case IModelElement.BINARY_MODULE:
@@ -179,15 +231,15 @@ public class ModelCache {
 			break;
 		case IModelElement.SCRIPT_PROJECT:
 			this.projectCache.remove(element);
-			this.rootCache.resetSpaceLimit(DEFAULT_ROOT_SIZE, element);
+			this.rootCache.resetSpaceLimit(rootBytes, element);
 			break;
 		case IModelElement.PROJECT_FRAGMENT:
 			this.rootCache.remove(element);
-			this.pkgCache.resetSpaceLimit(DEFAULT_PKG_SIZE, element);
+			this.pkgCache.resetSpaceLimit(pkgBytes, element);
 			break;
 		case IModelElement.SCRIPT_FOLDER:
 			this.pkgCache.remove(element);
-			this.openableCache.resetSpaceLimit(DEFAULT_OPENABLE_SIZE, element);
+			this.openableCache.resetSpaceLimit(openableBytes, element);
 			break;
 		case IModelElement.SOURCE_MODULE:
 		case IModelElement.BINARY_MODULE:
@@ -206,26 +258,28 @@ public class ModelCache {
 		buffer.append(this.projectCache.size());
 		buffer.append(" projects\n"); //$NON-NLS-1$
 		buffer.append(prefix);
-		buffer.append("Root cache["); //$NON-NLS-1$
-		buffer.append(this.rootCache.getSpaceLimit());
-		buffer.append("]: "); //$NON-NLS-1$
-		buffer.append(nf.format(this.rootCache.fillingRatio()));
-		buffer.append("%\n"); //$NON-NLS-1$
-		buffer.append(prefix);
-		buffer.append("Folder cache["); //$NON-NLS-1$
-		buffer.append(this.pkgCache.getSpaceLimit());
-		buffer.append("]: "); //$NON-NLS-1$
-		buffer.append(nf.format(this.pkgCache.fillingRatio()));
-		buffer.append("%\n"); //$NON-NLS-1$
-		buffer.append(prefix);
-		buffer.append("Openable cache["); //$NON-NLS-1$
-		buffer.append(this.openableCache.getSpaceLimit());
-		buffer.append("]: "); //$NON-NLS-1$
-		buffer.append(nf.format(this.openableCache.fillingRatio()));
-		buffer.append("%\n"); //$NON-NLS-1$
+		append(buffer, prefix, "Root cache[", this.rootCache, nf); //$NON-NLS-1$
+		append(buffer, prefix, "Folder cache[", this.pkgCache, nf); //$NON-NLS-1$
+		append(buffer, prefix, "Openable cache[", this.openableCache, nf); //$NON-NLS-1$
 		return buffer.toString();
 	}
 
+	private static void append(StringBuffer buffer, String prefix,
+			String name, ConcurrentElementCache cache, NumberFormat nf) {
+		buffer.append(prefix);
+		buffer.append(name);
+		buffer.append(cache.getSpaceLimit());
+		buffer.append(" bytes]: "); //$NON-NLS-1$
+		buffer.append(nf.format(cache.fillingRatio()));
+		buffer.append("%, hits "); //$NON-NLS-1$
+		buffer.append(cache.getHitCount());
+		buffer.append(", misses "); //$NON-NLS-1$
+		buffer.append(cache.getMissCount());
+		buffer.append(", evictions "); //$NON-NLS-1$
+		buffer.append(cache.getEvictionCount());
+		buffer.append('\n');
+	}
+
 	protected void resetZIPTypeCache() {
 		if (DLTKCore.DEBUG) {
 			System.err.println("Add reset ZIP Type cache..."); //$NON-NLS-1$
@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -590,9 +591,12 @@ public class ModelManager implements ISaveParticipant {
 	}
 
 	/**
-	 * Returns the info for the element.
+	 * Returns the info for the element. The cache is read without the lock
+	 * of the model manager, which guards its changes, an element opened by
+	 * {@link #putInfos(IModelElement, Map)} being published after its
+	 * children.
 	 */
-	public synchronized Object getInfo(IModelElement element) {
+	public Object getInfo(IModelElement element) {
 		HashMap tempCache = (HashMap) this.temporaryCache.get();
 		if (tempCache != null) {
 			Object result = tempCache.get(element);
@@ -606,7 +610,7 @@ public class ModelManager implements ISaveParticipant {
 	/**
 	 * Returns the info for this element without disturbing the cache ordering.
 	 */
-	protected synchronized Object peekAtInfo(IModelElement element) {
+	protected Object peekAtInfo(IModelElement element) {
 		HashMap tempCache = (HashMap) this.temporaryCache.get();
 		if (tempCache != null) {
 			Object result = tempCache.get(element);
@@ -686,20 +690,15 @@ public class ModelManager implements ISaveParticipant {
 	 */
 	protected synchronized void putInfos(IModelElement openedElement,
 			Map newElements) {
-		// remove children
+		// remove children, once the new ones are published so the readers
+		// never find the element without the infos of its children
+		List<ModelElement> removedChildren = null;
 		Object existingInfo = this.cache.peekAtInfo(openedElement);
 		if (openedElement instanceof IParent
 				&& existingInfo instanceof ModelElementInfo) {
-			IModelElement[] children = ((ModelElementInfo) existingInfo)
-					.getChildren();
-			for (int i = 0, size = children.length; i < size; ++i) {
-				ModelElement child = (ModelElement) children[i];
-				try {
-					child.close();
-				} catch (ModelException e) {
-					// ignore
-				}
-			}
+			removedChildren = new ArrayList<ModelElement>();
+			collectRemovedChildren((ModelElementInfo) existingInfo,
+					newElements, removedChildren);
 		}
 		// Need to put any ArchiveProjectFragment in first.
 		// This is due to the way the LRU cache flushes entries.
@@ -723,11 +722,53 @@ public class ModelManager implements ISaveParticipant {
 				this.cache.putInfo(element, info);
 			}
 		}
+		// The opened element is put last, so the readers, which do not take
+		// the lock, find its children once they find it.
+		Object openedInfo = null;
 		Iterator iterator = newElements.keySet().iterator();
 		while (iterator.hasNext()) {
 			IModelElement element = (IModelElement) iterator.next();
 			Object info = newElements.get(element);
-			this.cache.putInfo(element, info);
+			if (element.equals(openedElement)) {
+				openedInfo = info;
+			} else {
+				this.cache.putInfo(element, info);
+			}
+		}
+		if (openedInfo != null) {
+			this.cache.putInfo(openedElement, openedInfo);
+		}
+		if (removedChildren != null) {
+			for (ModelElement child : removedChildren) {
+				try {
+					child.close();
+				} catch (ModelException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/*
+	 * Collects the children of the previous info of an opened element which
+	 * are not opened again, and the removed descendants of the ones opened
+	 * again.
+	 */
+	private void collectRemovedChildren(ModelElementInfo info,
+			Map newElements, List<ModelElement> result) {
+		IModelElement[] children = info.getChildren();
+		for (int i = 0, size = children.length; i < size; ++i) {
+			ModelElement child = (ModelElement) children[i];
+			if (!newElements.containsKey(child)) {
+				result.add(child);
+			} else {
+				Object childInfo = this.cache.peekAtInfo(child);
+				if (childInfo instanceof ModelElementInfo
+						&& childInfo != newElements.get(child)) {
+					collectRemovedChildren((ModelElementInfo) childInfo,
+							newElements, result);
+				}
+			}
 		}
 	}
 
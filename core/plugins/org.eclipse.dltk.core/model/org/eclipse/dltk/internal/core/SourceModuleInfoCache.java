@@ -8,8 +8,6 @@
  *******************************************************************************/
 package org.eclipse.dltk.internal.core;
 
-import java.lang.ref.ReferenceQueue;
-import java.lang.ref.SoftReference;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -24,41 +22,110 @@ import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.dltk.annotations.Internal;
+import org.eclipse.dltk.ast.ASTNode;
+import org.eclipse.dltk.ast.ASTVisitor;
+import org.eclipse.dltk.compiler.problem.ProblemCollector;
 import org.eclipse.dltk.core.DLTKCore;
 import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.core.ISourceModuleInfoCache;
+import org.eclipse.dltk.core.RuntimePerformanceMonitor;
 
 /**
  * Used to cache some source module information. All information related to
  * source module are removed, then source module are changed.
+ * <p>
+ * The cache is bounded by the estimated size in bytes of the information it
+ * holds, mostly the ASTs, and by the number of the modules. The least recently
+ * used modules are removed first, and the information larger than a quarter of
+ * the size limit is not kept, so a single huge module does not remove all the
+ * others.
+ * </p>
  */
 public class SourceModuleInfoCache implements ISourceModuleInfoCache,
 		IResourceChangeListener, IResourceDeltaVisitor {
+
+	/**
+	 * Estimated size of a cache entry, without the information values
+	 */
+	static final int ENTRY_BYTES = 160;
+
+	/**
+	 * Estimated size of an AST node
+	 */
+	static final int NODE_BYTES = 96;
+
+	/**
+	 * Estimated size of a problem
+	 */
+	static final int PROBLEM_BYTES = 200;
+
+	/**
+	 * Estimated size of the values which can not be measured
+	 */
+	static final int UNKNOWN_BYTES = 16 * 1024;
+
+	/**
+	 * The {@link RuntimePerformanceMonitor} language of the statistics, shared
+	 * by all the languages
+	 */
+	public static final String STATISTICS = "#"; //$NON-NLS-1$
+
+	/**
+	 * The {@link RuntimePerformanceMonitor} kinds of the statistics
+	 */
+	public static final String CACHED_BYTES = "AST cache bytes"; //$NON-NLS-1$
+	public static final String HITS = "AST cache hits"; //$NON-NLS-1$
+	public static final String MISSES = "AST cache misses"; //$NON-NLS-1$
+	public static final String EVICTIONS = "AST cache evictions"; //$NON-NLS-1$
+
+	/**
+	 * The default size limit in bytes, a tenth of the maximum heap, which can
+	 * be set with the
+	 * <code>org.eclipse.dltk.core.sourceModuleInfoCache.size</code> system
+	 * property.
+	 */
+	private static final long DEFAULT_SIZE_LIMIT = Long.getLong(
+			"org.eclipse.dltk.core.sourceModuleInfoCache.size", //$NON-NLS-1$
+			Runtime.getRuntime().maxMemory() / 10).longValue();
+
 	@Internal
-	final int capacity = ModelCache.DEFAULT_ROOT_SIZE * 50;
+	final int capacity;
 
-	private final ReferenceQueue<ISourceModuleInfo> queue = new ReferenceQueue<ISourceModuleInfo>();
+	private final long sizeLimit;
 
-	@SuppressWarnings("serial")
-	private final Map<ISourceModule, CacheReference> map = new LinkedHashMap<ISourceModule, CacheReference>(
-			16, 0.9f, true) {
-		@Override
-		protected boolean removeEldestEntry(
-				Map.Entry<ISourceModule, CacheReference> eldest) {
-			return size() > capacity;
-		}
-	};
+	private final Map<ISourceModule, CacheEntry> map = new LinkedHashMap<ISourceModule, CacheEntry>(
+			16, 0.9f, true);
+
+	private long currentSize;
+	private long hits;
+	private long misses;
+	private long evictions;
 
-	private static class CacheReference extends
-			SoftReference<ISourceModuleInfo> {
+	public SourceModuleInfoCache() {
+		this(DEFAULT_SIZE_LIMIT, ModelCache.DEFAULT_ROOT_SIZE * 50);
+	}
+
+	/**
+	 * @param sizeLimit
+	 *            the estimated size in bytes of the cached information
+	 * @param capacity
+	 *            the number of the cached modules
+	 */
+	public SourceModuleInfoCache(long sizeLimit, int capacity) {
+		this.sizeLimit = sizeLimit;
+		this.capacity = capacity;
+	}
+
+	private static class CacheEntry {
 		final long modificationStamp;
 		final ISourceModule module;
+		final SourceModuleInfo info;
+		long size = ENTRY_BYTES;
 
-		public CacheReference(ISourceModule module, ISourceModuleInfo referent,
-				ReferenceQueue<? super ISourceModuleInfo> q) {
-			super(referent, q);
+		public CacheEntry(SourceModuleInfoCache cache, ISourceModule module) {
 			this.module = module;
 			this.modificationStamp = getModificationStamp(module);
+			this.info = new SourceModuleInfo(cache, this);
 		}
 
 		private static long getModificationStamp(ISourceModule module) {
@@ -84,34 +151,79 @@ public class SourceModuleInfoCache implements ISourceModuleInfoCache,
 		DLTKCore.removePreProcessingResourceChangedListener(this);
 	}
 
-	private void expungeStaleEntries() {
-		for (CacheReference r; (r = (CacheReference) queue.poll()) != null;) {
-			if (DEBUG) {
-				System.out.println("[Cache] expunge "
-						+ r.module.getElementName());
+	@Override
+	public synchronized ISourceModuleInfo get(ISourceModule module) {
+		final CacheEntry entry = map.get(module);
+		if (entry != null) {
+			if (entry.isValid(module)) {
+				++hits;
+				return entry.info;
 			}
-			map.remove(r.module);
+			removeEntry(module);
 		}
+		++misses;
+		final CacheEntry newEntry = new CacheEntry(this, module);
+		map.put(module, newEntry);
+		currentSize += newEntry.size;
+		evict();
+		return newEntry.info;
 	}
 
-	@Override
-	public synchronized ISourceModuleInfo get(ISourceModule module) {
-		expungeStaleEntries();
-		final CacheReference ref = map.get(module);
-		if (ref != null) {
-			final ISourceModuleInfo info = ref.get();
-			if (info != null && ref.isValid(module)) {
-				return info;
+	/**
+	 * Updates the size of the entry after its information is changed.
+	 */
+	void resize(CacheEntry entry, long delta) {
+		if (delta == 0) {
+			return;
+		}
+		synchronized (this) {
+			entry.size += delta;
+			if (map.get(entry.module) != entry) {
+				return;
+			}
+			currentSize += delta;
+			if (entry.size > sizeLimit / 4) {
+				if (DEBUG) {
+					System.out.println("[Cache] too large " //$NON-NLS-1$
+							+ entry.module.getElementName());
+				}
+				removeEntry(entry.module);
+				++evictions;
+			} else {
+				evict();
+			}
+		}
+	}
+
+	/**
+	 * Removes the least recently used entries while the cache exceeds its
+	 * limits. Not synchronized here, as it's called only from synchronized
+	 * methods.
+	 */
+	private void evict() {
+		final Iterator<CacheEntry> i = map.values().iterator();
+		while ((currentSize > sizeLimit || map.size() > capacity)
+				&& i.hasNext()) {
+			final CacheEntry entry = i.next();
+			if (DEBUG) {
+				System.out.println("[Cache] evict " //$NON-NLS-1$
+						+ entry.module.getElementName());
 			}
+			i.remove();
+			currentSize -= entry.size;
+			++evictions;
+		}
+	}
+
+	private void removeEntry(ISourceModule module) {
+		final CacheEntry entry = map.remove(module);
+		if (entry != null) {
+			currentSize -= entry.size;
 		}
-		final ISourceModuleInfo info = new SourceModuleInfo();
-		map.put(module, new CacheReference(module, info, queue));
-		return info;
 	}
 
 	@Override
 	public synchronized void resourceChanged(IResourceChangeEvent event) {
-		expungeStaleEntries();
 		final IResourceDelta delta = event.getDelta();
 		try {
 			delta.accept(this);
@@ -163,30 +275,62 @@ public class SourceModuleInfoCache implements ISourceModuleInfoCache,
 		return true;
 	}
 
+	/**
+	 * A value of the information with its estimated size
+	 */
+	private static class SizedValue {
+		final Object value;
+		final long size;
+
+		SizedValue(Object value) {
+			this.value = value;
+			this.size = estimateSize(value);
+		}
+	}
+
 	@Internal
 	static class SourceModuleInfo implements ISourceModuleInfo {
-		private Map<Object, Object> map;
+		private final SourceModuleInfoCache cache;
+		private final CacheEntry entry;
+		private Map<Object, SizedValue> map;
+
+		SourceModuleInfo(SourceModuleInfoCache cache, CacheEntry entry) {
+			this.cache = cache;
+			this.entry = entry;
+		}
 
 		@Override
 		public synchronized Object get(String key) {
 			if (map == null) {
 				return null;
 			}
-			return map.get(key);
+			final SizedValue value = map.get(key);
+			return value != null ? value.value : null;
 		}
 
 		@Override
-		public synchronized void put(String key, Object value) {
-			if (map == null) {
-				map = new HashMap<Object, Object>();
+		public void put(String key, Object value) {
+			final SizedValue newValue = new SizedValue(value);
+			final SizedValue oldValue;
+			synchronized (this) {
+				if (map == null) {
+					map = new HashMap<Object, SizedValue>();
+				}
+				oldValue = map.put(key, newValue);
 			}
-			map.put(key, value);
+			// resized without the lock of the info
+			cache.resize(entry,
+					newValue.size - (oldValue != null ? oldValue.size : 0));
 		}
 
 		@Override
-		public synchronized void remove(String key) {
-			if (map != null) {
-				map.remove(key);
+		public void remove(String key) {
+			final SizedValue oldValue;
+			synchronized (this) {
+				oldValue = map != null ? map.remove(key) : null;
+			}
+			if (oldValue != null) {
+				cache.resize(entry, -oldValue.size);
 			}
 		}
 
@@ -196,16 +340,44 @@ public class SourceModuleInfoCache implements ISourceModuleInfoCache,
 		}
 	}
 
+	/**
+	 * Returns the estimated size in bytes of a value of the information, the
+	 * ASTs being measured by their number of nodes.
+	 */
+	public static long estimateSize(Object value) {
+		if (value instanceof ASTNode) {
+			final long[] nodes = new long[1];
+			try {
+				((ASTNode) value).traverse(new ASTVisitor() {
+					@Override
+					public boolean visitGeneral(ASTNode node) throws Exception {
+						++nodes[0];
+						return true;
+					}
+				});
+			} catch (Exception e) {
+				return UNKNOWN_BYTES;
+			}
+			return Math.max(1, nodes[0]) * NODE_BYTES;
+		} else if (value instanceof ProblemCollector) {
+			return ((ProblemCollector) value).getProblems().size()
+					* (long) PROBLEM_BYTES;
+		} else {
+			return UNKNOWN_BYTES;
+		}
+	}
+
 	/**
 	 * Not synchronized here, as it's called only from
 	 * {@link #resourceChanged(IResourceChangeEvent)} which is already
 	 * synchronized.
 	 */
 	private void removeByProject(IProject project) {
-		for (Iterator<ISourceModule> i = map.keySet().iterator(); i.hasNext();) {
-			final ISourceModule module = i.next();
-			if (project.equals(module.getScriptProject().getProject())) {
+		for (Iterator<CacheEntry> i = map.values().iterator(); i.hasNext();) {
+			final CacheEntry entry = i.next();
+			if (project.equals(entry.module.getScriptProject().getProject())) {
 				i.remove();
+				currentSize -= entry.size;
 			}
 		}
 	}
@@ -219,17 +391,15 @@ public class SourceModuleInfoCache implements ISourceModuleInfoCache,
 		if (DEBUG) {
 			System.out.println("[Cache] remove " + module.getElementName()); //$NON-NLS-1$
 		}
-		map.remove(module);
+		removeEntry(module);
 	}
 
 	private static final boolean DEBUG = false;
 
 	@Override
 	public synchronized void clear() {
-		// clear out reference queue.
-		while (queue.poll() != null)
-			;
 		map.clear();
+		currentSize = 0;
 	}
 
 	@Override
@@ -242,4 +412,75 @@ public class SourceModuleInfoCache implements ISourceModuleInfoCache,
 		return capacity;
 	}
 
+	/**
+	 * Returns the maximum estimated size in bytes of the cached information.
+	 */
+	public long getSizeLimit() {
+		return sizeLimit;
+	}
+
+	/**
+	 * Returns the estimated size in bytes of the cached information.
+	 */
+	public synchronized long getCurrentSize() {
+		return currentSize;
+	}
+
+	/**
+	 * Returns the number of the {@link #get(ISourceModule)} calls which found
+	 * the information of the module.
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of the {@link #get(ISourceModule)} calls which
+	 * created new information for the module.
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of the modules removed to make space.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * Publishes the current state of the cache to the
+	 * {@link RuntimePerformanceMonitor}, replacing the previous one: the
+	 * number of the modules with the estimated size in bytes, and the hit,
+	 * miss and eviction counts.
+	 */
+	public void publishStatistics() {
+		final long modules;
+		final long size;
+		final long hitCount;
+		final long missCount;
+		final long evictionCount;
+		synchronized (this) {
+			modules = map.size();
+			size = currentSize;
+			hitCount = hits;
+			missCount = misses;
+			evictionCount = evictions;
+		}
+		RuntimePerformanceMonitor.setData(STATISTICS, CACHED_BYTES, modules,
+				0, size);
+		RuntimePerformanceMonitor.setData(STATISTICS, HITS, hitCount, 0, 0);
+		RuntimePerformanceMonitor.setData(STATISTICS, MISSES, missCount, 0, 0);
+		RuntimePerformanceMonitor.setData(STATISTICS, EVICTIONS,
+				evictionCount, 0, 0);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SourceModuleInfoCache " + map.size() + " modules, " //$NON-NLS-1$ //$NON-NLS-2$
+				+ currentSize + "/" + sizeLimit + " bytes, hits " + hits //$NON-NLS-1$ //$NON-NLS-2$
+				+ ", misses " + misses + ", evictions " + evictions; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
 }
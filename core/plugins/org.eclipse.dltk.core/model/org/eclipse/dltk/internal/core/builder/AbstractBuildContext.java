@@ -15,19 +15,20 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.dltk.compiler.CharOperation;
 import org.eclipse.dltk.core.DLTKCore;
 import org.eclipse.dltk.core.IModelElement;
 import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.core.ModelException;
 import org.eclipse.dltk.core.builder.IBuildContext;
-import org.eclipse.dltk.core.builder.IBuildContextExtension;
+import org.eclipse.dltk.core.builder.IBuildContextExtension2;
 import org.eclipse.dltk.core.builder.ISourceLineTracker;
 import org.eclipse.dltk.utils.TextUtils;
 import org.eclipse.osgi.util.NLS;
 
 public abstract class AbstractBuildContext implements IBuildContext,
-		IBuildContextExtension {
+		IBuildContextExtension2 {
 
 	private final Map<String, Object> attributes = new HashMap<String, Object>();
 
@@ -134,4 +135,13 @@ public abstract class AbstractBuildContext implements IBuildContext,
 		return getSourceModule().getElementName();
 	}
 
+	/**
+	 * Records the dependency on the whole file, to be overridden if the
+	 * element dependencies are supported.
+	 */
+	@Override
+	public void recordDependency(IPath dependency, String element, int flags) {
+		recordDependency(dependency, flags);
+	}
+
 }
@@ -13,14 +13,16 @@ package org.eclipse.dltk.internal.core.builder;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IPath;
-import org.eclipse.dltk.core.builder.IBuildState;
+import org.eclipse.dltk.core.builder.IBuildStateExtension;
 
-abstract class AbstractBuildState implements IBuildState {
+abstract class AbstractBuildState implements IBuildStateExtension {
 
 	private final String projectName;
 
@@ -30,10 +32,33 @@ abstract class AbstractBuildState implements IBuildState {
 
 	private final Set<IPath> structuralChanges = new HashSet<IPath>();
 
+	/*
+	 * the changed elements of the structurally changed modules, if only the
+	 * elements were recorded as changed
+	 */
+	private final Map<IPath, Set<String>> elementChanges = new HashMap<IPath, Set<String>>();
+
 	@Override
-	public void recordStructuralChange(IPath path) {
+	public synchronized void recordStructuralChange(IPath path) {
 		Assert.isLegal(projectName.equals(path.segment(0)));
 		structuralChanges.add(path);
+		elementChanges.remove(path);
+	}
+
+	@Override
+	public synchronized void recordStructuralChange(IPath path,
+			String element) {
+		Assert.isLegal(projectName.equals(path.segment(0)));
+		Set<String> elements = elementChanges.get(path);
+		if (elements == null) {
+			if (!structuralChanges.add(path)) {
+				// the whole module has changed
+				return;
+			}
+			elements = new HashSet<String>();
+			elementChanges.put(path, elements);
+		}
+		elements.add(element);
 	}
 
 	public void recordStructuralChanges(Collection<IPath> paths) {
@@ -47,8 +72,17 @@ abstract class AbstractBuildState implements IBuildState {
 		return Collections.unmodifiableSet(structuralChanges);
 	}
 
-	public void resetStructuralChanges() {
+	/**
+	 * Returns the changed elements of the structurally changed modules, the
+	 * modules changed as a whole being not included. The map is unmodifiable.
+	 */
+	public Map<IPath, Set<String>> getElementChanges() {
+		return Collections.unmodifiableMap(elementChanges);
+	}
+
+	public synchronized void resetStructuralChanges() {
 		structuralChanges.clear();
+		elementChanges.clear();
 	}
 
 	@Override
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.builder;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.dltk.core.DLTKCore;
+
+/**
+ * Pool of threads building the modules in parallel, shared by the builders of
+ * all the projects.
+ * <p>
+ * The items of an {@link Execution} are sorted by decreasing size, then
+ * claimed one at a time by the workers, so the largest modules are not left
+ * for the end of the build and the workers finish at about the same time.
+ * </p>
+ */
+public class BuildExecutor {
+
+	/*
+	 * number of threads building the modules, 1 to build them in the build
+	 * thread
+	 */
+	static final int WORKER_COUNT = Math.max(1, Integer.getInteger(
+			"org.eclipse.dltk.core.builder.workers", //$NON-NLS-1$
+			Runtime.getRuntime().availableProcessors()).intValue());
+
+	/*
+	 * minimal number of modules built in parallel
+	 */
+	static final int PARALLEL_THRESHOLD = Integer.getInteger(
+			"org.eclipse.dltk.core.builder.parallelThreshold", 4).intValue(); //$NON-NLS-1$
+
+	/**
+	 * Processes an item.
+	 */
+	public interface Processor<T> {
+		void process(T item);
+	}
+
+	/**
+	 * Computes the size of the items, the largest ones being processed first.
+	 */
+	public interface Sizer<T> {
+		long sizeOf(T item);
+	}
+
+	/**
+	 * The processing of a list of items.
+	 */
+	public static class Execution<T> {
+		private final T[] items;
+		private final Processor<T> processor;
+		private final AtomicInteger next = new AtomicInteger();
+		private final AtomicInteger processed = new AtomicInteger();
+		private int runningWorkers;
+		private volatile boolean canceled = false;
+
+		Execution(T[] items, Processor<T> processor) {
+			this.items = items;
+			this.processor = processor;
+		}
+
+		synchronized void start(ForkJoinPool pool, int workers) {
+			runningWorkers = workers;
+			for (int i = 0; i < workers; ++i) {
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						work();
+					}
+				});
+			}
+		}
+
+		void work() {
+			try {
+				for (int i; !canceled
+						&& (i = next.getAndIncrement()) < items.length;) {
+					try {
+						processor.process(items[i]);
+					} catch (OperationCanceledException e) {
+						canceled = true;
+					} catch (RuntimeException e) {
+						DLTKCore.error(e);
+					}
+					processed.incrementAndGet();
+				}
+			} finally {
+				synchronized (this) {
+					--runningWorkers;
+					notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Stops processing the items, the items being processed are
+		 * completed.
+		 */
+		public void cancel() {
+			canceled = true;
+		}
+
+		/**
+		 * Returns <code>true</code> if the processing was canceled, by
+		 * {@link #cancel()} or by a processed item.
+		 */
+		public boolean isCanceled() {
+			return canceled;
+		}
+
+		/**
+		 * Waits at most the specified time for the workers to complete.
+		 *
+		 * @return <code>true</code> if the workers have completed
+		 */
+		public synchronized boolean await(long timeout)
+				throws InterruptedException {
+			final long deadline = System.nanoTime()
+					+ TimeUnit.MILLISECONDS.toNanos(timeout);
+			while (runningWorkers != 0) {
+				final long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			}
+			return true;
+		}
+
+		/**
+		 * Returns the number of the items processed.
+		 */
+		public int getProcessedCount() {
+			return processed.get();
+		}
+	}
+
+	private static ForkJoinPool pool = null;
+
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(WORKER_COUNT,
+					new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+						@Override
+						public ForkJoinWorkerThread newThread(
+								ForkJoinPool p) {
+							final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory
+									.newThread(p);
+							thread.setName("DLTK Build Worker-" //$NON-NLS-1$
+									+ thread.getPoolIndex());
+							return thread;
+						}
+					}, null, false);
+		}
+		return pool;
+	}
+
+	/**
+	 * Returns <code>true</code> if that number of items should be processed
+	 * in parallel.
+	 */
+	public static boolean isParallel(int itemCount) {
+		return WORKER_COUNT > 1 && itemCount >= PARALLEL_THRESHOLD;
+	}
+
+	/**
+	 * Starts processing the items in parallel, the largest ones first.
+	 */
+	public static <T> Execution<T> execute(List<T> items, final Sizer<T> sizer,
+			Processor<T> processor) {
+		Object[] array = items.toArray();
+		if (sizer != null) {
+			final long[] sizes = new long[array.length];
+			final Integer[] order = new Integer[array.length];
+			for (int i = 0; i < array.length; ++i) {
+				@SuppressWarnings("unchecked")
+				final T item = (T) array[i];
+				sizes[i] = sizer.sizeOf(item);
+				order[i] = Integer.valueOf(i);
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer i1, Integer i2) {
+					return Long.compare(sizes[i2.intValue()],
+							sizes[i1.intValue()]);
+				}
+			});
+			final Object[] ordered = new Object[array.length];
+			for (int i = 0; i < order.length; ++i) {
+				ordered[i] = array[order[i].intValue()];
+			}
+			array = ordered;
+		}
+		@SuppressWarnings("unchecked")
+		final T[] sorted = (T[]) array;
+		final Execution<T> execution = new Execution<T>(sorted, processor);
+		execution.start(getPool(), Math.min(WORKER_COUNT, sorted.length));
+		return execution;
+	}
+
+}
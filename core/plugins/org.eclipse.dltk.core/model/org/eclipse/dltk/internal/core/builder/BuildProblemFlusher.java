@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.builder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.dltk.compiler.problem.IProblemSeverityTranslator;
+import org.eclipse.dltk.compiler.problem.ProblemCategory;
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.builder.IBuildState;
+
+/**
+ * Flushes the problems of the modules to their markers in batches while the
+ * modules are built, instead of keeping the problems of all the modules until
+ * the end of the build.
+ * <p>
+ * The reporters of the built modules are added by the threads building them,
+ * and flushed by the build thread, which holds the workspace lock, a batch at
+ * a time in one workspace operation. While a batch is pending the threads
+ * adding more reporters wait, so the problems kept in memory are bounded.
+ * </p>
+ */
+public class BuildProblemFlusher {
+
+	/*
+	 * number of reporters flushed in one workspace operation, 0 to flush all
+	 * of them at the end of the build
+	 */
+	static final int BATCH_SIZE = Integer.getInteger(
+			"org.eclipse.dltk.core.builder.markerBatchSize", 64).intValue(); //$NON-NLS-1$
+
+	private final int batchSize;
+	private final IProblemSeverityTranslator severityTranslator;
+	private final IBuildState state;
+	private List<BuildProblemReporter> pending;
+	private boolean closed = false;
+
+	/**
+	 * @param batchSize
+	 *            the number of reporters flushed together, also the number of
+	 *            reporters pending at most
+	 * @param severityTranslator
+	 * @param state
+	 *            records the modules with import problems
+	 */
+	public BuildProblemFlusher(int batchSize,
+			IProblemSeverityTranslator severityTranslator, IBuildState state) {
+		this.batchSize = Math.max(1, batchSize);
+		this.severityTranslator = severityTranslator;
+		this.state = state;
+		this.pending = new ArrayList<BuildProblemReporter>(this.batchSize);
+	}
+
+	/**
+	 * Adds the reporter of a built module, waiting while a full batch is
+	 * pending.
+	 */
+	public synchronized void add(BuildProblemReporter reporter)
+			throws InterruptedException {
+		while (!closed && pending.size() >= batchSize) {
+			wait();
+		}
+		if (closed) {
+			// flushed at the end of the build
+			return;
+		}
+		pending.add(reporter);
+		if (pending.size() >= batchSize) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Flushes the pending reporters if they make a full batch, waiting for it
+	 * at most the specified time. Must be called by the build thread.
+	 *
+	 * @param timeout
+	 *            the time to wait in milliseconds, 0 to not wait
+	 * @param all
+	 *            <code>true</code> to flush the pending reporters even if they
+	 *            do not make a full batch
+	 */
+	public void flush(long timeout, boolean all) throws InterruptedException {
+		final List<BuildProblemReporter> batch = take(timeout, all);
+		if (batch != null) {
+			flush(batch);
+		}
+	}
+
+	private synchronized List<BuildProblemReporter> take(long timeout,
+			boolean all) throws InterruptedException {
+		if (timeout > 0 && !closed && pending.size() < batchSize) {
+			wait(timeout);
+		}
+		if (pending.isEmpty() || !all && pending.size() < batchSize) {
+			return null;
+		}
+		final List<BuildProblemReporter> batch = pending;
+		pending = new ArrayList<BuildProblemReporter>(batchSize);
+		notifyAll();
+		return batch;
+	}
+
+	/**
+	 * Stops accepting the reporters, so the threads building the modules no
+	 * longer wait for the build thread. The reporters added then are flushed
+	 * at the end of the build.
+	 */
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Creates the markers of the reporters in one workspace operation.
+	 */
+	protected void flush(final List<BuildProblemReporter> batch) {
+		try {
+			ResourcesPlugin.getWorkspace().run(new IWorkspaceRunnable() {
+				@Override
+				public void run(IProgressMonitor monitor) {
+					flushReporters(batch);
+				}
+			}, null, IWorkspace.AVOID_UPDATE, null);
+		} catch (CoreException e) {
+			DLTKCore.error(Messages.BuildProblemReporter_errorUpdatingMarkers,
+					e);
+		}
+	}
+
+	protected void flushReporters(List<BuildProblemReporter> batch) {
+		for (BuildProblemReporter reporter : batch) {
+			if (reporter.hasCategory(ProblemCategory.IMPORT)) {
+				state.recordImportProblem(reporter.resource.getFullPath());
+			}
+			reporter.flush(severityTranslator);
+		}
+	}
+
+}
@@ -38,6 +38,10 @@ public class BuildProblemReporter extends ProblemCollector {
 	}
 
 	public void flush(IProblemSeverityTranslator severityProvider) {
+		if (oldMarkersDeleted && problems.isEmpty()) {
+			// already flushed during the build
+			return;
+		}
 		try {
 			if (!oldMarkersDeleted) {
 				oldMarkersDeleted = true;
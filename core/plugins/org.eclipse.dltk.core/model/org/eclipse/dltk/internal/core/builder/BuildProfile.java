@@ -0,0 +1,344 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.builder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.RuntimePerformanceMonitor;
+import org.eclipse.dltk.core.builder.IBuildParticipant;
+
+/**
+ * The time spent by the build participants building the modules of a project,
+ * collected across a build.
+ * <p>
+ * The number of calls and the time of each participant are always collected.
+ * When detailed, e.g. while the {@link RuntimePerformanceMonitor} is active,
+ * the time of each module and the bytes allocated by the building thread are
+ * collected too, then published to the {@link RuntimePerformanceMonitor} and
+ * written as a JSON summary and a CSV list of the modules.
+ * </p>
+ */
+public class BuildProfile {
+
+	/**
+	 * Prefix of the {@link RuntimePerformanceMonitor} kinds of the
+	 * participants, followed by their class names
+	 */
+	public static final String BUILD_PARTICIPANT = "Build participant "; //$NON-NLS-1$
+
+	/**
+	 * The statistics of a participant.
+	 */
+	public static class ParticipantStats {
+		final String name;
+		final AtomicLong calls = new AtomicLong();
+		final AtomicLong time = new AtomicLong();
+		final AtomicLong allocated = new AtomicLong();
+
+		ParticipantStats(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getCalls() {
+			return calls.get();
+		}
+
+		/**
+		 * Returns the time in nanoseconds.
+		 */
+		public long getTime() {
+			return time.get();
+		}
+
+		/**
+		 * Returns the bytes allocated, 0 if not detailed.
+		 */
+		public long getAllocated() {
+			return allocated.get();
+		}
+	}
+
+	private static final class ModuleEntry {
+		final String module;
+		final ParticipantStats participant;
+		final long time;
+		final long allocated;
+
+		ModuleEntry(String module, ParticipantStats participant, long time,
+				long allocated) {
+			this.module = module;
+			this.participant = participant;
+			this.time = time;
+			this.allocated = allocated;
+		}
+	}
+
+	/**
+	 * The HotSpot thread bean and its method returning the bytes allocated by
+	 * a thread, initialized by the first detailed profile, so the allocated
+	 * memory is not measured while the {@link RuntimePerformanceMonitor} was
+	 * never active.
+	 */
+	private static final class AllocatedBytes {
+		static final Object threadBean = ManagementFactory.getThreadMXBean();
+		static final Method method = findMethod();
+
+		/**
+		 * Enables the measurement of the allocated memory and returns the
+		 * method of the thread bean returning the bytes allocated by a thread,
+		 * if supported.
+		 */
+		private static Method findMethod() {
+			try {
+				final Class<?> beanClass = Class
+						.forName("com.sun.management.ThreadMXBean"); //$NON-NLS-1$
+				if (!beanClass.isInstance(threadBean)
+						|| !((Boolean) beanClass
+								.getMethod("isThreadAllocatedMemorySupported") //$NON-NLS-1$
+								.invoke(threadBean)).booleanValue()) {
+					return null;
+				}
+				beanClass.getMethod("setThreadAllocatedMemoryEnabled", //$NON-NLS-1$
+						boolean.class).invoke(threadBean, Boolean.TRUE);
+				return beanClass.getMethod("getThreadAllocatedBytes", //$NON-NLS-1$
+						long.class);
+			} catch (Exception e) {
+				return null;
+			} catch (LinkageError e) {
+				return null;
+			}
+		}
+	}
+
+	private final String natureId;
+	private final boolean detailed;
+	private final Method allocatedBytesMethod;
+	private final ConcurrentHashMap<IBuildParticipant, ParticipantStats> participants = new ConcurrentHashMap<IBuildParticipant, ParticipantStats>();
+	private final ConcurrentLinkedQueue<ModuleEntry> modules = new ConcurrentLinkedQueue<ModuleEntry>();
+
+	/**
+	 * @param natureId
+	 * @param detailed
+	 *            <code>true</code> to collect the time of each module and the
+	 *            bytes allocated
+	 */
+	public BuildProfile(String natureId, boolean detailed) {
+		this.natureId = natureId;
+		this.detailed = detailed;
+		this.allocatedBytesMethod = detailed ? AllocatedBytes.method : null;
+	}
+
+	public boolean isDetailed() {
+		return detailed;
+	}
+
+	/**
+	 * Returns the bytes allocated so far by the current thread, to pass to
+	 * {@link #record(IBuildParticipant, String, long, long)}, or -1 if not
+	 * detailed or not supported.
+	 */
+	public long allocatedBytes() {
+		if (allocatedBytesMethod == null) {
+			return -1;
+		}
+		try {
+			return ((Long) allocatedBytesMethod.invoke(
+					AllocatedBytes.threadBean,
+					Long.valueOf(Thread.currentThread().getId()))).longValue();
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Records a call of the participant.
+	 *
+	 * @param participant
+	 * @param module
+	 *            the path of the module built
+	 * @param time
+	 *            the time of the call in nanoseconds
+	 * @param allocatedBefore
+	 *            the bytes allocated by the current thread before the call,
+	 *            as returned by {@link #allocatedBytes()}
+	 */
+	public void record(IBuildParticipant participant, String module,
+			long time, long allocatedBefore) {
+		final ParticipantStats stats = getStats(participant);
+		stats.calls.incrementAndGet();
+		stats.time.addAndGet(time);
+		if (detailed) {
+			long allocated = 0;
+			if (allocatedBefore >= 0) {
+				final long allocatedAfter = allocatedBytes();
+				if (allocatedAfter >= allocatedBefore) {
+					allocated = allocatedAfter - allocatedBefore;
+					stats.allocated.addAndGet(allocated);
+				}
+			}
+			modules.add(new ModuleEntry(module, stats, time, allocated));
+		}
+	}
+
+	private ParticipantStats getStats(IBuildParticipant participant) {
+		ParticipantStats stats = participants.get(participant);
+		if (stats == null) {
+			final ParticipantStats value = new ParticipantStats(
+					participant.getClass().getName());
+			stats = participants.putIfAbsent(participant, value);
+			if (stats == null) {
+				stats = value;
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Returns the statistics of the participants, the slowest first.
+	 */
+	public List<ParticipantStats> getParticipants() {
+		final List<ParticipantStats> result = new ArrayList<ParticipantStats>(
+				participants.values());
+		Collections.sort(result, new Comparator<ParticipantStats>() {
+			@Override
+			public int compare(ParticipantStats o1, ParticipantStats o2) {
+				return Long.compare(o2.getTime(), o1.getTime());
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Adds the statistics of the participants to the
+	 * {@link RuntimePerformanceMonitor}, the time in milliseconds and the
+	 * total being the bytes allocated.
+	 */
+	public void publish() {
+		for (ParticipantStats stats : getParticipants()) {
+			RuntimePerformanceMonitor.addData(natureId,
+					BUILD_PARTICIPANT + stats.getName(), stats.getCalls(),
+					TimeUnit.NANOSECONDS.toMillis(stats.getTime()),
+					stats.getAllocated());
+		}
+	}
+
+	/**
+	 * Writes the statistics of the participants as JSON.
+	 */
+	public void writeSummary(Writer writer, String projectName)
+			throws IOException {
+		writer.write("{\"project\":"); //$NON-NLS-1$
+		writeString(writer, projectName);
+		writer.write(",\"nature\":"); //$NON-NLS-1$
+		writeString(writer, natureId);
+		writer.write(",\"participants\":["); //$NON-NLS-1$
+		boolean first = true;
+		for (ParticipantStats stats : getParticipants()) {
+			if (!first) {
+				writer.write(',');
+			}
+			first = false;
+			writer.write("\n{\"name\":"); //$NON-NLS-1$
+			writeString(writer, stats.getName());
+			writer.write(",\"calls\":" + stats.getCalls() //$NON-NLS-1$
+					+ ",\"timeNanos\":" + stats.getTime() //$NON-NLS-1$
+					+ ",\"allocatedBytes\":" + stats.getAllocated() + "}"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		writer.write("]}\n"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Writes the time of each module and participant as CSV.
+	 */
+	public void writeModules(Writer writer) throws IOException {
+		writer.write("module,participant,timeNanos,allocatedBytes\n"); //$NON-NLS-1$
+		for (ModuleEntry entry : modules) {
+			writeCsv(writer, entry.module);
+			writer.write(',');
+			writeCsv(writer, entry.participant.getName());
+			writer.write("," + entry.time + "," + entry.allocated + "\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+	}
+
+	/**
+	 * Writes the report of the project to the directory, replacing the
+	 * report of its previous build.
+	 */
+	public void write(File directory, String projectName) {
+		directory.mkdirs();
+		final String fileName = projectName.replaceAll("[^\\w.-]", "_"); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			try (Writer writer = new OutputStreamWriter(
+					new FileOutputStream(new File(directory,
+							fileName + ".json")), //$NON-NLS-1$
+					StandardCharsets.UTF_8)) {
+				writeSummary(writer, projectName);
+			}
+			try (Writer writer = new OutputStreamWriter(
+					new FileOutputStream(new File(directory,
+							fileName + ".csv")), //$NON-NLS-1$
+					StandardCharsets.UTF_8)) {
+				writeModules(writer);
+			}
+		} catch (IOException e) {
+			DLTKCore.error("Error writing build profile of " + projectName, //$NON-NLS-1$
+					e);
+		}
+	}
+
+	private static void writeString(Writer writer, String value)
+			throws IOException {
+		writer.write('"');
+		for (int i = 0; i < value.length(); ++i) {
+			final char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				writer.write('\\');
+				writer.write(c);
+			} else if (c < 0x20) {
+				writer.write(String.format("\\u%04x", Integer.valueOf(c))); //$NON-NLS-1$
+			} else {
+				writer.write(c);
+			}
+		}
+		writer.write('"');
+	}
+
+	private static void writeCsv(Writer writer, String value)
+			throws IOException {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+				&& value.indexOf('\n') < 0) {
+			writer.write(value);
+			return;
+		}
+		writer.write('"');
+		writer.write(value.replace("\"", "\"\"")); //$NON-NLS-1$ //$NON-NLS-2$
+		writer.write('"');
+	}
+
+}
@@ -25,4 +25,9 @@ public class BuildStateStub extends AbstractBuildState {
 	@Override
 	public void recordDependency(IPath path, IPath dependency, int flags) {
 	}
+
+	@Override
+	public void recordDependency(IPath path, IPath dependency, String element,
+			int flags) {
+	}
 }
@@ -0,0 +1,590 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.builder;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.dltk.core.builder.IBuildState;
+import org.eclipse.dltk.utils.TextUtils;
+
+/**
+ * The dependencies between the modules of a project.
+ * <p>
+ * The modules and their elements (types, methods, etc) are interned as nodes
+ * identified by an <code>int</code>, each node keeping the arrays of the
+ * nodes it depends on with the flags of the dependencies and of the nodes
+ * depending on it with the indexes of these dependencies, so the modules to
+ * rebuild are found in the time proportional to the number of the affected
+ * dependencies.
+ * </p>
+ * <p>
+ * Only the modules depend on the other nodes. A dependency on an element of a
+ * module is triggered by the structural change of that element, or by any
+ * structural change of the module if its changed elements are unknown.
+ * </p>
+ */
+public class DependencyGraph {
+
+	static final byte VERSION = 1;
+
+	private static final int[] NO_INTS = new int[0];
+
+	/*
+	 * the path of each node, the path of the module for the elements
+	 */
+	private IPath[] paths;
+
+	/*
+	 * the name of each node, null for the modules
+	 */
+	private String[] elements;
+
+	/*
+	 * the nodes each module depends on and the flags of these dependencies
+	 */
+	private int[][] dependencies;
+	private int[][] dependencyFlags;
+	private int[] dependencyCounts;
+
+	/*
+	 * the modules depending on each node and the indexes of these
+	 * dependencies in the arrays of the modules
+	 */
+	private int[][] dependents;
+	private int[][] dependentEdges;
+	private int[] dependentCounts;
+
+	private int nodeCount;
+
+	private final Map<IPath, Integer> moduleIds;
+	private final Map<IPath, Map<String, Integer>> elementIds;
+
+	public DependencyGraph() {
+		paths = new IPath[16];
+		elements = new String[16];
+		dependencies = new int[16][];
+		dependencyFlags = new int[16][];
+		dependencyCounts = new int[16];
+		dependents = new int[16][];
+		dependentEdges = new int[16][];
+		dependentCounts = new int[16];
+		moduleIds = new HashMap<IPath, Integer>();
+		elementIds = new HashMap<IPath, Map<String, Integer>>();
+	}
+
+	private DependencyGraph(DependencyGraph source) {
+		final int length = source.paths.length;
+		nodeCount = source.nodeCount;
+		paths = Arrays.copyOf(source.paths, length);
+		elements = Arrays.copyOf(source.elements, length);
+		dependencies = copyOf(source.dependencies, source.dependencyCounts,
+				length);
+		dependencyFlags = copyOf(source.dependencyFlags,
+				source.dependencyCounts, length);
+		dependencyCounts = Arrays.copyOf(source.dependencyCounts, length);
+		dependents = copyOf(source.dependents, source.dependentCounts,
+				length);
+		dependentEdges = copyOf(source.dependentEdges, source.dependentCounts,
+				length);
+		dependentCounts = Arrays.copyOf(source.dependentCounts, length);
+		moduleIds = new HashMap<IPath, Integer>(source.moduleIds);
+		elementIds = new HashMap<IPath, Map<String, Integer>>();
+		for (Map.Entry<IPath, Map<String, Integer>> entry : source.elementIds
+				.entrySet()) {
+			elementIds.put(entry.getKey(),
+					new HashMap<String, Integer>(entry.getValue()));
+		}
+	}
+
+	private static int[][] copyOf(int[][] source, int[] counts, int length) {
+		final int[][] result = new int[length][];
+		for (int i = 0; i < length; ++i) {
+			if (source[i] != null && counts[i] != 0) {
+				result[i] = Arrays.copyOf(source[i], counts[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the copy of this graph.
+	 */
+	public synchronized DependencyGraph copy() {
+		return new DependencyGraph(this);
+	}
+
+	/**
+	 * Returns the number of the nodes, i.e. of the modules and the elements.
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	public synchronized void clear() {
+		Arrays.fill(paths, 0, nodeCount, null);
+		Arrays.fill(elements, 0, nodeCount, null);
+		Arrays.fill(dependencies, 0, nodeCount, null);
+		Arrays.fill(dependencyFlags, 0, nodeCount, null);
+		Arrays.fill(dependencyCounts, 0, nodeCount, 0);
+		Arrays.fill(dependents, 0, nodeCount, null);
+		Arrays.fill(dependentEdges, 0, nodeCount, null);
+		Arrays.fill(dependentCounts, 0, nodeCount, 0);
+		nodeCount = 0;
+		moduleIds.clear();
+		elementIds.clear();
+	}
+
+	private int addNode(IPath path, String element) {
+		if (nodeCount == paths.length) {
+			final int length = nodeCount * 2;
+			paths = Arrays.copyOf(paths, length);
+			elements = Arrays.copyOf(elements, length);
+			dependencies = Arrays.copyOf(dependencies, length);
+			dependencyFlags = Arrays.copyOf(dependencyFlags, length);
+			dependencyCounts = Arrays.copyOf(dependencyCounts, length);
+			dependents = Arrays.copyOf(dependents, length);
+			dependentEdges = Arrays.copyOf(dependentEdges, length);
+			dependentCounts = Arrays.copyOf(dependentCounts, length);
+		}
+		paths[nodeCount] = path;
+		elements[nodeCount] = element;
+		return nodeCount++;
+	}
+
+	private int moduleId(IPath path) {
+		final Integer id = moduleIds.get(path);
+		if (id != null) {
+			return id.intValue();
+		}
+		final int newId = addNode(path, null);
+		moduleIds.put(path, Integer.valueOf(newId));
+		return newId;
+	}
+
+	private int elementId(IPath path, String element) {
+		Map<String, Integer> ids = elementIds.get(path);
+		if (ids == null) {
+			// the module is numbered before its elements
+			moduleId(path);
+			ids = new HashMap<String, Integer>();
+			elementIds.put(path, ids);
+		}
+		final Integer id = ids.get(element);
+		if (id != null) {
+			return id.intValue();
+		}
+		final int newId = addNode(path, element);
+		ids.put(element, Integer.valueOf(newId));
+		return newId;
+	}
+
+	/**
+	 * Records the dependency of the module on the other module or on its
+	 * element.
+	 *
+	 * @param path
+	 *            the path of the module
+	 * @param dependency
+	 *            the path of the module it depends on
+	 * @param element
+	 *            the element of the dependency or <code>null</code> to depend
+	 *            on the whole module
+	 * @param flags
+	 *            the combination of the {@link IBuildState#STRUCTURAL},
+	 *            {@link IBuildState#CONTENT} and {@link IBuildState#EXPORTED}
+	 *            flags
+	 */
+	public synchronized void record(IPath path, IPath dependency,
+			String element, int flags) {
+		final int module = moduleId(path);
+		final int target = element != null ? elementId(dependency, element)
+				: moduleId(dependency);
+		final int count = dependencyCounts[module];
+		int[] targets = dependencies[module];
+		for (int i = 0; i < count; ++i) {
+			if (targets[i] == target) {
+				dependencyFlags[module][i] |= flags;
+				return;
+			}
+		}
+		if (targets == null) {
+			targets = dependencies[module] = new int[4];
+			dependencyFlags[module] = new int[4];
+		} else if (count == targets.length) {
+			targets = dependencies[module] = Arrays.copyOf(targets, count * 2);
+			dependencyFlags[module] = Arrays.copyOf(dependencyFlags[module],
+					count * 2);
+		}
+		targets[count] = target;
+		dependencyFlags[module][count] = flags;
+		dependencyCounts[module] = count + 1;
+		int[] sources = dependents[target];
+		final int sourceCount = dependentCounts[target];
+		if (sources == null) {
+			sources = dependents[target] = new int[4];
+			dependentEdges[target] = new int[4];
+		} else if (sourceCount == sources.length) {
+			sources = dependents[target] = Arrays.copyOf(sources,
+					sourceCount * 2);
+			dependentEdges[target] = Arrays.copyOf(dependentEdges[target],
+					sourceCount * 2);
+		}
+		sources[sourceCount] = module;
+		dependentEdges[target][sourceCount] = count;
+		dependentCounts[target] = sourceCount + 1;
+	}
+
+	/**
+	 * Removes the dependencies recorded by the specified modules.
+	 */
+	public synchronized void removeDependenciesOf(Collection<IPath> modules) {
+		final BitSet removed = new BitSet();
+		final BitSet targets = new BitSet();
+		for (IPath path : modules) {
+			final Integer id = moduleIds.get(path);
+			if (id == null) {
+				continue;
+			}
+			final int module = id.intValue();
+			removed.set(module);
+			for (int i = 0; i < dependencyCounts[module]; ++i) {
+				targets.set(dependencies[module][i]);
+			}
+			dependencies[module] = null;
+			dependencyFlags[module] = null;
+			dependencyCounts[module] = 0;
+		}
+		for (int target = targets.nextSetBit(0); target >= 0; target = targets
+				.nextSetBit(target + 1)) {
+			final int[] sources = dependents[target];
+			final int[] edges = dependentEdges[target];
+			final int count = dependentCounts[target];
+			int retained = 0;
+			for (int i = 0; i < count; ++i) {
+				if (!removed.get(sources[i])) {
+					edges[retained] = edges[i];
+					sources[retained++] = sources[i];
+				}
+			}
+			dependentCounts[target] = retained;
+			if (retained == 0) {
+				dependents[target] = null;
+				dependentEdges[target] = null;
+			}
+		}
+	}
+
+	/*
+	 * the flags of the dependency of the i-th module depending on the target
+	 */
+	private int dependentFlags(int target, int i) {
+		return dependencyFlags[dependents[target][i]][dependentEdges[target][i]];
+	}
+
+	/**
+	 * Finds the modules triggered by the changes of the specified modules.
+	 *
+	 * @param paths
+	 *            the paths of the changed modules
+	 * @param structuralChanges
+	 *            the paths of the structurally changed modules
+	 * @param elementChanges
+	 *            the structurally changed elements of the modules, all the
+	 *            elements of a structurally changed module being treated as
+	 *            changed if it is not there
+	 * @param result
+	 *            output parameter - the paths of the modules to rebuild
+	 * @param exported
+	 *            output parameter - the paths of the modules to treat as
+	 *            structurally changed
+	 */
+	public void findDependents(Collection<IPath> paths,
+			Set<IPath> structuralChanges,
+			Map<IPath, Set<String>> elementChanges, Collection<IPath> result,
+			Collection<IPath> exported) {
+		for (IPath path : paths) {
+			final boolean structural = structuralChanges.contains(path);
+			final Integer id = moduleIds.get(path);
+			if (id != null) {
+				collectDependents(id.intValue(), structural, result, exported);
+			}
+			final Map<String, Integer> ids = elementIds.get(path);
+			if (ids != null) {
+				final Set<String> changed = structural
+						? elementChanges.get(path) : null;
+				for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+					collectDependents(entry.getValue().intValue(),
+							structural && (changed == null
+									|| changed.contains(entry.getKey())),
+							result, exported);
+				}
+			}
+		}
+	}
+
+	private void collectDependents(int target, boolean structural,
+			Collection<IPath> result, Collection<IPath> exported) {
+		final int[] sources = dependents[target];
+		for (int i = 0; i < dependentCounts[target]; ++i) {
+			final int module = sources[i];
+			final int flags = dependentFlags(target, i);
+			if (structural || (flags & IBuildState.CONTENT) != 0) {
+				result.add(this.paths[module]);
+				if ((flags & IBuildState.EXPORTED) != 0) {
+					exported.add(this.paths[module]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the specified modules and all the modules depending on them
+	 * structurally, directly or transitively.
+	 */
+	public Collection<IPath> findAllStructuralDependents(
+			Collection<IPath> paths) {
+		final List<IPath> result = new ArrayList<IPath>();
+		final BitSet visited = new BitSet();
+		int[] queue = NO_INTS;
+		int queueSize = 0;
+		for (IPath path : paths) {
+			final Integer id = moduleIds.get(path);
+			if (id == null) {
+				result.add(path);
+			} else if (!visited.get(id.intValue())) {
+				visited.set(id.intValue());
+				result.add(path);
+				if (queueSize == queue.length) {
+					queue = Arrays.copyOf(queue, Math.max(16, queueSize * 2));
+				}
+				queue[queueSize++] = id.intValue();
+			}
+		}
+		for (int head = 0; head < queueSize; ++head) {
+			final int module = queue[head];
+			final Map<String, Integer> ids = elementIds.get(this.paths[module]);
+			final int targetCount = 1 + (ids != null ? ids.size() : 0);
+			final int[] targets = new int[targetCount];
+			targets[0] = module;
+			if (ids != null) {
+				int index = 1;
+				for (Integer id : ids.values()) {
+					targets[index++] = id.intValue();
+				}
+			}
+			for (int target : targets) {
+				final int[] sources = dependents[target];
+				for (int i = 0; i < dependentCounts[target]; ++i) {
+					final int source = sources[i];
+					if (!visited.get(source) && (dependentFlags(target, i)
+							& IBuildState.STRUCTURAL) != 0) {
+						visited.set(source);
+						result.add(this.paths[source]);
+						if (queueSize == queue.length) {
+							queue = Arrays.copyOf(queue, queueSize * 2);
+						}
+						queue[queueSize++] = source;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * the nodes having dependencies and the modules of such elements
+	 */
+	private BitSet getWrittenNodes() {
+		final BitSet written = new BitSet();
+		for (int i = 0; i < nodeCount; ++i) {
+			if (dependencyCounts[i] != 0 || dependentCounts[i] != 0) {
+				written.set(i);
+				if (elements[i] != null) {
+					written.set(moduleIds.get(paths[i]).intValue());
+				}
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Adds the paths of the modules written by
+	 * {@link #write(DataOutput, PathDictionary)} to the collection.
+	 */
+	public synchronized void collectModules(Collection<IPath> result) {
+		final BitSet written = getWrittenNodes();
+		for (int i = written.nextSetBit(0); i >= 0; i = written
+				.nextSetBit(i + 1)) {
+			if (elements[i] == null) {
+				result.add(paths[i]);
+			}
+		}
+	}
+
+	/**
+	 * Writes the nodes having dependencies, then the dependencies. The paths
+	 * of the modules are written as their identifiers in the dictionary, to
+	 * which they should be added before, see
+	 * {@link #collectModules(Collection)}.
+	 */
+	public synchronized void write(DataOutput out, PathDictionary dictionary)
+			throws IOException {
+		final BitSet written = getWrittenNodes();
+		// the modules are numbered before their elements
+		final int[] index = new int[nodeCount];
+		int moduleCount = 0;
+		for (int i = written.nextSetBit(0); i >= 0; i = written
+				.nextSetBit(i + 1)) {
+			if (elements[i] == null) {
+				index[i] = moduleCount++;
+			}
+		}
+		int count = moduleCount;
+		for (int i = written.nextSetBit(0); i >= 0; i = written
+				.nextSetBit(i + 1)) {
+			if (elements[i] != null) {
+				index[i] = count++;
+			}
+		}
+		out.writeByte(VERSION);
+		PathDictionary.writeVarInt(out, moduleCount);
+		for (int i = written.nextSetBit(0); i >= 0; i = written
+				.nextSetBit(i + 1)) {
+			if (elements[i] == null) {
+				PathDictionary.writeVarInt(out, dictionary.getId(paths[i]));
+			}
+		}
+		PathDictionary.writeVarInt(out, count - moduleCount);
+		for (int i = written.nextSetBit(0); i >= 0; i = written
+				.nextSetBit(i + 1)) {
+			if (elements[i] != null) {
+				PathDictionary.writeVarInt(out,
+						index[moduleIds.get(paths[i]).intValue()]);
+				out.writeUTF(elements[i]);
+			}
+		}
+		int dependentCount = 0;
+		for (int i = 0; i < nodeCount; ++i) {
+			if (dependencyCounts[i] != 0) {
+				++dependentCount;
+			}
+		}
+		PathDictionary.writeVarInt(out, dependentCount);
+		for (int i = 0; i < nodeCount; ++i) {
+			if (dependencyCounts[i] != 0) {
+				PathDictionary.writeVarInt(out, index[i]);
+				PathDictionary.writeVarInt(out, dependencyCounts[i]);
+				for (int j = 0; j < dependencyCounts[i]; ++j) {
+					PathDictionary.writeVarInt(out, index[dependencies[i][j]]);
+					PathDictionary.writeVarInt(out, dependencyFlags[i][j]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the graph written by {@link #write(DataOutput, PathDictionary)}.
+	 *
+	 * @return the graph or <code>null</code> if the format is not supported
+	 */
+	public static DependencyGraph read(DataInput in, PathDictionary dictionary)
+			throws IOException {
+		if (in.readByte() != VERSION) {
+			return null;
+		}
+		final DependencyGraph graph = new DependencyGraph();
+		final int moduleCount = PathDictionary.readVarInt(in);
+		for (int i = 0; i < moduleCount; ++i) {
+			graph.moduleId(dictionary.getPath(PathDictionary.readVarInt(in)));
+		}
+		final int elementCount = PathDictionary.readVarInt(in);
+		for (int i = 0; i < elementCount; ++i) {
+			final int module = PathDictionary.readVarInt(in);
+			if (module >= moduleCount) {
+				throw new IOException("Invalid dependency graph"); //$NON-NLS-1$
+			}
+			graph.elementId(graph.paths[module], in.readUTF());
+		}
+		final int dependentCount = PathDictionary.readVarInt(in);
+		for (int i = 0; i < dependentCount; ++i) {
+			final int module = graph.checkNode(PathDictionary.readVarInt(in));
+			final int dependencyCount = PathDictionary.readVarInt(in);
+			for (int j = 0; j < dependencyCount; ++j) {
+				final int target = graph
+						.checkNode(PathDictionary.readVarInt(in));
+				final int flags = PathDictionary.readVarInt(in);
+				graph.record(graph.paths[module], graph.paths[target],
+						graph.elements[target], flags);
+			}
+		}
+		return graph;
+	}
+
+	private int checkNode(int node) throws IOException {
+		if (node < 0 || node >= nodeCount) {
+			throw new IOException("Invalid dependency graph"); //$NON-NLS-1$
+		}
+		return node;
+	}
+
+	static String flagsToString(int flags) {
+		final List<String> values = new ArrayList<String>();
+		if ((flags & IBuildState.STRUCTURAL) != 0) {
+			values.add("STRUCTURAL");
+		}
+		if ((flags & IBuildState.CONTENT) != 0) {
+			values.add("CONTENT");
+		}
+		if ((flags & IBuildState.EXPORTED) != 0) {
+			values.add("EXPORTED");
+		}
+		return String.valueOf(flags) + (!values.isEmpty() ? ":" : "")
+				+ TextUtils.join(values, '|');
+	}
+
+	private String nodeToString(int node) {
+		return elements[node] != null ? paths[node] + "#" + elements[node] //$NON-NLS-1$
+				: paths[node].toString();
+	}
+
+	/**
+	 * Returns the dependencies, a line for each node having dependents.
+	 */
+	@Override
+	public synchronized String toString() {
+		final StringBuilder sb = new StringBuilder();
+		for (int target = 0; target < nodeCount; ++target) {
+			if (dependentCounts[target] == 0) {
+				continue;
+			}
+			sb.append("  ").append(nodeToString(target)).append(" -> {"); //$NON-NLS-1$ //$NON-NLS-2$
+			for (int i = 0; i < dependentCounts[target]; ++i) {
+				final int module = dependents[target][i];
+				if (i != 0) {
+					sb.append(", "); //$NON-NLS-1$
+				}
+				sb.append(paths[module]).append('=')
+						.append(flagsToString(dependentFlags(target, i)));
+			}
+			sb.append("}\n"); //$NON-NLS-1$
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.builder;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * The paths of a persisted {@link State}, written once and referenced by
+ * their identifiers.
+ * <p>
+ * Each path is written as the length of the prefix it shares with the
+ * previous one followed by the rest of it, the paths being sorted when
+ * added together. The paths read are only parsed when they are requested.
+ * </p>
+ */
+public class PathDictionary {
+
+	private final List<String> entries;
+	private final Map<String, Integer> ids;
+	private IPath[] paths;
+
+	public PathDictionary() {
+		entries = new ArrayList<String>();
+		ids = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * Creates the dictionary starting with the paths of the specified one,
+	 * so their identifiers are unchanged.
+	 */
+	public PathDictionary(PathDictionary source) {
+		entries = new ArrayList<String>(source.entries);
+		ids = new HashMap<String, Integer>(source.index());
+	}
+
+	private PathDictionary(List<String> entries) {
+		this.entries = entries;
+		this.ids = null;
+		this.paths = new IPath[entries.size()];
+	}
+
+	private Map<String, Integer> index() {
+		if (ids != null) {
+			return ids;
+		}
+		final Map<String, Integer> result = new HashMap<String, Integer>();
+		for (int i = 0; i < entries.size(); ++i) {
+			result.put(entries.get(i), Integer.valueOf(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the paths not in this dictionary yet, sorted.
+	 */
+	public void addAll(Collection<IPath> paths) {
+		final TreeSet<String> sorted = new TreeSet<String>();
+		for (IPath path : paths) {
+			final String value = path.toPortableString();
+			if (!ids.containsKey(value)) {
+				sorted.add(value);
+			}
+		}
+		for (String value : sorted) {
+			ids.put(value, Integer.valueOf(entries.size()));
+			entries.add(value);
+		}
+	}
+
+	/**
+	 * Returns the identifier of the path added to this dictionary.
+	 */
+	public int getId(IPath path) {
+		final Integer id = ids.get(path.toPortableString());
+		if (id == null) {
+			throw new IllegalArgumentException(path.toString());
+		}
+		return id.intValue();
+	}
+
+	/**
+	 * Returns the path with the specified identifier.
+	 */
+	public IPath getPath(int id) throws IOException {
+		if (id < 0 || id >= entries.size()) {
+			throw new IOException("Invalid path identifier " + id); //$NON-NLS-1$
+		}
+		if (paths == null || paths.length != entries.size()) {
+			paths = new IPath[entries.size()];
+		}
+		IPath path = paths[id];
+		if (path == null) {
+			path = paths[id] = Path.fromPortableString(entries.get(id));
+		}
+		return path;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public void write(DataOutput out) throws IOException {
+		writeVarInt(out, entries.size());
+		String previous = ""; //$NON-NLS-1$
+		for (String value : entries) {
+			final int limit = Math.min(previous.length(), value.length());
+			int prefix = 0;
+			while (prefix < limit
+					&& previous.charAt(prefix) == value.charAt(prefix)) {
+				++prefix;
+			}
+			if (prefix > 0
+					&& Character.isHighSurrogate(value.charAt(prefix - 1))) {
+				--prefix;
+			}
+			final byte[] suffix = value.substring(prefix)
+					.getBytes(StandardCharsets.UTF_8);
+			writeVarInt(out, prefix);
+			writeVarInt(out, suffix.length);
+			out.write(suffix);
+			previous = value;
+		}
+	}
+
+	public static PathDictionary read(DataInput in) throws IOException {
+		final int count = readVarInt(in);
+		final List<String> entries = new ArrayList<String>(count);
+		String previous = ""; //$NON-NLS-1$
+		for (int i = 0; i < count; ++i) {
+			final int prefix = readVarInt(in);
+			final byte[] suffix = new byte[readVarInt(in)];
+			in.readFully(suffix);
+			if (prefix > previous.length()) {
+				throw new IOException("Invalid path dictionary"); //$NON-NLS-1$
+			}
+			previous = previous.substring(0, prefix)
+					+ new String(suffix, StandardCharsets.UTF_8);
+			entries.add(previous);
+		}
+		return new PathDictionary(entries);
+	}
+
+	/**
+	 * Writes the non-negative value using 7 bits of each byte, the high bit
+	 * marking the bytes followed by others.
+	 */
+	public static void writeVarInt(DataOutput out, int value)
+			throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	public static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid variable-length integer"); //$NON-NLS-1$
+	}
+}
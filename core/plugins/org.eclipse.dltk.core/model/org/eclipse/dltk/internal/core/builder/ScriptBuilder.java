@@ -158,6 +158,10 @@ public class ScriptBuilder extends IncrementalProjectBuilder {
 					if (DEBUG)
 						log("Performing full build since last saved state was not found"); //$NON-NLS-1$
 					fullBuild(monitor);
+				} else if (!this.lastState.readDependencies()) {
+					if (DEBUG)
+						log("Performing full build since the dependencies of the last saved state are corrupted"); //$NON-NLS-1$
+					fullBuild(monitor);
 				} else {
 					IResourceDelta delta = getDelta(getProject());
 					if (delta == null) {
@@ -289,6 +293,13 @@ public class ScriptBuilder extends IncrementalProjectBuilder {
 			Assert.isTrue(flags != 0);
 			this.state.recordDependency(path, dependency, flags);
 		}
+
+		@Override
+		public void recordDependency(IPath path, IPath dependency,
+				String element, int flags) {
+			Assert.isTrue(flags != 0);
+			this.state.recordDependency(path, dependency, element, flags);
+		}
 	}
 
 	@Override
@@ -577,7 +588,8 @@ public class ScriptBuilder extends IncrementalProjectBuilder {
 								.getAllStructuralDependencies(projectChanges));
 					}
 					this.lastState.findDependenciesOf(projectChanges,
-							buildState.getStructuralChanges(), false, queue,
+							buildState.getStructuralChanges(),
+							buildState.getElementChanges(), false, queue,
 							newStructuralChanges);
 				}
 				final IWorkspaceRoot root = ResourcesPlugin.getWorkspace()
@@ -591,6 +603,7 @@ public class ScriptBuilder extends IncrementalProjectBuilder {
 				for (int iterationNumber = 0;; ++iterationNumber) {
 					this.lastState.findDependenciesOf(changes,
 							buildState.getStructuralChanges(),
+							buildState.getElementChanges(),
 							iterationNumber == 0, queue, newStructuralChanges);
 					queue.removeAll(processed);
 					if (queue.isEmpty()) {
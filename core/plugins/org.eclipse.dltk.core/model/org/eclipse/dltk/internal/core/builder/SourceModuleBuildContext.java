@@ -18,6 +18,7 @@ import org.eclipse.dltk.compiler.problem.IProblemReporter;
 import org.eclipse.dltk.compiler.task.ITaskReporter;
 import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.core.builder.IBuildState;
+import org.eclipse.dltk.core.builder.IBuildStateExtension;
 import org.eclipse.dltk.core.environment.IFileHandle;
 
 public class SourceModuleBuildContext extends AbstractBuildContext {
@@ -60,4 +61,17 @@ public class SourceModuleBuildContext extends AbstractBuildContext {
 					dependency, flags);
 		}
 	}
+
+	@Override
+	public void recordDependency(IPath dependency, String element, int flags) {
+		if (buildState instanceof IBuildStateExtension) {
+			if (reporter != null) {
+				((IBuildStateExtension) buildState).recordDependency(
+						reporter.resource.getFullPath(), dependency, element,
+						flags);
+			}
+		} else {
+			recordDependency(dependency, flags);
+		}
+	}
 }
@@ -13,19 +13,19 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.SubProgressMonitor;
-import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.dltk.compiler.problem.DefaultProblemFactory;
 import org.eclipse.dltk.compiler.problem.IProblemFactory;
 import org.eclipse.dltk.compiler.problem.IProblemReporter;
@@ -37,6 +37,7 @@ import org.eclipse.dltk.core.DLTKLanguageManager;
 import org.eclipse.dltk.core.IDLTKLanguageToolkit;
 import org.eclipse.dltk.core.IScriptProject;
 import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.RuntimePerformanceMonitor;
 import org.eclipse.dltk.core.builder.IBuildChange;
 import org.eclipse.dltk.core.builder.IBuildContext;
 import org.eclipse.dltk.core.builder.IBuildParticipant;
@@ -55,36 +56,26 @@ public class StandardScriptBuilder implements IScriptBuilder {
 	private static final boolean DEBUG = false;
 
 	private static final int WORK_BUILD = 100;
-	private static final int PARALLEL_THRESHOLD = 10;
 
-	private class BuildModulesJob extends Job {
-
-		private Queue<ISourceModule> modules;
-		private int buildType;
-		private IBuildState state;
-
-		public BuildModulesJob(Queue<ISourceModule> modules, int buildType,
-				IBuildState state) {
-			super("Build Modules"); //$NON-NLS-1$
-			this.setSystem(true);
-			this.modules = modules;
-			this.buildType = buildType;
-			this.state = state;
-		}
+	/**
+	 * Directory of the reports of the build participants, in the state
+	 * location
+	 */
+	private static final String BUILD_PROFILES = "buildProfiles"; //$NON-NLS-1$
 
+	private static final BuildExecutor.Sizer<ISourceModule> MODULE_SIZER = new BuildExecutor.Sizer<ISourceModule>() {
 		@Override
-		protected IStatus run(IProgressMonitor monitor) {
-			for (ISourceModule module; (module = modules.poll()) != null;) {
-				if (monitor.isCanceled()) {
-					return Status.CANCEL_STATUS;
-				}
-				processModule(module, buildType, state);
-			}
-			return Status.OK_STATUS;
+		public long sizeOf(ISourceModule module) {
+			final IResource resource = module.getResource();
+			final IPath location = resource != null ? resource.getLocation()
+					: null;
+			return location != null ? location.toFile().length() : 0;
 		}
-	}
+	};
 
 	private List<IProblemReporter> fReporters = null;
+	private BuildProblemFlusher fFlusher = null;
+	private BuildProfile fProfile = null;
 
 	@Override
 	public void prepare(IBuildChange change, IBuildState state,
@@ -199,16 +190,29 @@ public class StandardScriptBuilder implements IScriptBuilder {
 				fReporters = Collections.synchronizedList(
 						new ArrayList<IProblemReporter>(modules.size()));
 			}
+			if (BuildProblemFlusher.BATCH_SIZE > 0) {
+				fFlusher = new BuildProblemFlusher(
+						BuildProblemFlusher.BATCH_SIZE,
+						problemFactory.createSeverityTranslator(project),
+						state);
+			}
 
-			int availableProcessors = Runtime.getRuntime()
-					.availableProcessors();
-			if (modules.size() >= PARALLEL_THRESHOLD
-					&& availableProcessors > 2) {
+			if (BuildExecutor.isParallel(modules.size())) {
 				processInParallel(modules, buildType, state, project, monitor);
 			} else {
 				processInSingleThread(modules, buildType, state, monitor);
 			}
 		} finally {
+			if (fFlusher != null) {
+				fFlusher.close();
+				try {
+					fFlusher.flush(0, true);
+				} catch (InterruptedException e) {
+					// flushed at the end of the build
+					Thread.currentThread().interrupt();
+				}
+				fFlusher = null;
+			}
 			monitor.done();
 			if (DEBUG) {
 				System.out.println("Build " + project.getElementName() + "(" //$NON-NLS-1$ //$NON-NLS-2$
@@ -225,58 +229,76 @@ public class StandardScriptBuilder implements IScriptBuilder {
 			if (monitor.isCanceled()) {
 				return;
 			}
+			if (Thread.currentThread().isInterrupted()) {
+				// the built modules are flushed at the end of the build
+				throw new OperationCanceledException();
+			}
 			final ISourceModule module = j.next();
 			monitor.subTask(NLS.bind(
 					Messages.ValidatorBuilder_buildModuleSubTask,
 					(int) ((numberOfScannedFiles * 100f) / modules.size()),
 					module.getElementName()));
 			processModule(module, buildType, state);
+			if (fFlusher != null) {
+				try {
+					fFlusher.flush(0, false);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new OperationCanceledException();
+				}
+			}
 			monitor.worked(1);
 			++numberOfScannedFiles;
 		}
 	}
 
 	private void processInParallel(final List<ISourceModule> modules,
-			int buildType, IBuildState state, final IScriptProject project,
-			final IProgressMonitor monitor) {
-		final Queue<ISourceModule> queue = new ArrayBlockingQueue<ISourceModule>(
-				modules.size(), true, modules);
-
-		int maxThreads = Math.min(modules.size() / 2,
-				Runtime.getRuntime().availableProcessors());
-
-		List<Job> jobs = new ArrayList<Job>(maxThreads);
+			final int buildType, final IBuildState state,
+			final IScriptProject project, final IProgressMonitor monitor) {
+		final BuildExecutor.Execution<ISourceModule> execution = BuildExecutor
+				.execute(modules, MODULE_SIZER,
+						new BuildExecutor.Processor<ISourceModule>() {
+							@Override
+							public void process(ISourceModule module) {
+								processModule(module, buildType, state);
+							}
+						});
 		try {
-			for (int i = 0; i < maxThreads; i++) {
-				Job job = new BuildModulesJob(queue, buildType, state);
-				job.schedule();
-				jobs.add(job);
-			}
 			int lastNumberOfScannedFiles = 0;
-			for (Job job : jobs) {
-				while (!job.join(100, null)) {
-					if (monitor.isCanceled()) {
-						for (Job tmpJob : jobs) {
-							tmpJob.cancel();
-						}
-						continue;
-					}
-					int numberOfScannedFiles = modules.size() - queue.size();
-					monitor.subTask(NLS.bind(
-							Messages.ValidatorBuilder_buildModuleSubTask,
-							(int) ((numberOfScannedFiles * 100f)
-									/ modules.size()),
-							project.getElementName()));
-					int steps = numberOfScannedFiles - lastNumberOfScannedFiles;
-					monitor.worked(steps);
-					lastNumberOfScannedFiles += steps;
+			for (;;) {
+				final boolean completed;
+				if (fFlusher != null) {
+					// wait for a batch instead of the workers
+					fFlusher.flush(100, false);
+					completed = execution.await(0);
+				} else {
+					completed = execution.await(100);
 				}
+				if (completed) {
+					break;
+				}
+				if (monitor.isCanceled()) {
+					// the modules being built are completed
+					execution.cancel();
+					continue;
+				}
+				int numberOfScannedFiles = execution.getProcessedCount();
+				monitor.subTask(NLS.bind(
+						Messages.ValidatorBuilder_buildModuleSubTask,
+						(int) ((numberOfScannedFiles * 100f) / modules.size()),
+						project.getElementName()));
+				int steps = numberOfScannedFiles - lastNumberOfScannedFiles;
+				monitor.worked(steps);
+				lastNumberOfScannedFiles += steps;
 			}
-		} catch (OperationCanceledException e) {
-			DLTKCore.error(e);
 		} catch (InterruptedException e) {
+			execution.cancel();
+			Thread.currentThread().interrupt();
 			DLTKCore.error(e);
 		}
+		if (execution.isCanceled()) {
+			throw new OperationCanceledException();
+		}
 	}
 
 	private void processModule(ISourceModule module, int buildType,
@@ -286,6 +308,15 @@ public class StandardScriptBuilder implements IScriptBuilder {
 		if (context.reporter != null) {
 			buildModule(context);
 			fReporters.add(context.reporter);
+			final BuildProblemFlusher flusher = fFlusher;
+			if (flusher != null) {
+				try {
+					flusher.add(context.reporter);
+				} catch (InterruptedException e) {
+					// flushed at the end of the build
+					Thread.currentThread().interrupt();
+				}
+			}
 		}
 	}
 
@@ -339,9 +370,16 @@ public class StandardScriptBuilder implements IScriptBuilder {
 				return;
 			}
 		}
+		final BuildProfile profile = fProfile;
+		final String path = profile.isDetailed()
+				? context.getSourceModule().getPath().toString() : null;
 		try {
 			for (int k = 0; k < selected.length; ++k) {
+				final long allocated = profile.allocatedBytes();
+				final long start = System.nanoTime();
 				selected[k].build(context);
+				profile.record(selected[k], path, System.nanoTime() - start,
+						allocated);
 			}
 		} catch (CoreException e) {
 			DLTKCore.error(Messages.StandardScriptBuilder_errorBuildingModule,
@@ -356,6 +394,24 @@ public class StandardScriptBuilder implements IScriptBuilder {
 		}
 	}
 
+	private static void reportProfile(IScriptProject project,
+			BuildProfile profile) {
+		if (ScriptBuilder.TRACE) {
+			for (BuildProfile.ParticipantStats stats : profile
+					.getParticipants()) {
+				System.out.println(stats.getName() + " " + stats.getCalls() //$NON-NLS-1$
+						+ " modules " //$NON-NLS-1$
+						+ TimeUnit.NANOSECONDS.toMillis(stats.getTime())
+						+ "ms"); //$NON-NLS-1$
+			}
+		}
+		if (profile.isDetailed() && !profile.getParticipants().isEmpty()) {
+			profile.publish();
+			profile.write(DLTKCore.getDefault().getStateLocation()
+					.append(BUILD_PROFILES).toFile(), project.getElementName());
+		}
+	}
+
 	protected IStatus buildResources(List<IFile> resources,
 			IProgressMonitor monitor) {
 		try {
@@ -425,6 +481,8 @@ public class StandardScriptBuilder implements IScriptBuilder {
 		filters = BuildParticipantManager.getFilters(project,
 				toolkit.getNatureId(), this);
 		problemFactory = createProblemFactory();
+		fProfile = new BuildProfile(toolkit.getNatureId(),
+				RuntimePerformanceMonitor.isActive());
 		beginBuildDone = false;
 		endBuildNeeded = false;
 		return true;
@@ -454,6 +512,10 @@ public class StandardScriptBuilder implements IScriptBuilder {
 			}
 			endBuildNeeded = false;
 		}
+		if (fProfile != null) {
+			reportProfile(project, fProfile);
+			fProfile = null;
+		}
 		if (fReporters != null) {
 			final IProblemSeverityTranslator severityTranslator = problemFactory
 					.createSeverityTranslator(project);
@@ -9,6 +9,8 @@
  *******************************************************************************/
 package org.eclipse.dltk.internal.core.builder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -16,9 +18,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -28,8 +28,7 @@ import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.dltk.compiler.util.SimpleLookupTable;
-import org.eclipse.dltk.core.builder.IBuildState;
-import org.eclipse.dltk.utils.TextUtils;
+import org.eclipse.dltk.core.DLTKCore;
 
 public class State {
 	// NOTE: this state cannot contain types that are not defined in this
@@ -47,46 +46,36 @@ public class State {
 	 * <li>0x16 boolean noCleanExternalFolders is always present
 	 * <li>0x17 dependencies
 	 * <li>0x18 dependencies + flags
+	 * <li>0x1A path dictionary, path identifiers, lazily read dependency
+	 * graph
 	 * </ul>
 	 **/
-	public static final byte VERSION = 0x0018;
+	public static final byte VERSION = 0x001A;
+
+	private static final byte VERSION_DEPENDENCY_FLAGS = 0x0018;
 
 	Set<IPath> externalFolderLocations = new HashSet<IPath>();
 
 	boolean noCleanExternalFolders = false;
 
-	static class DependencyInfo {
-		int flags;
-
-		public DependencyInfo() {
-		}
-
-		public DependencyInfo(DependencyInfo source) {
-			this.flags = source.flags;
-		}
+	/**
+	 * The dependencies between the modules, identified by their full
+	 * (absolute, including project) paths. <code>null</code> until the
+	 * {@link #dependencyData} are decoded.
+	 */
+	private DependencyGraph dependencies = new DependencyGraph();
 
-		@Override
-		public String toString() {
-			final List<String> values = new ArrayList<String>();
-			if ((flags & IBuildState.STRUCTURAL) != 0) {
-				values.add("STRUCTURAL");
-			}
-			if ((flags & IBuildState.CONTENT) != 0) {
-				values.add("CONTENT");
-			}
-			if ((flags & IBuildState.EXPORTED) != 0) {
-				values.add("EXPORTED");
-			}
-			return String.valueOf(flags) + (!values.isEmpty() ? ":" : "")
-					+ TextUtils.join(values, '|');
-		}
-	}
+	/*
+	 * the dependency graph read and the dictionary of its paths, decoded when
+	 * the dependencies are first used
+	 */
+	private byte[] dependencyData;
+	private PathDictionary dependencyPaths;
 
-	/**
-	 * Full (absolute,including project) path to the set of paths, depending on
-	 * it.
+	/*
+	 * if the dependency graph read could not be decoded
 	 */
-	private final Map<IPath, Map<IPath, DependencyInfo>> dependencies = new HashMap<IPath, Map<IPath, DependencyInfo>>();
+	private boolean corruptedDependencies;
 
 	private final Set<IPath> importProblems = new HashSet<IPath>();
 
@@ -126,8 +115,18 @@ public class State {
 		this.externalFolderLocations.clear();
 		this.externalFolderLocations.addAll(lastState.externalFolderLocations);
 		this.noCleanExternalFolders = false;
-		this.dependencies.clear();
-		this.dependencies.putAll(lastState.dependencies);
+		synchronized (lastState) {
+			if (lastState.dependencies == null) {
+				this.dependencies = null;
+				this.dependencyData = lastState.dependencyData;
+				this.dependencyPaths = lastState.dependencyPaths;
+			} else if (lastState.corruptedDependencies) {
+				this.dependencies = new DependencyGraph();
+				this.corruptedDependencies = true;
+			} else {
+				this.dependencies = lastState.dependencies.copy();
+			}
+		}
 		this.importProblems.clear();
 		this.importProblems.addAll(lastState.importProblems);
 	}
@@ -147,7 +146,8 @@ public class State {
 	static State read(IProject project, DataInputStream in) throws IOException {
 		if (ScriptBuilder.DEBUG)
 			System.out.println("About to read state " + project.getName()); //$NON-NLS-1$
-		if (VERSION != in.readByte()) {
+		final byte version = in.readByte();
+		if (VERSION != version && VERSION_DEPENDENCY_FLAGS != version) {
 			if (ScriptBuilder.DEBUG)
 				System.out
 						.println("Found non-compatible state version... answered null for " + project.getName()); //$NON-NLS-1$
@@ -164,25 +164,38 @@ public class State {
 		newState.buildNumber = in.readInt();
 		newState.lastStructuralBuildTime = in.readLong();
 
-		int length = in.readInt();
-		newState.externalFolderLocations.clear();
-		for (int i = 0; i < length; i++) {
-			String folderName = in.readUTF();
-			if (folderName.length() > 0)
-				newState.externalFolderLocations.add(Path
-						.fromPortableString(folderName));
-		}
-		newState.noCleanExternalFolders = in.readBoolean();
-		final int dependencyCount = in.readInt();
-		newState.dependencies.clear();
-		for (int i = 0; i < dependencyCount; ++i) {
-			final Map<IPath, DependencyInfo> paths = new HashMap<IPath, DependencyInfo>();
-			newState.dependencies.put(Path.fromPortableString(in.readUTF()),
-					paths);
-			readDependencyPaths(in, paths);
+		if (version == VERSION) {
+			final PathDictionary dictionary = PathDictionary.read(in);
+			readPathIds(in, dictionary, newState.externalFolderLocations);
+			newState.noCleanExternalFolders = in.readBoolean();
+			readPathIds(in, dictionary, newState.importProblems);
+			final byte[] data = new byte[PathDictionary.readVarInt(in)];
+			in.readFully(data);
+			if (data.length == 0 || data[0] != DependencyGraph.VERSION) {
+				if (ScriptBuilder.DEBUG)
+					System.out
+							.println("Found non-compatible dependency graph version... answered null for " + project.getName()); //$NON-NLS-1$
+				return null;
+			}
+			newState.dependencies = null;
+			newState.dependencyData = data;
+			newState.dependencyPaths = dictionary;
+		} else {
+			int length = in.readInt();
+			for (int i = 0; i < length; i++) {
+				String folderName = in.readUTF();
+				if (folderName.length() > 0)
+					newState.externalFolderLocations.add(Path
+							.fromPortableString(folderName));
+			}
+			newState.noCleanExternalFolders = in.readBoolean();
+			final int dependencyCount = in.readInt();
+			for (int i = 0; i < dependencyCount; ++i) {
+				readDependencyPaths(in, newState.dependencies,
+						Path.fromPortableString(in.readUTF()));
+			}
+			readPaths(in, newState.importProblems);
 		}
-		newState.importProblems.clear();
-		readPaths(in, newState.importProblems);
 		if (ScriptBuilder.DEBUG)
 			System.out
 					.println("Successfully read state for " + newState.scriptProjectName); //$NON-NLS-1$
@@ -221,57 +234,80 @@ public class State {
 		out.writeLong(lastStructuralBuildTime);
 
 		/*
-		 * ClasspathMultiDirectory[] int id String path(s)
+		 * path dictionary, then the identifiers of the paths
 		 */
-		out.writeInt(externalFolderLocations.size());
-		for (Iterator<IPath> iterator = this.externalFolderLocations.iterator(); iterator
-				.hasNext();) {
-			IPath path = iterator.next();
-			out.writeUTF(path.toPortableString());
+		final PathDictionary dictionary;
+		byte[] data;
+		synchronized (this) {
+			if (dependencies == null) {
+				// not decoded, written as read
+				dictionary = new PathDictionary(dependencyPaths);
+				data = dependencyData;
+			} else {
+				dictionary = new PathDictionary();
+				data = null;
+			}
 		}
+		final List<IPath> paths = new ArrayList<IPath>();
+		paths.addAll(externalFolderLocations);
+		paths.addAll(importProblems);
+		if (data == null) {
+			dependencies.collectModules(paths);
+		}
+		dictionary.addAll(paths);
+		dictionary.write(out);
+		writePathIds(out, dictionary, externalFolderLocations);
 		out.writeBoolean(this.noCleanExternalFolders);
-		out.writeInt(dependencies.size());
-		for (Map.Entry<IPath, Map<IPath, DependencyInfo>> entry : dependencies
-				.entrySet()) {
-			out.writeUTF(entry.getKey().toPortableString());
-			writeDependencyPaths(out, entry.getValue());
+		writePathIds(out, dictionary, importProblems);
+
+		/*
+		 * int length, dependency graph
+		 */
+		if (data == null) {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			dependencies.write(new DataOutputStream(bytes), dictionary);
+			data = bytes.toByteArray();
 		}
-		writePaths(out, importProblems);
+		PathDictionary.writeVarInt(out, data.length);
+		out.write(data);
 	}
 
-	private static void readPaths(DataInputStream in, Collection<IPath> paths)
+	private static void readPathIds(DataInputStream in,
+			PathDictionary dictionary, Collection<IPath> paths)
 			throws IOException {
-		final int pathCount = in.readInt();
+		final int pathCount = PathDictionary.readVarInt(in);
 		for (int j = 0; j < pathCount; ++j) {
-			paths.add(Path.fromPortableString(in.readUTF()));
+			paths.add(dictionary.getPath(PathDictionary.readVarInt(in)));
 		}
 	}
 
-	private void writePaths(DataOutputStream out, Collection<IPath> paths)
+	private static void writePathIds(DataOutputStream out,
+			PathDictionary dictionary, Collection<IPath> paths)
 			throws IOException {
-		out.writeInt(paths.size());
+		PathDictionary.writeVarInt(out, paths.size());
 		for (IPath path : paths) {
-			out.writeUTF(path.toPortableString());
+			PathDictionary.writeVarInt(out, dictionary.getId(path));
 		}
 	}
 
-	private static void readDependencyPaths(DataInputStream in,
-			Map<IPath, DependencyInfo> paths) throws IOException {
+	private static void readPaths(DataInputStream in, Collection<IPath> paths)
+			throws IOException {
 		final int pathCount = in.readInt();
 		for (int j = 0; j < pathCount; ++j) {
-			final IPath path = Path.fromPortableString(in.readUTF());
-			final DependencyInfo depInfo = new DependencyInfo();
-			depInfo.flags = in.readInt();
-			paths.put(path, depInfo);
+			paths.add(Path.fromPortableString(in.readUTF()));
 		}
 	}
 
-	private void writeDependencyPaths(DataOutputStream out,
-			Map<IPath, DependencyInfo> paths) throws IOException {
-		out.writeInt(paths.size());
-		for (Map.Entry<IPath, DependencyInfo> entry : paths.entrySet()) {
-			out.writeUTF(entry.getKey().toPortableString());
-			out.writeInt(entry.getValue().flags);
+	/*
+	 * Reads the paths depending on the dependency, as written in the
+	 * VERSION_DEPENDENCY_FLAGS format.
+	 */
+	private static void readDependencyPaths(DataInputStream in,
+			DependencyGraph graph, IPath dependency) throws IOException {
+		final int pathCount = in.readInt();
+		for (int j = 0; j < pathCount; ++j) {
+			final IPath path = Path.fromPortableString(in.readUTF());
+			graph.record(path, dependency, null, in.readInt());
 		}
 	}
 
@@ -293,41 +329,66 @@ public class State {
 		this.noCleanExternalFolders = true;
 	}
 
+	/**
+	 * Decodes the dependencies read if not done yet.
+	 * 
+	 * @return <code>false</code> if they are corrupted, so they are empty and
+	 *         the project should be fully built
+	 */
+	public synchronized boolean readDependencies() {
+		if (dependencies == null) {
+			try {
+				dependencies = DependencyGraph.read(new DataInputStream(
+						new ByteArrayInputStream(dependencyData)),
+						dependencyPaths);
+			} catch (IOException e) {
+				DLTKCore.error("Error reading dependencies of " //$NON-NLS-1$
+						+ scriptProjectName, e);
+			}
+			if (dependencies == null) {
+				dependencies = new DependencyGraph();
+				corruptedDependencies = true;
+			}
+			dependencyData = null;
+			dependencyPaths = null;
+		}
+		return !corruptedDependencies;
+	}
+
+	/**
+	 * Returns the dependencies between the modules.
+	 */
+	public synchronized DependencyGraph getDependencies() {
+		readDependencies();
+		return dependencies;
+	}
+
 	protected void recordImportProblem(IPath path) {
 		Assert.isLegal(scriptProjectName.equals(path.segment(0)));
 		importProblems.add(path);
 	}
 
 	protected void recordDependency(IPath path, IPath dependency, int flags) {
+		recordDependency(path, dependency, null, flags);
+	}
+
+	protected void recordDependency(IPath path, IPath dependency,
+			String element, int flags) {
 		Assert.isLegal(scriptProjectName.equals(path.segment(0)));
 		Assert.isLegal(!path.equals(dependency));
-		Map<IPath, DependencyInfo> paths = dependencies.get(dependency);
-		if (paths == null) {
-			paths = new HashMap<IPath, DependencyInfo>();
-			dependencies.put(dependency, paths);
-		}
-		DependencyInfo depInfo = paths.get(path);
-		if (depInfo == null) {
-			depInfo = new DependencyInfo();
-			paths.put(path, depInfo);
-		}
-		depInfo.flags |= flags;
+		getDependencies().record(path, dependency, element, flags);
 	}
 
-	protected void resetDependencies() {
-		dependencies.clear();
+	protected synchronized void resetDependencies() {
+		dependencies = new DependencyGraph();
+		dependencyData = null;
+		dependencyPaths = null;
+		corruptedDependencies = false;
 		importProblems.clear();
 	}
 
 	protected void removeDependenciesFor(Set<IPath> paths) {
-		for (Iterator<Map.Entry<IPath, Map<IPath, DependencyInfo>>> i = dependencies
-				.entrySet().iterator(); i.hasNext();) {
-			final Map.Entry<IPath, Map<IPath, DependencyInfo>> entry = i.next();
-			if (entry.getValue().keySet().removeAll(paths)
-					&& entry.getValue().isEmpty()) {
-				i.remove();
-			}
-		}
+		getDependencies().removeDependenciesOf(paths);
 		importProblems.removeAll(paths);
 	}
 
@@ -341,6 +402,9 @@ public class State {
 	 * @param structuralChanges
 	 *            input parameter - paths of the structurally changed files
 	 *            (subset of {@code paths})
+	 * @param elementChanges
+	 *            input parameter - the structurally changed elements of the
+	 *            files, if known
 	 * @param includeImportProblems
 	 *            if all the files with import problems should be included
 	 * @param newDependencies
@@ -350,27 +414,15 @@ public class State {
 	 *            as structurally changed
 	 */
 	protected void findDependenciesOf(Collection<IPath> paths,
-			Set<IPath> structuralChanges, boolean includeImportProblems,
-			Collection<IPath> newDependencies,
+			Set<IPath> structuralChanges,
+			Map<IPath, Set<String>> elementChanges,
+			boolean includeImportProblems, Collection<IPath> newDependencies,
 			Collection<IPath> newStructuralDependencies) {
 		if (includeImportProblems && !structuralChanges.isEmpty()) {
 			newDependencies.addAll(importProblems);
 		}
-		for (IPath path : paths) {
-			final boolean structuralChange = structuralChanges.contains(path);
-			final Map<IPath, DependencyInfo> deps = dependencies.get(path);
-			if (deps != null) {
-				for (Map.Entry<IPath, DependencyInfo> entry : deps.entrySet()) {
-					if (structuralChange
-							|| ((entry.getValue().flags & IBuildState.CONTENT) != 0)) {
-						newDependencies.add(entry.getKey());
-						if ((entry.getValue().flags & IBuildState.EXPORTED) != 0) {
-							newStructuralDependencies.add(entry.getKey());
-						}
-					}
-				}
-			}
-		}
+		getDependencies().findDependents(paths, structuralChanges, elementChanges,
+				newDependencies, newStructuralDependencies);
 	}
 
 	protected Collection<IPath> getAllStructuralDependencies(
@@ -378,41 +430,17 @@ public class State {
 		if (structuralChanges == null) {
 			return Collections.emptyList();
 		}
-		final Set<IPath> result = new HashSet<IPath>();
-		result.addAll(paths);
-		result.retainAll(structuralChanges);
-		if (result.isEmpty()) {
+		final Set<IPath> changes = new HashSet<IPath>();
+		changes.addAll(paths);
+		changes.retainAll(structuralChanges);
+		if (changes.isEmpty()) {
 			return Collections.emptyList();
 		}
-		final List<IPath> queue = new ArrayList<IPath>(result);
-		while (!queue.isEmpty()) {
-			final List<IPath> nextQueue = new ArrayList<IPath>();
-			for (IPath path : queue) {
-				final Map<IPath, DependencyInfo> deps = dependencies.get(path);
-				if (deps != null) {
-					for (Map.Entry<IPath, DependencyInfo> entry : deps
-							.entrySet()) {
-						if (!result.contains(entry.getKey())
-								&& ((entry.getValue().flags & IBuildState.STRUCTURAL) != 0)) {
-							nextQueue.add(entry.getKey());
-						}
-					}
-				}
-			}
-			result.addAll(nextQueue);
-			queue.clear();
-			queue.addAll(nextQueue);
-		}
-		return result;
+		return getDependencies().findAllStructuralDependents(changes);
 	}
 
 	void dumpDependencies() {
 		System.out.println("Dependencies in " + scriptProjectName + ":");
-		for (Iterator<Map.Entry<IPath, Map<IPath, DependencyInfo>>> i = dependencies
-				.entrySet().iterator(); i.hasNext();) {
-			final Map.Entry<IPath, Map<IPath, DependencyInfo>> entry = i.next();
-			System.out.println("  " + entry.getKey() + " -> "
-					+ entry.getValue());
-		}
+		System.out.print(getDependencies());
 	}
 }
@@ -16,6 +16,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
@@ -53,6 +55,15 @@ import org.eclipse.dltk.internal.core.mixin.MixinCache;
 import org.eclipse.dltk.internal.core.mixin.MixinManager;
 import org.eclipse.dltk.internal.core.util.LRUCache;
 
+/**
+ * Model of the mixin elements of a language or a project, built on demand
+ * from the mixin index.
+ * <p>
+ * Lookups of elements already in the model don't take the model lock, they
+ * read immutable snapshots of the elements. Modules are parsed off the lock,
+ * and their elements are added to the model afterwards at once.
+ * </p>
+ */
 public class MixinModel {
 	private static final long REQUEST_CACHE_EXPIRE_TIME = 2000;
 	private static final boolean DEBUG = false;
@@ -67,6 +78,11 @@ public class MixinModel {
 
 	private final MixinCache cache;
 
+	/**
+	 * The elements of the {@link #cache}, to look them up without the lock.
+	 */
+	private final Map<String, MixinElement> elements = new ConcurrentHashMap<String, MixinElement>();
+
 	/**
 	 * Contains map of source modules to mixin elements.
 	 */
@@ -76,23 +92,24 @@ public class MixinModel {
 			REQUEST_CACHE_LIMIT);
 
 	// true if exists, false if doesn't
-	private Map<String, Boolean> knownKeysCache = new HashMap<String, Boolean>();
+	private final Map<String, Boolean> knownKeysCache = new ConcurrentHashMap<String, Boolean>();
 	// boolean, for the atomicity of it
-	public boolean removes = true;
+	public volatile boolean removes = true;
 
 	private final IDLTKLanguageToolkit toolkit;
 
 	private final IScriptProject project;
 
-	private MixinRequestor mixinRequestor = new MixinRequestor();
-
-	private ISourceModule currentModule;
-
 	/**
 	 * modules required to be reparsed
 	 */
 	private Set<ISourceModule> modulesToReparse = new HashSet<ISourceModule>();
 
+	/**
+	 * modules being parsed
+	 */
+	private final Map<ISourceModule, ModuleReport> reportsInProgress = new HashMap<ISourceModule, ModuleReport>();
+
 	/**
 	 * Creates workspace instance
 	 * 
@@ -134,19 +151,22 @@ public class MixinModel {
 		if (DLTKCore.VERBOSE) {
 			System.out.println("MixinModel.get(" + key + ')'); //$NON-NLS-1$
 		}
-		MixinElement element = null;
+		if (knownKeysCache.get(key) == Boolean.FALSE) {
+			return null;
+		}
+		MixinElement element = elements.get(key);
+		if (element != null && element.isFinal()
+				&& element.snapshot().sourceModules.length > 0) {
+			return element;
+		}
 		synchronized (this) {
-			if (knownKeysCache.get(key) == Boolean.FALSE) {
-				return null;
-			}
 			element = (MixinElement) cache.get(key);
 			if (element == null) {
 				if (!removes) {
 					return null;
 				} else {
-					element = new MixinElement(key, currentModule);
-					cache.put(key, element);
-					cache.ensureSpaceLimit(1, element);
+					element = new MixinElement(key, null);
+					cachePut(element);
 				}
 			}
 			if (DLTKCore.VERBOSE) {
@@ -162,12 +182,25 @@ public class MixinModel {
 				return element;
 			}
 			knownKeysCache.put(key, Boolean.FALSE);
-			cache.remove(element.key);
-			cache.resetSpaceLimit(CACHE_LIMIT, element);
+			cacheRemove(element);
 		}
 		return null;
 	}
 
+	// called with lock being held
+	private void cachePut(MixinElement element) {
+		cache.put(element.key, element);
+		elements.put(element.key, element);
+		cache.ensureSpaceLimit(1, element);
+	}
+
+	// called with lock being held
+	private void cacheRemove(MixinElement element) {
+		cache.remove(element.key);
+		elements.remove(element.key, element);
+		cache.resetSpaceLimit(CACHE_LIMIT, element);
+	}
+
 	private IDLTKSearchScope createSearchScope() {
 		if (project != null) {
 			return SearchEngine.createSearchScope(project);
@@ -235,7 +268,7 @@ public class MixinModel {
 
 		synchronized (this) {
 			for (String key : entry.keys) {
-				MixinElement element = getCreateEmpty(key);
+				MixinElement element = getCreateEmpty(key, null);
 				if (!monitor.isCanceled()) {
 					markElementAsFinal(element);
 				}
@@ -332,27 +365,23 @@ public class MixinModel {
 
 	// long-running operation
 	public boolean keyExists(String key) {
-		synchronized (this) {
-			// TODO: For this version we cache all information, so should be
-			// false.
-			if (!removes) {
-				return cache.get(key) != null;
-			}
-			MixinElement e = (MixinElement) this.cache.get(key);
-			if (e != null && e.sourceModules.size() > 0) {
-				return true;
-			}
-			Boolean cached = knownKeysCache.get(key);
-			if (cached != null)
-				return cached;
+		// TODO: For this version we cache all information, so should be
+		// false.
+		if (!removes) {
+			return elements.containsKey(key);
 		}
+		MixinElement e = elements.get(key);
+		if (e != null && e.snapshot().sourceModules.length > 0) {
+			return true;
+		}
+		Boolean cached = knownKeysCache.get(key);
+		if (cached != null)
+			return cached;
 		boolean exists = get(key) != null;
-		synchronized (this) {
-			if (knownKeysCache.size() > KEYS_CACHE_LIMIT) {
-				knownKeysCache.clear();
-			}
-			knownKeysCache.put(key, exists);
+		if (knownKeysCache.size() > KEYS_CACHE_LIMIT) {
+			knownKeysCache.clear();
 		}
+		knownKeysCache.put(key, exists);
 		return exists;
 	}
 
@@ -364,9 +393,8 @@ public class MixinModel {
 		}
 		ISourceModule[] containedModules = findModules(element.getKey());
 		if (containedModules.length == 0) {
-			synchronized (cache) {
-				cache.remove(element.key);
-				cache.resetSpaceLimit(CACHE_LIMIT, element);
+			synchronized (this) {
+				cacheRemove(element);
 			}
 			return;
 		}
@@ -387,30 +415,126 @@ public class MixinModel {
 		}
 	}
 
-	// TODO long-running operation. shouldn't be synchronized
-	public synchronized void reportModule(ISourceModule sourceModule) {
-			if (!elementToMixinCache.containsKey(sourceModule)) {
-				elementToMixinCache.put(sourceModule,
-						new ArrayList<MixinElement>());
-			} else {
-				// Module already in model. So we do not to rebuild it.
-				if (!modulesToReparse.remove(sourceModule)) {
-					return;
+	/**
+	 * Elements reported by the parser of a module, added to the model once
+	 * the module is parsed.
+	 */
+	private static class ModuleReport implements IMixinRequestor {
+		final List<MixinElement> moduleElements;
+		final List<ElementInfo> infos = new ArrayList<ElementInfo>();
+		private final Thread owner = Thread.currentThread();
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		ModuleReport(List<MixinElement> moduleElements) {
+			this.moduleElements = moduleElements;
+		}
+
+		@Override
+		public void reportElement(ElementInfo info) {
+			infos.add(info);
+		}
+
+		/**
+		 * Waits until the module is added to the model by another thread.
+		 */
+		void await() {
+			if (owner == Thread.currentThread()) {
+				return;
+			}
+			boolean interrupted = false;
+			for (;;) {
+				try {
+					done.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
 				}
-				// We need to reparse module if some elements are moved from it.
 			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	// long-running operation, the module is parsed without the lock
+	public void reportModule(ISourceModule sourceModule) {
+		final ModuleReport pending;
+		ModuleReport report = null;
+		synchronized (this) {
+			pending = reportsInProgress.get(sourceModule);
+			if (pending == null) {
+				List<MixinElement> moduleElements = elementToMixinCache
+						.get(sourceModule);
+				if (moduleElements == null) {
+					moduleElements = new ArrayList<MixinElement>();
+					elementToMixinCache.put(sourceModule, moduleElements);
+				} else {
+					// Module already in model. So we do not to rebuild it.
+					if (!modulesToReparse.remove(sourceModule)) {
+						return;
+					}
+					// We need to reparse module if some elements are moved
+					// from it.
+				}
+				report = new ModuleReport(moduleElements);
+				reportsInProgress.put(sourceModule, report);
+			}
+		}
+		if (report != null) {
+			parseModule(sourceModule, report);
+		} else if (!Thread.holdsLock(this)) {
+			// parsed by another thread, the caller expects its elements
+			pending.await();
+		}
+	}
+
+	private void parseModule(ISourceModule sourceModule, ModuleReport report) {
 		try {
 			IMixinParser mixinParser = MixinManager
 					.getMixinParser(sourceModule);
 			if (mixinParser != null) {
-				this.currentModule = sourceModule;
-				mixinParser.setRequirestor(mixinRequestor);
-				mixinParser.parserSourceModule(true, sourceModule);
-				this.currentModule = null;
+				// the parser is shared by the models of the language
+				synchronized (mixinParser) {
+					mixinParser.setRequirestor(report);
+					mixinParser.parserSourceModule(true, sourceModule);
+				}
 			}
 		} catch (CoreException e) {
 			DLTKCore.error("Error in reportModule", e); //$NON-NLS-1$
-			return;
+		} finally {
+			synchronized (this) {
+				reportsInProgress.remove(sourceModule, report);
+				// the module could be removed while it was parsed
+				if (elementToMixinCache.get(sourceModule) == report.moduleElements) {
+					for (ElementInfo info : report.infos) {
+						addElement(info, sourceModule, report.moduleElements);
+					}
+				}
+			}
+			report.done.countDown();
+		}
+	}
+
+	// called with lock being held
+	private void addElement(ElementInfo info, ISourceModule module,
+			List<MixinElement> moduleElements) {
+		knownKeysCache.put(info.key, Boolean.TRUE);
+		String[] list = info.key.split("\\" //$NON-NLS-1$
+				+ IMixinRequestor.MIXIN_NAME_SEPARATOR);
+		MixinElement element = getCreateEmpty(info.key, module);
+		moduleElements.add(element);
+		element.addModule(module);
+		element.addInfo(info, module);
+		// Append as childs for all other elements. Also append modules to all
+		// selected elements.
+		if (list.length != 1) {
+			for (int i = 0; i < list.length - 1; ++i) {
+				MixinElement parent = getCreateEmpty(element.getParentKey(),
+						module);
+				parent.addChild(element);
+				moduleElements.add(parent);
+				element = parent;
+			}
 		}
 	}
 
@@ -439,15 +563,16 @@ public class MixinModel {
 	 * if cache doesn't contain required element
 	 * 
 	 * @param key
+	 * @param module
+	 *            the module of the new element, or <code>null</code>
 	 * @return
 	 */
-	private MixinElement getCreateEmpty(String key) {
+	private MixinElement getCreateEmpty(String key, ISourceModule module) {
 		// called with lock being held
 		MixinElement element = (MixinElement) cache.get(key);
 		if (element == null) {
-			element = new MixinElement(key, currentModule);
-			this.cache.put(key, element);
-			this.cache.ensureSpaceLimit(1, element);
+			element = new MixinElement(key, module);
+			cachePut(element);
 		}
 		return element;
 	}
@@ -460,13 +585,19 @@ public class MixinModel {
 		@Override
 		public void elementChanged(ElementChangedEvent event) {
 			IModelElementDelta delta = event.getDelta();
+			List<ISourceModule> addedModules = new ArrayList<ISourceModule>();
 			synchronized (MixinModel.this) {
-				processDelta(delta);
+				processDelta(delta, addedModules);
+			}
+			// parsed without the lock
+			for (ISourceModule module : addedModules) {
+				reportModule(module);
 			}
 		}
 
 		// called with lock being held
-		private void processDelta(IModelElementDelta delta) {
+		private void processDelta(IModelElementDelta delta,
+				List<ISourceModule> addedModules) {
 			IModelElement element = delta.getElement();
 			if (delta.getKind() == IModelElementDelta.REMOVED
 					|| delta.getKind() == IModelElementDelta.CHANGED
@@ -517,7 +648,7 @@ public class MixinModel {
 			if (delta.getKind() == IModelElementDelta.ADDED) {
 				if (element.getElementType() == IModelElement.SOURCE_MODULE) {
 					if (modulesToReparse.add((ISourceModule) element)) {
-						reportModule((ISourceModule) element);
+						addedModules.add((ISourceModule) element);
 					}
 				}
 				knownKeysCache.clear();
@@ -526,7 +657,7 @@ public class MixinModel {
 
 			if ((delta.getFlags() & IModelElementDelta.F_CHILDREN) != 0) {
 				for (IModelElementDelta child : delta.getAffectedChildren()) {
-					processDelta(child);
+					processDelta(child, addedModules);
 				}
 			} else if (delta.getKind() == IModelElementDelta.REMOVED
 					&& element.getElementType() == IModelElement.SCRIPT_FOLDER) {
@@ -566,7 +697,7 @@ public class MixinModel {
 					}
 					// remove all resources with given project from model.
 					List<ISourceModule> toRemove = new ArrayList<ISourceModule>();
-					synchronized (this) {
+					synchronized (MixinModel.this) {
 						IProject project = (IProject) resource;
 						for (ISourceModule module : elementToMixinCache
 								.keySet()) {
@@ -617,6 +748,8 @@ public class MixinModel {
 			log("remove " + element.getElementName()); //$NON-NLS-1$
 		}
 		List<MixinElement> mixinCache = elementToMixinCache.get(element);
+		// a module being parsed is parsed again when reported again
+		reportsInProgress.remove(element);
 		if (mixinCache != null) {
 			removeFromRequestCache(element);
 
@@ -624,8 +757,7 @@ public class MixinModel {
 				removes = true;
 				knownKeysCache.remove(mixin.key);
 				mixin.bFinal = false;
-				mixin.sourceModules.remove(element);
-				mixin.sourceModuleToObject.remove(element);
+				mixin.removeModule(element);
 				if (mixin.sourceModules.size() == 0) {
 					// Remove frob parent.
 					String parentKey = mixin.getParentKey();
@@ -633,13 +765,12 @@ public class MixinModel {
 						MixinElement parent = (MixinElement) this.cache
 								.get(parentKey);
 						if (parent != null) {
-							parent.children.remove(mixin);
+							parent.removeChild(mixin);
 							parent.bFinal = false;
 						}
 					}
 					// Remove from cache
-					cache.remove(mixin.key);
-					cache.resetSpaceLimit(CACHE_LIMIT, mixin);
+					cacheRemove(mixin);
 				}
 			}
 			this.elementToMixinCache.remove(element);
@@ -682,7 +813,8 @@ public class MixinModel {
 
 	/***************************************************************************
 	 * Then getObjects are called, special initialize listener are called.
-	 * 
+	 * Listeners are called without the model lock, possibly concurrently for
+	 * the same object.
 	 */
 	public interface IMixinObjectInitializeListener {
 		void initialize(IMixinElement element, Object object,
@@ -693,15 +825,44 @@ public class MixinModel {
 
 	private static final Object[] NO_OBJECTS = new Object[0];
 
+	/**
+	 * Immutable state of a mixin element, read by the lookups without the
+	 * lock.
+	 */
+	private static final class Snapshot {
+		final ISourceModule[] sourceModules;
+		final IMixinElement[] children;
+		final Map<ISourceModule, Object[]> objects;
+
+		// called with lock being held
+		Snapshot(MixinElement element) {
+			sourceModules = element.sourceModules
+					.toArray(new ISourceModule[element.sourceModules.size()]);
+			children = element.children
+					.toArray(new IMixinElement[element.children.size()]);
+			objects = new HashMap<ISourceModule, Object[]>();
+			for (Map.Entry<ISourceModule, List<Object>> entry : element.sourceModuleToObject
+					.entrySet()) {
+				objects.put(entry.getKey(), entry.getValue().toArray());
+			}
+		}
+	}
+
 	private final class MixinElement implements IMixinElement,
 			IInternalMixinElement {
 		private String key;
-		private boolean bFinal = false;
+		private volatile boolean bFinal = false;
 		private List<ISourceModule> sourceModules = new ArrayList<ISourceModule>();
 		private Map<ISourceModule, List<Object>> sourceModuleToObject = new HashMap<ISourceModule, List<Object>>();
 
 		private Set<MixinElement> children = new HashSet<MixinElement>();
 
+		/**
+		 * State for the lookups, <code>null</code> after a change until it is
+		 * read again
+		 */
+		private volatile Snapshot snapshot;
+
 		@Override
 		public boolean equals(Object obj) {
 			if (this == obj)
@@ -727,6 +888,20 @@ public class MixinModel {
 					+ this.children + " "; //$NON-NLS-1$
 		}
 
+		Snapshot snapshot() {
+			Snapshot s = snapshot;
+			if (s == null) {
+				synchronized (MixinModel.this) {
+					s = snapshot;
+					if (s == null) {
+						s = new Snapshot(this);
+						snapshot = s;
+					}
+				}
+			}
+			return s;
+		}
+
 		/*
 		 * public MixinElement(ElementInfo info, ISourceModule module) {
 		 * this(info.key, currentModule); addInfo(info, module); }
@@ -740,6 +915,7 @@ public class MixinModel {
 					this.sourceModuleToObject.put(module, list);
 				}
 				list.add(info.object);
+				snapshot = null;
 			}
 		}
 
@@ -754,16 +930,36 @@ public class MixinModel {
 			if (currentModule != null) {
 				if (!this.sourceModules.contains(currentModule)) {
 					this.sourceModules.add(currentModule);
+					snapshot = null;
 				}
 			}
 		}
 
+		// called with lock being held
+		void removeModule(ISourceModule module) {
+			this.sourceModules.remove(module);
+			this.sourceModuleToObject.remove(module);
+			snapshot = null;
+		}
+
+		// called with lock being held
+		void addChild(MixinElement child) {
+			if (children.add(child)) {
+				snapshot = null;
+			}
+		}
+
+		// called with lock being held
+		void removeChild(MixinElement child) {
+			if (children.remove(child)) {
+				snapshot = null;
+			}
+		}
+
 		@Override
 		public IMixinElement[] getChildren() {
 			this.validate();
-			synchronized (MixinModel.this) {
-				return children.toArray(new IMixinElement[children.size()]);
-			}
+			return snapshot().children.clone();
 		}
 
 		@Override
@@ -812,39 +1008,37 @@ public class MixinModel {
 			if (!isFinal()) {
 				get(key);
 			}
-			synchronized (MixinModel.this) {
-				return this.sourceModules
-						.toArray(new ISourceModule[this.sourceModules.size()]);
-			}
+			return snapshot().sourceModules.clone();
 		}
 
 		@Override
 		public Object[] getObjects(ISourceModule module) {
 			this.validate();
-			synchronized (MixinModel.this) {
-				List<Object> list = this.sourceModuleToObject.get(module);
-				if (list == null)
-					return NO_OBJECTS;
-				Object[] objs = list.toArray();
-				for (Object obj : objs) {
-					notifyInitializeListener(this, module, obj);
-				}
-				return objs;
+			return getObjects(snapshot(), module);
+		}
+
+		private Object[] getObjects(Snapshot s, ISourceModule module) {
+			Object[] objs = s.objects.get(module);
+			if (objs == null)
+				return NO_OBJECTS;
+			objs = objs.clone();
+			for (Object obj : objs) {
+				notifyInitializeListener(this, module, obj);
 			}
+			return objs;
 		}
 
 		@Override
 		public Object[] getAllObjects() {
 			this.validate();
-			synchronized (MixinModel.this) {
-				Set<Object> objects = new HashSet<Object>();
-				for (ISourceModule module : sourceModules) {
-					for (Object obj : this.getObjects(module)) {
-						objects.add(obj);
-					}
+			Snapshot s = snapshot();
+			Set<Object> objects = new HashSet<Object>();
+			for (ISourceModule module : s.sourceModules) {
+				for (Object obj : this.getObjects(s, module)) {
+					objects.add(obj);
 				}
-				return objects.toArray();
 			}
+			return objects.toArray();
 		}
 
 		public boolean isFinal() {
@@ -854,6 +1048,7 @@ public class MixinModel {
 		@Override
 		public void close() {
 			synchronized (MixinModel.this) {
+				elements.remove(key, this);
 				knownKeysCache.remove(key);
 				removes = true;
 				this.bFinal = false;
@@ -872,6 +1067,7 @@ public class MixinModel {
 				}
 				this.sourceModules.clear();
 				this.sourceModuleToObject.clear();
+				this.snapshot = null;
 
 				// Lets also clean parent data
 				// Remove frob parent.
@@ -882,7 +1078,7 @@ public class MixinModel {
 					if (parent != null) {
 						removes = true;
 						knownKeysCache.remove(parent.key);
-						parent.children.remove(element);
+						parent.removeChild(element);
 						parent.bFinal = false;
 						element = parent;
 						parentKey = parent.getParentKey();
@@ -901,48 +1097,6 @@ public class MixinModel {
 		}
 	}
 
-	private final class MixinRequestor implements IMixinRequestor {
-		@Override
-		public void reportElement(ElementInfo info) {
-			// if( DLTKCore.VERBOSE_MIXIN ) {
-			// System.out.println("Append mixin:" + info.key);
-			// }
-			synchronized (MixinModel.this) {
-				knownKeysCache.put(info.key, Boolean.TRUE);
-				String[] list = info.key.split("\\" //$NON-NLS-1$
-						+ IMixinRequestor.MIXIN_NAME_SEPARATOR);
-				MixinElement element = getCreateEmpty(info.key);
-				addElementToModules(element);
-				element.addModule(currentModule);
-				element.addInfo(info, currentModule);
-				// Append as childs for all other elements. Also append modules
-				// to
-				// all selected elements.
-				if (list.length != 1) {
-					for (int i = 0; i < list.length - 1; ++i) {
-						MixinElement parent = getCreateEmpty(element
-								.getParentKey());
-						parent.children.add(element);
-						addElementToModules(parent);
-						element = parent;
-					}
-				}
-			}
-		}
-
-		// called with lock being held
-		private void addElementToModules(MixinElement element) {
-			List<MixinElement> elements = MixinModel.this.elementToMixinCache
-					.get(currentModule);
-			if (elements == null) {
-				elements = new ArrayList<MixinElement>();
-				MixinModel.this.elementToMixinCache
-						.put(currentModule, elements);
-			}
-			elements.add(element);
-		}
-	}
-
 	public synchronized void makeAllModuleElementsFinal(ISourceModule module) {
 		List<MixinElement> elements = elementToMixinCache.get(module);
 		if (elements != null) {
@@ -992,7 +1146,7 @@ public class MixinModel {
 				.remove(mixinObjectInitializeListener);
 	}
 
-	// called with lock being help
+	// called without the lock, concurrently for the same object
 	private void notifyInitializeListener(IMixinElement element,
 			ISourceModule module, Object o) {
 		Object[] listeners = mixinObjectInitializeListeners.getListeners();
@@ -1004,7 +1158,9 @@ public class MixinModel {
 
 	protected synchronized void clear() {
 		cache.flush();
+		elements.clear();
 		elementToMixinCache.clear();
+		reportsInProgress.clear();
 		knownKeysCache.clear();
 		modulesToReparse.clear();
 		requestCache.flush();
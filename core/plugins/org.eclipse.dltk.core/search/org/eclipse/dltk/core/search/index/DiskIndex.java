@@ -9,18 +9,23 @@
  *******************************************************************************/
 package org.eclipse.dltk.core.search.index;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Pattern;
 
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.dltk.compiler.CharOperation;
 import org.eclipse.dltk.compiler.util.HashtableOfIntValues;
 import org.eclipse.dltk.compiler.util.HashtableOfObject;
@@ -32,6 +37,11 @@ import org.eclipse.dltk.internal.core.util.Messages;
 import org.eclipse.dltk.internal.core.util.SimpleWordSet;
 import org.eclipse.dltk.internal.core.util.Util;
 
+/**
+ * The on-disk part of an {@link Index}. Once initialized a disk index is never
+ * changed, merging creates a new generation, so any number of threads can
+ * query it concurrently without locking.
+ */
 public class DiskIndex {
 
 	String fileName;
@@ -44,35 +54,55 @@ public class DiskIndex {
 
 	private int[] chunkOffsets;
 
-	private int documentReferenceSize; // 1, 2 or more bytes... depends on # of
-	// document names
-
 	private int startOfCategoryTables;
 
 	private HashtableOfIntValues categoryOffsets;
 
-	private int cacheUserCount;
+	private final AtomicInteger cacheUserCount = new AtomicInteger();
 
-	private String[][] cachedChunks; // decompressed chunks of document names
+	private AtomicReferenceArray<String[]> cachedChunks; // decompressed chunks
+	// of document names, filled lazily by concurrent queries
 
 	private HashtableOfObject categoryTables; // category name ->
 	// HashtableOfObject(words ->
-	// int[] of document #'s) or
-	// offset if not read yet
+	// int[] of document #'s), only used while writing a new index
+
+	private PostingsBuffer postingsBuffer; // only used while writing a new
+	// index
+
+	private ByteBuffer buffer; // read-only contents of the index file, queries
+	// are answered directly from it without decoding whole tables
 
-	private char[] cachedCategoryName;
 	char separator = Index.DEFAULT_SEPARATOR;
 
-	public static final String SIGNATURE = "DLTK INDEX VERSION 1.014"; //$NON-NLS-1$
+	public static final String SIGNATURE = "DLTK INDEX VERSION 1.016"; //$NON-NLS-1$
 
 	public final static boolean DEBUG = false;
 
+	/**
+	 * Index files are mapped into memory unless disabled with the
+	 * <code>org.eclipse.dltk.core.index.noMapping</code> system property.
+	 * Mapping is not used on Windows, since a mapped file can not be replaced
+	 * until the mapping is garbage collected.
+	 */
+	static final boolean MAP_INDEX_FILES = !Boolean
+			.getBoolean("org.eclipse.dltk.core.index.noMapping") //$NON-NLS-1$
+			&& !Platform.OS_WIN32.equals(Platform.getOS());
+
 	private static final int RE_INDEXED = -1;
 
 	private static final int DELETED = -2;
 
 	private static final int CHUNK_SIZE = 100;
 
+	private static final int BLOCK_SIZE = 16; // number of front coded words
+	// in a block of a category dictionary, only the first word of each block
+	// is stored completely
+
+	private static final int POSTINGS_BUFFER_SIZE = 256 * 1024; // posting
+	// lists of a category table beyond this size are spilled to a temporary
+	// file while the table is written
+
 	static class IntList {
 
 		int size;
@@ -102,6 +132,416 @@ public class DiskIndex {
 		}
 	}
 
+	/**
+	 * Reads a range of the index file buffer without changing the position of
+	 * the buffer itself.
+	 */
+	static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer, int position) {
+			this.buffer = buffer.duplicate();
+			this.buffer.position(position);
+		}
+
+		@Override
+		public int read() {
+			return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (!this.buffer.hasRemaining())
+				return -1;
+			if (length > this.buffer.remaining())
+				length = this.buffer.remaining();
+			this.buffer.get(bytes, offset, length);
+			return length;
+		}
+
+		@Override
+		public long skip(long n) {
+			if (n > this.buffer.remaining())
+				n = this.buffer.remaining();
+			if (n <= 0)
+				return 0;
+			this.buffer.position(this.buffer.position() + (int) n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return this.buffer.remaining();
+		}
+	}
+
+	/**
+	 * Sequentially reads variable-byte encoded values from the index buffer.
+	 */
+	private class VarReader {
+
+		int position;
+
+		VarReader(int position) {
+			this.position = position;
+		}
+
+		long read() {
+			long value = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = DiskIndex.this.buffer.get(this.position++);
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return value;
+		}
+
+		int readInt() {
+			return (int) read();
+		}
+	}
+
+	/**
+	 * Reads the front coded words of a category dictionary in sorted order. The
+	 * current word is decoded into a reused buffer, so nothing is allocated
+	 * unless the word itself is requested.
+	 */
+	private class WordReader extends VarReader {
+
+		private final int table;
+
+		private final int postingsStart;
+
+		private final int numberOfBlocks;
+
+		final int size;
+
+		private int index; // index of the next word
+
+		private char[] chars = new char[32];
+
+		private int length;
+
+		int posting; // reference to the document numbers of the current word
+
+		WordReader(int table) {
+			super(0);
+			this.table = table;
+			this.size = DiskIndex.this.buffer.getInt(table);
+			this.postingsStart = DiskIndex.this.buffer.getInt(table + 4);
+			this.numberOfBlocks = DiskIndex.this.buffer.getInt(table + 8);
+			seekBlock(0);
+		}
+
+		private void seekBlock(int block) {
+			this.index = block * BLOCK_SIZE;
+			if (block < this.numberOfBlocks)
+				this.position = DiskIndex.this.buffer.getInt(this.table + 12
+						+ (block << 2));
+		}
+
+		/**
+		 * Positions the reader in the block which could contain the first word
+		 * not less than the key.
+		 */
+		void seek(char[] key) {
+			int low = 0;
+			int high = this.numberOfBlocks - 1;
+			int block = 0;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				seekBlock(mid);
+				next();
+				if (compare(key, false) <= 0) {
+					block = mid;
+					low = mid + 1;
+				} else {
+					high = mid - 1;
+				}
+			}
+			seekBlock(block);
+		}
+
+		boolean next() {
+			if (this.index >= this.size)
+				return false;
+			int shared = readInt();
+			int newLength = shared + readInt();
+			if (newLength > this.chars.length)
+				System.arraycopy(this.chars, 0,
+						this.chars = new char[newLength * 2], 0, shared);
+			for (int i = shared; i < newLength; i++)
+				this.chars[i] = (char) readInt();
+			this.length = newLength;
+			long value = read();
+			// single documents are stored in the dictionary, otherwise the
+			// offset of the posting list relative to the start of postings
+			this.posting = (value & 1) != 0 ? -(int) (value >>> 1) - 1
+					: this.postingsStart + (int) (value >>> 1);
+			this.index++;
+			return true;
+		}
+
+		/**
+		 * Compares the current word with the key. If <code>prefix</code> is set
+		 * then only the first <code>key.length</code> characters of the word
+		 * are compared.
+		 */
+		int compare(char[] key, boolean prefix) {
+			int keyLength = key.length;
+			for (int i = 0; i < this.length; i++) {
+				if (i == keyLength)
+					return prefix ? 0 : 1;
+				if (this.chars[i] != key[i])
+					return this.chars[i] - key[i];
+			}
+			return this.length - keyLength;
+		}
+
+		char[] word() {
+			char[] word = new char[this.length];
+			System.arraycopy(this.chars, 0, word, 0, this.length);
+			return word;
+		}
+	}
+
+	/**
+	 * Writes sorted document names one at a time in compressed chunks of
+	 * {@link DiskIndex#CHUNK_SIZE} names.
+	 */
+	private class DocumentNamesWriter {
+
+		private final DataOutputStream stream;
+
+		private final IntList chunkOffsets = new IntList(new int[0]);
+
+		private String current;
+
+		private int count;
+
+		DocumentNamesWriter(DataOutputStream stream) {
+			this.stream = stream;
+		}
+
+		void write(String next) throws IOException {
+			if (this.count++ % CHUNK_SIZE == 0) {
+				// the first name of each chunk is written completely
+				this.chunkOffsets.add(this.stream.size());
+				this.stream.writeUTF(next);
+				this.current = next;
+				return;
+			}
+			String current = this.current;
+			int len1 = current.length();
+			int len2 = next.length();
+			int max = len1 < len2 ? len1 : len2;
+			int start = 0; // number of identical characters at the
+			// beginning (also the index of first character
+			// that is different)
+			while (current.charAt(start) == next.charAt(start)) {
+				start++;
+				if (max == start)
+					break; // current is 'abba', next is 'abbab'
+			}
+			if (start > 255)
+				start = 255;
+
+			int end = 0; // number of identical characters at the end
+			while (current.charAt(--len1) == next.charAt(--len2)) {
+				end++;
+				if (len2 == start)
+					break; // current is 'abbba', next is 'abba'
+				if (len1 == 0)
+					break; // current is 'xabc', next is 'xyabc'
+			}
+			if (end > 255)
+				end = 255;
+			this.stream.writeByte(start);
+			this.stream.writeByte(end);
+
+			int last = next.length() - end;
+			this.stream.writeUTF(start < last ? next.substring(start, last)
+					: ""); //$NON-NLS-1$
+			this.current = next;
+		}
+
+		/**
+		 * Remembers the chunks of the index, at least one name must have been
+		 * written.
+		 */
+		void finish() {
+			if (this.count == 0)
+				throw new IllegalArgumentException();
+			DiskIndex.this.numberOfChunks = this.chunkOffsets.size;
+			DiskIndex.this.sizeOfLastChunk = this.count
+					- (this.chunkOffsets.size - 1) * CHUNK_SIZE;
+			DiskIndex.this.chunkOffsets = this.chunkOffsets.asArray();
+			DiskIndex.this.startOfCategoryTables = this.stream.size() + 1;
+		}
+	}
+
+	/**
+	 * Keeps the posting lists of a category table until its dictionary is
+	 * written, in memory up to {@link DiskIndex#POSTINGS_BUFFER_SIZE} bytes and
+	 * in a temporary file beyond.
+	 */
+	private static class PostingsBuffer extends OutputStream {
+
+		private final File file;
+
+		private final byte[] bytes = new byte[POSTINGS_BUFFER_SIZE];
+
+		private int count; // number of buffered bytes
+
+		private OutputStream spillStream; // open while bytes are spilled to
+		// the file
+
+		PostingsBuffer(File file) {
+			this.file = file;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (this.count == this.bytes.length)
+				spill();
+			this.bytes[this.count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int offset, int length) throws IOException {
+			while (length > 0) {
+				if (this.count == this.bytes.length)
+					spill();
+				int n = Math.min(length, this.bytes.length - this.count);
+				System.arraycopy(b, offset, this.bytes, this.count, n);
+				this.count += n;
+				offset += n;
+				length -= n;
+			}
+		}
+
+		private void spill() throws IOException {
+			if (this.spillStream == null)
+				this.spillStream = new FileOutputStream(this.file, false);
+			this.spillStream.write(this.bytes, 0, this.count);
+			this.count = 0;
+		}
+
+		/**
+		 * Appends the posting lists to the stream and empties the buffer.
+		 */
+		void copyTo(OutputStream stream) throws IOException {
+			if (this.spillStream != null) {
+				spill();
+				this.spillStream.close();
+				this.spillStream = null;
+				InputStream input = new FileInputStream(this.file);
+				try {
+					int n;
+					while ((n = input.read(this.bytes)) > 0)
+						stream.write(this.bytes, 0, n);
+				} finally {
+					input.close();
+				}
+			} else {
+				stream.write(this.bytes, 0, this.count);
+			}
+			this.count = 0;
+		}
+
+		void dispose() {
+			if (this.spillStream != null) {
+				try {
+					this.spillStream.close();
+				} catch (IOException e) {
+					// ignore
+				}
+				this.spillStream = null;
+			}
+			if (this.file.exists() && !this.file.delete())
+				if (DEBUG)
+					System.out
+							.println("dispose - Failed to delete " + this.file); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Writes a category table from its words in sorted order, without holding
+	 * the whole table in memory.
+	 * 
+	 * The format of a category table is as follows: the dictionary of the words
+	 * in sorted order, split in blocks of BLOCK_SIZE words, each word is
+	 * written as the number of characters shared with the previous word of the
+	 * block (0 for the first one), the number of remaining characters and the
+	 * remaining characters, followed by either (documentNumber << 1 | 1) for a
+	 * single document or (offset of the posting list relative to the first one
+	 * << 1). Then the posting lists of the words with more than 1 document in
+	 * sorted word order, each is the number of documents followed by the delta
+	 * encoded (sorted) document numbers. Then the number of words, the offset
+	 * of the first posting list, the number of blocks and the offset of each
+	 * block, so blocks can be binary searched in place. All the numbers but the
+	 * ones of the last part are variable-byte encoded.
+	 */
+	private class CategoryWriter {
+
+		private final DataOutputStream stream;
+
+		private final DataOutputStream postings;
+
+		private final IntList blockOffsets = new IntList(new int[0]);
+
+		private char[] previous;
+
+		private int count;
+
+		CategoryWriter(DataOutputStream stream) {
+			this.stream = stream;
+			this.postings = new DataOutputStream(getPostingsBuffer());
+		}
+
+		void add(char[] word, int[] documentNumbers) throws IOException {
+			long posting;
+			if (documentNumbers.length == 1) {
+				posting = ((long) documentNumbers[0] << 1) | 1;
+			} else {
+				posting = (long) this.postings.size() << 1;
+				writeDocumentNumbers(documentNumbers, this.postings);
+			}
+
+			int shared = 0;
+			if (this.count % BLOCK_SIZE == 0) {
+				this.blockOffsets.add(this.stream.size());
+			} else {
+				char[] previous = this.previous;
+				int max = Math.min(previous.length, word.length);
+				while (shared < max && previous[shared] == word[shared])
+					shared++;
+			}
+			writeVarInt(shared, this.stream);
+			writeVarInt(word.length - shared, this.stream);
+			for (int j = shared; j < word.length; j++)
+				writeVarInt(word[j], this.stream);
+			writeVarInt(posting, this.stream);
+			this.previous = word;
+			this.count++;
+		}
+
+		void finish(char[] categoryName) throws IOException {
+			int postingsStart = this.stream.size();
+			getPostingsBuffer().copyTo(this.stream);
+			DiskIndex.this.categoryOffsets.put(categoryName, this.stream.size()); // remember
+			// the offset to the start of the table
+			this.stream.writeInt(this.count);
+			this.stream.writeInt(postingsStart);
+			this.stream.writeInt(this.blockOffsets.size);
+			for (int i = 0; i < this.blockOffsets.size; i++)
+				this.stream.writeInt(this.blockOffsets.elements[i]);
+		}
+	}
+
 	DiskIndex(String fileName) {
 		this.fileName = fileName;
 
@@ -110,12 +550,10 @@ public class DiskIndex {
 		this.numberOfChunks = -1;
 		this.sizeOfLastChunk = -1;
 		this.chunkOffsets = null;
-		this.documentReferenceSize = -1;
-		this.cacheUserCount = -1;
 		this.cachedChunks = null;
 		this.categoryTables = null;
-		this.cachedCategoryName = null;
 		this.categoryOffsets = null;
+		this.buffer = null;
 	}
 
 	SimpleSet addDocumentNames(String substring, MemoryIndex memoryIndex)
@@ -155,8 +593,8 @@ public class DiskIndex {
 	}
 
 	private HashtableOfObject addQueryResult(HashtableOfObject results,
-			char[] word, HashtableOfObject wordsToDocNumbers,
-			MemoryIndex memoryIndex) throws IOException {
+			char[] word, int posting, MemoryIndex memoryIndex)
+			throws IOException {
 		// must skip over documents which have been added/changed/deleted in the
 		// memory index
 		if (results == null)
@@ -164,14 +602,13 @@ public class DiskIndex {
 		EntryResult result = (EntryResult) results.get(word);
 		if (memoryIndex == null) {
 			if (result == null)
-				results.put(word, new EntryResult(word, wordsToDocNumbers));
-			else
-				result.addDocumentTable(wordsToDocNumbers);
+				results.put(word, result = new EntryResult(word, this));
+			result.addPosting(posting);
 		} else {
 			SimpleLookupTable docsToRefs = memoryIndex.docsToReferences;
 			if (result == null)
-				result = new EntryResult(word, null);
-			int[] docNumbers = readDocumentNumbers(wordsToDocNumbers.get(word));
+				result = new EntryResult(word);
+			int[] docNumbers = readDocumentNumbers(posting);
 			for (int i = 0, l = docNumbers.length; i < l; i++) {
 				String docName = readDocumentName(docNumbers[i]);
 				if (!docsToRefs.containsKey(docName))
@@ -191,252 +628,140 @@ public class DiskIndex {
 			return null; // file is empty
 
 		HashtableOfObject results = null; // initialized if needed
-		if (key == null) {
-			for (int i = 0, l = categories.length; i < l; i++) {
-				HashtableOfObject wordsToDocNumbers = readCategoryTable(
-						categories[i], true); // cache if key is null since
-				// its a definite match
-				if (wordsToDocNumbers != null) {
-					char[][] words = wordsToDocNumbers.keyTable;
-					if (results == null)
-						results = new HashtableOfObject(
-								wordsToDocNumbers.elementSize);
-					for (int j = 0, m = words.length; j < m; j++)
-						if (words[j] != null)
-							results = addQueryResult(results, words[j],
-									wordsToDocNumbers, memoryIndex);
-				}
+		Pattern regexpPattern = null;
+		for (int i = 0, l = categories.length; i < l; i++) {
+			int table = this.categoryOffsets.get(categories[i]);
+			if (table == HashtableOfIntValues.NO_VALUE)
+				continue;
+			WordReader reader = new WordReader(table);
+			if (key == null) {
+				while (reader.next())
+					results = addQueryResult(results, reader.word(),
+							reader.posting, memoryIndex);
+				continue;
 			}
-			if (results != null && this.cachedChunks == null)
-				cacheDocumentNames();
-		} else {
 			switch (matchRule) {
 			case SearchPattern.R_EXACT_MATCH | SearchPattern.R_CASE_SENSITIVE:
-				for (int i = 0, l = categories.length; i < l; i++) {
-					HashtableOfObject wordsToDocNumbers = readCategoryTable(
-							categories[i], false);
-					if (wordsToDocNumbers != null
-							&& wordsToDocNumbers.containsKey(key))
-						results = addQueryResult(results, key,
-								wordsToDocNumbers, memoryIndex);
+				reader.seek(key);
+				while (reader.next()) {
+					int comparison = reader.compare(key, false);
+					if (comparison < 0)
+						continue;
+					if (comparison == 0)
+						results = addQueryResult(results, key, reader.posting,
+								memoryIndex);
+					break;
 				}
 				break;
 			case SearchPattern.R_PREFIX_MATCH | SearchPattern.R_CASE_SENSITIVE:
-				for (int i = 0, l = categories.length; i < l; i++) {
-					HashtableOfObject wordsToDocNumbers = readCategoryTable(
-							categories[i], false);
-					if (wordsToDocNumbers != null) {
-						char[][] words = wordsToDocNumbers.keyTable;
-						for (int j = 0, m = words.length; j < m; j++) {
-							char[] word = words[j];
-							if (word != null && key[0] == word[0]
-									&& CharOperation.prefixEquals(key, word))
-								results = addQueryResult(results, word,
-										wordsToDocNumbers, memoryIndex);
-						}
-					}
+				// words are sorted, so all the matches follow the first one
+				reader.seek(key);
+				while (reader.next()) {
+					int comparison = reader.compare(key, true);
+					if (comparison < 0)
+						continue;
+					if (comparison > 0)
+						break;
+					results = addQueryResult(results, reader.word(),
+							reader.posting, memoryIndex);
 				}
 				break;
 			case SearchPattern.R_REGEXP_MATCH:
 			case SearchPattern.R_REGEXP_MATCH | SearchPattern.R_CASE_SENSITIVE:
-				Pattern regexpPattern = Pattern
-						.compile(
-								new String(key),
-								(matchRule & SearchPattern.R_CASE_SENSITIVE) == 0 ? Pattern.CASE_INSENSITIVE
-										: 0);
-				for (int i = 0, l = categories.length; i < l; i++) {
-					HashtableOfObject wordsToDocNumbers = readCategoryTable(
-							categories[i], false);
-					if (wordsToDocNumbers != null) {
-						char[][] words = wordsToDocNumbers.keyTable;
-						for (int j = 0, m = words.length; j < m; j++) {
-							char[] word = words[j];
-							if (word != null) {
-								char decodedWord[];
-								int sep = CharOperation.indexOf(
-										IIndexConstants.SEPARATOR, word);
-								if (sep > 0) {
-									decodedWord = CharOperation.subarray(word,
-											0, sep);
-								} else {
-									decodedWord = word;
-								}
-								if (regexpPattern.matcher(
-										new String(decodedWord)).matches()) {
-									results = addQueryResult(results, word,
-											wordsToDocNumbers, memoryIndex);
-								}
-							}
-						}
+				if (regexpPattern == null)
+					regexpPattern = Pattern
+							.compile(
+									new String(key),
+									(matchRule & SearchPattern.R_CASE_SENSITIVE) == 0 ? Pattern.CASE_INSENSITIVE
+											: 0);
+				while (reader.next()) {
+					char[] word = reader.word();
+					char decodedWord[];
+					int sep = CharOperation.indexOf(IIndexConstants.SEPARATOR,
+							word);
+					if (sep > 0) {
+						decodedWord = CharOperation.subarray(word, 0, sep);
+					} else {
+						decodedWord = word;
+					}
+					if (regexpPattern.matcher(new String(decodedWord))
+							.matches()) {
+						results = addQueryResult(results, word, reader.posting,
+								memoryIndex);
 					}
 				}
 				break;
 			default:
-				for (int i = 0, l = categories.length; i < l; i++) {
-					HashtableOfObject wordsToDocNumbers = readCategoryTable(
-							categories[i], false);
-					if (wordsToDocNumbers != null) {
-						char[][] words = wordsToDocNumbers.keyTable;
-						for (int j = 0, m = words.length; j < m; j++) {
-							char[] word = words[j];
-							if (word != null
-									&& Index.isMatch(key, word, matchRule)) {
-								results = addQueryResult(results, word,
-										wordsToDocNumbers, memoryIndex);
-							}
-						}
-					}
+				while (reader.next()) {
+					char[] word = reader.word();
+					if (Index.isMatch(key, word, matchRule))
+						results = addQueryResult(results, word, reader.posting,
+								memoryIndex);
 				}
 			}
 		}
-
-		if (results == null)
-			return null;
 		return results;
 	}
 
-	private void cacheDocumentNames() throws IOException {
-		// will need all document names so get them now
-		this.cachedChunks = new String[this.numberOfChunks][];
-		DataInputStream stream = new DataInputStream(new BufferedInputStream(
-				new FileInputStream(getIndexFile()),
-				this.numberOfChunks > 5 ? 4096 : 2048));
-		try {
-			stream.skip(this.chunkOffsets[0]);
+	/**
+	 * Streams the sorted document names of this index and the sorted
+	 * new/changed documents of the memory index into the writer. Fills the new
+	 * position of each document of this index, or DELETED/RE_INDEXED, and the
+	 * new position of each indexed document. Answers the number of written
+	 * names.
+	 */
+	private int mergeDocumentNames(MemoryIndex memoryIndex, int[] positions,
+			SimpleLookupTable indexedDocuments, DocumentNamesWriter writer)
+			throws IOException {
+		SimpleLookupTable docsToRefs = memoryIndex.docsToReferences;
+		Object[] docNames = docsToRefs.keyTable;
+		Object[] referenceTables = docsToRefs.valueTable;
+		String[] newDocNames = new String[docsToRefs.elementSize];
+		int newCount = 0;
+		for (int i = 0, l = referenceTables.length; i < l; i++)
+			if (referenceTables[i] != null) // skip deleted documents
+				newDocNames[newCount++] = (String) docNames[i];
+		if (newCount < newDocNames.length)
+			System.arraycopy(newDocNames, 0,
+					newDocNames = new String[newCount], 0, newCount);
+		Util.sort(newDocNames);
+
+		int next = 0; // next new document
+		int count = 0; // number of written names
+		if (this.numberOfChunks > 0) {
+			DataInputStream stream = new DataInputStream(
+					new ByteBufferInputStream(this.buffer, this.chunkOffsets[0]));
+			String[] chunk = new String[CHUNK_SIZE];
+			int lastIndex = this.numberOfChunks - 1;
+			int oldPosition = 0;
 			for (int i = 0; i < this.numberOfChunks; i++) {
-				int size = i == this.numberOfChunks - 1 ? this.sizeOfLastChunk
-						: CHUNK_SIZE;
-				readChunk(this.cachedChunks[i] = new String[size], stream, 0,
-						size);
-			}
-		} finally {
-			stream.close();
-		}
-	}
-
-	private String[] computeDocumentNames(String[] onDiskNames,
-			int[] positions, SimpleLookupTable indexedDocuments,
-			MemoryIndex memoryIndex) {
-		int onDiskLength = onDiskNames.length;
-		Object[] docNames = memoryIndex.docsToReferences.keyTable;
-		Object[] referenceTables = memoryIndex.docsToReferences.valueTable;
-		if (onDiskLength == 0) {
-			// disk index was empty, so add every indexed document
-			for (int i = 0, l = referenceTables.length; i < l; i++)
-				if (referenceTables[i] != null)
-					indexedDocuments.put(docNames[i], null); // remember each
-			// new document
-
-			String[] newDocNames = new String[indexedDocuments.elementSize];
-			int count = 0;
-			Object[] added = indexedDocuments.keyTable;
-			for (int i = 0, l = added.length; i < l; i++)
-				if (added[i] != null)
-					newDocNames[count++] = (String) added[i];
-			Util.sort(newDocNames);
-			for (int i = 0, l = newDocNames.length; i < l; i++)
-				indexedDocuments.put(newDocNames[i], i);
-			return newDocNames;
-		}
-
-		// initialize positions as if each document will remain in the same
-		// position
-		for (int i = 0; i < onDiskLength; i++)
-			positions[i] = i;
-
-		// find out if the memory index has any new or deleted documents, if not
-		// then the names & positions are the same
-		int numDeletedDocNames = 0;
-		int numReindexedDocNames = 0;
-		nextPath: for (int i = 0, l = docNames.length; i < l; i++) {
-			String docName = (String) docNames[i];
-			if (docName != null) {
-				for (int j = 0; j < onDiskLength; j++) {
-					if (docName.equals(onDiskNames[j])) {
-						if (referenceTables[i] == null) {
-							positions[j] = DELETED;
-							numDeletedDocNames++;
-						} else {
-							positions[j] = RE_INDEXED;
-							numReindexedDocNames++;
-						}
-						continue nextPath;
+				int chunkSize = i < lastIndex ? CHUNK_SIZE : this.sizeOfLastChunk;
+				readChunk(chunk, stream, 0, chunkSize);
+				for (int j = 0; j < chunkSize; j++, oldPosition++) {
+					String docName = chunk[j];
+					while (next < newCount
+							&& newDocNames[next].compareTo(docName) < 0) {
+						writer.write(newDocNames[next]);
+						indexedDocuments.put(newDocNames[next++], count++);
+					}
+					if (docsToRefs.containsKey(docName)) {
+						// the old references of a deleted or re-indexed
+						// document are forgotten, a re-indexed one is written
+						// with the new documents
+						positions[oldPosition] = docsToRefs.get(docName) == null ? DELETED
+								: RE_INDEXED;
+					} else {
+						writer.write(docName);
+						positions[oldPosition] = count++;
 					}
 				}
-				if (referenceTables[i] != null)
-					indexedDocuments.put(docName, null); // remember each new
-				// document, skip
-				// deleted documents
-				// which were never
-				// saved
 			}
 		}
-
-		String[] newDocNames = onDiskNames;
-		if (numDeletedDocNames > 0 || indexedDocuments.elementSize > 0) {
-			// some new documents have been added or some old ones deleted
-			newDocNames = new String[onDiskLength
-					+ indexedDocuments.elementSize - numDeletedDocNames];
-			int count = 0;
-			for (int i = 0; i < onDiskLength; i++)
-				if (positions[i] >= RE_INDEXED)
-					newDocNames[count++] = onDiskNames[i]; // keep each
-			// unchanged
-			// document
-			Object[] added = indexedDocuments.keyTable;
-			for (int i = 0, l = added.length; i < l; i++)
-				if (added[i] != null)
-					newDocNames[count++] = (String) added[i]; // add each new
-			// document
-			Util.sort(newDocNames);
-			for (int i = 0, l = newDocNames.length; i < l; i++)
-				if (indexedDocuments.containsKey(newDocNames[i]))
-					indexedDocuments.put(newDocNames[i], i); // remember
-			// the
-			// position
-			// for
-			// each
-			// new
-			// document
+		while (next < newCount) {
+			writer.write(newDocNames[next]);
+			indexedDocuments.put(newDocNames[next++], count++);
 		}
-
-		// need to be able to look up an old position (ref# from a ref[]) and
-		// map it to its new position
-		// if its old position == DELETED then its forgotton
-		// if its old position == ReINDEXED then its also forgotten but its new
-		// position is needed to map references
-		int count = -1;
-		for (int i = 0; i < onDiskLength;) {
-			switch (positions[i]) {
-			case DELETED:
-				i++; // skip over deleted... references are forgotten
-				break;
-			case RE_INDEXED:
-				String newName = newDocNames[++count];
-				if (newName.equals(onDiskNames[i])) {
-					indexedDocuments.put(newName, count); // the
-					// reindexed
-					// docName
-					// that
-					// was
-					// at
-					// position
-					// i is
-					// now
-					// at
-					// position
-					// count
-					i++;
-				}
-				break;
-			default:
-				if (newDocNames[++count].equals(onDiskNames[i]))
-					positions[i++] = count; // the unchanged docName that was at
-				// position i is now at position
-				// count
-			}
-		}
-		return newDocNames;
+		return count;
 	}
 
 	private void copyQueryResults(HashtableOfObject categoryToWords,
@@ -485,19 +810,27 @@ public class DiskIndex {
 		File indexFile = getIndexFile();
 		if (indexFile.exists()) {
 			if (reuseExistingFile) {
+				String signature;
 				RandomAccessFile file = new RandomAccessFile(this.fileName, "r"); //$NON-NLS-1$
 				try {
-					String signature = file.readUTF();
-					if (!signature.equals(SIGNATURE))
-						throw new IOException(Messages.exception_wrongFormat);
-
-					this.headerInfoOffset = file.readInt();
-					if (this.headerInfoOffset > 0) // file is empty if its not
-						// set
-						readHeaderInfo(file);
+					signature = file.readUTF();
+					if (signature.equals(SIGNATURE)) {
+						this.headerInfoOffset = file.readInt();
+						if (this.headerInfoOffset > 0) // file is empty if its
+							// not set
+							readHeaderInfo(file);
+					}
 				} finally {
 					file.close();
 				}
+				if (signature.equals(LegacyDiskIndex.SIGNATURE)) {
+					convertFrom(new LegacyDiskIndex(this.fileName));
+					return;
+				}
+				if (!signature.equals(SIGNATURE))
+					throw new IOException(Messages.exception_wrongFormat);
+				if (this.headerInfoOffset > 0)
+					openBuffer();
 				return;
 			}
 			if (!indexFile.delete()) {
@@ -523,8 +856,61 @@ public class DiskIndex {
 		}
 	}
 
-	private void initializeFrom(DiskIndex diskIndex, File newIndexFile)
-			throws IOException {
+	/**
+	 * Rewrites an index file of the previous format in the current one. The
+	 * document numbers are kept, since both formats store the same sorted
+	 * document names.
+	 */
+	private void convertFrom(LegacyDiskIndex legacyIndex) throws IOException {
+		legacyIndex.initialize();
+		String[] docNames = legacyIndex.readAllDocumentNames();
+		if (docNames.length == 0) {
+			initialize(false);
+			return;
+		}
+
+		char[][] categoryNames = legacyIndex.getCategoryNames();
+		DiskIndex newDiskIndex = new DiskIndex(this.fileName + ".tmp"); //$NON-NLS-1$
+		File newIndexFile = newDiskIndex.getIndexFile();
+		try {
+			newDiskIndex.initializeFrom(newIndexFile, categoryNames.length,
+					legacyIndex.separator);
+			DataOutputStream stream = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(newIndexFile,
+							false), 2048));
+			int offsetToHeader = -1;
+			try {
+				newDiskIndex.writeSignature(stream);
+				DocumentNamesWriter names = newDiskIndex.new DocumentNamesWriter(
+						stream);
+				for (int i = 0; i < docNames.length; i++)
+					names.write(docNames[i]);
+				names.finish();
+				docNames = null; // free up the space
+				for (int i = 0; i < categoryNames.length; i++)
+					newDiskIndex.writeCategoryTable(categoryNames[i],
+							legacyIndex.readCategoryTable(categoryNames[i]),
+							stream);
+				offsetToHeader = stream.size();
+				newDiskIndex.writeHeaderInfo(stream);
+			} finally {
+				stream.close();
+				newDiskIndex.disposePostingsBuffer();
+			}
+			newDiskIndex.writeOffsetToHeader(offsetToHeader);
+			replaceIndexFile(newIndexFile);
+		} catch (IOException e) {
+			if (newIndexFile.exists() && !newIndexFile.delete())
+				if (DEBUG)
+					System.out
+							.println("convertFrom - Failed to delete temp index " + newDiskIndex.fileName); //$NON-NLS-1$
+			throw e;
+		}
+		initialize(true);
+	}
+
+	private void initializeFrom(File newIndexFile, int numberOfCategories,
+			char separator) throws IOException {
 		if (newIndexFile.exists() && !newIndexFile.delete()) { // delete the
 			// temporary
 			// index file
@@ -539,22 +925,23 @@ public class DiskIndex {
 					"Failed to create temp index " + this.fileName); //$NON-NLS-1$
 		}
 
-		int size = diskIndex.categoryOffsets == null ? 8
-				: diskIndex.categoryOffsets.elementSize;
+		int size = numberOfCategories == 0 ? 8 : numberOfCategories;
 		this.categoryOffsets = new HashtableOfIntValues(size);
 		this.categoryTables = new HashtableOfObject(size);
-		this.separator = diskIndex.separator;
+		this.separator = separator;
 	}
 
 	private void mergeCategories(DiskIndex onDisk, int[] positions,
 			DataOutputStream stream) throws IOException {
 		// at this point, this.categoryTables contains the names -> wordsToDocs
 		// added in copyQueryResults()
-		char[][] oldNames = onDisk.categoryOffsets.keyTable;
-		for (int i = 0, l = oldNames.length; i < l; i++) {
-			char[] oldName = oldNames[i];
-			if (oldName != null && !this.categoryTables.containsKey(oldName))
-				this.categoryTables.put(oldName, null);
+		if (onDisk.categoryOffsets != null) {
+			char[][] oldNames = onDisk.categoryOffsets.keyTable;
+			for (int i = 0, l = oldNames.length; i < l; i++) {
+				char[] oldName = oldNames[i];
+				if (oldName != null && !this.categoryTables.containsKey(oldName))
+					this.categoryTables.put(oldName, null);
+			}
 		}
 
 		char[][] categoryNames = this.categoryTables.keyTable;
@@ -566,145 +953,142 @@ public class DiskIndex {
 
 	private void mergeCategory(char[] categoryName, DiskIndex onDisk,
 			int[] positions, DataOutputStream stream) throws IOException {
+		// the sorted words of the changed documents are merged with the sorted
+		// dictionary of the old table, which is read in place
 		HashtableOfObject wordsToDocs = (HashtableOfObject) this.categoryTables
 				.get(categoryName);
-		if (wordsToDocs == null)
-			wordsToDocs = new HashtableOfObject(3);
-
-		HashtableOfObject oldWordsToDocs = onDisk.readCategoryTable(
-				categoryName, true);
-		if (oldWordsToDocs != null) {
-			char[][] oldWords = oldWordsToDocs.keyTable;
-			Object[] oldArrayOffsets = oldWordsToDocs.valueTable;
-			nextWord: for (int i = 0, l = oldWords.length; i < l; i++) {
-				char[] oldWord = oldWords[i];
-				if (oldWord != null) {
-					int[] oldDocNumbers = (int[]) oldArrayOffsets[i];
-					int length = oldDocNumbers.length;
-					int[] mappedNumbers = new int[length];
-					int count = 0;
-					for (int j = 0; j < length; j++) {
-						int pos = positions[oldDocNumbers[j]];
-						if (pos > RE_INDEXED) // forget any reference to a
-							// document which was deleted or
-							// re_indexed
-							mappedNumbers[count++] = pos;
-					}
-					if (count < length) {
-						if (count == 0)
-							continue nextWord; // skip words which no longer
-						// have any references
-						System.arraycopy(mappedNumbers, 0,
-								mappedNumbers = new int[count], 0, count);
-					}
+		this.categoryTables.put(categoryName, null); // flush cached table
+		char[][] words = sortedWords(wordsToDocs);
 
-					Object o = wordsToDocs.get(oldWord);
-					if (o == null) {
-						wordsToDocs.put(oldWord, mappedNumbers);
-					} else {
-						IntList list = null;
-						if (o instanceof IntList) {
-							list = (IntList) o;
-						} else {
-							list = new IntList((int[]) o);
-							wordsToDocs.put(oldWord, list);
-						}
-						for (int j = 0; j < count; j++)
-							list.add(mappedNumbers[j]);
-					}
+		WordReader reader = null;
+		if (onDisk.categoryOffsets != null) {
+			int table = onDisk.categoryOffsets.get(categoryName);
+			if (table != HashtableOfIntValues.NO_VALUE)
+				reader = onDisk.new WordReader(table);
+		}
+
+		CategoryWriter writer = new CategoryWriter(stream);
+		boolean hasOldWord = reader != null && reader.next();
+		int next = 0; // next new word
+		while (hasOldWord || next < words.length) {
+			int comparison = !hasOldWord ? 1 : next == words.length ? -1
+					: reader.compare(words[next], false);
+			char[] word = null;
+			int[] documentNumbers = null;
+			if (comparison <= 0) {
+				word = reader.word();
+				documentNumbers = onDisk.mapDocumentNumbers(reader.posting,
+						positions);
+				hasOldWord = reader.next();
+			}
+			if (comparison >= 0) {
+				word = words[next++];
+				int[] newNumbers = documentNumbers(wordsToDocs.get(word));
+				if (documentNumbers == null || documentNumbers.length == 0) {
+					documentNumbers = newNumbers;
+				} else {
+					// references of re-indexed documents were forgotten, so
+					// both are disjoint
+					int length = documentNumbers.length;
+					System.arraycopy(documentNumbers, 0,
+							documentNumbers = new int[length
+									+ newNumbers.length], 0, length);
+					System.arraycopy(newNumbers, 0, documentNumbers, length,
+							newNumbers.length);
 				}
 			}
-			onDisk.categoryTables.put(categoryName, null); // flush cached
-			// table
+			if (documentNumbers.length > 0) // skip words which no longer have
+				// any references
+				writer.add(word, documentNumbers);
 		}
-		writeCategoryTable(categoryName, wordsToDocs, stream);
+		writer.finish(categoryName);
 	}
 
-	DiskIndex mergeWith(MemoryIndex memoryIndex) throws IOException {
-		// assume write lock is held
-		// compute & write out new docNames
-		String[] docNames = readAllDocumentNames();
-		int previousLength = docNames.length;
+	/**
+	 * Answers the new numbers of the documents of a posting, forgetting the
+	 * deleted and re-indexed ones.
+	 */
+	private int[] mapDocumentNumbers(int posting, int[] positions) {
+		int[] documentNumbers = readDocumentNumbers(posting);
+		int length = documentNumbers.length;
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			int pos = positions[documentNumbers[i]];
+			if (pos > RE_INDEXED)
+				documentNumbers[count++] = pos;
+		}
+		if (count < length)
+			System.arraycopy(documentNumbers, 0,
+					documentNumbers = new int[count], 0, count);
+		return documentNumbers;
+	}
+
+	DiskIndex mergeWith(MemoryIndex memoryIndex, char separator)
+			throws IOException {
+		// assume the memory index is not changed while merging, this disk index
+		// is left untouched so it can still be queried
+		// the document names and category tables are streamed from this index
+		// into the new one, so only the changed documents are held in memory
+		int previousLength = this.numberOfChunks <= 0 ? 0
+				: (this.numberOfChunks - 1) * CHUNK_SIZE + this.sizeOfLastChunk;
 		int[] positions = new int[previousLength]; // keeps track of the
-		// position of each document
-		// in the new sorted
-		// docNames
+		// position of each document in the new sorted document names
 		SimpleLookupTable indexedDocuments = new SimpleLookupTable(3); // for
-		// each
-		// new/changed
-		// document
-		// in
-		// the
-		// memoryIndex
-		docNames = computeDocumentNames(docNames, positions, indexedDocuments,
-				memoryIndex);
-		if (docNames.length == 0) {
-			if (previousLength == 0)
-				return this; // nothing to do... memory index contained
-			// deleted documents that had never been saved
-
-			// index is now empty since all the saved documents were removed
-			DiskIndex newDiskIndex = new DiskIndex(this.fileName);
-			newDiskIndex.initialize(false);
-			return newDiskIndex;
-		}
+		// each new/changed document in the memoryIndex
 
 		DiskIndex newDiskIndex = new DiskIndex(this.fileName + ".tmp"); //$NON-NLS-1$
 		File newIndexFile = newDiskIndex.getIndexFile();
+		int offsetToHeader = -1;
 		try {
-			newDiskIndex.initializeFrom(this, newIndexFile);
+			newDiskIndex.initializeFrom(newIndexFile,
+					this.categoryOffsets == null ? 0
+							: this.categoryOffsets.elementSize, separator);
 			DataOutputStream stream = new DataOutputStream(
 					new BufferedOutputStream(new FileOutputStream(newIndexFile,
 							false), 2048));
-			int offsetToHeader = -1;
 			try {
-				newDiskIndex.writeAllDocumentNames(docNames, stream);
-				docNames = null; // free up the space
-
-				// add each new/changed doc to empty category tables using its
-				// new position #
-				if (indexedDocuments.elementSize > 0) {
-					Object[] names = indexedDocuments.keyTable;
-					Object[] integerPositions = indexedDocuments.valueTable;
-					for (int i = 0, l = names.length; i < l; i++)
-						if (names[i] != null)
-							newDiskIndex
-									.copyQueryResults(
-											(HashtableOfObject) memoryIndex.docsToReferences
-													.get(names[i]),
-											((Integer) integerPositions[i])
-													.intValue());
-				}
-				indexedDocuments = null; // free up the space
+				newDiskIndex.writeSignature(stream);
+				DocumentNamesWriter names = newDiskIndex.new DocumentNamesWriter(
+						stream);
+				if (mergeDocumentNames(memoryIndex, positions,
+						indexedDocuments, names) > 0) {
+					names.finish();
+
+					// add each new/changed doc to empty category tables using
+					// its new position #
+					if (indexedDocuments.elementSize > 0) {
+						Object[] docNames = indexedDocuments.keyTable;
+						Object[] integerPositions = indexedDocuments.valueTable;
+						for (int i = 0, l = docNames.length; i < l; i++)
+							if (docNames[i] != null)
+								newDiskIndex
+										.copyQueryResults(
+												(HashtableOfObject) memoryIndex.docsToReferences
+														.get(docNames[i]),
+												((Integer) integerPositions[i])
+														.intValue());
+					}
+					indexedDocuments = null; // free up the space
 
-				// merge each category table with the new ones & write them out
-				if (previousLength == 0)
-					newDiskIndex.writeCategories(stream);
-				else
+					// merge each category table with the new ones & write them
+					// out
 					newDiskIndex.mergeCategories(this, positions, stream);
-				offsetToHeader = stream.size();
-				newDiskIndex.writeHeaderInfo(stream);
-				positions = null; // free up the space
+					offsetToHeader = stream.size();
+					newDiskIndex.writeHeaderInfo(stream);
+					positions = null; // free up the space
+				}
 			} finally {
 				stream.close();
+				newDiskIndex.disposePostingsBuffer();
 			}
-			newDiskIndex.writeOffsetToHeader(offsetToHeader);
-
-			// rename file by deleting previous index file & renaming temp one
-			File old = getIndexFile();
-			if (old.exists() && !old.delete()) {
-				if (DEBUG)
-					System.out
-							.println("mergeWith - Failed to delete " + this.fileName); //$NON-NLS-1$
-				throw new IOException(
-						"Failed to delete index file " + this.fileName); //$NON-NLS-1$
-			}
-			if (!newIndexFile.renameTo(old)) {
-				if (DEBUG)
-					System.out
-							.println("mergeWith - Failed to rename " + this.fileName); //$NON-NLS-1$
-				throw new IOException(
-						"Failed to rename index file " + this.fileName); //$NON-NLS-1$
+			if (offsetToHeader < 0) {
+				if (!newIndexFile.delete())
+					if (DEBUG)
+						System.out
+								.println("mergeWith - Failed to delete temp index " + newDiskIndex.fileName); //$NON-NLS-1$
+			} else {
+				newDiskIndex.writeOffsetToHeader(offsetToHeader);
+				replaceIndexFile(newIndexFile);
 			}
 		} catch (IOException e) {
 			if (newIndexFile.exists() && !newIndexFile.delete())
@@ -714,153 +1098,57 @@ public class DiskIndex {
 			throw e;
 		}
 
+		if (offsetToHeader < 0) {
+			if (previousLength == 0)
+				return this; // nothing to do... memory index contained
+			// deleted documents that had never been saved
+
+			// index is now empty since all the saved documents were removed
+			newDiskIndex = new DiskIndex(this.fileName);
+			newDiskIndex.initialize(false);
+			newDiskIndex.separator = separator;
+			return newDiskIndex;
+		}
+
 		newDiskIndex.fileName = this.fileName;
+		newDiskIndex.openBuffer();
 		return newDiskIndex;
 	}
 
-	private synchronized String[] readAllDocumentNames() throws IOException {
-		if (this.numberOfChunks <= 0)
-			return new String[0];
-
-		DataInputStream stream = new DataInputStream(new BufferedInputStream(
-				new FileInputStream(getIndexFile()),
-				this.numberOfChunks > 5 ? 4096 : 2048));
-		try {
-			stream.skip(this.chunkOffsets[0]);
-			int lastIndex = this.numberOfChunks - 1;
-			String[] docNames = new String[lastIndex * CHUNK_SIZE
-					+ sizeOfLastChunk];
-			for (int i = 0; i < this.numberOfChunks; i++)
-				readChunk(docNames, stream, i * CHUNK_SIZE,
-						i < lastIndex ? CHUNK_SIZE : sizeOfLastChunk);
-			return docNames;
-		} finally {
-			stream.close();
+	private void replaceIndexFile(File newIndexFile) throws IOException {
+		// rename file by deleting previous index file & renaming temp one
+		File old = getIndexFile();
+		if (old.exists() && !old.delete()) {
+			if (DEBUG)
+				System.out
+						.println("replaceIndexFile - Failed to delete " + this.fileName); //$NON-NLS-1$
+			throw new IOException(
+					"Failed to delete index file " + this.fileName); //$NON-NLS-1$
 		}
-	}
-
-	private synchronized HashtableOfObject readCategoryTable(
-			char[] categoryName, boolean readDocNumbers) throws IOException {
-		// result will be null if categoryName is unknown
-		int offset = this.categoryOffsets.get(categoryName);
-		if (offset == HashtableOfIntValues.NO_VALUE)
-			return null;
-
-		if (this.categoryTables == null) {
-			this.categoryTables = new HashtableOfObject(3);
-		} else {
-			HashtableOfObject cachedTable = (HashtableOfObject) this.categoryTables
-					.get(categoryName);
-			if (cachedTable != null) {
-				if (readDocNumbers) { // must cache remaining document number
-					// arrays
-					Object[] arrayOffsets = cachedTable.valueTable;
-					for (int i = 0, l = arrayOffsets.length; i < l; i++)
-						if (arrayOffsets[i] instanceof Integer)
-							arrayOffsets[i] = readDocumentNumbers(arrayOffsets[i]);
-				}
-				return cachedTable;
-			}
+		if (!newIndexFile.renameTo(old)) {
+			if (DEBUG)
+				System.out
+						.println("replaceIndexFile - Failed to rename " + this.fileName); //$NON-NLS-1$
+			throw new IOException(
+					"Failed to rename index file " + this.fileName); //$NON-NLS-1$
 		}
+	}
 
-		DataInputStream stream = new DataInputStream(new BufferedInputStream(
-				new FileInputStream(getIndexFile()), 2048));
-		HashtableOfObject categoryTable = null;
-		char[][] matchingWords = null;
-		int count = 0;
-		int firstOffset = -1;
-		try {
-			stream.skip(offset);
-			int size = stream.readInt();
-			try {
-				if (size < 0) { // DEBUG
-					System.err
-							.println("-------------------- DEBUG --------------------"); //$NON-NLS-1$
-					System.err.println("file = " + getIndexFile()); //$NON-NLS-1$
-					System.err.println("offset = " + offset); //$NON-NLS-1$
-					System.err.println("size = " + size); //$NON-NLS-1$
-					System.err
-							.println("--------------------   END   --------------------"); //$NON-NLS-1$
-				}
-				categoryTable = new HashtableOfObject(size);
-			} catch (OutOfMemoryError oom) {
-				// DEBUG
-				oom.printStackTrace();
-				System.err
-						.println("-------------------- DEBUG --------------------"); //$NON-NLS-1$
-				System.err.println("file = " + getIndexFile()); //$NON-NLS-1$
-				System.err.println("offset = " + offset); //$NON-NLS-1$
-				System.err.println("size = " + size); //$NON-NLS-1$
-				System.err
-						.println("--------------------   END   --------------------"); //$NON-NLS-1$
-				throw oom;
-			}
-			int largeArraySize = 256;
-			for (int i = 0; i < size; i++) {
-				char[] word = Util.readUTF(stream);
-				int arrayOffset = stream.readInt();
-				// if arrayOffset is:
-				// <= 0 then the array size == 1 with the value -> -arrayOffset
-				// > 1 & < 256 then the size of the array is > 1 & < 256, the
-				// document array follows immediately
-				// 256 if the array size >= 256 followed by another int which is
-				// the offset to the array (written prior to the table)
-				if (arrayOffset <= 0) {
-					categoryTable.put(word, new int[] { -arrayOffset }); // store
-					// 1
-					// element
-					// array
-					// by
-					// negating
-					// documentNumber
-				} else if (arrayOffset < largeArraySize) {
-					categoryTable.put(word,
-							readDocumentArray(stream, arrayOffset));
-					// read in-lined array providing size
-				} else {
-					arrayOffset = stream.readInt(); // read actual offset
-					if (readDocNumbers) {
-						if (matchingWords == null)
-							matchingWords = new char[size][];
-						if (count == 0)
-							firstOffset = arrayOffset;
-						matchingWords[count++] = word;
-					}
-					categoryTable.put(word, arrayOffset); // offset
-					// to
-					// array
-					// in
-					// the
-					// file
-				}
-			}
-			this.categoryTables.put(categoryName, categoryTable);
-			// cache the table as long as its not too big
-			// in practise, some tables can be greater than 500K when the
-			// contain more than 10K elements
-			this.cachedCategoryName = categoryTable.elementSize < 10000 ? categoryName
-					: null;
-		} finally {
-			stream.close();
-		}
+	private String[] readAllDocumentNames() throws IOException {
+		if (this.numberOfChunks <= 0)
+			return new String[0];
 
-		if (matchingWords != null && count > 0) {
-			stream = new DataInputStream(new BufferedInputStream(
-					new FileInputStream(getIndexFile()), 2048));
-			try {
-				stream.skip(firstOffset);
-				for (int i = 0; i < count; i++)
-					// each array follows the previous one
-					categoryTable.put(matchingWords[i],
-							readDocumentArray(stream, stream.readInt()));
-			} finally {
-				stream.close();
-			}
-		}
-		return categoryTable;
+		DataInputStream stream = new DataInputStream(new ByteBufferInputStream(
+				this.buffer, this.chunkOffsets[0]));
+		int lastIndex = this.numberOfChunks - 1;
+		String[] docNames = new String[lastIndex * CHUNK_SIZE + sizeOfLastChunk];
+		for (int i = 0; i < this.numberOfChunks; i++)
+			readChunk(docNames, stream, i * CHUNK_SIZE,
+					i < lastIndex ? CHUNK_SIZE : sizeOfLastChunk);
+		return docNames;
 	}
 
-	private void readChunk(String[] docNames, DataInputStream stream,
+	static void readChunk(String[] docNames, DataInputStream stream,
 			int index, int size) throws IOException {
 		String current = stream.readUTF();
 		docNames[index++] = current;
@@ -888,72 +1176,35 @@ public class DiskIndex {
 		}
 	}
 
-	private int[] readDocumentArray(DataInputStream stream, int arraySize)
-			throws IOException {
-		int[] result = new int[arraySize];
-		switch (this.documentReferenceSize) {
-		case 1:
-			for (int i = 0; i < arraySize; i++)
-				result[i] = stream.readUnsignedByte();
-			break;
-		case 2:
-			for (int i = 0; i < arraySize; i++)
-				result[i] = stream.readUnsignedShort();
-			break;
-		default:
-			for (int i = 0; i < arraySize; i++)
-				result[i] = stream.readInt();
-			break;
-		}
-		return result;
-	}
-
-	synchronized String readDocumentName(int docNumber) throws IOException {
-		if (this.cachedChunks == null)
-			this.cachedChunks = new String[this.numberOfChunks][];
-
+	String readDocumentName(int docNumber) throws IOException {
 		int chunkNumber = docNumber / CHUNK_SIZE;
-		String[] chunk = this.cachedChunks[chunkNumber];
+		String[] chunk = this.cachedChunks.get(chunkNumber);
 		if (chunk == null) {
+			// concurrent queries may decode the same chunk, the names are equal
+			// so it does not matter which one is kept
 			boolean isLastChunk = chunkNumber == this.numberOfChunks - 1;
-			int start = this.chunkOffsets[chunkNumber];
-			int numberOfBytes = (isLastChunk ? this.startOfCategoryTables
-					: this.chunkOffsets[chunkNumber + 1]) - start;
-			if (numberOfBytes < 0)
-				throw new IllegalArgumentException();
-			byte[] bytes = new byte[numberOfBytes];
-			FileInputStream file = new FileInputStream(getIndexFile());
-			try {
-				file.skip(start);
-				if (file.read(bytes, 0, numberOfBytes) != numberOfBytes)
-					throw new IOException();
-			} finally {
-				file.close();
-			}
 			DataInputStream stream = new DataInputStream(
-					new ByteArrayInputStream(bytes));
+					new ByteBufferInputStream(this.buffer,
+							this.chunkOffsets[chunkNumber]));
 			int numberOfNames = isLastChunk ? this.sizeOfLastChunk : CHUNK_SIZE;
-			chunk = this.cachedChunks[chunkNumber] = new String[numberOfNames];
+			chunk = new String[numberOfNames];
 			readChunk(chunk, stream, 0, numberOfNames);
+			this.cachedChunks.lazySet(chunkNumber, chunk);
 		}
 		return chunk[docNumber - (chunkNumber * CHUNK_SIZE)];
 	}
 
-	synchronized int[] readDocumentNumbers(Object arrayOffset)
-			throws IOException {
-		// arrayOffset is either a cached array of docNumbers or an Integer
-		// offset in the file
-		if (arrayOffset instanceof int[])
-			return (int[]) arrayOffset;
-
-		DataInputStream stream = new DataInputStream(new BufferedInputStream(
-				new FileInputStream(getIndexFile()), 2048));
-		try {
-			stream.skip(((Integer) arrayOffset).intValue());
-			return readDocumentArray(stream, stream.readInt());
-		} finally {
-			stream.close();
-		}
+	int[] readDocumentNumbers(int posting) {
+		// posting is either a single document number d stored as -(d + 1) or
+		// the offset of a posting list in the file
+		if (posting < 0)
+			return new int[] { -posting - 1 };
+		VarReader reader = new VarReader(posting);
+		int[] result = new int[reader.readInt()];
+		int documentNumber = 0;
+		for (int i = 0, l = result.length; i < l; i++)
+			result[i] = documentNumber += reader.readInt();
+		return result;
 	}
 
 	private void readHeaderInfo(RandomAccessFile file) throws IOException {
@@ -962,7 +1213,6 @@ public class DiskIndex {
 		// must be same order as writeHeaderInfo()
 		this.numberOfChunks = file.readInt();
 		this.sizeOfLastChunk = file.readUnsignedByte();
-		this.documentReferenceSize = file.readUnsignedByte();
 		this.separator = (char) file.readUnsignedByte();
 
 		this.chunkOffsets = new int[this.numberOfChunks];
@@ -979,201 +1229,121 @@ public class DiskIndex {
 		// to
 		// category
 		// table
-		this.categoryTables = new HashtableOfObject(3);
 	}
 
-	synchronized void startQuery() {
-		this.cacheUserCount++;
+	private void openBuffer() throws IOException {
+		this.buffer = readIndexFile(this.fileName);
+		this.cachedChunks = new AtomicReferenceArray<String[]>(
+				this.numberOfChunks);
 	}
 
-	synchronized void stopQuery() {
-		if (--this.cacheUserCount < 0) {
-			// clear cached items
-			this.cacheUserCount = -1;
-			this.cachedChunks = null;
-			if (this.categoryTables != null) {
-				if (this.cachedCategoryName == null) {
-					this.categoryTables = null;
-				} else if (this.categoryTables.elementSize > 1) {
-					HashtableOfObject newTables = new HashtableOfObject(3);
-					newTables.put(this.cachedCategoryName,
-							this.categoryTables.get(this.cachedCategoryName));
-					this.categoryTables = newTables;
-				}
+	static ByteBuffer readIndexFile(String fileName) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r"); //$NON-NLS-1$
+		try {
+			FileChannel channel = file.getChannel();
+			int size = (int) channel.size();
+			if (MAP_INDEX_FILES) {
+				// the mapping stays valid after the channel is closed
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
 			}
+			ByteBuffer contents = ByteBuffer.allocate(size);
+			while (contents.hasRemaining())
+				if (channel.read(contents) < 0)
+					throw new IOException(Messages.exception_wrongFormat);
+			return contents;
+		} finally {
+			file.close();
 		}
 	}
 
-	private void writeAllDocumentNames(String[] sortedDocNames,
-			DataOutputStream stream) throws IOException {
-		if (sortedDocNames.length == 0)
-			throw new IllegalArgumentException();
+	void startQuery() {
+		this.cacheUserCount.incrementAndGet();
+	}
+
+	void stopQuery() {
+		// the generation may have been replaced between startQuery() and
+		// stopQuery(), so the count is not allowed to go below 0
+		int count;
+		do {
+			count = this.cacheUserCount.get();
+		} while (count > 0
+				&& !this.cacheUserCount.compareAndSet(count, count - 1));
+		if (count <= 1 && this.cachedChunks != null) {
+			// clear cached items, concurrent queries decode them again
+			for (int i = 0, l = this.cachedChunks.length(); i < l; i++)
+				this.cachedChunks.set(i, null);
+		}
+	}
 
+	private void writeSignature(DataOutputStream stream) throws IOException {
 		// assume the file was just created by initializeFrom()
-		// in order, write: SIGNATURE & headerInfoOffset place holder, then each
-		// compressed chunk of document names
+		// in order, write: SIGNATURE & headerInfoOffset place holder, followed
+		// by each compressed chunk of document names
 		stream.writeUTF(SIGNATURE);
 		this.headerInfoOffset = stream.size();
 		stream.writeInt(-1); // will overwrite with correct value later
-
-		int size = sortedDocNames.length;
-		this.numberOfChunks = (size / CHUNK_SIZE) + 1;
-		this.sizeOfLastChunk = size % CHUNK_SIZE;
-		if (this.sizeOfLastChunk == 0) {
-			this.numberOfChunks--;
-			this.sizeOfLastChunk = CHUNK_SIZE;
-		}
-		this.documentReferenceSize = size <= 0x7F ? 1
-				: (size <= 0x7FFF ? 2 : 4); // number of bytes used to encode a
-		// reference
-
-		this.chunkOffsets = new int[this.numberOfChunks];
-		int lastIndex = this.numberOfChunks - 1;
-		for (int i = 0; i < this.numberOfChunks; i++) {
-			this.chunkOffsets[i] = stream.size();
-
-			int chunkSize = i == lastIndex ? this.sizeOfLastChunk : CHUNK_SIZE;
-			int chunkIndex = i * CHUNK_SIZE;
-			String current = sortedDocNames[chunkIndex];
-			stream.writeUTF(current);
-			for (int j = 1; j < chunkSize; j++) {
-				String next = sortedDocNames[chunkIndex + j];
-				int len1 = current.length();
-				int len2 = next.length();
-				int max = len1 < len2 ? len1 : len2;
-				int start = 0; // number of identical characters at the
-				// beginning (also the index of first character
-				// that is different)
-				while (current.charAt(start) == next.charAt(start)) {
-					start++;
-					if (max == start)
-						break; // current is 'abba', next is 'abbab'
-				}
-				if (start > 255)
-					start = 255;
-
-				int end = 0; // number of identical characters at the end
-				while (current.charAt(--len1) == next.charAt(--len2)) {
-					end++;
-					if (len2 == start)
-						break; // current is 'abbba', next is 'abba'
-					if (len1 == 0)
-						break; // current is 'xabc', next is 'xyabc'
-				}
-				if (end > 255)
-					end = 255;
-				stream.writeByte(start);
-				stream.writeByte(end);
-
-				int last = next.length() - end;
-				stream.writeUTF(start < last ? next.substring(start, last) : ""); //$NON-NLS-1$
-				current = next;
-			}
-		}
-		this.startOfCategoryTables = stream.size() + 1;
-	}
-
-	private void writeCategories(DataOutputStream stream) throws IOException {
-		char[][] categoryNames = this.categoryTables.keyTable;
-		Object[] tables = this.categoryTables.valueTable;
-		for (int i = 0, l = categoryNames.length; i < l; i++)
-			if (categoryNames[i] != null)
-				writeCategoryTable(categoryNames[i],
-						(HashtableOfObject) tables[i], stream);
-		this.categoryTables = null;
 	}
 
 	private void writeCategoryTable(char[] categoryName,
 			HashtableOfObject wordsToDocs, DataOutputStream stream)
 			throws IOException {
-		// the format of a category table is as follows:
-		// any document number arrays with >= 256 elements are written before
-		// the table (the offset to each array is remembered)
-		// then the number of word->int[] pairs in the table is written
-		// for each word -> int[] pair, the word is written followed by:
-		// an int <= 0 if the array size == 1
-		// an int > 1 & < 256 for the size of the array if its > 1 & < 256, the
-		// document array follows immediately
-		// 256 if the array size >= 256 followed by another int which is the
-		// offset to the array (written prior to the table)
-
-		int largeArraySize = 256;
+		CategoryWriter writer = new CategoryWriter(stream);
+		char[][] words = sortedWords(wordsToDocs);
+		for (int i = 0, l = words.length; i < l; i++)
+			writer.add(words[i], documentNumbers(wordsToDocs.get(words[i])));
+		writer.finish(categoryName);
+		this.categoryTables.put(categoryName, null); // flush cached table
+	}
+
+	private static char[][] sortedWords(HashtableOfObject wordsToDocs) {
+		if (wordsToDocs == null)
+			return CharOperation.NO_CHAR_CHAR;
 		Object[] values = wordsToDocs.valueTable;
-		for (int i = 0, l = values.length; i < l; i++) {
-			Object o = values[i];
-			if (o != null) {
-				if (o instanceof IntList)
-					o = values[i] = ((IntList) values[i]).asArray();
-				int[] documentNumbers = (int[]) o;
-				if (documentNumbers.length >= largeArraySize) {
-					values[i] = stream.size();
-					writeDocumentNumbers(documentNumbers, stream);
-				}
-			}
-		}
+		char[][] words = new char[wordsToDocs.elementSize][];
+		int count = 0;
+		char[][] keys = wordsToDocs.keyTable;
+		for (int i = 0, l = keys.length; i < l; i++)
+			if (values[i] != null)
+				words[count++] = keys[i];
+		if (count < words.length)
+			System.arraycopy(words, 0, words = new char[count][], 0, count);
+		Util.sort(words);
+		return words;
+	}
 
-		this.categoryOffsets.put(categoryName, stream.size()); // remember the
-		// offset to the
-		// start of the
-		// table
-		this.categoryTables.put(categoryName, null); // flush cached table
-		stream.writeInt(wordsToDocs.elementSize);
-		char[][] words = wordsToDocs.keyTable;
-		for (int i = 0, l = words.length; i < l; i++) {
-			Object o = values[i];
-			if (o != null) {
-				Util.writeUTF(stream, words[i]);
-				if (o instanceof int[]) {
-					int[] documentNumbers = (int[]) o;
-					if (documentNumbers.length == 1)
-						stream.writeInt(-documentNumbers[0]); // store an
-					// array of 1
-					// element by
-					// negating the
-					// documentNumber
-					// (can be zero)
-					else
-						writeDocumentNumbers(documentNumbers, stream);
-				} else {
-					stream.writeInt(largeArraySize); // mark to identify that
-					// an offset follows
-					stream.writeInt(((Integer) o).intValue()); // offset in the
-					// file of the
-					// array of
-					// document
-					// numbers
-				}
-			}
+	private static int[] documentNumbers(Object o) {
+		return o instanceof IntList ? ((IntList) o).asArray() : (int[]) o;
+	}
+
+	private PostingsBuffer getPostingsBuffer() {
+		if (this.postingsBuffer == null)
+			this.postingsBuffer = new PostingsBuffer(new File(this.fileName
+					+ ".postings")); //$NON-NLS-1$
+		return this.postingsBuffer;
+	}
+
+	private void disposePostingsBuffer() {
+		if (this.postingsBuffer != null) {
+			this.postingsBuffer.dispose();
+			this.postingsBuffer = null;
 		}
 	}
 
-	private void writeDocumentNumbers(int[] documentNumbers,
+	private static void writeDocumentNumbers(int[] documentNumbers,
 			DataOutputStream stream) throws IOException {
-		// must store length as a positive int to detect in-lined array of 1
-		// element
 		int length = documentNumbers.length;
-		stream.writeInt(length);
+		writeVarInt(length, stream);
 		Util.sort(documentNumbers);
-		switch (this.documentReferenceSize) {
-		case 1:
-			for (int i = 0; i < length; i++)
-				stream.writeByte(documentNumbers[i]);
-			break;
-		case 2:
-			for (int i = 0; i < length; i++)
-				stream.writeShort(documentNumbers[i]);
-			break;
-		default:
-			for (int i = 0; i < length; i++)
-				stream.writeInt(documentNumbers[i]);
-			break;
+		int previous = 0;
+		for (int i = 0; i < length; i++) {
+			writeVarInt(documentNumbers[i] - previous, stream);
+			previous = documentNumbers[i];
 		}
 	}
 
 	private void writeHeaderInfo(DataOutputStream stream) throws IOException {
 		stream.writeInt(this.numberOfChunks);
 		stream.writeByte(this.sizeOfLastChunk);
-		stream.writeByte(this.documentReferenceSize);
 		stream.writeByte(this.separator);
 
 		// apend the file with chunk offsets
@@ -1195,6 +1365,15 @@ public class DiskIndex {
 		}
 	}
 
+	private static void writeVarInt(long value, DataOutputStream stream)
+			throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			stream.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		stream.writeByte((int) value);
+	}
+
 	private void writeOffsetToHeader(int offsetToHeader) throws IOException {
 		if (offsetToHeader > 0) {
 			RandomAccessFile file = new RandomAccessFile(this.fileName, "rw"); //$NON-NLS-1$
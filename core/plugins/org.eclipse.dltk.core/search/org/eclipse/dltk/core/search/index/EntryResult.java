@@ -9,6 +9,7 @@
  *******************************************************************************/
 package org.eclipse.dltk.core.search.index;
 
+import org.eclipse.core.runtime.Assert;
 import org.eclipse.dltk.compiler.util.HashtableOfObject;
 import org.eclipse.dltk.compiler.util.SimpleSet;
 
@@ -16,14 +17,29 @@ public class EntryResult {
 
 	private char[] word;
 
-	private HashtableOfObject[] documentTables;
+	private int[] postings; // references to document numbers in the disk index
+
+	private DiskIndex diskIndex; // the generation the postings refer to
 
 	private SimpleSet documentNames;
 
-	public EntryResult(char[] word, HashtableOfObject table) {
+	public EntryResult(char[] word) {
+		this.word = word;
+	}
+
+	EntryResult(char[] word, DiskIndex diskIndex) {
 		this.word = word;
-		if (table != null)
-			this.documentTables = new HashtableOfObject[] { table };
+		this.diskIndex = diskIndex;
+	}
+
+	/**
+	 * @deprecated disk index tables are no longer decoded, use
+	 *             {@link #EntryResult(char[])}
+	 */
+	@Deprecated
+	public EntryResult(char[] word, HashtableOfObject table) {
+		this(word);
+		Assert.isLegal(table == null);
 	}
 
 	public void addDocumentName(String documentName) {
@@ -32,15 +48,14 @@ public class EntryResult {
 		this.documentNames.add(documentName);
 	}
 
-	public void addDocumentTable(HashtableOfObject table) {
-		if (this.documentTables != null) {
-			int length = this.documentTables.length;
-			System.arraycopy(this.documentTables, 0,
-					this.documentTables = new HashtableOfObject[length + 1], 0,
-					length);
-			this.documentTables[length] = table;
+	void addPosting(int posting) {
+		if (this.postings != null) {
+			int length = this.postings.length;
+			System.arraycopy(this.postings, 0,
+					this.postings = new int[length + 1], 0, length);
+			this.postings[length] = posting;
 		} else {
-			this.documentTables = new HashtableOfObject[] { table };
+			this.postings = new int[] { posting };
 		}
 	}
 
@@ -49,24 +64,24 @@ public class EntryResult {
 	}
 
 	public String[] getDocumentNames(Index index) throws java.io.IOException {
-		if (this.documentTables != null) {
-			int length = this.documentTables.length;
+		if (this.postings != null) {
+			// the index may have been merged since the query, so the names are
+			// read from the generation which answered it
+			DiskIndex diskIndex = this.diskIndex;
+			int length = this.postings.length;
 			if (length == 1 && this.documentNames == null) { // have a single
-				// table
-				Object offset = this.documentTables[0].get(word);
-				int[] numbers = index.diskIndex.readDocumentNumbers(offset);
+				// entry
+				int[] numbers = diskIndex.readDocumentNumbers(this.postings[0]);
 				String[] names = new String[numbers.length];
 				for (int i = 0, l = numbers.length; i < l; i++)
-					names[i] = index.diskIndex.readDocumentName(numbers[i]);
+					names[i] = diskIndex.readDocumentName(numbers[i]);
 				return names;
 			}
 
 			for (int i = 0; i < length; i++) {
-				Object offset = this.documentTables[i].get(word);
-				int[] numbers = index.diskIndex.readDocumentNumbers(offset);
+				int[] numbers = diskIndex.readDocumentNumbers(this.postings[i]);
 				for (int j = 0, k = numbers.length; j < k; j++)
-					addDocumentName(index.diskIndex
-							.readDocumentName(numbers[j]));
+					addDocumentName(diskIndex.readDocumentName(numbers[j]));
 			}
 		}
 
@@ -83,6 +98,6 @@ public class EntryResult {
 	}
 
 	public boolean isEmpty() {
-		return this.documentTables == null && this.documentNames == null;
+		return this.postings == null && this.documentNames == null;
 	}
 }
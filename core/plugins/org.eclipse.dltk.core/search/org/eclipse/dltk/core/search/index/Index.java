@@ -10,6 +10,7 @@ package org.eclipse.dltk.core.search.index;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.core.runtime.Path;
 import org.eclipse.dltk.compiler.CharOperation;
@@ -26,8 +27,11 @@ import org.eclipse.dltk.core.search.indexing.ReadWriteMonitor;
  * 
  * Queries can search a single category or several at the same time.
  * 
- * Indexes are not synchronized structures and should only be queried/updated
- * one at a time.
+ * Updates must hold the write lock of the {@link #monitor}, queries and
+ * {@link #save()} a read lock. Queries are answered from the published
+ * {@link DiskIndex} generation and the pending changes, so any number of them
+ * run concurrently, also while the changes are merged into the next
+ * generation.
  */
 
 public class Index {
@@ -42,9 +46,11 @@ public class Index {
 	public static final char JAR_SEPARATOR = IDLTKSearchScope.FILE_ENTRY_SEPARATOR
 			.charAt(0);
 
-	protected DiskIndex diskIndex;
+	protected volatile DiskIndex diskIndex;
 
-	protected MemoryIndex memoryIndex;
+	protected volatile MemoryIndex memoryIndex;
+
+	private final ReentrantLock mergeLock = new ReentrantLock();
 
 	/**
 	 * Mask used on match rule for indexing.
@@ -145,24 +151,27 @@ public class Index {
 	 */
 	public EntryResult[] query(char[][] categories, char[] key, int matchRule)
 			throws IOException {
-		if (this.memoryIndex.shouldMerge() && monitor.exitReadEnterWrite()) {
+		if (this.memoryIndex.shouldMerge() && this.mergeLock.tryLock()) {
+			// other queries continue with the current generation meanwhile
 			try {
 				save();
 			} finally {
-				monitor.exitWriteEnterRead();
+				this.mergeLock.unlock();
 			}
 		}
 
+		// the memory index must be read first, see save()
+		MemoryIndex memoryIndex = this.memoryIndex;
+		DiskIndex diskIndex = this.diskIndex;
 		HashtableOfObject results;
 		int rule = matchRule & MATCH_RULE_INDEX_MASK;
-		if (this.memoryIndex.hasChanged()) {
-			results = this.diskIndex.addQueryResults(categories, key, rule,
-					this.memoryIndex);
-			results = this.memoryIndex.addQueryResults(categories, key, rule,
+		if (memoryIndex.hasChanged()) {
+			results = diskIndex.addQueryResults(categories, key, rule,
+					memoryIndex);
+			results = memoryIndex.addQueryResults(categories, key, rule,
 					results);
 		} else {
-			results = this.diskIndex.addQueryResults(categories, key, rule,
-					null);
+			results = diskIndex.addQueryResults(categories, key, rule, null);
 		}
 		if (results == null)
 			return null;
@@ -183,13 +192,14 @@ public class Index {
 	 * returns all of them.
 	 */
 	public String[] queryDocumentNames(String substring) throws IOException {
+		MemoryIndex memoryIndex = this.memoryIndex;
+		DiskIndex diskIndex = this.diskIndex;
 		SimpleSet results;
-		if (this.memoryIndex.hasChanged()) {
-			results = this.diskIndex.addDocumentNames(substring,
-					this.memoryIndex);
-			this.memoryIndex.addDocumentNames(substring, results);
+		if (memoryIndex.hasChanged()) {
+			results = diskIndex.addDocumentNames(substring, memoryIndex);
+			memoryIndex.addDocumentNames(substring, results);
 		} else {
-			results = this.diskIndex.addDocumentNames(substring, null);
+			results = diskIndex.addDocumentNames(substring, null);
 		}
 		if (results.elementSize == 0)
 			return null;
@@ -207,30 +217,45 @@ public class Index {
 		this.memoryIndex.remove(containerRelativePath);
 	}
 
+	/**
+	 * Merges the changes into the next disk index generation. Must own at
+	 * least a read lock of the monitor, so the changes are not modified while
+	 * merging. Concurrent queries use the previous generation until the new
+	 * one is published.
+	 */
 	public void save() throws IOException {
-		// must own the write lock of the monitor
-		if (!hasChanged())
-			return;
+		this.mergeLock.lock();
+		try {
+			if (!hasChanged())
+				return;
 
-		if (DLTKCore.DEBUG_INDEX) {
-			System.out.println("Index for " + this.containerPath + " (" + new Path(diskIndex.fileName).lastSegment() + ") saved"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$		
+			if (DLTKCore.DEBUG_INDEX) {
+				System.out.println("Index for " + this.containerPath + " (" + new Path(diskIndex.fileName).lastSegment() + ") saved"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$		
+			}
+			// int numberOfChanges = this.memoryIndex.docsToReferences.elementSize;
+			DiskIndex newDiskIndex = this.diskIndex.mergeWith(this.memoryIndex,
+					this.separator);
+			// publish the new generation before dropping the changes, a query
+			// which sees the empty memory index also sees the new generation
+			this.diskIndex = newDiskIndex;
+			this.memoryIndex = new MemoryIndex();
+			// if (numberOfChanges > 1000)
+			// System.gc(); // reclaim space if the MemoryIndex was very BIG
+		} finally {
+			this.mergeLock.unlock();
 		}
-		// int numberOfChanges = this.memoryIndex.docsToReferences.elementSize;
-		this.diskIndex.separator = this.separator;
-		this.diskIndex = this.diskIndex.mergeWith(this.memoryIndex);
-		this.memoryIndex = new MemoryIndex();
-		// if (numberOfChanges > 1000)
-		// System.gc(); // reclaim space if the MemoryIndex was very BIG
 	}
 
 	public void startQuery() {
-		if (this.diskIndex != null)
-			this.diskIndex.startQuery();
+		DiskIndex diskIndex = this.diskIndex;
+		if (diskIndex != null)
+			diskIndex.startQuery();
 	}
 
 	public void stopQuery() {
-		if (this.diskIndex != null)
-			this.diskIndex.stopQuery();
+		DiskIndex diskIndex = this.diskIndex;
+		if (diskIndex != null)
+			diskIndex.stopQuery();
 	}
 
 	@Override
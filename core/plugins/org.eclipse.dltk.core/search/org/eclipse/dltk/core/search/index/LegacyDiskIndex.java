@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2000, 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.search.index;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.eclipse.dltk.compiler.util.HashtableOfIntValues;
+import org.eclipse.dltk.compiler.util.HashtableOfObject;
+import org.eclipse.dltk.internal.core.util.Messages;
+import org.eclipse.dltk.internal.core.util.Util;
+
+/**
+ * Reads index files written in the "DLTK INDEX VERSION 1.014" format, so they
+ * can be converted to the current {@link DiskIndex} format instead of being
+ * rebuilt from the sources.
+ */
+class LegacyDiskIndex {
+
+	static final String SIGNATURE = "DLTK INDEX VERSION 1.014"; //$NON-NLS-1$
+
+	private static final int CHUNK_SIZE = 100;
+
+	private final String fileName;
+
+	private int numberOfChunks;
+
+	private int sizeOfLastChunk;
+
+	private int[] chunkOffsets;
+
+	private int documentReferenceSize;
+
+	private HashtableOfIntValues categoryOffsets;
+
+	char separator = Index.DEFAULT_SEPARATOR;
+
+	private ByteBuffer buffer;
+
+	LegacyDiskIndex(String fileName) {
+		this.fileName = fileName;
+	}
+
+	void initialize() throws IOException {
+		RandomAccessFile file = new RandomAccessFile(this.fileName, "r"); //$NON-NLS-1$
+		try {
+			String signature = file.readUTF();
+			if (!signature.equals(SIGNATURE))
+				throw new IOException(Messages.exception_wrongFormat);
+
+			int headerInfoOffset = file.readInt();
+			if (headerInfoOffset > 0) { // file is empty if its not set
+				file.seek(headerInfoOffset);
+				this.numberOfChunks = file.readInt();
+				this.sizeOfLastChunk = file.readUnsignedByte();
+				this.documentReferenceSize = file.readUnsignedByte();
+				this.separator = (char) file.readUnsignedByte();
+
+				this.chunkOffsets = new int[this.numberOfChunks];
+				for (int i = 0; i < this.numberOfChunks; i++)
+					this.chunkOffsets[i] = file.readInt();
+
+				file.readInt(); // start of category tables
+
+				int size = file.readInt();
+				this.categoryOffsets = new HashtableOfIntValues(size);
+				for (int i = 0; i < size; i++)
+					this.categoryOffsets.put(Util.readUTF(file), file.readInt());
+			}
+		} finally {
+			file.close();
+		}
+		if (this.categoryOffsets != null)
+			this.buffer = DiskIndex.readIndexFile(this.fileName);
+	}
+
+	char[][] getCategoryNames() {
+		if (this.categoryOffsets == null)
+			return new char[0][];
+		char[][] names = new char[this.categoryOffsets.elementSize][];
+		int count = 0;
+		char[][] keys = this.categoryOffsets.keyTable;
+		for (int i = 0, l = keys.length; i < l; i++)
+			if (keys[i] != null)
+				names[count++] = keys[i];
+		return names;
+	}
+
+	String[] readAllDocumentNames() throws IOException {
+		if (this.numberOfChunks <= 0)
+			return new String[0];
+
+		DataInputStream stream = new DataInputStream(
+				new DiskIndex.ByteBufferInputStream(this.buffer,
+						this.chunkOffsets[0]));
+		int lastIndex = this.numberOfChunks - 1;
+		String[] docNames = new String[lastIndex * CHUNK_SIZE
+				+ this.sizeOfLastChunk];
+		for (int i = 0; i < this.numberOfChunks; i++)
+			DiskIndex.readChunk(docNames, stream, i * CHUNK_SIZE,
+					i < lastIndex ? CHUNK_SIZE : this.sizeOfLastChunk);
+		return docNames;
+	}
+
+	/**
+	 * Answers the table of words -> int[] of document numbers of the given
+	 * category.
+	 */
+	HashtableOfObject readCategoryTable(char[] categoryName)
+			throws IOException {
+		int offset = this.categoryOffsets.get(categoryName);
+		if (offset == HashtableOfIntValues.NO_VALUE)
+			return null;
+
+		DataInputStream stream = new DataInputStream(
+				new DiskIndex.ByteBufferInputStream(this.buffer, offset));
+		int size = stream.readInt();
+		HashtableOfObject categoryTable = new HashtableOfObject(size);
+		int largeArraySize = 256;
+		for (int i = 0; i < size; i++) {
+			char[] word = Util.readUTF(stream);
+			int arrayOffset = stream.readInt();
+			// if arrayOffset is:
+			// <= 0 then the array size == 1 with the value -> -arrayOffset
+			// > 1 & < 256 then the size of the array is > 1 & < 256, the
+			// document array follows immediately
+			// 256 if the array size >= 256 followed by another int which is
+			// the offset to the array (written prior to the table)
+			if (arrayOffset <= 0) {
+				categoryTable.put(word, new int[] { -arrayOffset });
+			} else if (arrayOffset < largeArraySize) {
+				categoryTable.put(word, readDocumentArray(stream, arrayOffset));
+			} else {
+				DataInputStream arrayStream = new DataInputStream(
+						new DiskIndex.ByteBufferInputStream(this.buffer,
+								stream.readInt()));
+				categoryTable.put(word,
+						readDocumentArray(arrayStream, arrayStream.readInt()));
+			}
+		}
+		return categoryTable;
+	}
+
+	private int[] readDocumentArray(DataInputStream stream, int arraySize)
+			throws IOException {
+		int[] result = new int[arraySize];
+		switch (this.documentReferenceSize) {
+		case 1:
+			for (int i = 0; i < arraySize; i++)
+				result[i] = stream.readUnsignedByte();
+			break;
+		case 2:
+			for (int i = 0; i < arraySize; i++)
+				result[i] = stream.readUnsignedShort();
+			break;
+		default:
+			for (int i = 0; i < arraySize; i++)
+				result[i] = stream.readInt();
+			break;
+		}
+		return result;
+	}
+}
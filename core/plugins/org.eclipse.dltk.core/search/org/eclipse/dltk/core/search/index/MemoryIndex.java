@@ -101,8 +101,7 @@ public class MemoryIndex {
 								results = new HashtableOfObject(13);
 							EntryResult result = (EntryResult) results.get(key);
 							if (result == null)
-								results.put(key, result = new EntryResult(key,
-										null));
+								results.put(key, result = new EntryResult(key));
 							result.addDocumentName((String) paths[i]);
 							continue nextPath;
 						}
@@ -144,7 +143,7 @@ public class MemoryIndex {
 										if (result == null)
 											results.put(word,
 													result = new EntryResult(
-															word, null));
+															word));
 										result
 												.addDocumentName((String) paths[i]);
 									}
@@ -173,8 +172,7 @@ public class MemoryIndex {
 											.get(word);
 									if (result == null)
 										results.put(word,
-												result = new EntryResult(word,
-														null));
+												result = new EntryResult(word));
 									result.addDocumentName((String) paths[i]);
 								}
 							}
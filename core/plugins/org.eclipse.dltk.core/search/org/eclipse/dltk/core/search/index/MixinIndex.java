@@ -17,6 +17,13 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.Path;
@@ -29,13 +36,38 @@ import org.eclipse.dltk.core.search.indexing.IIndexConstants;
 import org.eclipse.dltk.core.search.indexing.IndexManager;
 import org.eclipse.dltk.internal.core.util.Util;
 
+/**
+ * Index of the mixin keys.
+ * <p>
+ * Once saved, the keys are not kept in memory but queried from the sorted
+ * {@link MixinKeyDictionary} of the index file, they are loaded only when the
+ * index is changed. Indexes of the older formats are loaded and converted
+ * when saved.
+ * </p>
+ */
 public class MixinIndex extends Index {
 
 	private static final char[] OLD_HEADER = "MIXIN INDEX 0.1".toCharArray(); //$NON-NLS-1$
 	private static final char[] OLD_HEADER_2 = "MIXIN INDEX 0.2".toCharArray(); //$NON-NLS-1$
-	private static final char[] HEADER = "MIXIN INDEX 0.3".toCharArray(); //$NON-NLS-1$
+	private static final char[] OLD_HEADER_3 = "MIXIN INDEX 0.3".toCharArray(); //$NON-NLS-1$
+	private static final char[] HEADER = "MIXIN INDEX 0.4".toCharArray(); //$NON-NLS-1$
+
+	/**
+	 * Size of the saved header, the header chars are ASCII
+	 */
+	private static final int HEADER_SIZE = 2 + HEADER.length;
+
+	/**
+	 * The keys while the index is changed, <code>null</code> while they are
+	 * read from the {@link #dictionary}
+	 */
+	private volatile HashtableOfObject keyToDocs = new HashtableOfObject(10);
+
+	/**
+	 * The keys of the saved index, <code>null</code> once it is changed
+	 */
+	private volatile MixinKeyDictionary dictionary;
 
-	private final HashtableOfObject keyToDocs = new HashtableOfObject(10);
 	private final SimpleSet documentNames = new SimpleSet(10);
 
 	private final String fileName;
@@ -83,6 +115,7 @@ public class MixinIndex extends Index {
 	}
 
 	private void addIndexEntry(char[] key, String containerRelativePath) {
+		final HashtableOfObject keyToDocs = getKeysForUpdate();
 		SimpleSet docs = (SimpleSet) keyToDocs.get(key);
 		if (docs == null) {
 			docs = new SimpleSet(1);
@@ -116,20 +149,28 @@ public class MixinIndex extends Index {
 		if (!isMixinCategory(categories))
 			return new EntryResult[0];
 		final ObjectVector results = new ObjectVector();
-		performQuery(key, matchRule, results);
+		// read before the dictionary, save() publishes them the other way
+		final HashtableOfObject keyToDocs = this.keyToDocs;
+		final MixinKeyDictionary dictionary = this.dictionary;
+		if (dictionary != null) {
+			dictionary.query(key, matchRule, results);
+		} else {
+			performQuery(keyToDocs, key, matchRule, results);
+		}
 		final EntryResult[] entryResults = new EntryResult[results.size];
 		results.copyInto(entryResults);
 		return entryResults;
 	}
 
-	private void performQuery(char[] key, int matchRule, ObjectVector results) {
+	private static void performQuery(HashtableOfObject keyToDocs, char[] key,
+			int matchRule, ObjectVector results) {
 		final char[][] keyTable = keyToDocs.keyTable;
 		for (int i = 0, keyLen = keyTable.length; i < keyLen; i++) {
 			final char[] nextKey = keyTable[i];
 			if (nextKey == null)
 				continue;
 			if (Index.isMatch(key, nextKey, matchRule)) {
-				final EntryResult s = new EntryResult(nextKey, null);
+				final EntryResult s = new EntryResult(nextKey);
 				results.add(s);
 				final Object[] docTable = ((SimpleSet) keyToDocs.valueTable[i]).values;
 				for (int j = 0, docLen = docTable.length; j < docLen; j++) {
@@ -175,6 +216,7 @@ public class MixinIndex extends Index {
 	public void remove(String containerRelativePath) {
 		this.dirty = true;
 		if (documentNames.remove(containerRelativePath) != null) {
+			final HashtableOfObject keyToDocs = getKeysForUpdate();
 			final char[][] keyTable = keyToDocs.keyTable;
 			for (int i = 0; i < keyTable.length; i++) {
 				final SimpleSet docs = (SimpleSet) keyToDocs.valueTable[i];
@@ -185,58 +227,134 @@ public class MixinIndex extends Index {
 		}
 	}
 
+	/**
+	 * Returns the keys to change, loading them from the dictionary if needed.
+	 * Called with the write lock of the monitor held, so there are no
+	 * concurrent queries.
+	 */
+	private HashtableOfObject getKeysForUpdate() {
+		final MixinKeyDictionary dictionary = this.dictionary;
+		if (dictionary != null) {
+			final HashtableOfObject keyToDocs = new HashtableOfObject(
+					dictionary.size());
+			for (int i = 0, size = dictionary.size(); i < size; ++i) {
+				final SimpleSet docs = new SimpleSet(1);
+				for (String docName : dictionary.getDocuments(i)) {
+					docs.add(docName);
+				}
+				keyToDocs.put(dictionary.getKey(i), docs);
+			}
+			this.keyToDocs = keyToDocs;
+			this.dictionary = null;
+		}
+		return keyToDocs;
+	}
+
 	@Override
-	public void save() throws IOException {
+	public synchronized void save() throws IOException {
+		// saved under the read lock of the monitor, so concurrent saves are
+		// possible
 		long start = DLTKCore.VERBOSE_MIXIN ? System.currentTimeMillis() : 0;
 		if (!hasChanged()) {
 			return;
 		}
 
-		File f = getIndexFile();
-		FileOutputStream fouts = new FileOutputStream(f, false);
-		BufferedOutputStream bufout = new BufferedOutputStream(fouts, 2048);
-		DataOutputStream stream = new DataOutputStream(bufout);
-		final SimpleSet allDocuments = new SimpleSet();
-		allDocuments.addAll(documentNames);
-		Util.writeUTF(stream, HEADER);
-		int keyCount = keyToDocs.elementSize;
-		stream.writeInt(keyCount);
-		for (int i = 0; i < keyToDocs.keyTable.length; i++) {
-			char[] key = keyToDocs.keyTable[i];
-			if (key == null)
-				continue;
-			Util.writeUTF(stream, key);
-			final SimpleSet docs = (SimpleSet) keyToDocs.valueTable[i];
-			stream.writeInt(docs.elementSize);
-			for (int j = 0; j < docs.values.length; j++) {
-				final String docName = (String) docs.values[j];
-				if (docName != null) {
-					Util.writeUTF(stream, docName.toCharArray());
-					allDocuments.remove(docName);
-				}
+		final List<String> allDocuments = new ArrayList<String>(
+				documentNames.elementSize);
+		final Map<String, Integer> docIndexes = new HashMap<String, Integer>();
+		for (Object docName : documentNames.values) {
+			if (docName != null) {
+				docIndexes.put((String) docName, allDocuments.size());
+				allDocuments.add((String) docName);
 			}
 		}
-		stream.writeInt(allDocuments.size());
-		for (int i = 0, docTableLen = allDocuments.values.length; i < docTableLen; ++i) {
-			String docName = (String) allDocuments.values[i];
-			if (docName != null) {
-				Util.writeUTF(stream, docName.toCharArray());
+		final Map<char[], String[]> entries = collectEntries();
+		final char[][] keys = entries.keySet().toArray(
+				new char[entries.size()][]);
+		Arrays.sort(keys, MixinKeyDictionary.ORDER);
+		final int[][] keyDocs = new int[keys.length][];
+		for (int i = 0; i < keys.length; i++) {
+			final String[] docs = entries.get(keys[i]);
+			keyDocs[i] = new int[docs.length];
+			for (int j = 0; j < docs.length; j++) {
+				Integer index = docIndexes.get(docs[j]);
+				if (index == null) {
+					index = allDocuments.size();
+					docIndexes.put(docs[j], index);
+					allDocuments.add(docs[j]);
+				}
+				keyDocs[i][j] = index;
 			}
 		}
-		bufout.close();
-		stream.close();
-		fouts.close();
+
+		// the saved file could be mapped by the running queries, so it is
+		// replaced and not overwritten
+		final File f = getIndexFile();
+		final File tmp = new File(fileName + ".tmp"); //$NON-NLS-1$
+		FileOutputStream fouts = new FileOutputStream(tmp, false);
+		BufferedOutputStream bufout = new BufferedOutputStream(fouts, 8192);
+		DataOutputStream stream = new DataOutputStream(bufout);
+		try {
+			final int headerSize = Util.writeUTF(stream, HEADER);
+			MixinKeyDictionary.write(stream, headerSize,
+					allDocuments.toArray(new String[allDocuments.size()]),
+					keys, keyDocs);
+		} finally {
+			stream.close();
+		}
+		Files.move(tmp.toPath(), f.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		// the dictionary first, see query()
+		this.dictionary = openDictionary(f);
+		this.keyToDocs = null;
 		this.dirty = false;
 		if (DLTKCore.VERBOSE_MIXIN) {
 			System.out.println("Mixin index for " + this.containerPath + " (" //$NON-NLS-1$ //$NON-NLS-2$
 					+ new Path(this.fileName).lastSegment() + ") saved, took " //$NON-NLS-1$
 					+ (System.currentTimeMillis() - start));
-			System.out.println("Mixin modules: " + this.documentNames.size()); //$NON-NLS-1$
-			System.out.println("Mixin keys: " + this.keyToDocs.size()); //$NON-NLS-1$
+			System.out.println("Mixin modules: " + allDocuments.size()); //$NON-NLS-1$
+			System.out.println("Mixin keys: " + keys.length); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Returns the documents of the keys, without the keys with no documents.
+	 */
+	private Map<char[], String[]> collectEntries() {
+		final HashtableOfObject keyToDocs = this.keyToDocs;
+		final MixinKeyDictionary dictionary = this.dictionary;
+		final Map<char[], String[]> entries = new HashMap<char[], String[]>();
+		if (dictionary != null) {
+			for (int i = 0, size = dictionary.size(); i < size; ++i) {
+				entries.put(dictionary.getKey(i), dictionary.getDocuments(i));
+			}
+		} else {
+			for (int i = 0; i < keyToDocs.keyTable.length; i++) {
+				final char[] key = keyToDocs.keyTable[i];
+				if (key == null)
+					continue;
+				final SimpleSet docs = (SimpleSet) keyToDocs.valueTable[i];
+				if (docs.elementSize != 0) {
+					entries.put(key, extractKeysFromTable(docs, null));
+				}
+			}
 		}
+		return entries;
+	}
+
+	private MixinKeyDictionary openDictionary(File indexFile)
+			throws IOException {
+		final MixinKeyDictionary dictionary = new MixinKeyDictionary(
+				DiskIndex.readIndexFile(indexFile.getPath()), HEADER_SIZE);
+		final String[] docNames = dictionary.getDocuments();
+		for (int i = 0; i < docNames.length; ++i) {
+			docNames[i] = internDocName(docNames[i]);
+		}
+		return dictionary;
 	}
 
 	private void initialize(boolean reuseExistingFile) throws IOException {
+		long start = DLTKCore.VERBOSE_MIXIN ? System.currentTimeMillis() : 0;
 		boolean successful = false;
 		File indexFile = getIndexFile();
 		if (indexFile.exists()) {
@@ -246,19 +364,27 @@ public class MixinIndex extends Index {
 					DataInputStream stream = new DataInputStream(
 							new BufferedInputStream(new FileInputStream(
 									indexFile), 8192));
+					char[] header;
 					try {
-						final char[] header = Util.readUTF(stream);
+						header = Util.readUTF(stream);
 						if (CharOperation.equals(OLD_HEADER, header)) {
 							loadDocToKeyFormat(stream);
 							successful = true;
 						} else if (CharOperation.equals(OLD_HEADER_2, header)
-								|| CharOperation.equals(HEADER, header)) {
+								|| CharOperation.equals(OLD_HEADER_3, header)) {
 							loadKeyToDocFormat(stream);
 							successful = true;
 						}
+						// converted to the current format when saved
+						this.dirty = successful;
 					} finally {
 						stream.close();
 					}
+					if (CharOperation.equals(HEADER, header)) {
+						this.dictionary = openDictionary(indexFile);
+						this.keyToDocs = null;
+						successful = true;
+					}
 				} catch (FileNotFoundException e) {
 					if (DLTKCore.DEBUG_INDEX)
 						e.printStackTrace();
@@ -268,8 +394,14 @@ public class MixinIndex extends Index {
 				} finally {
 					monitor.exitRead();
 				}
-				if (successful)
+				if (successful) {
+					if (DLTKCore.VERBOSE_MIXIN) {
+						System.out.println("Mixin index for " //$NON-NLS-1$
+								+ this.containerPath + " loaded, took " //$NON-NLS-1$
+								+ (System.currentTimeMillis() - start));
+					}
 					return;
+				}
 			}
 			if (!indexFile.delete()) {
 				if (DLTKCore.DEBUG_INDEX)
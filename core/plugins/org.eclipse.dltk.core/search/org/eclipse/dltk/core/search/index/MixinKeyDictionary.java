@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.search.index;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+
+import org.eclipse.dltk.compiler.CharOperation;
+import org.eclipse.dltk.compiler.util.ObjectVector;
+import org.eclipse.dltk.core.search.SearchPattern;
+
+/**
+ * Keys of a saved {@link MixinIndex}, read from the (usually mapped) index
+ * file when queried instead of being loaded at startup.
+ * <p>
+ * The keys are sorted ignoring case, so the keys which can match a pattern
+ * starting with some characters are found with a binary search, and the
+ * other keys are not read at all.
+ * </p>
+ * File layout after the header: the document names, the offsets of the key
+ * entries, and the entries - the key, the number of its documents and their
+ * indexes in the document names. Strings are saved as their length followed
+ * by their chars.
+ */
+final class MixinKeyDictionary {
+
+	/**
+	 * Order of the keys: ignoring case, then the case
+	 */
+	static final Comparator<char[]> ORDER = new Comparator<char[]>() {
+		@Override
+		public int compare(char[] o1, char[] o2) {
+			final int length = Math.min(o1.length, o2.length);
+			for (int i = 0; i < length; ++i) {
+				final char c1 = Character.toLowerCase(o1[i]);
+				final char c2 = Character.toLowerCase(o2[i]);
+				if (c1 != c2) {
+					return c1 - c2;
+				}
+			}
+			if (o1.length != o2.length) {
+				return o1.length - o2.length;
+			}
+			for (int i = 0; i < length; ++i) {
+				if (o1[i] != o2[i]) {
+					return o1[i] - o2[i];
+				}
+			}
+			return 0;
+		}
+	};
+
+	private final ByteBuffer buffer;
+	private final String[] documents;
+	private final int keyCount;
+	private final int offsets;
+
+	/**
+	 * Reads the dictionary starting at the specified position of the buffer.
+	 * Only the document names are read now.
+	 */
+	MixinKeyDictionary(ByteBuffer buffer, int position) {
+		this.buffer = buffer;
+		final int documentCount = buffer.getInt(position);
+		position += 4;
+		this.documents = new String[documentCount];
+		for (int i = 0; i < documentCount; ++i) {
+			final char[] document = readChars(position);
+			documents[i] = new String(document);
+			position += 4 + document.length * 2;
+		}
+		this.keyCount = buffer.getInt(position);
+		this.offsets = position + 4;
+	}
+
+	/**
+	 * Writes the dictionary, the keys must be sorted in the {@link #ORDER}.
+	 *
+	 * @param position
+	 *            position of the dictionary in the file
+	 * @param keyDocuments
+	 *            indexes of the documents of the keys in the document names
+	 */
+	static void write(DataOutputStream stream, int position,
+			String[] documents, char[][] keys, int[][] keyDocuments)
+			throws IOException {
+		stream.writeInt(documents.length);
+		position += 4;
+		for (String document : documents) {
+			writeChars(stream, document.toCharArray());
+			position += 4 + document.length() * 2;
+		}
+		stream.writeInt(keys.length);
+		position += 4 + keys.length * 4;
+		for (int i = 0; i < keys.length; ++i) {
+			stream.writeInt(position);
+			position += 4 + keys[i].length * 2 + 4 + keyDocuments[i].length * 4;
+		}
+		for (int i = 0; i < keys.length; ++i) {
+			writeChars(stream, keys[i]);
+			stream.writeInt(keyDocuments[i].length);
+			for (int document : keyDocuments[i]) {
+				stream.writeInt(document);
+			}
+		}
+	}
+
+	private static void writeChars(DataOutputStream stream, char[] chars)
+			throws IOException {
+		stream.writeInt(chars.length);
+		for (char c : chars) {
+			stream.writeChar(c);
+		}
+	}
+
+	/**
+	 * Returns the document names, the caller is allowed to replace them with
+	 * equal strings.
+	 */
+	String[] getDocuments() {
+		return documents;
+	}
+
+	int size() {
+		return keyCount;
+	}
+
+	char[] getKey(int index) {
+		return readChars(entry(index));
+	}
+
+	String[] getDocuments(int index) {
+		final int entry = entry(index);
+		final int position = entry + 4 + buffer.getInt(entry) * 2;
+		final String[] result = new String[buffer.getInt(position)];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = documents[buffer.getInt(position + 4 + i * 4)];
+		}
+		return result;
+	}
+
+	void query(char[] pattern, int matchRule, ObjectVector results) {
+		final char[] prefix = getLowerCasePrefix(pattern, matchRule);
+		int i = prefix.length != 0 ? lowerBound(prefix) : 0;
+		for (; i < keyCount; ++i) {
+			final int entry = entry(i);
+			if (prefix.length != 0 && compareLowerCase(entry, prefix) != 0) {
+				break;
+			}
+			final char[] key = readChars(entry);
+			if (Index.isMatch(pattern, key, matchRule)) {
+				final EntryResult result = new EntryResult(key);
+				for (String document : getDocuments(i)) {
+					result.addDocumentName(document);
+				}
+				results.add(result);
+			}
+		}
+	}
+
+	/**
+	 * Returns the lower case chars every key matching the pattern starts with.
+	 */
+	private static char[] getLowerCasePrefix(char[] pattern, int matchRule) {
+		if (pattern == null) {
+			return CharOperation.NO_CHAR;
+		}
+		int length;
+		if ((matchRule & SearchPattern.R_CAMELCASE_MATCH) != 0) {
+			length = Math.min(1, pattern.length);
+		} else {
+			switch (matchRule
+					& (SearchPattern.R_PREFIX_MATCH
+							| SearchPattern.R_PATTERN_MATCH | SearchPattern.R_REGEXP_MATCH)) {
+			case SearchPattern.R_EXACT_MATCH:
+			case SearchPattern.R_PREFIX_MATCH:
+				length = pattern.length;
+				break;
+			case SearchPattern.R_PATTERN_MATCH:
+				length = 0;
+				while (length < pattern.length && pattern[length] != '*'
+						&& pattern[length] != '?') {
+					++length;
+				}
+				break;
+			default:
+				length = 0;
+			}
+		}
+		final char[] prefix = new char[length];
+		for (int i = 0; i < length; ++i) {
+			prefix[i] = Character.toLowerCase(pattern[i]);
+		}
+		return prefix;
+	}
+
+	/**
+	 * Returns the index of the first key not ordered before the prefix.
+	 */
+	private int lowerBound(char[] prefix) {
+		int low = 0;
+		int high = keyCount;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (compareLowerCase(entry(middle), prefix) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Compares the key ignoring case with the prefix, returns 0 if the key
+	 * starts with the prefix.
+	 */
+	private int compareLowerCase(int entry, char[] prefix) {
+		final int length = buffer.getInt(entry);
+		final int common = Math.min(length, prefix.length);
+		for (int i = 0; i < common; ++i) {
+			final char c = Character.toLowerCase(buffer.getChar(entry + 4 + i
+					* 2));
+			if (c != prefix[i]) {
+				return c - prefix[i];
+			}
+		}
+		return length < prefix.length ? -1 : 0;
+	}
+
+	private int entry(int index) {
+		return buffer.getInt(offsets + index * 4);
+	}
+
+	// only absolute reads, so the buffer is shared by concurrent queries
+	private char[] readChars(int position) {
+		final char[] result = new char[buffer.getInt(position)];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = buffer.getChar(position + 4 + i * 2);
+		}
+		return result;
+	}
+
+}
@@ -789,7 +789,7 @@ public class IndexManager extends JobManager implements IIndexConstants {
 	}
 
 	public synchronized void saveIndex(Index index) throws IOException {
-		// must have permission to write from the write monitor
+		// must have permission to read from the monitor
 		if (index.hasChanged()) {
 			if (VERBOSE) {
 				Util.verbose("-> saving index " + index.getIndexFile()); //$NON-NLS-1$
@@ -849,26 +849,20 @@ public class IndexManager extends JobManager implements IIndexConstants {
 				continue; // index got deleted since acquired
 			}
 			try {
-				// take read lock before checking if index has changed
-				// don't take write lock yet since it can cause a deadlock (see
-				// https://bugs.eclipse.org/bugs/show_bug.cgi?id=50571)
+				// the read lock is enough to save, concurrent searches use the
+				// previous generation of the index until the new one is
+				// published
 				monitor.enterRead();
 				if (index.hasChanged()) {
-					if (monitor.exitReadEnterWrite()) {
-						try {
-							this.saveIndex(index);
-						} catch (IOException e) {
-							if (VERBOSE) {
-								Util
-										.verbose(
-												"-> got the following exception while saving:", System.err); //$NON-NLS-1$
-								e.printStackTrace();
-							}
-							allSaved = false;
-						} finally {
-							monitor.exitWriteEnterRead();
+					try {
+						this.saveIndex(index);
+					} catch (IOException e) {
+						if (VERBOSE) {
+							Util
+									.verbose(
+											"-> got the following exception while saving:", System.err); //$NON-NLS-1$
+							e.printStackTrace();
 						}
-					} else {
 						allSaved = false;
 					}
 				}
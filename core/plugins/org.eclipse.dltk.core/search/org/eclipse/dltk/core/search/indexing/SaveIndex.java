@@ -29,14 +29,15 @@ public class SaveIndex extends IndexRequest {
 
 		if (this.isCancelled || progressMonitor != null && progressMonitor.isCanceled()) return true;
 
-		/* ensure no concurrent write access to index */
+		/* ensure no concurrent changes of the index */
 		Index index = this.manager.getIndex(this.containerPath, true /*reuse index file*/, false /*don't create if none*/);
 		if (index == null) return true;
 		ReadWriteMonitor monitor = index.monitor;
 		if (monitor == null) return true; // index got deleted since acquired
 
 		try {
-			monitor.enterWrite(); // ask permission to write
+			monitor.enterRead(); // ask permission to read, searches continue
+			// with the previous generation while saving
 			this.manager.saveIndex(index);
 		} catch (IOException e) {
 			if (JobManager.VERBOSE) {
@@ -45,7 +46,7 @@ public class SaveIndex extends IndexRequest {
 			}
 			return false;
 		} finally {
-			monitor.exitWrite(); // free write lock
+			monitor.exitRead(); // free read lock
 		}
 		return true;
 	}
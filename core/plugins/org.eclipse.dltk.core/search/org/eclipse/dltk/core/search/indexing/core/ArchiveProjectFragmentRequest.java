@@ -40,8 +40,10 @@ import org.eclipse.dltk.core.search.indexing.IIndexConstants;
 import org.eclipse.dltk.core.search.indexing.IProjectIndexer;
 import org.eclipse.dltk.core.search.indexing.ReadWriteMonitor;
 import org.eclipse.dltk.internal.core.BuiltinSourceModule;
+import org.eclipse.dltk.internal.core.search.processing.IContainerJob;
 
-public class ArchiveProjectFragmentRequest extends IndexRequest {
+public class ArchiveProjectFragmentRequest extends IndexRequest implements
+		IContainerJob {
 
 	protected final IProjectFragment fragment;
 	protected final IDLTKLanguageToolkit toolkit;
@@ -58,6 +60,11 @@ public class ArchiveProjectFragmentRequest extends IndexRequest {
 		return fragment.getElementName();
 	}
 
+	@Override
+	public Object getContainerKey() {
+		return fragment.getPath();
+	}
+
 	@Override
 	protected void run() throws CoreException, IOException {
 		IEnvironment environment = EnvironmentManager.getEnvironment(fragment
@@ -107,12 +114,14 @@ public class ArchiveProjectFragmentRequest extends IndexRequest {
 		} catch (Throwable e) {
 			e.printStackTrace();
 		} finally {
+			// merge under the read lock, so searches are not blocked
+			imon.exitWriteEnterRead();
 			try {
 				index.save();
 			} catch (IOException e) {
 				DLTKCore.error("error saving index", e); //$NON-NLS-1$
 			} finally {
-				imon.exitWrite();
+				imon.exitRead();
 			}
 		}
 	}
@@ -36,8 +36,10 @@ import org.eclipse.dltk.core.search.indexing.IProjectIndexer;
 import org.eclipse.dltk.core.search.indexing.ReadWriteMonitor;
 import org.eclipse.dltk.internal.core.BuiltinSourceModule;
 import org.eclipse.dltk.internal.core.ModelManager;
+import org.eclipse.dltk.internal.core.search.processing.IContainerJob;
 
-public class ExternalProjectFragmentRequest extends IndexRequest {
+public class ExternalProjectFragmentRequest extends IndexRequest implements
+		IContainerJob {
 
 	protected final IProjectFragment fragment;
 	protected final IDLTKLanguageToolkit toolkit;
@@ -54,6 +56,11 @@ public class ExternalProjectFragmentRequest extends IndexRequest {
 		return fragment.getElementName();
 	}
 
+	@Override
+	public Object getContainerKey() {
+		return fragment.getPath();
+	}
+
 	@Override
 	protected void run() throws CoreException, IOException {
 		IEnvironment environment = EnvironmentManager.getEnvironment(fragment
@@ -104,12 +111,14 @@ public class ExternalProjectFragmentRequest extends IndexRequest {
 		} catch (Throwable e) {
 			e.printStackTrace();
 		} finally {
+			// merge under the read lock, so searches are not blocked
+			imon.exitWriteEnterRead();
 			try {
 				index.save();
 			} catch (IOException e) {
 				DLTKCore.error("error saving index", e); //$NON-NLS-1$
 			} finally {
-				imon.exitWrite();
+				imon.exitRead();
 			}
 		}
 	}
@@ -26,11 +26,12 @@ import org.eclipse.dltk.core.environment.EnvironmentManager;
 import org.eclipse.dltk.core.environment.IEnvironment;
 import org.eclipse.dltk.core.search.indexing.IProjectIndexer;
 import org.eclipse.dltk.internal.core.BuiltinProjectFragment;
+import org.eclipse.dltk.internal.core.search.processing.IContainerJob;
 
 /**
  * @since 2.0
  */
-public class ProjectRequest extends IndexRequest {
+public class ProjectRequest extends IndexRequest implements IContainerJob {
 
 	private final IScriptProject project;
 
@@ -44,6 +45,11 @@ public class ProjectRequest extends IndexRequest {
 		return project.getElementName();
 	}
 
+	@Override
+	public Object getContainerKey() {
+		return project.getPath();
+	}
+
 	static class SourceModuleCollector implements IModelElementVisitor {
 		final Set<ISourceModule> modules = new HashSet<ISourceModule>();
 
@@ -29,11 +29,13 @@ import org.eclipse.dltk.core.environment.IFileHandle;
 import org.eclipse.dltk.core.search.index.Index;
 import org.eclipse.dltk.core.search.indexing.IProjectIndexer;
 import org.eclipse.dltk.core.search.indexing.ReadWriteMonitor;
+import org.eclipse.dltk.internal.core.search.processing.IContainerJob;
 
 /**
  * @since 2.0
  */
-public class SourceModulesRequest extends IndexRequest {
+public class SourceModulesRequest extends IndexRequest implements
+		IContainerJob {
 
 	private final IScriptProject project;
 	private final IDLTKLanguageToolkit toolkit;
@@ -57,6 +59,11 @@ public class SourceModulesRequest extends IndexRequest {
 		return project.getElementName();
 	}
 
+	@Override
+	public Object getContainerKey() {
+		return project.getPath();
+	}
+
 	@Override
 	protected void run() throws CoreException, IOException {
 		IEnvironment environment = EnvironmentManager.getEnvironment(project);
@@ -96,12 +103,14 @@ public class SourceModulesRequest extends IndexRequest {
 				t.printStackTrace();
 			}
 		} finally {
+			// merge under the read lock, so searches are not blocked
+			imon.exitWriteEnterRead();
 			try {
 				index.save();
 			} catch (IOException e) {
 				DLTKCore.error("error saving index", e); //$NON-NLS-1$
 			} finally {
-				imon.exitWrite();
+				imon.exitRead();
 			}
 		}
 	}
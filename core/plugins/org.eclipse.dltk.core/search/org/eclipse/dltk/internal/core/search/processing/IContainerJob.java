@@ -0,0 +1,25 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.search.processing;
+
+/**
+ * A job which only changes the index of a single container. The
+ * {@link JobManager} executes jobs of different containers concurrently,
+ * while the jobs of the same container are executed in the order they were
+ * requested. All the other jobs are executed exclusively.
+ */
+public interface IContainerJob extends IJob {
+
+	/**
+	 * Answers the key of the container changed by this job, jobs with equal
+	 * keys are never executed at the same time.
+	 */
+	Object getContainerKey();
+}
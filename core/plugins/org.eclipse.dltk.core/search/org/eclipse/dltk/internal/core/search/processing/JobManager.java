@@ -8,6 +8,17 @@
  *******************************************************************************/
 package org.eclipse.dltk.internal.core.search.processing;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -27,15 +38,34 @@ public abstract class JobManager implements Runnable {
 	private static final boolean ENABLE_DELAYS = Runtime.getRuntime()
 			.availableProcessors() == 1;
 
-	/* queue of jobs to execute */
+	/*
+	 * number of worker threads executing container jobs concurrently, 0 to
+	 * execute all the jobs in the processing thread
+	 */
+	private static final int WORKER_COUNT = Integer.getInteger(
+			"org.eclipse.dltk.core.indexer.workers", //$NON-NLS-1$
+			Math.min(4, Runtime.getRuntime().availableProcessors() - 1))
+			.intValue();
+
+	/*
+	 * queue of jobs to execute, including the running ones until they have
+	 * completed
+	 */
 	protected IJob[] awaitingJobs = new IJob[10];
 	protected int jobStart = 0;
 	protected int jobEnd = -1;
-	protected boolean executing = false;
+	protected volatile boolean executing = false;
+
+	/* jobs being executed by the processing thread or the workers */
+	private final Set<IJob> runningJobs = Collections
+			.newSetFromMap(new IdentityHashMap<IJob, Boolean>());
+	/* containers of the running container jobs */
+	private final Set<Object> busyContainers = new HashSet<Object>();
 
 	/* background processing */
 	protected Thread processingThread;
 	protected Job progressJob;
+	private ExecutorService workers;
 
 	/*
 	 * counter indicating whether job execution is enabled or not, disabled if
@@ -93,25 +123,30 @@ public abstract class JobManager implements Runnable {
 
 		try {
 			IJob currentJob;
-			// cancel current job if it belongs to the given family
+			// cancel the running jobs which belong to the given family
+			final List<IJob> cancelledJobs = new ArrayList<IJob>();
 			synchronized (this) {
-				currentJob = this.currentJob();
 				disable();
+				for (IJob job : this.runningJobs) {
+					if (jobFamily == null || job.belongsTo(jobFamily)) {
+						cancelledJobs.add(job);
+					}
+				}
+			}
+			for (IJob job : cancelledJobs) {
+				job.cancel();
 			}
-			if (currentJob != null
-					&& (jobFamily == null || currentJob.belongsTo(jobFamily))) {
-				currentJob.cancel();
 
-				// wait until current active job has finished
-				while (this.processingThread != null && this.executing) {
-					try {
-						if (VERBOSE)
-							Util
-									.verbose("-> waiting end of current background job - " + currentJob); //$NON-NLS-1$
-						Thread.sleep(50);
-					} catch (InterruptedException e) {
-						// ignore
-					}
+			// wait until the cancelled active jobs have finished
+			while (this.processingThread != null
+					&& isAnyRunning(cancelledJobs)) {
+				try {
+					if (VERBOSE)
+						Util
+								.verbose("-> waiting end of current background jobs - " + cancelledJobs); //$NON-NLS-1$
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					// ignore
 				}
 			}
 
@@ -123,8 +158,9 @@ public abstract class JobManager implements Runnable {
 					if (currentJob != null) { // sanity check
 						this.awaitingJobs[i] = null;
 						if (!(jobFamily == null || currentJob
-								.belongsTo(jobFamily))) { // copy down,
-							// compacting
+								.belongsTo(jobFamily))
+								|| this.runningJobs.contains(currentJob)) {
+							// copy down, compacting
 							this.awaitingJobs[++loc] = currentJob;
 						} else {
 							if (VERBOSE)
@@ -145,6 +181,14 @@ public abstract class JobManager implements Runnable {
 					.verbose("DISCARD   DONE with background job family - " + jobFamily); //$NON-NLS-1$
 	}
 
+	private synchronized boolean isAnyRunning(List<IJob> jobs) {
+		for (IJob job : jobs) {
+			if (this.runningJobs.contains(job))
+				return true;
+		}
+		return false;
+	}
+
 	public synchronized void enable() {
 		this.enableCount++;
 		if (VERBOSE)
@@ -154,10 +198,22 @@ public abstract class JobManager implements Runnable {
 	}
 
 	public synchronized boolean isJobWaiting(IJob request) {
-		for (int i = this.jobEnd; i > this.jobStart; i--)
-			// don't check job at jobStart, as it may have already started
-			if (request.equals(this.awaitingJobs[i]))
+		Set<IJob> skipped = null;
+		for (int i = this.jobStart; i <= this.jobEnd; i++) {
+			IJob job = this.awaitingJobs[i];
+			if (this.runningJobs.contains(job)) {
+				// don't check the running jobs, they may have already missed
+				// the changes of the request, the first entry of a job
+				// requested again being the running one
+				if (skipped == null)
+					skipped = Collections
+							.newSetFromMap(new IdentityHashMap<IJob, Boolean>());
+				if (skipped.add(job))
+					continue;
+			}
+			if (request.equals(job))
 				return true;
+		}
 		return false;
 	}
 
@@ -178,6 +234,129 @@ public abstract class JobManager implements Runnable {
 		}
 	}
 
+	/**
+	 * Answers the next job which can be started, or null if none can be
+	 * started until a running job has completed. Container jobs are started
+	 * before the waiting jobs of other containers if a worker is available,
+	 * any other job is only started once all the jobs requested before it have
+	 * completed, and no job requested after it is started meanwhile.
+	 */
+	private IJob nextJob() {
+		if (this.enableCount <= 0)
+			return null;
+		Set<Object> waitingContainers = null;
+		for (int i = this.jobStart; i <= this.jobEnd; i++) {
+			IJob job = this.awaitingJobs[i];
+			if (this.runningJobs.contains(job))
+				continue;
+			Object container = getContainerKey(job);
+			if (container == null)
+				return this.runningJobs.isEmpty() ? job : null;
+			if (this.busyContainers.contains(container)
+					|| waitingContainers != null
+					&& waitingContainers.contains(container)) {
+				// keep the order of the jobs of the same container
+				if (waitingContainers == null)
+					waitingContainers = new HashSet<Object>();
+				waitingContainers.add(container);
+				continue;
+			}
+			return this.runningJobs.size() < getWorkerCount() ? job : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Answers the container of a job which can be executed by a worker, or
+	 * null if the job must be executed exclusively.
+	 */
+	private Object getContainerKey(IJob job) {
+		if (this.workers != null && job instanceof IContainerJob)
+			return ((IContainerJob) job).getContainerKey();
+		return null;
+	}
+
+	private synchronized void jobStarted(IJob job, Object container) {
+		this.runningJobs.add(job);
+		if (container != null)
+			this.busyContainers.add(container);
+		this.executing = true;
+	}
+
+	private synchronized void jobFinished(IJob job, Object container) {
+		this.runningJobs.remove(job);
+		if (container != null)
+			this.busyContainers.remove(container);
+		this.executing = !this.runningJobs.isEmpty();
+		for (int i = this.jobStart; i <= this.jobEnd; i++) {
+			if (this.awaitingJobs[i] == job) {
+				if (i != this.jobStart) {
+					// move the job to the start, keeping the order of the
+					// others, so it is removed like the current job
+					System.arraycopy(this.awaitingJobs, this.jobStart,
+							this.awaitingJobs, this.jobStart + 1,
+							i - this.jobStart);
+					this.awaitingJobs[this.jobStart] = job;
+				}
+				moveToNextJob();
+				break;
+			}
+		}
+		notifyAll(); // wake up the background thread, waiting jobs can start
+	}
+
+	private final class ContainerJobRunner implements Runnable {
+		private final IJob job;
+		private final Object container;
+
+		ContainerJobRunner(IJob job, Object container) {
+			this.job = job;
+			this.container = container;
+		}
+
+		@Override
+		public void run() {
+			try {
+				this.job.execute(null);
+			} catch (RuntimeException e) {
+				// keep the workers alive, the index of the container may be
+				// inconsistent
+				Util.log(e, "Background Indexer Crash Recovery"); //$NON-NLS-1$
+			} finally {
+				if (VERBOSE)
+					Util.verbose("FINISHED background job - " + this.job); //$NON-NLS-1$
+				jobFinished(this.job, this.container);
+			}
+		}
+	}
+
+	/**
+	 * Answers the maximum number of container jobs executed concurrently, 0
+	 * to execute all the jobs in the processing thread. Configured with the
+	 * <code>org.eclipse.dltk.core.indexer.workers</code> system property.
+	 */
+	protected int getWorkerCount() {
+		return WORKER_COUNT;
+	}
+
+	private ExecutorService createWorkers(int count) {
+		final AtomicInteger threadNumber = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(count, count, 30,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, processName()
+								+ " #" + threadNumber.incrementAndGet()); //$NON-NLS-1$
+						thread.setDaemon(true);
+						thread.setPriority(Thread.NORM_PRIORITY - 1);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
 	/**
 	 * Notifies that processing thread idle state has come to an end.
 	 */
@@ -386,6 +565,8 @@ public abstract class JobManager implements Runnable {
 		if (this.processingThread != null) {
 			discardJobs(null); // discard all jobs
 		} else {
+			if (this.workers == null && getWorkerCount() > 0)
+				this.workers = createWorkers(getWorkerCount());
 			/* initiate background processing */
 			this.processingThread = new Thread(this, this.processName());
 			this.processingThread.setDaemon(true);
@@ -440,6 +621,8 @@ public abstract class JobManager implements Runnable {
 			while (this.processingThread != null) {
 				try {
 					IJob job;
+					Object container = null;
+					boolean idle = false;
 					synchronized (this) {
 						// handle shutdown case when notifyAll came before the
 						// wait but after the while loop was entered
@@ -448,27 +631,36 @@ public abstract class JobManager implements Runnable {
 
 						// must check for new job inside this sync block to
 						// avoid timing hole
-						if ((job = currentJob()) == null) {
-							hideProgress();
-							if (idlingStart < 0) {
-								idlingStart = System.currentTimeMillis();
-								notifyIdle();
+						if ((job = nextJob()) == null) {
+							if (this.runningJobs.isEmpty()) {
+								idle = true;
+								hideProgress();
+								if (idlingStart < 0) {
+									idlingStart = System.currentTimeMillis();
+									notifyIdle();
+								}
+								else
+									notifyIdle(System.currentTimeMillis()
+											- idlingStart);
 							}
-							else
-								notifyIdle(System.currentTimeMillis()
-										- idlingStart);
-							this.wait(); // wait until a new job is posted (or
-							// reenabled:38901)
+							this.wait(); // wait until a new job is posted, a
+							// running job has completed (or reenabled:38901)
 						} else {
 							idlingStart = -1;
+							container = getContainerKey(job);
+							jobStarted(job, container);
 						}
 					}
 					if (job == null) {
-						notifyIdle(System.currentTimeMillis() - idlingStart);
-						// just woke up, delay before processing any new jobs,
-						// allow some time for the active thread to finish
-						synchronized (delaySignal) {
-							delaySignal.wait(500);
+						if (idle) {
+							notifyIdle(System.currentTimeMillis()
+									- idlingStart);
+							// just woke up, delay before processing any new
+							// jobs, allow some time for the active thread to
+							// finish
+							synchronized (delaySignal) {
+								delaySignal.wait(500);
+							}
 						}
 						continue;
 					}
@@ -476,16 +668,20 @@ public abstract class JobManager implements Runnable {
 						Util.verbose(awaitingJobsCount() + " awaiting jobs"); //$NON-NLS-1$
 						Util.verbose("STARTING background job - " + job); //$NON-NLS-1$
 					}
+					showProgress();
+					if (container != null) {
+						// jobs of other containers are started meanwhile
+						this.workers.execute(new ContainerJobRunner(job,
+								container));
+						continue;
+					}
 					try {
-						this.executing = true;
-						showProgress();
 						/* boolean status = */job.execute(null);
 						// if (status == FAILED) request(job);
 					} finally {
-						this.executing = false;
 						if (VERBOSE)
 							Util.verbose("FINISHED background job - " + job); //$NON-NLS-1$
-						moveToNextJob();
+						jobFinished(job, null);
 						if (ENABLE_DELAYS && this.awaitingClients.get() == 0)
 							Thread.sleep(50);
 					}
@@ -565,6 +761,12 @@ public abstract class JobManager implements Runnable {
 				// XXX wait not more than 1 minute
 				thread.join(60000);
 			}
+			ExecutorService executor = this.workers;
+			if (executor != null) {
+				this.workers = null;
+				executor.shutdown();
+				executor.awaitTermination(60, TimeUnit.SECONDS);
+			}
 			Job job = this.progressJob;
 			if (job != null) {
 				job.cancel();
@@ -0,0 +1,528 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.ti;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.ti.goals.GoalEvaluator;
+import org.eclipse.dltk.ti.goals.IGoal;
+import org.eclipse.dltk.ti.goals.SearchBasedGoalEvaluator;
+import org.eclipse.dltk.ti.statistics.IEvaluationCostRequestor;
+import org.eclipse.dltk.ti.statistics.IEvaluationStatisticsRequestor;
+
+/**
+ * {@link GoalEngine} evaluating independent subgoals in parallel on a
+ * {@link ForkJoinPool}, so that the searches of evaluators like
+ * <code>MethodCallsGoalEvaluator</code> run at the same time.
+ * <p>
+ * The calls to a {@link GoalEvaluator} are never concurrent: {@link
+ * GoalEvaluator#init()} comes first, then {@link
+ * GoalEvaluator#subGoalDone(IGoal, Object, GoalState)} once per requested
+ * subgoal and {@link GoalEvaluator#produceResult()} after the last one, like
+ * in {@link GoalEngine}. Different evaluators are called from different
+ * threads, so the {@link IGoalEvaluatorFactory} must be thread safe. The calls
+ * to the {@link IPruner} and to the {@link IEvaluationStatisticsRequestor} are
+ * serialized, the time spent by all the threads counts for
+ * {@link TimelimitPruner}.
+ * </p>
+ * <p>
+ * As in {@link GoalEngine}, a goal requested again while its subgoals are
+ * evaluated is reported as {@link GoalState#RECURSIVE}.
+ * </p>
+ * This class is thread safe, every evaluation has its own state.
+ *
+ * @since 5.7.1
+ */
+public class ConcurrentGoalEngine extends GoalEngine {
+
+	/*
+	 * number of threads of the default pool
+	 */
+	static final int WORKER_COUNT = Math.max(1, Integer.getInteger(
+			"org.eclipse.dltk.core.typeinference.workers", //$NON-NLS-1$
+			Runtime.getRuntime().availableProcessors()).intValue());
+
+	private static ForkJoinPool defaultPool = null;
+
+	/**
+	 * Returns the pool shared by the engines created without one, separate
+	 * from the common pool so that the searches waiting in its threads do not
+	 * hold up the other users of the common pool.
+	 */
+	private static synchronized ForkJoinPool getDefaultPool() {
+		if (defaultPool == null) {
+			defaultPool = new ForkJoinPool(WORKER_COUNT,
+					new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+						@Override
+						public ForkJoinWorkerThread newThread(
+								ForkJoinPool p) {
+							final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory
+									.newThread(p);
+							thread.setName("DLTK Type Inference Worker-" //$NON-NLS-1$
+									+ thread.getPoolIndex());
+							return thread;
+						}
+					}, null, false);
+		}
+		return defaultPool;
+	}
+
+	private final IGoalEvaluatorFactory evaluatorFactory;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates an engine running on a pool shared by the engines created with
+	 * this constructor, with a thread per processor, or as many as the
+	 * <code>org.eclipse.dltk.core.typeinference.workers</code> system
+	 * property says.
+	 */
+	public ConcurrentGoalEngine(IGoalEvaluatorFactory evaluatorFactory) {
+		this(evaluatorFactory, getDefaultPool());
+	}
+
+	public ConcurrentGoalEngine(IGoalEvaluatorFactory evaluatorFactory,
+			ForkJoinPool pool) {
+		super(evaluatorFactory);
+		this.evaluatorFactory = evaluatorFactory;
+		this.pool = pool;
+	}
+
+	/**
+	 * State of a goal, guarded by its own monitor.
+	 */
+	private static class GoalNode {
+		final IGoal goal;
+		final GoalEvaluator creator;
+		/**
+		 * <code>null</code> until the evaluator of the goal is initialized
+		 */
+		GoalState state;
+		Object result;
+		/**
+		 * Evaluators that requested the goal before it was initialized
+		 */
+		List<GoalEvaluator> waiters;
+
+		long timeCreated;
+		final GoalCost cost = new GoalCost();
+		int totalSubgoals;
+		int successfulSubgoals;
+		int subgoalsLeft;
+
+		Set<ISourceModule> dependencies;
+		boolean searchBased;
+		boolean cacheable = true;
+
+		GoalNode(IGoal goal, GoalEvaluator creator) {
+			this.goal = goal;
+			this.creator = creator;
+		}
+
+		void addDependencies(GoalState subState,
+				Set<ISourceModule> subDependencies, boolean subSearchBased,
+				boolean subCacheable) {
+			if (subState != GoalState.DONE || !subCacheable) {
+				cacheable = false;
+			}
+			if (subDependencies != null) {
+				if (dependencies == null) {
+					dependencies = new HashSet<ISourceModule>();
+				}
+				dependencies.addAll(subDependencies);
+			}
+			searchBased |= subSearchBased;
+		}
+
+		List<GoalEvaluator> takeWaiters() {
+			List<GoalEvaluator> result = waiters;
+			waiters = null;
+			return result;
+		}
+	}
+
+	/**
+	 * Task evaluating a goal requested by an evaluator, new goals requested
+	 * while it runs are forked as its children.
+	 */
+	private static class GoalTask extends CountedCompleter<Void> {
+		private static final long serialVersionUID = 1L;
+
+		private final transient Evaluation evaluation;
+		private final transient IGoal goal;
+		private final transient GoalEvaluator creator;
+
+		GoalTask(CountedCompleter<?> parent, Evaluation evaluation,
+				IGoal goal, GoalEvaluator creator) {
+			super(parent);
+			this.evaluation = evaluation;
+			this.goal = goal;
+			this.creator = creator;
+		}
+
+		@Override
+		public void compute() {
+			evaluation.process(this, goal, creator);
+			tryComplete();
+		}
+
+		void fork(IGoal[] goals, GoalEvaluator evaluator) {
+			for (IGoal g : goals) {
+				addToPendingCount(1);
+				new GoalTask(this, evaluation, g, evaluator).fork();
+			}
+		}
+	}
+
+	private class Evaluation {
+		private final ConcurrentHashMap<IGoal, GoalNode> goalStates = new ConcurrentHashMap<IGoal, GoalNode>();
+		private final IPruner pruner;
+		private final IEvaluationStatisticsRequestor statisticsRequestor;
+		private final GoalResultCache resultCache = getResultCache();
+
+		Evaluation(IPruner pruner,
+				IEvaluationStatisticsRequestor statisticsRequestor) {
+			this.pruner = pruner;
+			this.statisticsRequestor = statisticsRequestor;
+		}
+
+		void process(GoalTask task, IGoal goal, GoalEvaluator creator) {
+			final GoalNode node = new GoalNode(goal, creator);
+			final GoalNode existing = goalStates.putIfAbsent(goal, node);
+			if (existing != null) {
+				synchronized (existing) {
+					if (existing.state == null) {
+						if (existing.waiters == null) {
+							existing.waiters = new ArrayList<GoalEvaluator>();
+						}
+						existing.waiters.add(creator);
+						return;
+					}
+				}
+				notifyEvaluator(task, creator, existing);
+				return;
+			}
+			final GoalResultCache.Entry cached = resultCache != null
+					? resultCache.get(goal) : null;
+			if (cached != null) {
+				synchronized (node) {
+					node.result = cached.result;
+					if (!cached.dependencies.isEmpty()) {
+						node.dependencies = cached.dependencies;
+					}
+					node.searchBased = cached.searchBased;
+					node.state = GoalState.DONE;
+				}
+				goalStateChanged(goal, GoalState.CACHED);
+				notifyCreators(task, node);
+				return;
+			}
+			if (pruner != null && creator != null
+					&& prune(goal, creator)) {
+				synchronized (node) {
+					node.state = GoalState.PRUNED;
+				}
+				goalStateChanged(goal, GoalState.PRUNED);
+				notifyCreators(task, node);
+				return;
+			}
+			final GoalEvaluator evaluator = evaluatorFactory
+					.createEvaluator(goal);
+			Assert.isNotNull(evaluator);
+			synchronized (statisticsRequestor) {
+				statisticsRequestor.goalEvaluatorAssigned(goal, evaluator);
+			}
+			Set<ISourceModule> dependencies = null;
+			final IContext context = goal.getContext();
+			if (context instanceof ISourceModuleContext) {
+				final ISourceModule module = ((ISourceModuleContext) context)
+						.getSourceModule();
+				if (module != null) {
+					dependencies = new HashSet<ISourceModule>();
+					dependencies.add(module.getPrimary());
+				}
+			}
+			synchronized (node) {
+				node.timeCreated = System.nanoTime();
+				node.dependencies = dependencies;
+				node.searchBased = evaluator instanceof SearchBasedGoalEvaluator;
+				if (!evaluator.isResultCacheable()) {
+					node.cacheable = false;
+				}
+			}
+			// no subgoal was requested yet, so no other call to the evaluator
+			GoalCost call = new GoalCost();
+			GoalCost previous = call.start();
+			IGoal[] newGoals;
+			long time;
+			try {
+				newGoals = evaluator.init();
+			} finally {
+				time = call.stop(previous);
+			}
+			spendCost(node, call);
+			if (newGoals == null) {
+				newGoals = IGoal.NO_GOALS;
+			}
+			synchronized (statisticsRequestor) {
+				statisticsRequestor.evaluatorInitialized(evaluator, newGoals,
+						toMillis(time));
+			}
+			Object result = null;
+			if (newGoals.length == 0) {
+				call = new GoalCost();
+				previous = call.start();
+				try {
+					result = evaluator.produceResult();
+				} finally {
+					time = call.stop(previous);
+				}
+				spendCost(node, call);
+				synchronized (statisticsRequestor) {
+					statisticsRequestor.evaluatorProducedResult(evaluator,
+							result, toMillis(time));
+				}
+			}
+			final List<GoalEvaluator> waiters;
+			synchronized (node) {
+				if (newGoals.length > 0) {
+					node.subgoalsLeft = newGoals.length;
+					node.totalSubgoals = newGoals.length;
+					node.state = GoalState.WAITING;
+				} else {
+					node.result = result;
+					node.state = GoalState.DONE;
+				}
+				waiters = node.takeWaiters();
+			}
+			if (newGoals.length > 0) {
+				goalStateChanged(goal, GoalState.WAITING);
+				task.fork(newGoals, evaluator);
+			} else {
+				goalStateChanged(goal, GoalState.DONE);
+				done(task, node);
+			}
+			if (waiters != null) {
+				for (GoalEvaluator waiter : waiters) {
+					notifyEvaluator(task, waiter, node);
+				}
+			}
+		}
+
+		/**
+		 * Caches the result of the goal and notifies its creator and the
+		 * evaluators that requested it while it was initialized.
+		 */
+		private void notifyCreators(GoalTask task, GoalNode node) {
+			final List<GoalEvaluator> waiters;
+			synchronized (node) {
+				waiters = node.takeWaiters();
+			}
+			if (node.creator != null) {
+				notifyEvaluator(task, node.creator, node);
+			}
+			if (waiters != null) {
+				for (GoalEvaluator waiter : waiters) {
+					notifyEvaluator(task, waiter, node);
+				}
+			}
+		}
+
+		/**
+		 * Adds the cost of a call to the evaluator of the goal to its total
+		 * cost and reports it.
+		 */
+		private void spendCost(GoalNode node, GoalCost call) {
+			synchronized (node) {
+				node.cost.add(call);
+			}
+			if (statisticsRequestor instanceof IEvaluationCostRequestor) {
+				synchronized (statisticsRequestor) {
+					((IEvaluationCostRequestor) statisticsRequestor)
+							.costSpent(node.goal, call);
+				}
+			}
+			if (pruner instanceof IEvaluationCostRequestor) {
+				synchronized (pruner) {
+					((IEvaluationCostRequestor) pruner).costSpent(node.goal,
+							call);
+				}
+			}
+		}
+
+		private void done(GoalTask task, GoalNode node) {
+			if (statisticsRequestor instanceof IEvaluationCostRequestor) {
+				synchronized (statisticsRequestor) {
+					((IEvaluationCostRequestor) statisticsRequestor)
+							.goalEvaluated(node.goal, node.result, node.cost);
+				}
+			}
+			if (pruner instanceof IEvaluationCostRequestor) {
+				synchronized (pruner) {
+					((IEvaluationCostRequestor) pruner).goalEvaluated(
+							node.goal, node.result, node.cost);
+				}
+			}
+			if (resultCache != null && node.cacheable) {
+				resultCache.put(node.goal, node.result, node.dependencies,
+						node.searchBased);
+			}
+			if (node.creator != null) {
+				notifyEvaluator(task, node.creator, node);
+			}
+		}
+
+		private boolean prune(IGoal goal, GoalEvaluator creator) {
+			final GoalNode creatorNode = goalStates.get(creator.getGoal());
+			final EvaluatorStatistics stat;
+			synchronized (creatorNode) {
+				stat = new EvaluatorStatistics(creatorNode.totalSubgoals,
+						toMillis(System.nanoTime() - creatorNode.timeCreated),
+						creatorNode.totalSubgoals - creatorNode.subgoalsLeft,
+						creatorNode.successfulSubgoals);
+			}
+			synchronized (pruner) {
+				return pruner.prune(goal, stat);
+			}
+		}
+
+		private void goalStateChanged(IGoal goal, GoalState state) {
+			synchronized (statisticsRequestor) {
+				statisticsRequestor.goalStateChanged(goal, state, null);
+			}
+		}
+
+		private void notifyEvaluator(GoalTask task, GoalEvaluator evaluator,
+				GoalNode subNode) {
+			final GoalState subState;
+			final Object subResult;
+			final Set<ISourceModule> subDependencies;
+			final boolean subSearchBased;
+			final boolean subCacheable;
+			synchronized (subNode) {
+				subState = subNode.state;
+				subResult = subNode.result;
+				subDependencies = subNode.dependencies != null
+						? new HashSet<ISourceModule>(subNode.dependencies)
+						: null;
+				subSearchBased = subNode.searchBased;
+				subCacheable = subNode.cacheable;
+			}
+			final GoalState state = subState == GoalState.WAITING
+					? GoalState.RECURSIVE : subState;
+			final GoalNode node = goalStates.get(evaluator.getGoal());
+			Assert.isNotNull(node);
+			synchronized (node) {
+				GoalCost call = new GoalCost();
+				GoalCost previous = call.start();
+				IGoal[] newGoals;
+				long t;
+				try {
+					newGoals = evaluator.subGoalDone(subNode.goal, subResult,
+							state);
+				} finally {
+					t = call.stop(previous);
+				}
+				spendCost(node, call);
+				if (newGoals == null) {
+					newGoals = IGoal.NO_GOALS;
+				}
+				synchronized (statisticsRequestor) {
+					statisticsRequestor.evaluatorReceivedResult(evaluator,
+							subNode.goal, newGoals, toMillis(t));
+				}
+				node.addDependencies(subState, subDependencies,
+						subSearchBased, subCacheable);
+				node.subgoalsLeft += newGoals.length - 1;
+				node.totalSubgoals += newGoals.length;
+				if (state == GoalState.DONE && subResult != null) {
+					node.successfulSubgoals++;
+				}
+				task.fork(newGoals, evaluator);
+				if (node.subgoalsLeft != 0) {
+					return;
+				}
+				call = new GoalCost();
+				previous = call.start();
+				try {
+					node.result = evaluator.produceResult();
+				} finally {
+					t = call.stop(previous);
+				}
+				spendCost(node, call);
+				synchronized (statisticsRequestor) {
+					statisticsRequestor.evaluatorProducedResult(evaluator,
+							node.result, toMillis(t));
+				}
+				node.state = GoalState.DONE;
+			}
+			goalStateChanged(node.goal, GoalState.DONE);
+			done(task, node);
+		}
+	}
+
+	@Override
+	public Object evaluateGoal(IGoal rootGoal, IPruner pruner,
+			IEvaluationStatisticsRequestor statisticsRequestor) {
+		if (statisticsRequestor == null) {
+			statisticsRequestor = new NullStatisticsRequestor();
+		}
+		if (pruner != null) {
+			pruner.init();
+		}
+		final Evaluation evaluation = new Evaluation(pruner,
+				statisticsRequestor);
+		statisticsRequestor.evaluationStarted(rootGoal);
+		pool.invoke(new GoalTask(null, evaluation, rootGoal, null));
+		final GoalNode node = evaluation.goalStates.get(rootGoal);
+		Assert.isTrue(node.state == GoalState.DONE);
+		return node.result;
+	}
+
+	private static class NullStatisticsRequestor implements
+			IEvaluationStatisticsRequestor {
+
+		@Override
+		public void evaluationStarted(IGoal rootGoal) {
+		}
+
+		@Override
+		public void evaluatorInitialized(GoalEvaluator evaluator,
+				IGoal[] subgoals, long time) {
+		}
+
+		@Override
+		public void evaluatorProducedResult(GoalEvaluator evaluator,
+				Object result, long time) {
+		}
+
+		@Override
+		public void evaluatorReceivedResult(GoalEvaluator evaluator,
+				IGoal finishedGoal, IGoal[] newSubgoals, long time) {
+		}
+
+		@Override
+		public void goalEvaluatorAssigned(IGoal goal, GoalEvaluator evaluator) {
+		}
+
+		@Override
+		public void goalStateChanged(IGoal goal, GoalState state,
+				GoalState oldState) {
+		}
+	}
+
+}
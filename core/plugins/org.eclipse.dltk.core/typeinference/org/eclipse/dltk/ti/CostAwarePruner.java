@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.ti;
+
+import org.eclipse.dltk.ti.goals.IGoal;
+import org.eclipse.dltk.ti.statistics.IEvaluationCostRequestor;
+
+/**
+ * Pruner keeping an evaluation within budgets of time, index queries and
+ * parsed modules.
+ * <p>
+ * A goal is pruned when a budget is exhausted, or when it is expected to take
+ * a larger part of what is left of a budget than the part of the goals of its
+ * class that have a result. So cheap goals are always evaluated while there is
+ * budget, and expensive goals only if they are likely to be useful. The
+ * expected costs and success ratios come from the {@link GoalCostModel}, which
+ * learns them from the evaluated goals, some of the goals pruned for their
+ * success ratio being evaluated anyway so a class without results can recover.
+ * </p>
+ * <p>
+ * The budgets count the work of the goals waiting for their subgoals too.
+ * </p>
+ * A pruner is used by one evaluation at a time.
+ *
+ * @since 5.7.1
+ */
+public class CostAwarePruner implements IPruner, IEvaluationCostRequestor {
+
+	private final GoalCostModel model;
+	private final long timeLimit;
+	private final int maxIndexQueries;
+	private final int maxParsedModules;
+
+	private long timeStart;
+	private GoalCost spent;
+
+	/**
+	 * @param model
+	 *            the costs of the goals, shared by the evaluations
+	 * @param timeLimit
+	 *            time budget in milliseconds, 0 for no limit
+	 * @param maxIndexQueries
+	 *            index queries budget, 0 for no limit
+	 * @param maxParsedModules
+	 *            parsed modules budget, 0 for no limit
+	 */
+	public CostAwarePruner(GoalCostModel model, long timeLimit,
+			int maxIndexQueries, int maxParsedModules) {
+		this.model = model;
+		this.timeLimit = timeLimit * 1000000;
+		this.maxIndexQueries = maxIndexQueries;
+		this.maxParsedModules = maxParsedModules;
+	}
+
+	@Override
+	public void init() {
+		this.timeStart = System.nanoTime();
+		this.spent = new GoalCost();
+	}
+
+	@Override
+	public boolean prune(IGoal goal, EvaluatorStatistics stat) {
+		final long timeLeft = timeLimit - (System.nanoTime() - timeStart);
+		final int queriesLeft = maxIndexQueries - spent.getIndexQueries();
+		final int parsesLeft = maxParsedModules - spent.getParsedModules();
+		if ((timeLimit > 0 && timeLeft <= 0)
+				|| (maxIndexQueries > 0 && queriesLeft <= 0)
+				|| (maxParsedModules > 0 && parsesLeft <= 0)) {
+			return true;
+		}
+		final GoalCost expected = model.getExpectedCost(goal.getClass());
+		if (expected == null) {
+			return false;
+		}
+		double share = 0;
+		if (timeLimit > 0) {
+			share = Math.max(share, (double) expected.getTime() / timeLeft);
+		}
+		if (maxIndexQueries > 0) {
+			share = Math.max(share, (double) expected.getIndexQueries()
+					/ queriesLeft);
+		}
+		if (maxParsedModules > 0) {
+			share = Math.max(share, (double) expected.getParsedModules()
+					/ parsesLeft);
+		}
+		return share > model.getSuccessRatio(goal.getClass())
+				&& !model.explore(goal.getClass());
+	}
+
+	@Override
+	public void costSpent(IGoal goal, GoalCost cost) {
+		spent.add(cost);
+	}
+
+	@Override
+	public void goalEvaluated(IGoal goal, Object result, GoalCost cost) {
+		model.record(goal, result, cost);
+	}
+
+	/**
+	 * Returns the cost of the goals evaluated since {@link #init()}, including
+	 * the goals still waiting for their subgoals.
+	 */
+	public GoalCost getSpent() {
+		return spent;
+	}
+
+}
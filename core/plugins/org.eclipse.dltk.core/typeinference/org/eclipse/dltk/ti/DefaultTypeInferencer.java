@@ -14,6 +14,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.dltk.core.DLTKCore;
@@ -25,6 +26,7 @@ import org.eclipse.dltk.ti.goals.IGoal;
 import org.eclipse.dltk.ti.goals.MethodCallsGoal;
 import org.eclipse.dltk.ti.goals.MethodCallsGoalEvaluator;
 import org.eclipse.dltk.ti.goals.NullGoalEvaluator;
+import org.eclipse.dltk.ti.statistics.IEvaluationCostRequestor;
 import org.eclipse.dltk.ti.statistics.IEvaluationStatisticsRequestor;
 import org.eclipse.dltk.ti.types.IEvaluatedType;
 
@@ -48,7 +50,7 @@ import org.eclipse.dltk.ti.types.IEvaluatedType;
 public class DefaultTypeInferencer implements ITypeInferencer {
 
 	private static class ProxyStatisticsRequestor implements
-			IEvaluationStatisticsRequestor {
+			IEvaluationStatisticsRequestor, IEvaluationCostRequestor {
 
 		@Override
 		public void evaluationStarted(IGoal rootGoal) {
@@ -128,6 +130,29 @@ public class DefaultTypeInferencer implements ITypeInferencer {
 			}
 		}
 
+		@Override
+		public void costSpent(IGoal goal, GoalCost cost) {
+			for (Iterator iterator = statRequestors.iterator(); iterator
+					.hasNext();) {
+				Object t = iterator.next();
+				if (t instanceof IEvaluationCostRequestor) {
+					((IEvaluationCostRequestor) t).costSpent(goal, cost);
+				}
+			}
+		}
+
+		@Override
+		public void goalEvaluated(IGoal goal, Object result, GoalCost cost) {
+			for (Iterator iterator = statRequestors.iterator(); iterator
+					.hasNext();) {
+				Object t = iterator.next();
+				if (t instanceof IEvaluationCostRequestor) {
+					((IEvaluationCostRequestor) t).goalEvaluated(goal, result,
+							cost);
+				}
+			}
+		}
+
 	}
 
 	private class MapBasedEvaluatorFactory implements IGoalEvaluatorFactory {
@@ -203,6 +228,21 @@ public class DefaultTypeInferencer implements ITypeInferencer {
 		initStdGoals();
 	}
 
+	/**
+	 * Creates the inferencer evaluating independent subgoals in parallel on
+	 * the given pool, see {@link ConcurrentGoalEngine}. The user factory and
+	 * the registered evaluators must be thread safe then.
+	 *
+	 * @since 5.7.1
+	 */
+	public DefaultTypeInferencer(IGoalEvaluatorFactory userFactory,
+			ForkJoinPool pool) {
+		engine = new ConcurrentGoalEngine(new MapBasedEvaluatorFactory(),
+				pool);
+		this.userFactory = userFactory;
+		initStdGoals();
+	}
+
 	public void registerEvaluator(Class goalClass, Class evaluatorClass) {
 		Assert.isLegal((IGoal.class.isAssignableFrom(goalClass)));
 		Assert.isLegal(GoalEvaluator.class.isAssignableFrom(evaluatorClass));
@@ -227,6 +267,16 @@ public class DefaultTypeInferencer implements ITypeInferencer {
 		return evaluateType(goal, null);
 	}
 
+	/**
+	 * Sets the cache of goal results shared with other evaluations,
+	 * <code>null</code> to evaluate all the goals again every time.
+	 *
+	 * @since 5.7.1
+	 */
+	public void setResultCache(GoalResultCache resultCache) {
+		engine.setResultCache(resultCache);
+	}
+
 	public static void addEvaluationStatisticsRequestor(
 			IEvaluationStatisticsRequestor r) {
 		statRequestors.add(r);
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.ti;
+
+/**
+ * Work done to evaluate a goal: the time spent in the calls of its
+ * {@link org.eclipse.dltk.ti.goals.GoalEvaluator}, not counting its subgoals,
+ * and the index queries and module parses made by these calls.
+ * <p>
+ * The engines account the work of the evaluator calls to the cost of their
+ * goal, evaluators report their index queries with {@link #indexQueried()},
+ * and {@link org.eclipse.dltk.core.SourceParserUtil} reports the modules it
+ * parses, not found in the AST caches, with {@link #moduleParsed()}.
+ * </p>
+ *
+ * @since 5.7.1
+ */
+public class GoalCost {
+
+	private static final ThreadLocal<GoalCost> CURRENT = new ThreadLocal<GoalCost>();
+
+	private long time;
+	private int indexQueries;
+	private int parsedModules;
+	private long startTime;
+
+	public GoalCost() {
+	}
+
+	public GoalCost(long time, int indexQueries, int parsedModules) {
+		this.time = time;
+		this.indexQueries = indexQueries;
+		this.parsedModules = parsedModules;
+	}
+
+	/**
+	 * Returns the time spent, in nanoseconds.
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	public int getIndexQueries() {
+		return indexQueries;
+	}
+
+	public int getParsedModules() {
+		return parsedModules;
+	}
+
+	public void add(GoalCost cost) {
+		time += cost.time;
+		indexQueries += cost.indexQueries;
+		parsedModules += cost.parsedModules;
+	}
+
+	/**
+	 * Starts accounting the work of the current thread to this cost.
+	 *
+	 * @return the cost to pass to {@link #stop(GoalCost)}
+	 */
+	GoalCost start() {
+		final GoalCost previous = CURRENT.get();
+		CURRENT.set(this);
+		startTime = System.nanoTime();
+		return previous;
+	}
+
+	/**
+	 * Stops accounting the work of the current thread to this cost.
+	 *
+	 * @param previous
+	 *            the value returned by {@link #start()}
+	 * @return the time since {@link #start()}, in nanoseconds
+	 */
+	long stop(GoalCost previous) {
+		final long elapsed = System.nanoTime() - startTime;
+		time += elapsed;
+		if (previous != null) {
+			CURRENT.set(previous);
+		} else {
+			CURRENT.remove();
+		}
+		return elapsed;
+	}
+
+	/**
+	 * Counts an index query for the goal evaluated by the current thread.
+	 */
+	public static void indexQueried() {
+		final GoalCost cost = CURRENT.get();
+		if (cost != null) {
+			++cost.indexQueries;
+		}
+	}
+
+	/**
+	 * Counts a module parse for the goal evaluated by the current thread,
+	 * called when the AST was not cached.
+	 */
+	public static void moduleParsed() {
+		final GoalCost cost = CURRENT.get();
+		if (cost != null) {
+			++cost.parsedModules;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return time / 1000000 + "ms, " + indexQueries + " queries, " //$NON-NLS-1$ //$NON-NLS-2$
+				+ parsedModules + " parsed"; //$NON-NLS-1$
+	}
+
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.ti;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.dltk.ti.goals.IGoal;
+
+/**
+ * Average cost and success ratio of the goals by class, learned from the
+ * evaluated goals. A model is usually shared by the evaluations of a language
+ * and used by a {@link CostAwarePruner}.
+ *
+ * @since 5.7.1
+ */
+public class GoalCostModel {
+
+	/**
+	 * Number of evaluations of a goal class before its cost is estimated
+	 */
+	private static final int MIN_SAMPLES = 3;
+
+	/**
+	 * Number of goals of a class pruned for their success ratio before one is
+	 * evaluated anyway, so the ratio of a class is learned again after it has
+	 * dropped
+	 */
+	private static final int EXPLORATION_INTERVAL = 8;
+
+	private static class Samples {
+		final GoalCost total = new GoalCost();
+		int count;
+		int successful;
+		int pruned;
+	}
+
+	private final Map<Class<?>, Samples> samples = new HashMap<Class<?>, Samples>();
+
+	/**
+	 * Records the cost of an evaluated goal, the goal is successful if its
+	 * result is not <code>null</code>.
+	 */
+	public synchronized void record(IGoal goal, Object result, GoalCost cost) {
+		Samples s = samples.get(goal.getClass());
+		if (s == null) {
+			s = new Samples();
+			samples.put(goal.getClass(), s);
+		}
+		s.total.add(cost);
+		++s.count;
+		if (result != null) {
+			++s.successful;
+		}
+	}
+
+	/**
+	 * Returns the average cost of the goals of the class, or <code>null</code>
+	 * if too few of them were evaluated.
+	 */
+	public synchronized GoalCost getExpectedCost(Class<?> goalClass) {
+		final Samples s = samples.get(goalClass);
+		if (s == null || s.count < MIN_SAMPLES) {
+			return null;
+		}
+		return new GoalCost(s.total.getTime() / s.count,
+				(s.total.getIndexQueries() + s.count - 1) / s.count,
+				(s.total.getParsedModules() + s.count - 1) / s.count);
+	}
+
+	/**
+	 * Returns the part of the goals of the class with a result, 1 if none was
+	 * evaluated.
+	 */
+	public synchronized double getSuccessRatio(Class<?> goalClass) {
+		final Samples s = samples.get(goalClass);
+		if (s == null || s.count == 0) {
+			return 1;
+		}
+		return (double) s.successful / s.count;
+	}
+
+	/**
+	 * Records a goal of the class to prune for its success ratio.
+	 *
+	 * @return <code>true</code> if the goal should be evaluated anyway, to
+	 *         sample the success ratio again
+	 */
+	public synchronized boolean explore(Class<?> goalClass) {
+		final Samples s = samples.get(goalClass);
+		if (s == null || ++s.pruned < EXPLORATION_INTERVAL) {
+			return false;
+		}
+		s.pruned = 0;
+		return true;
+	}
+
+	/**
+	 * Returns the total cost of the evaluated goals by class.
+	 */
+	public synchronized Map<Class<?>, GoalCost> getTotalCosts() {
+		final Map<Class<?>, GoalCost> result = new HashMap<Class<?>, GoalCost>();
+		for (Map.Entry<Class<?>, Samples> entry : samples.entrySet()) {
+			final GoalCost cost = new GoalCost();
+			cost.add(entry.getValue().total);
+			result.put(entry.getKey(), cost);
+		}
+		return result;
+	}
+
+	public synchronized void clear() {
+		samples.clear();
+	}
+
+}
@@ -11,12 +11,17 @@ package org.eclipse.dltk.ti;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.core.runtime.Assert;
+import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.ti.goals.GoalEvaluator;
 import org.eclipse.dltk.ti.goals.IGoal;
+import org.eclipse.dltk.ti.goals.SearchBasedGoalEvaluator;
+import org.eclipse.dltk.ti.statistics.IEvaluationCostRequestor;
 import org.eclipse.dltk.ti.statistics.IEvaluationStatisticsRequestor;
 
 /**
@@ -25,6 +30,9 @@ import org.eclipse.dltk.ti.statistics.IEvaluationStatisticsRequestor;
  * allows pruning: before evaluating every goal(except root goal) could be
  * pruned by provided prunner.
  * 
+ * Results of goals may be reused across evaluations through a
+ * {@link GoalResultCache}, see {@link #setResultCache(GoalResultCache)}.
+ * 
  * This class isn't thread safe.
  */
 public class GoalEngine {
@@ -37,6 +45,10 @@ public class GoalEngine {
 
 	private IEvaluationStatisticsRequestor statisticsRequestor;
 
+	private IPruner pruner;
+
+	private GoalResultCache resultCache;
+
 	private static class EvaluatorState {
 		public long timeCreated;
 		public int totalSubgoals;
@@ -46,7 +58,7 @@ public class GoalEngine {
 
 		public EvaluatorState(int subgoalsLeft) {
 			this.subgoalsLeft = subgoalsLeft;
-			this.timeCreated = System.currentTimeMillis();
+			this.timeCreated = System.nanoTime();
 			totalSubgoals = subgoalsLeft;
 		}
 
@@ -67,14 +79,69 @@ public class GoalEngine {
 		public GoalEvaluator creator;
 		public GoalState state;
 		public Object result;
+		/**
+		 * Cost of the evaluator of the goal
+		 */
+		public GoalCost cost;
+		/**
+		 * Source modules of the contexts of the goal and of its subgoals
+		 */
+		public Set<ISourceModule> dependencies;
+		/**
+		 * Whether the goal or a subgoal was evaluated by searching
+		 */
+		public boolean searchBased;
+		/**
+		 * Whether the evaluators of the goal and of its subgoals allow caching
+		 * and no subgoal was pruned or recursive, so the result does not
+		 * depend on the evaluation order or time
+		 */
+		public boolean cacheable = true;
+
+		void addDependency(ISourceModule module) {
+			if (dependencies == null) {
+				dependencies = new HashSet<ISourceModule>();
+			}
+			dependencies.add(module.getPrimary());
+		}
+
+		void addDependencies(GoalEvaluationState subgoal) {
+			if (subgoal.state != GoalState.DONE || !subgoal.cacheable) {
+				cacheable = false;
+			}
+			if (subgoal.dependencies != null) {
+				if (dependencies == null) {
+					dependencies = new HashSet<ISourceModule>();
+				}
+				dependencies.addAll(subgoal.dependencies);
+			}
+			searchBased |= subgoal.searchBased;
+		}
 	}
 
 	public GoalEngine(IGoalEvaluatorFactory evaluatorFactory) {
 		this.evaluatorFactory = evaluatorFactory;
 	}
 
-	private void storeGoal(IGoal goal, GoalState state, Object result,
-			GoalEvaluator creator) {
+	/**
+	 * Sets the cache of goal results to use in the next evaluations,
+	 * <code>null</code> to not reuse results across evaluations.
+	 * 
+	 * @since 5.7.1
+	 */
+	public void setResultCache(GoalResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * @since 5.7.1
+	 */
+	public GoalResultCache getResultCache() {
+		return resultCache;
+	}
+
+	private GoalEvaluationState storeGoal(IGoal goal, GoalState state,
+			Object result, GoalEvaluator creator) {
 		GoalEvaluationState es = new GoalEvaluationState();
 		es.result = result;
 		es.state = state;
@@ -82,6 +149,56 @@ public class GoalEngine {
 		goalStates.put(goal, es);
 		this.statisticsRequestor.goalStateChanged(goal, state, null);
 		// TODO: add old state
+		return es;
+	}
+
+	private GoalEvaluationState storeEvaluatedGoal(IGoal goal,
+			GoalEvaluator evaluator, GoalState state, Object result,
+			GoalEvaluator creator) {
+		GoalEvaluationState es = storeGoal(goal, state, result, creator);
+		IContext context = goal.getContext();
+		if (context instanceof ISourceModuleContext) {
+			ISourceModule module = ((ISourceModuleContext) context)
+					.getSourceModule();
+			if (module != null) {
+				es.addDependency(module);
+			}
+		}
+		es.searchBased = evaluator instanceof SearchBasedGoalEvaluator;
+		es.cacheable = evaluator.isResultCacheable();
+		return es;
+	}
+
+	/**
+	 * Adds the cost of a call to the evaluator of the goal to its total cost
+	 * and reports it.
+	 */
+	private void spendCost(IGoal goal, GoalCost total, GoalCost call) {
+		total.add(call);
+		if (statisticsRequestor instanceof IEvaluationCostRequestor) {
+			((IEvaluationCostRequestor) statisticsRequestor).costSpent(goal,
+					call);
+		}
+		if (pruner instanceof IEvaluationCostRequestor) {
+			((IEvaluationCostRequestor) pruner).costSpent(goal, call);
+		}
+	}
+
+	private void reportCost(IGoal goal, GoalEvaluationState es) {
+		if (statisticsRequestor instanceof IEvaluationCostRequestor) {
+			((IEvaluationCostRequestor) statisticsRequestor).goalEvaluated(
+					goal, es.result, es.cost);
+		}
+		if (pruner instanceof IEvaluationCostRequestor) {
+			((IEvaluationCostRequestor) pruner).goalEvaluated(goal,
+					es.result, es.cost);
+		}
+	}
+
+	private void cacheResult(IGoal goal, GoalEvaluationState es) {
+		if (resultCache != null && es.cacheable) {
+			resultCache.put(goal, es.result, es.dependencies, es.searchBased);
+		}
 	}
 
 	private EvaluatorState getEvaluatorState(GoalEvaluator evaluator) {
@@ -93,8 +210,6 @@ public class GoalEngine {
 	}
 
 	private void notifyEvaluator(GoalEvaluator evaluator, IGoal subGoal) {
-		long t = 0;
-
 		GoalEvaluationState subGoalState = goalStates.get(subGoal);
 		Object result = subGoalState.result;
 		GoalState state = subGoalState.state;
@@ -103,16 +218,27 @@ public class GoalEngine {
 			state = GoalState.RECURSIVE;
 		}
 
-		t = System.currentTimeMillis();
-		IGoal[] newGoals = evaluator.subGoalDone(subGoal, result, state);
+		GoalEvaluationState st = goalStates.get(evaluator.getGoal());
+		Assert.isNotNull(st);
+		GoalCost call = new GoalCost();
+		GoalCost previous = call.start();
+		IGoal[] newGoals;
+		long t;
+		try {
+			newGoals = evaluator.subGoalDone(subGoal, result, state);
+		} finally {
+			t = call.stop(previous);
+		}
+		spendCost(evaluator.getGoal(), st.cost, call);
 		statisticsRequestor.evaluatorReceivedResult(evaluator, subGoal,
-				newGoals, System.currentTimeMillis() - t);
+				newGoals, toMillis(t));
 		if (newGoals == null) {
 			newGoals = IGoal.NO_GOALS;
 		}
 		for (int i = 0; i < newGoals.length; i++) {
 			workingQueue.add(new WorkingPair(newGoals[i], evaluator));
 		}
+		st.addDependencies(subGoalState);
 		EvaluatorState ev = getEvaluatorState(evaluator);
 		ev.subgoalsLeft--;
 		ev.subgoalsLeft += newGoals.length;
@@ -122,14 +248,21 @@ public class GoalEngine {
 			ev.successfulSubgoals++;
 		}
 		if (ev.subgoalsLeft == 0) {
-			t = System.currentTimeMillis();
-			Object newRes = evaluator.produceResult();
+			call = new GoalCost();
+			previous = call.start();
+			Object newRes;
+			try {
+				newRes = evaluator.produceResult();
+			} finally {
+				t = call.stop(previous);
+			}
+			spendCost(evaluator.getGoal(), st.cost, call);
 			statisticsRequestor.evaluatorProducedResult(evaluator, result,
-					System.currentTimeMillis() - t);
-			GoalEvaluationState st = goalStates.get(evaluator.getGoal());
-			Assert.isNotNull(st);
+					toMillis(t));
 			st.state = GoalState.DONE;
 			st.result = newRes;
+			reportCost(evaluator.getGoal(), st);
+			cacheResult(evaluator.getGoal(), st);
 			if (st.creator != null) {
 				notifyEvaluator(st.creator, evaluator.getGoal());
 			}
@@ -141,10 +274,9 @@ public class GoalEngine {
 		if (ev == null) {
 			return null;
 		}
-		long currentTime = System.currentTimeMillis();
-		return new EvaluatorStatistics(ev.totalSubgoals, currentTime
-				- ev.timeCreated, ev.totalSubgoals - ev.subgoalsLeft,
-				ev.successfulSubgoals);
+		return new EvaluatorStatistics(ev.totalSubgoals,
+				toMillis(System.nanoTime() - ev.timeCreated),
+				ev.totalSubgoals - ev.subgoalsLeft, ev.successfulSubgoals);
 	}
 
 	public Object evaluateGoal(IGoal rootGoal, IPruner pruner) {
@@ -188,6 +320,7 @@ public class GoalEngine {
 			};
 		}
 		this.statisticsRequestor = statisticsRequestor;
+		this.pruner = pruner;
 		reset();
 		if (pruner != null) {
 			pruner.init();
@@ -201,8 +334,27 @@ public class GoalEngine {
 				System.out.println(pair.goal);
 			}
 			GoalEvaluationState state = goalStates.get(pair.goal);
+			GoalResultCache.Entry cached = null;
+			if (state == null && resultCache != null) {
+				cached = resultCache.get(pair.goal);
+			}
 			if (state != null && pair.creator != null) {
 				notifyEvaluator(pair.creator, pair.goal);
+			} else if (cached != null) {
+				GoalEvaluationState es = new GoalEvaluationState();
+				es.result = cached.result;
+				es.state = GoalState.DONE;
+				es.creator = pair.creator;
+				if (!cached.dependencies.isEmpty()) {
+					es.dependencies = cached.dependencies;
+				}
+				es.searchBased = cached.searchBased;
+				goalStates.put(pair.goal, es);
+				statisticsRequestor.goalStateChanged(pair.goal,
+						GoalState.CACHED, null);
+				if (pair.creator != null) {
+					notifyEvaluator(pair.creator, pair.goal);
+				}
 			} else {
 				boolean prune = false;
 				if (pruner != null && pair.creator != null) {
@@ -221,8 +373,16 @@ public class GoalEngine {
 					}
 					statisticsRequestor.goalEvaluatorAssigned(pair.goal,
 							evaluator);
-					time = System.currentTimeMillis();
-					IGoal[] newGoals = evaluator.init();
+					GoalCost cost = new GoalCost();
+					GoalCost call = new GoalCost();
+					GoalCost previous = call.start();
+					IGoal[] newGoals;
+					try {
+						newGoals = evaluator.init();
+					} finally {
+						time = call.stop(previous);
+					}
+					spendCost(pair.goal, cost, call);
 					if (newGoals == null) {
 						newGoals = IGoal.NO_GOALS;
 					}
@@ -232,7 +392,7 @@ public class GoalEngine {
 						}
 					}
 					statisticsRequestor.evaluatorInitialized(evaluator,
-							newGoals, System.currentTimeMillis() - time);
+							newGoals, toMillis(time));
 					if (newGoals.length > 0) {
 						for (int i = 0; i < newGoals.length; i++) {
 							workingQueue.add(new WorkingPair(newGoals[i],
@@ -242,15 +402,28 @@ public class GoalEngine {
 								newGoals.length);
 						evaluatorState.subgoals.addAll(Arrays.asList(newGoals));
 						putEvaluatorState(evaluator, evaluatorState);
-						storeGoal(pair.goal, GoalState.WAITING, null,
+						GoalEvaluationState es = storeEvaluatedGoal(pair.goal,
+								evaluator, GoalState.WAITING, null,
 								pair.creator);
+						es.cost = cost;
 					} else {
-						time = System.currentTimeMillis();
-						Object result = evaluator.produceResult();
+						call = new GoalCost();
+						previous = call.start();
+						Object result;
+						try {
+							result = evaluator.produceResult();
+						} finally {
+							time = call.stop(previous);
+						}
+						spendCost(pair.goal, cost, call);
 						statisticsRequestor.evaluatorProducedResult(evaluator,
-								result, System.currentTimeMillis() - time);
-						storeGoal(pair.goal, GoalState.DONE, result,
+								result, toMillis(time));
+						GoalEvaluationState es = storeEvaluatedGoal(pair.goal,
+								evaluator, GoalState.DONE, result,
 								pair.creator);
+						es.cost = cost;
+						reportCost(pair.goal, es);
+						cacheResult(pair.goal, es);
 						if (pair.creator != null) {
 							notifyEvaluator(pair.creator, pair.goal);
 						}
@@ -264,6 +437,10 @@ public class GoalEngine {
 		return s.result;
 	}
 
+	static long toMillis(long nanos) {
+		return nanos / 1000000;
+	}
+
 	private void reset() {
 		workingQueue.clear();
 		goalStates.clear();
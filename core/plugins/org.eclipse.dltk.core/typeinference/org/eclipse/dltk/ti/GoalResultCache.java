@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.ti;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.ElementChangedEvent;
+import org.eclipse.dltk.core.IElementChangedListener;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.IModelElementDelta;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.ti.goals.IGoal;
+
+/**
+ * Bounded cache of goal results shared by the evaluations of the
+ * {@link GoalEngine}s it is set to, so that sub-goals already evaluated for a
+ * previous root goal are not evaluated again.
+ * <p>
+ * Only the results of the evaluators allowing it are cached, see
+ * {@link org.eclipse.dltk.ti.goals.GoalEvaluator#isResultCacheable()}. A
+ * result is dropped when a source module of the contexts of the goals it was
+ * computed from changes. Results of search based evaluations are also dropped
+ * when any source module is saved, as the search may then find more matches.
+ * The cache listens to the model changes between {@link #install()} and
+ * {@link #dispose()}.
+ * </p>
+ *
+ * @since 5.7.1
+ */
+public class GoalResultCache {
+
+	private static final int DEFAULT_MAX_SIZE = 1000;
+
+	static final class Entry {
+		final Object result;
+		final Set<ISourceModule> dependencies;
+		final boolean searchBased;
+
+		Entry(Object result, Set<ISourceModule> dependencies,
+				boolean searchBased) {
+			this.result = result;
+			this.dependencies = dependencies;
+			this.searchBased = searchBased;
+		}
+	}
+
+	private final Map<IGoal, Entry> entries;
+	private long hits;
+	private long misses;
+
+	private final IElementChangedListener listener = new IElementChangedListener() {
+		@Override
+		public void elementChanged(ElementChangedEvent event) {
+			processDelta(event.getDelta(),
+					event.getType() == ElementChangedEvent.POST_CHANGE);
+		}
+	};
+
+	public GoalResultCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param maxSize
+	 *            maximal number of cached results, the least recently used
+	 *            ones are dropped first
+	 */
+	public GoalResultCache(final int maxSize) {
+		entries = new LinkedHashMap<IGoal, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<IGoal, Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Starts listening to the model changes.
+	 */
+	public void install() {
+		DLTKCore.addElementChangedListener(listener,
+				ElementChangedEvent.POST_CHANGE
+						| ElementChangedEvent.POST_RECONCILE);
+	}
+
+	/**
+	 * Stops listening to the model changes and empties the cache.
+	 */
+	public void dispose() {
+		DLTKCore.removeElementChangedListener(listener);
+		clear();
+	}
+
+	synchronized Entry get(IGoal goal) {
+		Entry entry = entries.get(goal);
+		if (entry != null) {
+			++hits;
+		} else {
+			++misses;
+		}
+		return entry;
+	}
+
+	synchronized void put(IGoal goal, Object result,
+			Set<ISourceModule> dependencies, boolean searchBased) {
+		entries.put(goal, new Entry(result,
+				dependencies != null ? dependencies
+						: Collections.<ISourceModule> emptySet(),
+				searchBased));
+	}
+
+	/**
+	 * Drops the results computed from the given source module.
+	 */
+	public synchronized void invalidate(ISourceModule module) {
+		module = module.getPrimary();
+		for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+			if (i.next().dependencies.contains(module)) {
+				i.remove();
+			}
+		}
+	}
+
+	private synchronized void invalidateSearchBased() {
+		for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+			if (i.next().searchBased) {
+				i.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of goals whose result was found in the cache.
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of goals whose result was not found in the cache.
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	public synchronized void resetStatistics() {
+		hits = misses = 0;
+	}
+
+	private void processDelta(IModelElementDelta delta, boolean saved) {
+		IModelElement element = delta.getElement();
+		if (element.getElementType() == IModelElement.SOURCE_MODULE) {
+			invalidate((ISourceModule) element);
+			if (saved) {
+				invalidateSearchBased();
+			}
+			return;
+		}
+		if (element.getElementType() > IModelElement.SOURCE_MODULE) {
+			return;
+		}
+		if (delta.getKind() != IModelElementDelta.CHANGED
+				|| (delta.getFlags() & (IModelElementDelta.F_CLOSED
+						| IModelElementDelta.F_OPENED
+						| IModelElementDelta.F_ADDED_TO_BUILDPATH
+						| IModelElementDelta.F_REMOVED_FROM_BUILDPATH
+						| IModelElementDelta.F_BUILDPATH_CHANGED
+						| IModelElementDelta.F_RESOLVED_BUILDPATH_CHANGED
+						| IModelElementDelta.F_ARCHIVE_CONTENT_CHANGED)) != 0) {
+			// the modules of a project, folder or library changed at once
+			clear();
+			return;
+		}
+		for (IModelElementDelta child : delta.getAffectedChildren()) {
+			processDelta(child, saved);
+		}
+	}
+
+}
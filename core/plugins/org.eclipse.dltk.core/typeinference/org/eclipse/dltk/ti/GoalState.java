@@ -37,4 +37,17 @@ public interface GoalState {
 			return "RECURSIVE"; //$NON-NLS-1$
 		}
 	};
+
+	/**
+	 * Reported to the statistics requestors for goals whose result was taken
+	 * from the {@link GoalResultCache}, these goals are {@link #DONE} then.
+	 *
+	 * @since 5.7.1
+	 */
+	final static GoalState CACHED = new GoalState() {
+		@Override
+		public String toString() {
+			return "CACHED"; //$NON-NLS-1$
+		}
+	};
 }
@@ -19,6 +19,14 @@ public class FixedAnswerEvaluator extends GoalEvaluator {
 		this.result = result;
 	}
 
+	/**
+	 * @since 5.7.1
+	 */
+	@Override
+	public boolean isResultCacheable() {
+		return true;
+	}
+
 	@Override
 	public IGoal[] init() {
 		return IGoal.NO_GOALS;
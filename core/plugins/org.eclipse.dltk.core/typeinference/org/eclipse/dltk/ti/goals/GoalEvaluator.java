@@ -54,4 +54,19 @@ public abstract class GoalEvaluator {
 	 */
 	public abstract Object produceResult();
 
+	/**
+	 * Returns whether the result of this evaluator can be kept in a
+	 * {@link org.eclipse.dltk.ti.GoalResultCache} and reused by the next
+	 * evaluations, until a source module of the contexts of its goal and
+	 * subgoals changes. Evaluators reading other modules, e.g. by searching
+	 * the index, must not return <code>true</code>, unless they extend
+	 * {@link SearchBasedGoalEvaluator}, whose results are also dropped when
+	 * any source module is saved. Returns <code>false</code> by default.
+	 *
+	 * @since 5.7.1
+	 */
+	public boolean isResultCacheable() {
+		return false;
+	}
+
 }
@@ -16,6 +16,14 @@ public class NullGoalEvaluator extends GoalEvaluator {
 		super(goal);
 	}
 
+	/**
+	 * @since 5.7.1
+	 */
+	@Override
+	public boolean isResultCacheable() {
+		return true;
+	}
+
 	@Override
 	public IGoal[] init() {
 		return IGoal.NO_GOALS;
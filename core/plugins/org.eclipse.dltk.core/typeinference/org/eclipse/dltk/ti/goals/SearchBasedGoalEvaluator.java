@@ -24,6 +24,7 @@ import org.eclipse.dltk.core.search.SearchMatch;
 import org.eclipse.dltk.core.search.SearchParticipant;
 import org.eclipse.dltk.core.search.SearchPattern;
 import org.eclipse.dltk.core.search.SearchRequestor;
+import org.eclipse.dltk.ti.GoalCost;
 import org.eclipse.dltk.ti.GoalState;
 import org.eclipse.dltk.ti.IContext;
 import org.eclipse.dltk.ti.ISourceModuleContext;
@@ -56,6 +57,14 @@ public abstract class SearchBasedGoalEvaluator extends GoalEvaluator {
 		super(goal);
 	}
 
+	/**
+	 * @since 5.7.1
+	 */
+	@Override
+	public boolean isResultCacheable() {
+		return true;
+	}
+
 	@Override
 	public IGoal[] init() {
 		IGoal goal = getGoal();
@@ -73,6 +82,7 @@ public abstract class SearchBasedGoalEvaluator extends GoalEvaluator {
 		SearchPattern pattern = createSearchPattern(scope.getLanguageToolkit());
 		SearchEngine engine = new SearchEngine();
 
+		GoalCost.indexQueried();
 		try {
 			engine.search(pattern, new SearchParticipant[] { SearchEngine
 					.getDefaultSearchParticipant() }, scope, requestor, null);
@@ -6,6 +6,7 @@ package org.eclipse.dltk.ti.statistics;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.eclipse.dltk.ti.GoalCost;
 import org.eclipse.dltk.ti.GoalState;
 import org.eclipse.dltk.ti.goals.GoalEvaluator;
 import org.eclipse.dltk.ti.goals.IGoal;
@@ -18,6 +19,7 @@ public class GoalEvaluationStatistics {
 	private long timeEnd;
 	private List steps;
 	private GoalEvaluationStatistics parentStat;
+	private GoalCost cost;
 
 	public GoalEvaluationStatistics(IGoal goal) {
 		super();
@@ -72,4 +74,21 @@ public class GoalEvaluationStatistics {
 		return steps;
 	}
 
+	/**
+	 * Returns the cost of the evaluator of the goal, <code>null</code> if it
+	 * did not produce a result.
+	 *
+	 * @since 5.7.1
+	 */
+	public GoalCost getCost() {
+		return cost;
+	}
+
+	/**
+	 * @since 5.7.1
+	 */
+	public void setCost(GoalCost cost) {
+		this.cost = cost;
+	}
+
 }
\ No newline at end of file
@@ -14,6 +14,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
+import org.eclipse.dltk.ti.GoalCost;
 import org.eclipse.dltk.ti.GoalState;
 import org.eclipse.dltk.ti.goals.GoalEvaluator;
 import org.eclipse.dltk.ti.goals.IGoal;
@@ -22,7 +23,8 @@ import org.eclipse.dltk.ti.goals.IGoal;
  * Records all evaluation tree including evaluation times
  *
  */
-public class GoalEvalutationRecorder implements IEvaluationStatisticsRequestor {
+public class GoalEvalutationRecorder implements IEvaluationStatisticsRequestor,
+		IEvaluationCostRequestor {
 
 	private IGoal rootRoal;
 	private Map goalStats = new HashMap();
@@ -133,6 +135,50 @@ public class GoalEvalutationRecorder implements IEvaluationStatisticsRequestor {
 		}
 	}
 
+	/**
+	 * @since 5.7.1
+	 */
+	@Override
+	public void costSpent(IGoal goal, GoalCost cost) {
+	}
+
+	/**
+	 * @since 5.7.1
+	 */
+	@Override
+	public void goalEvaluated(IGoal goal, Object result, GoalCost cost) {
+		GoalEvaluationStatistics stat = (GoalEvaluationStatistics) this.goalStats
+				.get(goal);
+		if (stat != null) {
+			stat.setCost(cost);
+		} else {
+			System.err.println("Unknown goal: " + goal); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Returns the total cost of the recorded goals by goal class.
+	 *
+	 * @since 5.7.1
+	 */
+	public Map<Class<?>, GoalCost> getCostByGoalClass() {
+		Map<Class<?>, GoalCost> result = new HashMap<Class<?>, GoalCost>();
+		for (Iterator iterator = goalStats.values().iterator(); iterator
+				.hasNext();) {
+			GoalEvaluationStatistics stat = (GoalEvaluationStatistics) iterator
+					.next();
+			if (stat.getCost() != null) {
+				GoalCost total = result.get(stat.getGoal().getClass());
+				if (total == null) {
+					total = new GoalCost();
+					result.put(stat.getGoal().getClass(), total);
+				}
+				total.add(stat.getCost());
+			}
+		}
+		return result;
+	}
+
 	public IGoal getRootRoal() {
 		return rootRoal;
 	}
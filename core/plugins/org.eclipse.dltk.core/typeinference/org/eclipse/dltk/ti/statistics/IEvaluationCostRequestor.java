@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.ti.statistics;
+
+import org.eclipse.dltk.ti.GoalCost;
+import org.eclipse.dltk.ti.goals.IGoal;
+
+/**
+ * Optional interface of the {@link IEvaluationStatisticsRequestor}s and of the
+ * {@link org.eclipse.dltk.ti.IPruner}s receiving the cost of every evaluated
+ * goal.
+ *
+ * @since 5.7.1
+ */
+public interface IEvaluationCostRequestor {
+
+	/**
+	 * Called after each call to the evaluator of the goal, so the work of the
+	 * goals waiting for their subgoals is known before they are evaluated.
+	 *
+	 * @param goal
+	 *            goal being evaluated
+	 * @param cost
+	 *            cost of the call
+	 */
+	void costSpent(IGoal goal, GoalCost cost);
+
+	/**
+	 * Called when the evaluator of the goal produced its result.
+	 *
+	 * @param goal
+	 *            evaluated goal
+	 * @param result
+	 *            result of the goal
+	 * @param cost
+	 *            cost of the evaluator of the goal, without its subgoals
+	 */
+	void goalEvaluated(IGoal goal, Object result, GoalCost cost);
+
+}
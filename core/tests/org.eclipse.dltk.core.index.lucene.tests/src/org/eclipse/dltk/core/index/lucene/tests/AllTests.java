@@ -0,0 +1,19 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.index.lucene.tests;
+
+import org.eclipse.dltk.internal.core.index.lucene.CommitPolicyTests;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({ LuceneSearchTests.class,
+		LuceneIndexLayoutTests.class, CommitPolicyTests.class })
+public class AllTests {
+}
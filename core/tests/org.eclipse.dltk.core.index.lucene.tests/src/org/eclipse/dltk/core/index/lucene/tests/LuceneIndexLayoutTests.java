@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.index.lucene.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.apache.lucene.analysis.core.SimpleAnalyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.SimpleFSLockFactory;
+import org.eclipse.dltk.core.index2.IIndexingRequestor.DeclarationInfo;
+import org.eclipse.dltk.core.index2.IIndexingRequestor.ReferenceInfo;
+import org.eclipse.dltk.internal.core.index.lucene.DocumentFactory;
+import org.eclipse.dltk.internal.core.index.lucene.IndexDirectory;
+import org.eclipse.dltk.internal.core.index.lucene.IndexFields;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares the split layout of the Lucene indexes (an index per element type)
+ * with the consolidated one (the element type is a field) on synthetic
+ * containers.
+ */
+public class LuceneIndexLayoutTests {
+
+	private static final int ELEMENT_TYPES = 10;
+	private static final int SCRIPTS = 100;
+	private static final int ELEMENTS_PER_SCRIPT = 20;
+
+	private File directory;
+
+	/**
+	 * Writers and near-real-time searchers of the indexes of the containers,
+	 * like IndexContainer keeps them open.
+	 */
+	private final class Layout {
+
+		final boolean fConsolidated;
+		// [container][declarations/references][element type]
+		final IndexWriter[][][] fWriters;
+		final SearcherManager[][][] fSearchers;
+
+		Layout(String name, int containers, boolean consolidated)
+				throws IOException {
+			fConsolidated = consolidated;
+			int indexes = consolidated ? 1 : ELEMENT_TYPES;
+			fWriters = new IndexWriter[containers][2][indexes];
+			fSearchers = new SearcherManager[containers][2][indexes];
+			for (int c = 0; c < containers; c++) {
+				for (int t = 0; t < 2; t++) {
+					for (int i = 0; i < indexes; i++) {
+						Path path = directory.toPath().resolve(name)
+								.resolve(c + "/" + t + "/" + i);
+						Files.createDirectories(path);
+						IndexWriterConfig config = new IndexWriterConfig(
+								new SimpleAnalyzer());
+						config.setCommitOnClose(false);
+						fWriters[c][t][i] = new IndexWriter(
+								new IndexDirectory(path,
+										SimpleFSLockFactory.INSTANCE),
+								config);
+					}
+				}
+			}
+		}
+
+		IndexWriter writer(int container, int dataType, int elementType) {
+			return fWriters[container][dataType][fConsolidated ? 0
+					: elementType - 1];
+		}
+
+		SearcherManager searcher(int container, int dataType, int elementType)
+				throws IOException {
+			int i = fConsolidated ? 0 : elementType - 1;
+			if (fSearchers[container][dataType][i] == null) {
+				fSearchers[container][dataType][i] = new SearcherManager(
+						fWriters[container][dataType][i], true,
+						new SearcherFactory());
+			}
+			return fSearchers[container][dataType][i];
+		}
+
+		void index(int container) throws IOException {
+			Random random = new Random(container);
+			for (int s = 0; s < SCRIPTS; s++) {
+				String script = "lib/module" + s + ".rb";
+				for (int j = 0; j < ELEMENTS_PER_SCRIPT; j++) {
+					int elementType = 1 + random.nextInt(ELEMENT_TYPES);
+					String name = "Name" + random.nextInt(1000);
+					writer(container, 0, elementType)
+							.addDocument(DocumentFactory.createForDeclaration(
+									script,
+									new DeclarationInfo(elementType, 0, j * 10,
+											10, j * 10, 4, name, null, null,
+											null, null)));
+					writer(container, 1, elementType)
+							.addDocument(DocumentFactory.createForReference(
+									script,
+									new ReferenceInfo(elementType, j * 10 + 5,
+											4, name, null, null, null)));
+				}
+			}
+			for (IndexWriter[] writers : fWriters[container]) {
+				for (IndexWriter writer : writers) {
+					writer.commit();
+				}
+			}
+		}
+
+		/**
+		 * Opens the searchers of all the element types, as searching all of
+		 * them would do.
+		 */
+		void open(int container) throws IOException {
+			for (int t = 0; t < 2; t++) {
+				for (int e = 1; e <= ELEMENT_TYPES; e++) {
+					searcher(container, t, e).maybeRefresh();
+				}
+			}
+		}
+
+		int count(int container, int dataType, int elementType, String prefix)
+				throws IOException {
+			BooleanQuery query = new BooleanQuery();
+			if (fConsolidated) {
+				query.add(new TermQuery(new Term(IndexFields.F_ELEMENT_TYPE,
+						String.valueOf(elementType))), Occur.FILTER);
+			}
+			query.add(new PrefixQuery(
+					new Term(IndexFields.F_ELEMENT_NAME_LC, prefix)),
+					Occur.FILTER);
+			SearcherManager manager = searcher(container, dataType,
+					elementType);
+			IndexSearcher searcher = manager.acquire();
+			try {
+				return searcher.count(query);
+			} finally {
+				manager.release(searcher);
+			}
+		}
+
+		void close() throws IOException {
+			for (SearcherManager[][] searchers : fSearchers) {
+				for (SearcherManager[] typeSearchers : searchers) {
+					for (SearcherManager searcher : typeSearchers) {
+						if (searcher != null) {
+							searcher.close();
+						}
+					}
+				}
+			}
+			for (IndexWriter[][] writers : fWriters) {
+				for (IndexWriter[] typeWriters : writers) {
+					for (IndexWriter writer : typeWriters) {
+						writer.close();
+					}
+				}
+			}
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("layout").toFile();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		delete(directory);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	@Test
+	public void testSameMatches() throws IOException {
+		Layout split = new Layout("split", 1, false);
+		Layout consolidated = new Layout("consolidated", 1, true);
+		try {
+			split.index(0);
+			consolidated.index(0);
+			for (int t = 0; t < 2; t++) {
+				for (int e = 1; e <= ELEMENT_TYPES; e++) {
+					for (String prefix : new String[] { "name1", "name42",
+							"name" }) {
+						assertEquals(split.count(0, t, e, prefix),
+								consolidated.count(0, t, e, prefix));
+					}
+				}
+			}
+		} finally {
+			split.close();
+			consolidated.close();
+		}
+	}
+
+	/**
+	 * Both layouts answer the same random prefix queries when the searchers
+	 * of several containers are open together.
+	 */
+	@Test
+	public void testSameMatchesInContainers() throws IOException {
+		final int containers = 3;
+		Layout split = new Layout("split", containers, false);
+		Layout consolidated = new Layout("consolidated", containers, true);
+		try {
+			for (int c = 0; c < containers; c++) {
+				split.index(c);
+				split.open(c);
+				consolidated.index(c);
+				consolidated.open(c);
+			}
+			Random random = new Random(1);
+			for (int q = 0; q < 100; q++) {
+				int container = random.nextInt(containers);
+				int elementType = 1 + random.nextInt(ELEMENT_TYPES);
+				String prefix = "name" + random.nextInt(100);
+				assertEquals(split.count(container, q % 2, elementType, prefix),
+						consolidated.count(container, q % 2, elementType,
+								prefix));
+			}
+		} finally {
+			split.close();
+			consolidated.close();
+		}
+	}
+}
@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.index.lucene.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.lucene.analysis.core.SimpleAnalyzer;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.index2.IIndexingRequestor.DeclarationInfo;
+import org.eclipse.dltk.core.index2.search.ISearchEngine.MatchRule;
+import org.eclipse.dltk.internal.core.index.lucene.DocumentFactory;
+import org.eclipse.dltk.internal.core.index.lucene.IndexDirectory;
+import org.eclipse.dltk.internal.core.index.lucene.IndexFields;
+import org.eclipse.dltk.internal.core.index.lucene.RankedMatches;
+import org.eclipse.dltk.internal.core.index.lucene.ResultsCollector;
+import org.eclipse.dltk.internal.core.index.lucene.SearchMatch;
+import org.eclipse.dltk.internal.core.index.lucene.SearchMatchHandler;
+import org.eclipse.dltk.internal.core.index.lucene.TermSetQuery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the queries and the collector of the Lucene search engine on small
+ * synthetic indexes and compares them with per-path boolean clauses and
+ * collecting search matches.
+ */
+public class LuceneSearchTests {
+
+	private static final int ELEMENTS_PER_SCRIPT = 100;
+
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("lucene").toFile();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private static String scriptName(int script) {
+		return String.format("lib/package%03d/module%05d.rb", script / 100,
+				script);
+	}
+
+	private static String elementName(int script, int element) {
+		return "Type" + script + "_" + element;
+	}
+
+	/**
+	 * Writes an index of declarations, the elements of each script are added
+	 * together like the indexer does.
+	 */
+	private Directory createIndex(int scripts) throws IOException {
+		Directory indexDir = new IndexDirectory(directory.toPath());
+		IndexWriterConfig config = new IndexWriterConfig(new SimpleAnalyzer());
+		try (IndexWriter writer = new IndexWriter(indexDir, config)) {
+			for (int i = 0; i < scripts; i++) {
+				String script = scriptName(i);
+				for (int j = 0; j < ELEMENTS_PER_SCRIPT; j++) {
+					writer.addDocument(DocumentFactory.createForDeclaration(
+							script,
+							new DeclarationInfo(IModelElement.TYPE, j, j * 10,
+									10, j * 10 + 6, 4, elementName(i, j),
+									"meta" + j, null, null, null)));
+				}
+			}
+			writer.forceMerge(4);
+			writer.commit();
+		}
+		return indexDir;
+	}
+
+	private static final class Matches extends SearchMatchHandler {
+
+		final List<String> fMatches = new ArrayList<>();
+		final List<String> fScripts;
+		String fScript;
+
+		Matches(List<String> scripts) {
+			super(null, null);
+			this.fScripts = scripts;
+		}
+
+		@Override
+		public boolean accept(String container, String filePath) {
+			fScript = filePath;
+			return fScripts == null || fScripts.contains(filePath);
+		}
+
+		@Override
+		public void handle(int elementType, int flags, int offset, int length,
+				int nameOffset, int nameLength, String elementName,
+				String metadata, String doc, String qualifier, String parent,
+				boolean isReference) {
+			fMatches.add(fScript + ":" + elementName + ":" + offset + ","
+					+ length + "," + nameOffset + "," + nameLength + ","
+					+ flags + "," + metadata);
+		}
+
+		List<String> sorted() {
+			Collections.sort(fMatches);
+			return fMatches;
+		}
+	}
+
+	/**
+	 * The collector used before, which collects a search match per hit and
+	 * looks up the doc values by field name.
+	 */
+	private static final class MapCollector implements Collector {
+
+		private static final String[] NUMERIC_FIELDS = new String[] {
+				IndexFields.NDV_OFFSET, IndexFields.NDV_LENGTH,
+				IndexFields.NDV_FLAGS, IndexFields.NDV_NAME_OFFSET,
+				IndexFields.NDV_NAME_LENGTH };
+		private static final String[] BINARY_FIELDS = new String[] {
+				IndexFields.BDV_PATH, IndexFields.BDV_ELEMENT_NAME,
+				IndexFields.BDV_QUALIFIER, IndexFields.BDV_PARENT,
+				IndexFields.BDV_METADATA, IndexFields.BDV_DOC };
+		private Map<String, NumericDocValues> fDocNumericValues;
+		private Map<String, BinaryDocValues> fDocBinaryValues;
+		final List<SearchMatch> fResult = new ArrayList<>();
+
+		@Override
+		public boolean needsScores() {
+			return true;
+		}
+
+		@Override
+		public LeafCollector getLeafCollector(LeafReaderContext context)
+				throws IOException {
+			final LeafReader reader = context.reader();
+			fDocNumericValues = new HashMap<>();
+			for (String field : NUMERIC_FIELDS) {
+				NumericDocValues docValues = reader.getNumericDocValues(field);
+				if (docValues != null) {
+					fDocNumericValues.put(field, docValues);
+				}
+			}
+			fDocBinaryValues = new HashMap<>();
+			for (String field : BINARY_FIELDS) {
+				BinaryDocValues docValues = reader.getBinaryDocValues(field);
+				if (docValues != null) {
+					fDocBinaryValues.put(field, docValues);
+				}
+			}
+			return new LeafCollector() {
+				@Override
+				public void setScorer(Scorer scorer) {
+				}
+
+				@Override
+				public void collect(int docId) {
+					fResult.add(new SearchMatch("", IModelElement.TYPE,
+							getNumericValue(IndexFields.NDV_OFFSET, docId),
+							getNumericValue(IndexFields.NDV_LENGTH, docId),
+							getNumericValue(IndexFields.NDV_NAME_OFFSET, docId),
+							getNumericValue(IndexFields.NDV_NAME_LENGTH, docId),
+							getNumericValue(IndexFields.NDV_FLAGS, docId),
+							getStringValue(IndexFields.BDV_ELEMENT_NAME, docId),
+							getStringValue(IndexFields.BDV_PATH, docId),
+							getStringValue(IndexFields.BDV_PARENT, docId),
+							getStringValue(IndexFields.BDV_QUALIFIER, docId),
+							getStringValue(IndexFields.BDV_DOC, docId),
+							getStringValue(IndexFields.BDV_METADATA, docId)));
+				}
+			};
+		}
+
+		private int getNumericValue(String field, int docId) {
+			NumericDocValues docValues = fDocNumericValues.get(field);
+			return docValues != null ? (int) docValues.get(docId) : 0;
+		}
+
+		private String getStringValue(String field, int docId) {
+			BinaryDocValues docValues = fDocBinaryValues.get(field);
+			if (docValues != null) {
+				BytesRef bytesRef = docValues.get(docId);
+				if (bytesRef.length > 0)
+					return bytesRef.utf8ToString();
+			}
+			return null;
+		}
+	}
+
+	private static Query pathClauses(List<String> scripts) {
+		BooleanQuery query = new BooleanQuery();
+		for (String script : scripts) {
+			query.add(new TermQuery(new Term(IndexFields.F_PATH, script)),
+					Occur.SHOULD);
+		}
+		return query;
+	}
+
+	private static Query withName(Query paths, String prefix) {
+		BooleanQuery query = new BooleanQuery();
+		query.add(paths, Occur.FILTER);
+		query.add(new PrefixQuery(
+				new Term(IndexFields.F_ELEMENT_NAME_LC, prefix.toLowerCase())),
+				Occur.FILTER);
+		return query;
+	}
+
+	@Test
+	public void testTermSetQuery() throws IOException {
+		try (DirectoryReader reader = DirectoryReader.open(createIndex(20))) {
+			IndexSearcher searcher = new IndexSearcher(reader);
+			List<String> scripts = Arrays.asList(scriptName(19), "missing.rb",
+					scriptName(3), scriptName(0), "lib/package000/module00003");
+			Matches matches = new Matches(null);
+			searcher.search(new TermSetQuery(IndexFields.F_PATH, scripts),
+					new ResultsCollector("", IModelElement.TYPE, false,
+							matches));
+			assertEquals(3 * ELEMENTS_PER_SCRIPT, matches.fMatches.size());
+			assertEquals(0, searcher.count(new TermSetQuery(
+					IndexFields.F_PATH, Collections.<String> emptyList())));
+			assertEquals(0, searcher.count(new TermSetQuery(
+					IndexFields.F_PATH, Arrays.asList("a.rb", "z.rb"))));
+			assertEquals(new TermSetQuery(IndexFields.F_PATH, scripts),
+					new TermSetQuery(IndexFields.F_PATH,
+							Arrays.asList(scriptName(0), scriptName(3),
+									"lib/package000/module00003", "missing.rb",
+									scriptName(19))));
+		}
+	}
+
+	@Test
+	public void testResultsCollector() throws IOException {
+		try (DirectoryReader reader = DirectoryReader.open(createIndex(20))) {
+			IndexSearcher searcher = new IndexSearcher(reader);
+			Query query = withName(
+					new TermSetQuery(IndexFields.F_PATH,
+							Arrays.asList(scriptName(5), scriptName(7))),
+					"type5_1");
+			Matches matches = new Matches(Arrays.asList(scriptName(5)));
+			searcher.search(query, new ResultsCollector("",
+					IModelElement.TYPE, false, matches));
+			List<String> expected = new ArrayList<>();
+			for (int j = 0; j < ELEMENTS_PER_SCRIPT; j++) {
+				if (elementName(5, j).startsWith("Type5_1")) {
+					expected.add(scriptName(5) + ":" + elementName(5, j) + ":"
+							+ j * 10 + ",10," + (j * 10 + 6) + ",4," + j
+							+ ",meta" + j);
+				}
+			}
+			Collections.sort(expected);
+			assertEquals(expected, matches.sorted());
+		}
+	}
+
+	private static List<String> searchRanked(IndexSearcher searcher,
+			Query query, String pattern, MatchRule matchRule, int limit)
+			throws IOException {
+		Matches matches = new Matches(null);
+		RankedMatches rankedMatches = new RankedMatches(pattern, matchRule);
+		searcher.search(query, new ResultsCollector("", IModelElement.TYPE,
+				false, matches, rankedMatches));
+		rankedMatches.flush(matches, false, limit);
+		return matches.fMatches;
+	}
+
+	/**
+	 * The n-grams query finds all the names matching a substring or fuzzy
+	 * pattern, passed in the same order as when all the names are matched.
+	 */
+	@Test
+	public void testRankedSearch() throws IOException {
+		try (DirectoryReader reader = DirectoryReader.open(createIndex(20))) {
+			IndexSearcher searcher = new IndexSearcher(reader);
+			Object[][] searches = { { "type5_1", MatchRule.SUBSTRING },
+					{ "E1", MatchRule.SUBSTRING }, { "9_9", MatchRule.SUBSTRING },
+					{ "t1_5", MatchRule.FUZZY }, { "y19", MatchRule.FUZZY } };
+			for (Object[] search : searches) {
+				String pattern = (String) search[0];
+				MatchRule matchRule = (MatchRule) search[1];
+				Query candidates = RankedMatches.createCandidatesQuery(
+						pattern.toLowerCase(), matchRule);
+				List<String> expected = searchRanked(searcher,
+						new MatchAllDocsQuery(), pattern, matchRule, 0);
+				assertTrue(searcher.count(candidates) < reader.numDocs());
+				assertEquals(expected, searchRanked(searcher, candidates,
+						pattern, matchRule, 0));
+				assertEquals(expected.subList(0, 5), searchRanked(searcher,
+						candidates, pattern, matchRule, 5));
+			}
+			List<String> matches = searchRanked(searcher,
+					RankedMatches.createCandidatesQuery("type5_1",
+							MatchRule.SUBSTRING),
+					"type5_1", MatchRule.SUBSTRING, 0);
+			assertEquals(11, matches.size());
+			assertTrue(matches.get(0).startsWith(scriptName(5) + ":Type5_1:"));
+		}
+	}
+
+	/**
+	 * The term set and the streamed matches find the same declarations as the
+	 * per-path clauses and the collected matches used before.
+	 */
+	@Test
+	public void testSameResultsAsPathClauses() throws IOException {
+		final int scripts = 200;
+		Directory indexDir = createIndex(scripts);
+		try (DirectoryReader reader = DirectoryReader.open(indexDir)) {
+			IndexSearcher searcher = new IndexSearcher(reader);
+			Random random = new Random(1);
+			List<String> scope = new ArrayList<>();
+			for (int i = 0; i < 50; i++) {
+				scope.add(scriptName(random.nextInt(scripts)));
+			}
+			Query paths = new TermSetQuery(IndexFields.F_PATH, scope);
+			int hits = 0;
+			for (int i = 0; i < 20; i++) {
+				String prefix = "Type" + random.nextInt(scripts);
+				MapCollector collector = new MapCollector();
+				searcher.search(withName(pathClauses(scope), prefix),
+						collector);
+				List<String> expected = new ArrayList<>();
+				for (SearchMatch match : collector.fResult) {
+					expected.add(match.path + ":" + match.elementName);
+				}
+				Collections.sort(expected);
+				Matches matches = new Matches(null);
+				searcher.search(withName(paths, prefix), new ResultsCollector(
+						"", IModelElement.TYPE, false, matches));
+				List<String> actual = new ArrayList<>();
+				for (String match : matches.fMatches) {
+					actual.add(match.substring(0,
+							match.indexOf(':', match.indexOf(':') + 1)));
+				}
+				Collections.sort(actual);
+				assertEquals(expected, actual);
+				hits += actual.size();
+			}
+			assertTrue(hits > 0);
+		}
+		indexDir.close();
+	}
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.lucene;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the thresholds of the {@link CommitPolicy}.
+ */
+public class CommitPolicyTests {
+
+	@Test
+	public void testRefreshDocuments() {
+		assertFalse(CommitPolicy.shouldRefresh(
+				CommitPolicy.REFRESH_DOCUMENTS - 1, 0, 0));
+		assertTrue(CommitPolicy.shouldRefresh(CommitPolicy.REFRESH_DOCUMENTS,
+				0, 0));
+	}
+
+	@Test
+	public void testRefreshBytes() {
+		assertFalse(
+				CommitPolicy.shouldRefresh(1, CommitPolicy.REFRESH_BYTES - 1, 0));
+		assertTrue(CommitPolicy.shouldRefresh(1, CommitPolicy.REFRESH_BYTES, 0));
+	}
+
+	@Test
+	public void testRefreshStaleness() {
+		assertFalse(
+				CommitPolicy.shouldRefresh(1, 0, CommitPolicy.MAX_STALENESS - 1));
+		assertTrue(CommitPolicy.shouldRefresh(1, 0, CommitPolicy.MAX_STALENESS));
+	}
+
+	@Test
+	public void testMustBeCurrent() {
+		assertFalse(CommitPolicy.mustBeCurrent(0));
+		assertFalse(CommitPolicy.mustBeCurrent(CommitPolicy.MAX_STALENESS - 1));
+		assertTrue(CommitPolicy.mustBeCurrent(CommitPolicy.MAX_STALENESS));
+	}
+
+	@Test
+	public void testCommitIdle() {
+		final long sinceCommit = CommitPolicy.MIN_COMMIT_INTERVAL;
+		assertFalse(CommitPolicy.shouldCommit(1, sinceCommit, -1));
+		assertFalse(CommitPolicy.shouldCommit(1, sinceCommit,
+				CommitPolicy.IDLE_DELAY - 1));
+		assertTrue(CommitPolicy.shouldCommit(1, sinceCommit,
+				CommitPolicy.IDLE_DELAY));
+	}
+
+	@Test
+	public void testCommitDocuments() {
+		final long sinceCommit = CommitPolicy.MIN_COMMIT_INTERVAL;
+		assertFalse(CommitPolicy.shouldCommit(
+				CommitPolicy.COMMIT_DOCUMENTS - 1, sinceCommit, -1));
+		assertTrue(CommitPolicy.shouldCommit(CommitPolicy.COMMIT_DOCUMENTS,
+				sinceCommit, -1));
+	}
+
+	@Test
+	public void testCommitInterval() {
+		assertFalse(CommitPolicy.shouldCommit(1,
+				CommitPolicy.MAX_COMMIT_INTERVAL - 1, -1));
+		assertTrue(CommitPolicy.shouldCommit(1,
+				CommitPolicy.MAX_COMMIT_INTERVAL, -1));
+	}
+
+	@Test
+	public void testMinCommitInterval() {
+		final long sinceCommit = CommitPolicy.MIN_COMMIT_INTERVAL - 1;
+		assertFalse(CommitPolicy.shouldCommit(CommitPolicy.COMMIT_DOCUMENTS,
+				sinceCommit, CommitPolicy.IDLE_DELAY));
+	}
+
+}
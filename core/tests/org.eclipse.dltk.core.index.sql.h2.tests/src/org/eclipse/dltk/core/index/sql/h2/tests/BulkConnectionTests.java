@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.index.sql.h2.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.dltk.core.index.sql.DbFactory;
+import org.eclipse.dltk.core.index.sql.IContainerDao;
+import org.eclipse.dltk.core.index.sql.IElementDao;
+import org.eclipse.dltk.core.index.sql.IElementHandler;
+import org.eclipse.dltk.core.index.sql.IFileDao;
+import org.eclipse.dltk.core.index2.search.ISearchEngine.MatchRule;
+import org.eclipse.dltk.internal.core.index.sql.BulkConnection;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the transactions of the {@link BulkConnection}.
+ */
+public class BulkConnectionTests {
+
+	/**
+	 * Records the calls made to the connection, the element DAO and the
+	 * database factory.
+	 */
+	private final List<String> calls = new ArrayList<String>();
+	private boolean autoCommit = true;
+
+	private Connection connection;
+	private BulkConnection bulk;
+
+	@Before
+	public void setUp() {
+		connection = (Connection) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[] { Connection.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("setAutoCommit")) {
+							autoCommit = ((Boolean) args[0]).booleanValue();
+						} else if (method.getName().equals("commit")) {
+							calls.add("commit");
+						}
+						return null;
+					}
+				});
+		bulk = new BulkConnection(new TestDbFactory(), connection,
+				new TestElementDao());
+	}
+
+	@Test
+	public void testBegin() throws SQLException {
+		bulk.begin(5000);
+		assertFalse(autoCommit);
+		assertSame(connection, bulk.getConnection());
+		assertEquals(list("beginBulkLoad 5000", "commit"), calls);
+	}
+
+	@Test
+	public void testCommitDocuments() throws SQLException {
+		for (int i = 1; i < BulkConnection.COMMIT_DOCUMENTS; ++i) {
+			bulk.documentIndexed();
+		}
+		assertEquals(list(), calls);
+		bulk.documentIndexed();
+		assertEquals(list("commitInsertions", "commit"), calls);
+		for (int i = 0; i < BulkConnection.COMMIT_DOCUMENTS * 5 / 4; ++i) {
+			bulk.documentIndexed();
+		}
+		assertEquals(list("commitInsertions", "commit", "commitInsertions",
+				"commit"), calls);
+	}
+
+	@Test
+	public void testEnd() throws SQLException {
+		bulk.begin(10);
+		calls.clear();
+		bulk.documentIndexed();
+		bulk.end();
+		assertEquals(list("commitInsertions", "commit", "endBulkLoad",
+				"commit"), calls);
+	}
+
+	private static List<String> list(String... values) {
+		final List<String> result = new ArrayList<String>();
+		for (String value : values) {
+			result.add(value);
+		}
+		return result;
+	}
+
+	private class TestDbFactory extends DbFactory {
+		@Override
+		public Connection createConnection() {
+			return connection;
+		}
+
+		@Override
+		public void dispose() {
+		}
+
+		@Override
+		public IElementDao getElementDao() {
+			return null;
+		}
+
+		@Override
+		public IFileDao getFileDao() {
+			return null;
+		}
+
+		@Override
+		public IContainerDao getContainerDao() {
+			return null;
+		}
+
+		@Override
+		public void beginBulkLoad(Connection connection, int documents) {
+			calls.add("beginBulkLoad " + documents);
+		}
+
+		@Override
+		public void endBulkLoad(Connection connection) {
+			calls.add("endBulkLoad");
+		}
+	}
+
+	private class TestElementDao implements IElementDao {
+		@Override
+		public void insert(Connection connection, int type, int flags,
+				int offset, int length, int nameOffset, int nameLength,
+				String name, String metadata, String doc, String qualifier,
+				String parent, int fileId, String natureId,
+				boolean isReference) {
+		}
+
+		@Override
+		public void commitInsertions() {
+			calls.add("commitInsertions");
+		}
+
+		@Override
+		public void search(Connection connection, String pattern,
+				MatchRule matchRule, int elementType, int trueFlags,
+				int falseFlags, String qualifier, String parent,
+				int[] filesId, int[] containersId, String natureId,
+				int limit, boolean isReference, IElementHandler handler,
+				IProgressMonitor monitor) {
+		}
+	}
+
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.sql.h2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.eclipse.dltk.core.index.sql.File;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the deferral of the elements indexes during a bulk load.
+ */
+public class H2BulkLoadTests {
+
+	private static final String NATURE_ID = "org.eclipse.dltk.core.index.sql.h2.tests";
+
+	private Connection connection;
+	private int fileId;
+
+	@Before
+	public void setUp() throws Exception {
+		Class.forName("org.h2.Driver");
+		connection = DriverManager.getConnection(
+				"jdbc:h2:mem:bulkLoadTests;DB_CLOSE_DELAY=-1", "sa", "");
+		Statement statement = connection.createStatement();
+		try {
+			statement.executeUpdate(Schema.readSqlFile("resources/basic.sql"));
+		} finally {
+			statement.close();
+		}
+		int containerId = new H2ContainerDao().insert(connection, "/container")
+				.getId();
+		File file = new H2FileDao().insert(connection,
+				"file" + System.nanoTime(), 0, containerId);
+		fileId = file.getId();
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		// do not leave the indexes deferred for the other tests
+		new Schema().createDeferredIndexes(connection);
+		connection.close();
+	}
+
+	@Test
+	public void testShouldDeferIndexes() {
+		assertFalse(H2DbFactory.shouldDeferIndexes(1999, 0));
+		assertTrue(H2DbFactory.shouldDeferIndexes(2000, 0));
+		assertTrue(H2DbFactory.shouldDeferIndexes(5000, 5000));
+		assertFalse(H2DbFactory.shouldDeferIndexes(5000, 5001));
+	}
+
+	@Test
+	public void testDeferredIndexes() throws SQLException {
+		final int type = 1;
+		final H2ElementDao dao = new H2ElementDao();
+		insert(dao, type, "before");
+		final String tableName = new Schema().getTableName(type, NATURE_ID,
+				false);
+		assertTrue(countIndexes(tableName) > 0);
+
+		new Schema().beginDeferredIndexes();
+		for (int i = 0; i < 100; ++i) {
+			insert(dao, type, "element" + i);
+		}
+		dao.commitInsertions();
+		assertEquals(0, countIndexes(tableName));
+		assertEquals(101, countRows(tableName));
+
+		new Schema().createDeferredIndexes(connection);
+		assertTrue(countIndexes(tableName) > 0);
+	}
+
+	@Test
+	public void testTablePreparedPerDeferral() throws SQLException {
+		final int type = 2;
+		final H2ElementDao dao = new H2ElementDao();
+		final String tableName = new Schema().getTableName(type, NATURE_ID,
+				false);
+		insert(dao, type, "first");
+		dao.commitInsertions();
+		final int indexes = countIndexes(tableName);
+
+		// the table prepared before the bulk load is prepared again
+		final int generation = new Schema().getDeferralGeneration();
+		new Schema().beginDeferredIndexes();
+		assertTrue(generation != new Schema().getDeferralGeneration());
+		insert(dao, type, "second");
+		dao.commitInsertions();
+		assertEquals(0, countIndexes(tableName));
+
+		// and once again after it
+		new Schema().createDeferredIndexes(connection);
+		new Schema().beginDeferredIndexes();
+		insert(dao, type, "third");
+		dao.commitInsertions();
+		assertEquals(0, countIndexes(tableName));
+
+		new Schema().createDeferredIndexes(connection);
+		assertEquals(indexes, countIndexes(tableName));
+		assertEquals(3, countRows(tableName));
+	}
+
+	private void insert(H2ElementDao dao, int type, String name)
+			throws SQLException {
+		dao.insert(connection, type, 0, 0, 0, 0, name.length(), name, null,
+				null, null, null, fileId, NATURE_ID, false);
+	}
+
+	private int countIndexes(String tableName) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(
+				"SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME=? AND INDEX_NAME LIKE 'IDX_%'");
+		try {
+			statement.setString(1, tableName);
+			return count(statement);
+		} finally {
+			statement.close();
+		}
+	}
+
+	private int countRows(String tableName) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(
+				"SELECT COUNT(*) FROM " + tableName + " WHERE FILE_ID=?");
+		try {
+			statement.setInt(1, fileId);
+			return count(statement);
+		} finally {
+			statement.close();
+		}
+	}
+
+	private static int count(PreparedStatement statement)
+			throws SQLException {
+		ResultSet result = statement.executeQuery();
+		try {
+			result.next();
+			return result.getInt(1);
+		} finally {
+			result.close();
+		}
+	}
+
+}
@@ -8,11 +8,21 @@
  *******************************************************************************/
 package org.eclipse.dltk.core.tests;
 
+import org.eclipse.dltk.core.tests.builder.BuildExecutorTests;
 import org.eclipse.dltk.core.tests.builder.BuildParticipantManagerTests;
+import org.eclipse.dltk.core.tests.builder.BuildProblemFlusherTests;
+import org.eclipse.dltk.core.tests.builder.BuildProfileTests;
+import org.eclipse.dltk.core.tests.builder.DependencyGraphTests;
+import org.eclipse.dltk.core.tests.builder.PathDictionaryTests;
+import org.eclipse.dltk.core.tests.builder.StateTests;
 import org.eclipse.dltk.core.tests.buildpath.BuildpathTests;
 import org.eclipse.dltk.core.tests.buildpath.SetContainerEventsTest;
+import org.eclipse.dltk.core.tests.cache.BinaryASTCacheTests;
+import org.eclipse.dltk.core.tests.cache.BinaryASTFormatTests;
 import org.eclipse.dltk.core.tests.cache.CacheTests;
+import org.eclipse.dltk.core.tests.cache.ConcurrentElementCacheTests;
 import org.eclipse.dltk.core.tests.cache.SourceModuleInfoCacheTest;
+import org.eclipse.dltk.core.tests.codeassist.CompletionSessionTests;
 import org.eclipse.dltk.core.tests.compiler.CompilerCharOperationTests;
 import org.eclipse.dltk.core.tests.compiler.CompilerUtilTests;
 import org.eclipse.dltk.core.tests.ddp.CoreDDPTests;
@@ -27,6 +37,11 @@ import org.eclipse.dltk.core.tests.model.NamespaceTests;
 import org.eclipse.dltk.core.tests.model.WorkingCopyTests;
 import org.eclipse.dltk.core.tests.parser.SourceParserTests;
 import org.eclipse.dltk.core.tests.search.Bug387751Test;
+import org.eclipse.dltk.core.tests.search.DiskIndexFormatTests;
+import org.eclipse.dltk.core.tests.search.DiskIndexMergeTests;
+import org.eclipse.dltk.core.tests.search.DiskIndexTests;
+import org.eclipse.dltk.core.tests.search.JobManagerTests;
+import org.eclipse.dltk.core.tests.search.NameMatcherTests;
 import org.eclipse.dltk.core.tests.util.CharacterStackTests;
 import org.eclipse.dltk.core.tests.utils.CharOperationTests;
 import org.eclipse.dltk.core.tests.utils.IntListTests;
@@ -46,6 +61,14 @@ import org.junit.runners.Suite;
 		ExternalFragmentTests.class, SourceParserTests.class,
 		CharacterStackTests.class, CharOperationTests.class,
 		InternalCoreUtilTest.class, TextUtilsTest.class, Bug387751Test.class,
-		SourceModuleInfoCacheTest.class, SetContainerEventsTest.class })
+		SourceModuleInfoCacheTest.class, SetContainerEventsTest.class,
+		DiskIndexTests.class, DiskIndexFormatTests.class,
+		DiskIndexMergeTests.class, JobManagerTests.class,
+		CompletionSessionTests.class, NameMatcherTests.class,
+		ConcurrentElementCacheTests.class, BinaryASTFormatTests.class,
+		BinaryASTCacheTests.class,
+		BuildProblemFlusherTests.class, BuildExecutorTests.class,
+		BuildProfileTests.class, DependencyGraphTests.class,
+		PathDictionaryTests.class, StateTests.class })
 public class AllTests {
 }
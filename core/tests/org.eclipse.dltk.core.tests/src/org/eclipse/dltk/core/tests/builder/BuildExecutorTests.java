@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.dltk.internal.core.builder.BuildExecutor;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link BuildExecutor} class.
+ */
+public class BuildExecutorTests {
+
+	private static final BuildExecutor.Sizer<Integer> SIZER = new BuildExecutor.Sizer<Integer>() {
+		@Override
+		public long sizeOf(Integer item) {
+			return item.intValue();
+		}
+	};
+
+	private static List<Integer> items(int count) {
+		final List<Integer> items = new ArrayList<Integer>();
+		for (int i = 0; i < count; ++i) {
+			items.add(Integer.valueOf(i));
+		}
+		Collections.shuffle(items);
+		return items;
+	}
+
+	@Test
+	public void testAllProcessed() throws InterruptedException {
+		final List<Integer> processed = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		final BuildExecutor.Execution<Integer> execution = BuildExecutor
+				.execute(items(1000), SIZER,
+						new BuildExecutor.Processor<Integer>() {
+							@Override
+							public void process(Integer item) {
+								processed.add(item);
+							}
+						});
+		assertTrue(execution.await(10000));
+		assertEquals(1000, execution.getProcessedCount());
+		assertEquals(1000, new HashSet<Integer>(processed).size());
+		assertFalse(execution.isCanceled());
+		// claimed by decreasing size
+		assertTrue(processed.indexOf(Integer.valueOf(999)) < 64);
+		assertTrue(processed.indexOf(Integer.valueOf(0)) > 1000 - 64);
+	}
+
+	@Test
+	public void testCanceledByItem() throws InterruptedException {
+		final BuildExecutor.Execution<Integer> execution = BuildExecutor
+				.execute(items(1000), SIZER,
+						new BuildExecutor.Processor<Integer>() {
+							@Override
+							public void process(Integer item) {
+								if (item.intValue() == 900) {
+									throw new OperationCanceledException();
+								}
+							}
+						});
+		assertTrue(execution.await(10000));
+		assertTrue(execution.isCanceled());
+		assertTrue(execution.getProcessedCount() < 1000);
+	}
+
+	@Test
+	public void testCancel() throws InterruptedException {
+		final Object lock = new Object();
+		final BuildExecutor.Execution<Integer> execution;
+		synchronized (lock) {
+			execution = BuildExecutor.execute(items(1000), null,
+					new BuildExecutor.Processor<Integer>() {
+						@Override
+						public void process(Integer item) {
+							synchronized (lock) {
+								// wait for the cancellation
+							}
+						}
+					});
+			assertFalse(execution.await(10));
+			execution.cancel();
+		}
+		assertTrue(execution.await(10000));
+		assertTrue(execution.getProcessedCount() < 1000);
+	}
+
+	@Test
+	public void testFailingItems() throws InterruptedException {
+		final BuildExecutor.Execution<Integer> execution = BuildExecutor
+				.execute(items(100), SIZER,
+						new BuildExecutor.Processor<Integer>() {
+							@Override
+							public void process(Integer item) {
+								if (item.intValue() % 10 == 0) {
+									throw new IllegalStateException();
+								}
+							}
+						});
+		assertTrue(execution.await(10000));
+		assertEquals(100, execution.getProcessedCount());
+		assertFalse(execution.isCanceled());
+	}
+
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.dltk.compiler.problem.DefaultProblem;
+import org.eclipse.dltk.compiler.problem.ProblemSeverity;
+import org.eclipse.dltk.internal.core.builder.BuildProblemFlusher;
+import org.eclipse.dltk.internal.core.builder.BuildProblemReporter;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link BuildProblemFlusher} class.
+ */
+public class BuildProblemFlusherTests {
+
+	private static final int MODULES = 30000;
+	private static final int PROBLEMS = 10;
+	private static final int BATCH_SIZE = 64;
+
+	/**
+	 * Counts the problems kept in memory instead of creating their markers.
+	 */
+	private static class TestFlusher extends BuildProblemFlusher {
+		final AtomicInteger retained = new AtomicInteger();
+		int peak;
+		int flushedReporters;
+		int batches;
+		int largestBatch;
+
+		TestFlusher() {
+			super(BATCH_SIZE, null, null);
+		}
+
+		void built(BuildProblemReporter reporter) throws InterruptedException {
+			final int value = retained
+					.addAndGet(reporter.getProblems().size());
+			synchronized (this) {
+				peak = Math.max(peak, value);
+			}
+			add(reporter);
+		}
+
+		@Override
+		protected void flush(List<BuildProblemReporter> batch) {
+			++batches;
+			largestBatch = Math.max(largestBatch, batch.size());
+			for (BuildProblemReporter reporter : batch) {
+				retained.addAndGet(-reporter.getProblems().size());
+				++flushedReporters;
+			}
+		}
+	}
+
+	private static BuildProblemReporter buildModule() {
+		final BuildProblemReporter reporter = new BuildProblemReporter(null,
+				null);
+		for (int i = 0; i < PROBLEMS; ++i) {
+			reporter.reportProblem(new DefaultProblem("problem", null, null,
+					ProblemSeverity.WARNING, i, i + 1, i));
+		}
+		return reporter;
+	}
+
+	@Test
+	public void testSingleThread() throws InterruptedException {
+		final TestFlusher flusher = new TestFlusher();
+		for (int i = 0; i < MODULES; ++i) {
+			flusher.built(buildModule());
+			flusher.flush(0, false);
+		}
+		flusher.flush(0, true);
+		assertEquals(MODULES, flusher.flushedReporters);
+		assertEquals(0, flusher.retained.get());
+		assertEquals(BATCH_SIZE * PROBLEMS, flusher.peak);
+		assertEquals((MODULES + BATCH_SIZE - 1) / BATCH_SIZE, flusher.batches);
+	}
+
+	@Test
+	public void testBoundedInParallel() throws InterruptedException {
+		final TestFlusher flusher = new TestFlusher();
+		final AtomicInteger remaining = new AtomicInteger(MODULES);
+		final Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; ++t) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						while (remaining.getAndDecrement() > 0) {
+							flusher.built(buildModule());
+						}
+					} catch (InterruptedException e) {
+						// finish
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			while (thread.isAlive()) {
+				flusher.flush(10, false);
+			}
+		}
+		flusher.close();
+		flusher.flush(0, true);
+		assertEquals(MODULES, flusher.flushedReporters);
+		assertEquals(0, flusher.retained.get());
+		assertTrue(flusher.largestBatch <= BATCH_SIZE);
+		// the batch being flushed, the next one and the modules of the
+		// waiting threads
+		final int bound = (2 * BATCH_SIZE + threads.length) * PROBLEMS;
+		assertTrue("peak " + flusher.peak, flusher.peak <= bound);
+		assertTrue(bound * 50 < MODULES * PROBLEMS);
+	}
+
+	@Test
+	public void testClosedDoesNotWait() throws InterruptedException {
+		final TestFlusher flusher = new TestFlusher();
+		for (int i = 0; i < BATCH_SIZE; ++i) {
+			flusher.built(buildModule());
+		}
+		flusher.close();
+		// would wait for the full batch otherwise
+		flusher.built(buildModule());
+		flusher.flush(0, true);
+		assertEquals(BATCH_SIZE, flusher.flushedReporters);
+	}
+
+}
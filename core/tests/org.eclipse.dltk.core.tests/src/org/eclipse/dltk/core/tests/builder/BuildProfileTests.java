@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.dltk.core.builder.IBuildContext;
+import org.eclipse.dltk.core.builder.IBuildParticipant;
+import org.eclipse.dltk.internal.core.builder.BuildProfile;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link BuildProfile} class.
+ */
+public class BuildProfileTests {
+
+	private static class Parser implements IBuildParticipant {
+		@Override
+		public void build(IBuildContext context) throws CoreException {
+		}
+	}
+
+	private static class Checker implements IBuildParticipant {
+		@Override
+		public void build(IBuildContext context) throws CoreException {
+		}
+	}
+
+	@Test
+	public void testParticipants() {
+		final BuildProfile profile = new BuildProfile("nature", false);
+		final Parser parser = new Parser();
+		final Checker checker = new Checker();
+		for (int i = 0; i < 10; ++i) {
+			profile.record(parser, null, 100, profile.allocatedBytes());
+			profile.record(checker, null, 300, profile.allocatedBytes());
+		}
+		final List<BuildProfile.ParticipantStats> stats = profile
+				.getParticipants();
+		assertEquals(2, stats.size());
+		assertEquals(Checker.class.getName(), stats.get(0).getName());
+		assertEquals(10, stats.get(0).getCalls());
+		assertEquals(3000, stats.get(0).getTime());
+		assertEquals(1000, stats.get(1).getTime());
+		assertEquals(0, stats.get(1).getAllocated());
+	}
+
+	@Test
+	public void testReport() throws IOException {
+		final BuildProfile profile = new BuildProfile("nature", true);
+		final Parser parser = new Parser();
+		long allocated = profile.allocatedBytes();
+		final byte[][] garbage = new byte[100][];
+		for (int i = 0; i < garbage.length; ++i) {
+			garbage[i] = new byte[1000];
+		}
+		profile.record(parser, "/p/a,b.txt", 1500, allocated);
+		allocated = profile.allocatedBytes();
+		profile.record(parser, "/p/c.txt", 500, allocated);
+		if (allocated >= 0) {
+			assertTrue(profile.getParticipants().get(0)
+					.getAllocated() >= 100 * 1000);
+		}
+
+		final StringWriter summary = new StringWriter();
+		profile.writeSummary(summary, "p\"1");
+		assertTrue(summary.toString(), summary.toString().startsWith(
+				"{\"project\":\"p\\\"1\",\"nature\":\"nature\",\"participants\":[\n{\"name\":\""
+						+ Parser.class.getName()
+						+ "\",\"calls\":2,\"timeNanos\":2000,\"allocatedBytes\":"));
+
+		final StringWriter modules = new StringWriter();
+		profile.writeModules(modules);
+		final String[] lines = modules.toString().split("\n");
+		assertEquals(3, lines.length);
+		assertEquals("module,participant,timeNanos,allocatedBytes", lines[0]);
+		assertTrue(lines[1], lines[1].startsWith(
+				"\"/p/a,b.txt\"," + Parser.class.getName() + ",1500,"));
+		assertTrue(lines[2], lines[2]
+				.startsWith("/p/c.txt," + Parser.class.getName() + ",500,"));
+	}
+
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.dltk.core.builder.IBuildState;
+import org.eclipse.dltk.internal.core.builder.DependencyGraph;
+import org.eclipse.dltk.internal.core.builder.PathDictionary;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link DependencyGraph} class.
+ */
+public class DependencyGraphTests {
+
+	private static final IPath A = new Path("/p/a.txt");
+	private static final IPath B = new Path("/p/b.txt");
+	private static final IPath C = new Path("/p/c.txt");
+	private static final IPath D = new Path("/p/d.txt");
+	private static final IPath E = new Path("/p/e.txt");
+
+	private static final Map<IPath, Set<String>> NO_ELEMENTS = Collections
+			.emptyMap();
+
+	private static DependencyGraph createGraph() {
+		final DependencyGraph graph = new DependencyGraph();
+		graph.record(A, B, null, IBuildState.STRUCTURAL);
+		graph.record(C, B, null, IBuildState.CONTENT);
+		graph.record(D, B, "Foo", IBuildState.STRUCTURAL);
+		graph.record(E, B, "Bar",
+				IBuildState.STRUCTURAL | IBuildState.EXPORTED);
+		graph.record(E, A, null, IBuildState.STRUCTURAL);
+		return graph;
+	}
+
+	private static Set<IPath> set(IPath... paths) {
+		return new HashSet<IPath>(Arrays.asList(paths));
+	}
+
+	private static Set<IPath> findDependents(DependencyGraph graph,
+			Set<IPath> structuralChanges,
+			Map<IPath, Set<String>> elementChanges, Set<IPath> exported) {
+		final Set<IPath> result = new HashSet<IPath>();
+		graph.findDependents(Collections.singleton(B), structuralChanges,
+				elementChanges, result, exported);
+		return result;
+	}
+
+	@Test
+	public void testContentChange() {
+		final Set<IPath> exported = new HashSet<IPath>();
+		assertEquals(set(C), findDependents(createGraph(),
+				Collections.<IPath> emptySet(), NO_ELEMENTS, exported));
+		assertEquals(set(), exported);
+	}
+
+	@Test
+	public void testStructuralChange() {
+		final Set<IPath> exported = new HashSet<IPath>();
+		assertEquals(set(A, C, D, E), findDependents(createGraph(), set(B),
+				NO_ELEMENTS, exported));
+		assertEquals(set(E), exported);
+	}
+
+	@Test
+	public void testElementChange() {
+		final Map<IPath, Set<String>> elementChanges = new HashMap<IPath, Set<String>>();
+		elementChanges.put(B, Collections.singleton("Foo"));
+		final Set<IPath> exported = new HashSet<IPath>();
+		assertEquals(set(A, C, D), findDependents(createGraph(), set(B),
+				elementChanges, exported));
+		assertEquals(set(), exported);
+	}
+
+	@Test
+	public void testRemove() {
+		final DependencyGraph graph = createGraph();
+		final DependencyGraph copy = graph.copy();
+		graph.removeDependenciesOf(set(A, D));
+		assertEquals(set(C, E), findDependents(graph, set(B), NO_ELEMENTS,
+				new HashSet<IPath>()));
+		assertEquals(set(A, C, D, E), findDependents(copy, set(B),
+				NO_ELEMENTS, new HashSet<IPath>()));
+		graph.record(D, B, "Foo", IBuildState.CONTENT);
+		assertEquals(set(C, D), findDependents(graph,
+				Collections.<IPath> emptySet(), NO_ELEMENTS,
+				new HashSet<IPath>()));
+	}
+
+	@Test
+	public void testMergeFlags() {
+		final DependencyGraph graph = createGraph();
+		graph.removeDependenciesOf(set(A));
+		graph.record(C, A, null, IBuildState.STRUCTURAL);
+		graph.record(C, B, null, IBuildState.EXPORTED);
+		final Set<IPath> exported = new HashSet<IPath>();
+		assertEquals(set(C), findDependents(graph.copy(),
+				Collections.<IPath> emptySet(), NO_ELEMENTS, exported));
+		assertEquals(set(C), exported);
+		assertEquals(set(A, C, E), new HashSet<IPath>(
+				graph.findAllStructuralDependents(Collections.singleton(A))));
+	}
+
+	@Test
+	public void testAllStructuralDependents() {
+		final DependencyGraph graph = createGraph();
+		graph.record(A, C, null, IBuildState.CONTENT);
+		assertEquals(set(B, A, D, E), new HashSet<IPath>(
+				graph.findAllStructuralDependents(Collections.singleton(B))));
+		assertEquals(set(C), new HashSet<IPath>(
+				graph.findAllStructuralDependents(Collections.singleton(C))));
+	}
+
+	@Test
+	public void testManyDependents() {
+		final DependencyGraph graph = new DependencyGraph();
+		final Set<IPath> modules = new HashSet<IPath>();
+		for (int i = 0; i < 10000; ++i) {
+			final IPath module = new Path("/p/m" + i + ".txt");
+			modules.add(module);
+			graph.record(module, A, "Type" + (i % 10),
+					IBuildState.STRUCTURAL);
+			graph.record(module, A, null, IBuildState.CONTENT);
+		}
+		assertEquals(10000 + 1 + 10, graph.getNodeCount());
+		assertEquals(10000 + 1, graph
+				.findAllStructuralDependents(Collections.singleton(A))
+				.size());
+		graph.removeDependenciesOf(modules);
+		final Set<IPath> result = new HashSet<IPath>();
+		graph.findDependents(Collections.singleton(A), set(A), NO_ELEMENTS,
+				result, result);
+		assertEquals(set(), result);
+	}
+
+	@Test
+	public void testWriteRead() throws IOException {
+		final DependencyGraph graph = createGraph();
+		graph.record(new Path("/p/f.txt"), C, null, IBuildState.STRUCTURAL);
+		graph.removeDependenciesOf(set(new Path("/p/f.txt")));
+		final List<IPath> modules = new ArrayList<IPath>();
+		graph.collectModules(modules);
+		assertEquals(set(A, B, C, D, E), new HashSet<IPath>(modules));
+		final PathDictionary dictionary = new PathDictionary();
+		dictionary.addAll(modules);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		graph.write(new DataOutputStream(bytes), dictionary);
+		final DependencyGraph restored = DependencyGraph.read(
+				new DataInputStream(
+						new ByteArrayInputStream(bytes.toByteArray())),
+				dictionary);
+		assertNotNull(restored);
+		// the nodes without dependencies are not written
+		assertEquals(graph.getNodeCount() - 1, restored.getNodeCount());
+		final Map<IPath, Set<String>> elementChanges = new HashMap<IPath, Set<String>>();
+		elementChanges.put(B, Collections.singleton("Bar"));
+		final Set<IPath> exported = new HashSet<IPath>();
+		assertEquals(set(A, C, E), findDependents(restored, set(B),
+				elementChanges, exported));
+		assertEquals(set(E), exported);
+	}
+
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.dltk.internal.core.builder.PathDictionary;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link PathDictionary} class.
+ */
+public class PathDictionaryTests {
+
+	private static byte[] write(PathDictionary dictionary) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		dictionary.write(new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+
+	private static PathDictionary read(byte[] bytes) throws IOException {
+		return PathDictionary
+				.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	@Test
+	public void testWriteRead() throws IOException {
+		final List<IPath> paths = new ArrayList<IPath>();
+		for (int i = 0; i < 1000; ++i) {
+			paths.add(new Path("/project/src/package" + (i % 10) + "/module"
+					+ i + ".txt"));
+		}
+		paths.add(new Path("/project/\u00e9t\u00e9/\ud83d\ude00.txt"));
+		paths.add(new Path("/project/\u00e9t\u00e9/\ud83d\ude01.txt"));
+		final PathDictionary dictionary = new PathDictionary();
+		dictionary.addAll(paths);
+		dictionary.addAll(paths.subList(0, 10));
+		assertEquals(paths.size(), dictionary.size());
+		final byte[] bytes = write(dictionary);
+		int length = 0;
+		for (IPath path : paths) {
+			length += path.toPortableString().length();
+		}
+		// the shared prefixes are written once
+		assertTrue(bytes.length < length / 2);
+		final PathDictionary restored = read(bytes);
+		assertEquals(paths.size(), restored.size());
+		for (IPath path : paths) {
+			assertEquals(path, restored.getPath(dictionary.getId(path)));
+		}
+	}
+
+	@Test
+	public void testSorted() throws IOException {
+		final PathDictionary dictionary = new PathDictionary();
+		dictionary.addAll(Arrays.<IPath> asList(new Path("/p/c"),
+				new Path("/p/a"), new Path("/p/b")));
+		assertEquals(0, dictionary.getId(new Path("/p/a")));
+		assertEquals(2, dictionary.getId(new Path("/p/c")));
+	}
+
+	@Test
+	public void testExtended() throws IOException {
+		final PathDictionary dictionary = new PathDictionary();
+		dictionary.addAll(Arrays.<IPath> asList(new Path("/p/b"),
+				new Path("/p/c")));
+		final PathDictionary extended = new PathDictionary(
+				read(write(dictionary)));
+		extended.addAll(Arrays.<IPath> asList(new Path("/p/a"),
+				new Path("/p/c")));
+		assertEquals(3, extended.size());
+		assertEquals(dictionary.getId(new Path("/p/b")),
+				extended.getId(new Path("/p/b")));
+		assertEquals(2, extended.getId(new Path("/p/a")));
+		assertEquals(new Path("/p/a"), read(write(extended)).getPath(2));
+	}
+
+	@Test
+	public void testVarInt() throws IOException {
+		final int[] values = { 0, 1, 127, 128, 16383, 16384,
+				Integer.MAX_VALUE };
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		for (int value : values) {
+			PathDictionary.writeVarInt(out, value);
+		}
+		assertEquals(1 + 1 + 1 + 2 + 2 + 3 + 5, bytes.size());
+		final DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()));
+		for (int value : values) {
+			assertEquals(value, PathDictionary.readVarInt(in));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidId() throws IOException {
+		final PathDictionary dictionary = new PathDictionary();
+		dictionary.addAll(Arrays.<IPath> asList(new Path("/p/a")));
+		read(write(dictionary)).getPath(1);
+	}
+
+}
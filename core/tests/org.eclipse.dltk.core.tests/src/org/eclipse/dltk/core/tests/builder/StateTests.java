@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.dltk.core.builder.IBuildState;
+import org.eclipse.dltk.internal.core.builder.DependencyGraph;
+import org.eclipse.dltk.internal.core.builder.PathDictionary;
+import org.eclipse.dltk.internal.core.builder.ScriptBuilder;
+import org.eclipse.dltk.internal.core.builder.State;
+import org.junit.Test;
+
+/**
+ * Tests for reading and writing the {@link State} in its current and previous
+ * formats.
+ */
+public class StateTests {
+
+	private static final IProject PROJECT = ResourcesPlugin.getWorkspace()
+			.getRoot().getProject("p");
+
+	private static final IPath A = new Path("/p/a.txt");
+	private static final IPath B = new Path("/p/b.txt");
+	private static final IPath C = new Path("/p/c.txt");
+	private static final IPath EXTERNAL = new Path("/ext");
+
+	private static final Map<IPath, Set<String>> NO_ELEMENTS = Collections
+			.emptyMap();
+
+	private static Set<IPath> set(IPath... paths) {
+		return new HashSet<IPath>(Arrays.asList(paths));
+	}
+
+	private static State read(byte[] bytes) throws IOException {
+		return ScriptBuilder.readState(PROJECT,
+				new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	private static byte[] write(State state) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ScriptBuilder.writeState(state, new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Returns the modules depending on B, if it changed structurally or not.
+	 */
+	private static Set<IPath> findDependents(State state, boolean structural) {
+		final Set<IPath> result = new HashSet<IPath>();
+		state.getDependencies().findDependents(Collections.singleton(B),
+				structural ? set(B) : Collections.<IPath> emptySet(),
+				NO_ELEMENTS, result, new HashSet<IPath>());
+		return result;
+	}
+
+	/**
+	 * Checks the state has A depending on the structure of B, and C on its
+	 * contents.
+	 */
+	private static void assertState(State state) {
+		assertNotNull(state);
+		assertTrue(state.readDependencies());
+		assertEquals(set(A, C), findDependents(state, true));
+		assertEquals(set(C), findDependents(state, false));
+		assertEquals(set(EXTERNAL), state.getExternalFolders());
+	}
+
+	/**
+	 * Writes the header of the state, up to its external folders.
+	 */
+	private static DataOutputStream writeHeader(ByteArrayOutputStream bytes,
+			int version) throws IOException {
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(version);
+		out.writeUTF(PROJECT.getName());
+		out.writeInt(3);
+		out.writeLong(5);
+		out.writeInt(1);
+		out.writeUTF(EXTERNAL.toPortableString());
+		out.writeBoolean(false);
+		return out;
+	}
+
+	@Test
+	public void testCurrentVersion() throws IOException {
+		final State state = new State(PROJECT) {
+			{
+				recordDependency(A, B, IBuildState.STRUCTURAL);
+				recordDependency(C, B, IBuildState.CONTENT);
+				recordImportProblem(C);
+			}
+		};
+		state.getExternalFolders().add(EXTERNAL);
+		final byte[] bytes = write(state);
+		assertEquals(State.VERSION, bytes[0]);
+		assertState(read(bytes));
+		// written again as read, without decoding the dependencies
+		final byte[] copy = write(read(bytes));
+		assertEquals(Arrays.toString(bytes), Arrays.toString(copy));
+		assertState(read(copy));
+	}
+
+	@Test
+	public void testDependencyFlagsVersion() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = writeHeader(bytes, 0x18);
+		// the modules depending on each dependency, with their flags
+		out.writeInt(1);
+		out.writeUTF(B.toPortableString());
+		out.writeInt(2);
+		out.writeUTF(A.toPortableString());
+		out.writeInt(IBuildState.STRUCTURAL);
+		out.writeUTF(C.toPortableString());
+		out.writeInt(IBuildState.CONTENT);
+		// import problems
+		out.writeInt(1);
+		out.writeUTF(C.toPortableString());
+		final State state = read(bytes.toByteArray());
+		assertState(state);
+		final byte[] converted = write(state);
+		assertEquals(State.VERSION, converted[0]);
+		assertState(read(converted));
+	}
+
+	@Test
+	public void testCorruptedDependencies() throws IOException {
+		final DependencyGraph graph = new DependencyGraph();
+		graph.record(A, B, null, IBuildState.STRUCTURAL);
+		final PathDictionary dictionary = new PathDictionary();
+		dictionary.addAll(Arrays.asList(A, B));
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		graph.write(new DataOutputStream(data), dictionary);
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(State.VERSION);
+		out.writeUTF(PROJECT.getName());
+		out.writeInt(3);
+		out.writeLong(5);
+		// the paths of the graph are missing from the dictionary
+		new PathDictionary().write(out);
+		PathDictionary.writeVarInt(out, 0);
+		out.writeBoolean(false);
+		PathDictionary.writeVarInt(out, 0);
+		PathDictionary.writeVarInt(out, data.size());
+		out.write(data.toByteArray());
+
+		final State state = read(bytes.toByteArray());
+		assertNotNull(state);
+		assertFalse(state.readDependencies());
+		assertFalse(state.readDependencies());
+		assertEquals(0, state.getDependencies().getNodeCount());
+	}
+
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.dltk.ast.declarations.ModuleDeclaration;
+import org.eclipse.dltk.ast.parser.IASTCache.ASTCacheEntry;
+import org.eclipse.dltk.ast.references.SimpleReference;
+import org.eclipse.dltk.compiler.problem.DefaultProblem;
+import org.eclipse.dltk.compiler.problem.ProblemCollector;
+import org.eclipse.dltk.compiler.problem.ProblemSeverity;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.caching.BinaryASTCache;
+import org.eclipse.dltk.core.tests.ProjectSetup;
+import org.eclipse.dltk.core.tests.model.ModelTestsPlugin;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the files of the {@link BinaryASTCache} class.
+ */
+public class BinaryASTCacheTests {
+
+	@Rule
+	public final ProjectSetup project = new ProjectSetup(
+			ModelTestsPlugin.WORKSPACE, "cache");
+
+	@Rule
+	public final TemporaryFolder temp = new TemporaryFolder();
+
+	private File root;
+
+	@Before
+	public void setUp() {
+		root = new File(temp.getRoot(), "astCache");
+	}
+
+	private static ModuleDeclaration createModule(String name) {
+		final ModuleDeclaration module = new ModuleDeclaration(100);
+		module.addStatement(new SimpleReference(10, 10 + name.length(), name));
+		return module;
+	}
+
+	private static ProblemCollector createProblems(String fileName) {
+		final ProblemCollector problems = new ProblemCollector();
+		problems.reportProblem(new DefaultProblem(fileName, "Unused", null,
+				null, ProblemSeverity.WARNING, 10, 13, 1, 10));
+		return problems;
+	}
+
+	private ISourceModule createSourceModule(String name, String contents)
+			throws Exception {
+		final IFile file = project.getFile("src/folder1/" + name);
+		file.create(new ByteArrayInputStream(contents.getBytes("UTF-8")),
+				IResource.NONE, null);
+		return project.getSourceModule("src", "folder1/" + name);
+	}
+
+	/**
+	 * Returns the AST files of all the languages.
+	 */
+	private List<File> listFiles() {
+		final List<File> result = new ArrayList<File>();
+		final File[] directories = root.listFiles();
+		if (directories != null) {
+			for (File directory : directories) {
+				final File[] files = directory.listFiles();
+				if (files != null) {
+					for (File file : files) {
+						if (file.getName().endsWith(".ast")) {
+							result.add(file);
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testStoreRestore() throws Exception {
+		final BinaryASTCache cache = new BinaryASTCache(root, 10);
+		final ISourceModule module = project.getSourceModule("src",
+				"folder1/a.txt");
+		assertNull(cache.restoreModule(module));
+		cache.storeModule(module, createModule("foo"),
+				createProblems(module.getPath().toString()));
+		assertEquals(1, listFiles().size());
+
+		final ASTCacheEntry entry = cache.restoreModule(module);
+		assertNotNull(entry);
+		final ModuleDeclaration restored = (ModuleDeclaration) entry.module;
+		assertEquals("foo",
+				((SimpleReference) restored.getStatements().get(0)).getName());
+		assertEquals(1, entry.problems.getProblems().size());
+		assertEquals(module.getPath().toString(), entry.problems.getProblems()
+				.get(0).getOriginatingFileName());
+	}
+
+	@Test
+	public void testSameContents() throws Exception {
+		final BinaryASTCache cache = new BinaryASTCache(root, 10);
+		final ISourceModule a = project.getSourceModule("src",
+				"folder1/a.txt");
+		final ISourceModule b = project.getSourceModule("src",
+				"folder1/b.txt");
+		assertEquals(a.getSource(), b.getSource());
+		cache.storeModule(a, createModule("foo"),
+				createProblems(a.getPath().toString()));
+		// the problems are reported in the requesting module
+		final ASTCacheEntry entry = cache.restoreModule(b);
+		assertNotNull(entry);
+		assertEquals(b.getPath().toString(), entry.problems.getProblems()
+				.get(0).getOriginatingFileName());
+	}
+
+	@Test
+	public void testWorkingCopy() throws Exception {
+		final BinaryASTCache cache = new BinaryASTCache(root, 10);
+		final ISourceModule module = project.getSourceModule("src",
+				"folder1/a.txt");
+		final ISourceModule workingCopy = module.getWorkingCopy(null);
+		try {
+			cache.storeModule(workingCopy, createModule("foo"), null);
+			assertTrue(listFiles().isEmpty());
+			cache.storeModule(module, createModule("foo"), null);
+			assertNull(cache.restoreModule(workingCopy));
+			assertNotNull(cache.restoreModule(module));
+		} finally {
+			workingCopy.discardWorkingCopy();
+		}
+	}
+
+	@Test
+	public void testTrim() throws Exception {
+		final BinaryASTCache cache = new BinaryASTCache(root, 4);
+		final ISourceModule[] modules = new ISourceModule[5];
+		for (int i = 0; i < modules.length; ++i) {
+			modules[i] = createSourceModule("m" + i + ".txt", "m" + i);
+			cache.storeModule(modules[i], createModule("m" + i), null);
+			// older than the next one
+			for (File file : listFiles()) {
+				file.setLastModified(file.lastModified() - 10000);
+			}
+		}
+		// trimmed to 3/4 of the maximum, the least recently used first
+		assertEquals(3, listFiles().size());
+		assertNull(cache.restoreModule(modules[0]));
+		assertNull(cache.restoreModule(modules[1]));
+		assertNotNull(cache.restoreModule(modules[4]));
+	}
+
+	@Test
+	public void testCorrupted() throws Exception {
+		final BinaryASTCache cache = new BinaryASTCache(root, 10);
+		final ISourceModule module = project.getSourceModule("src",
+				"folder1/a.txt");
+		cache.storeModule(module, createModule("foo"), null);
+		final File file = listFiles().get(0);
+		final byte[] bytes = Files.readAllBytes(file.toPath());
+		Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+		assertNull(cache.restoreModule(module));
+		assertFalse(file.exists());
+
+		cache.storeModule(module, createModule("foo"), null);
+		Files.write(file.toPath(), new byte[] { 1, 2, 3 });
+		assertNull(cache.restoreModule(module));
+		assertFalse(file.exists());
+	}
+
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.eclipse.dltk.ast.ASTListNode;
+import org.eclipse.dltk.ast.ASTNode;
+import org.eclipse.dltk.ast.ASTVisitor;
+import org.eclipse.dltk.ast.Modifiers;
+import org.eclipse.dltk.ast.declarations.Argument;
+import org.eclipse.dltk.ast.declarations.Declaration;
+import org.eclipse.dltk.ast.declarations.MethodDeclaration;
+import org.eclipse.dltk.ast.declarations.ModuleDeclaration;
+import org.eclipse.dltk.ast.declarations.TypeDeclaration;
+import org.eclipse.dltk.ast.expressions.BooleanLiteral;
+import org.eclipse.dltk.ast.expressions.CallArgumentsList;
+import org.eclipse.dltk.ast.expressions.CallExpression;
+import org.eclipse.dltk.ast.expressions.Expression;
+import org.eclipse.dltk.ast.expressions.Literal;
+import org.eclipse.dltk.ast.expressions.NumericLiteral;
+import org.eclipse.dltk.ast.expressions.StringLiteral;
+import org.eclipse.dltk.ast.parser.IASTCache.ASTCacheEntry;
+import org.eclipse.dltk.ast.references.SimpleReference;
+import org.eclipse.dltk.ast.references.VariableKind;
+import org.eclipse.dltk.ast.references.VariableReference;
+import org.eclipse.dltk.ast.statements.Block;
+import org.eclipse.dltk.compiler.problem.DefaultProblem;
+import org.eclipse.dltk.compiler.problem.IProblem;
+import org.eclipse.dltk.compiler.problem.ProblemCollector;
+import org.eclipse.dltk.compiler.problem.ProblemSeverity;
+import org.eclipse.dltk.core.caching.BinaryASTFormat;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link BinaryASTFormat} class.
+ */
+public class BinaryASTFormatTests {
+
+	/**
+	 * Returns the nodes of the AST, as visited, with their positions.
+	 */
+	private static String dump(ModuleDeclaration module) throws Exception {
+		final StringBuilder sb = new StringBuilder();
+		module.traverse(new ASTVisitor() {
+			@Override
+			public boolean visitGeneral(ASTNode node) throws Exception {
+				sb.append(node.getClass().getSimpleName()).append('[')
+						.append(node.sourceStart()).append(',')
+						.append(node.sourceEnd()).append(']');
+				if (node instanceof Declaration) {
+					final Declaration declaration = (Declaration) node;
+					sb.append(' ').append(declaration.getName()).append('[')
+							.append(declaration.getNameStart()).append(',')
+							.append(declaration.getNameEnd()).append("] ")
+							.append(declaration.getModifiers());
+				} else if (node instanceof SimpleReference) {
+					sb.append(' ').append(((SimpleReference) node).getName());
+				} else if (node instanceof Literal) {
+					sb.append(' ').append(((Literal) node).getValue());
+				}
+				sb.append('\n');
+				return true;
+			}
+		});
+		return sb.toString();
+	}
+
+	private static ModuleDeclaration createModule() {
+		final ModuleDeclaration module = new ModuleDeclaration(200);
+		final TypeDeclaration type = new TypeDeclaration("Foo", 6, 9, 0, 150);
+		type.setModifiers(Modifiers.AccPublic);
+		type.setComments("/** Foo */");
+		final ASTListNode superClasses = new ASTListNode(10, 15);
+		superClasses.addNode(new SimpleReference(10, 15, "Base"));
+		type.setSuperClasses(superClasses);
+		final MethodDeclaration method = new MethodDeclaration("bar", 24, 27,
+				20, 140);
+		method.setDeclaringTypeName("Foo");
+		method.addArgument(new Argument(new SimpleReference(28, 29, "x"), 28,
+				29, new NumericLiteral(30, 32, 42), 0));
+		final CallArgumentsList args = new CallArgumentsList(50, 70);
+		args.addNode(new StringLiteral(50, 55, "été"));
+		args.addNode(new VariableReference(57, 58, "x",
+				VariableKind.ARGUMENT));
+		args.addNode(new BooleanLiteral(60, 64, true));
+		final Block body = new Block(35, 140);
+		body.addStatement(new CallExpression(40, 71, null, "print", args));
+		body.addStatement(new CallExpression(80, 90,
+				new SimpleReference(80, 84, "self"), "bar",
+				CallArgumentsList.EMPTY));
+		method.acceptBody(body);
+		final Block typeBody = new Block(10, 150);
+		typeBody.addStatement(method);
+		type.setBody(typeBody);
+		type.getMethodList().add(method);
+		module.addStatement(type);
+		module.getTypeList().add(type);
+		return module;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		final ModuleDeclaration module = createModule();
+		final ProblemCollector problems = new ProblemCollector();
+		problems.reportProblem(new DefaultProblem("a.txt", "Unused x", null,
+				new String[] { "x" }, ProblemSeverity.WARNING, 28, 29, 3, 8));
+		final byte[] bytes = BinaryASTFormat.write(module, problems);
+		assertNotNull(bytes);
+		final ASTCacheEntry entry = BinaryASTFormat.read(bytes, "b.txt");
+		final ModuleDeclaration restored = (ModuleDeclaration) entry.module;
+		assertEquals(dump(module), dump(restored));
+		assertEquals(module.sourceStart(), restored.sourceStart());
+		assertEquals(module.sourceEnd(), restored.sourceEnd());
+		// the nodes found in several places are restored once
+		final TypeDeclaration type = restored.getTypes()[0];
+		assertSame(restored.getStatements().get(0), type);
+		assertSame(type.getMethods()[0],
+				type.getBody().getStatements().get(0));
+		assertEquals("/** Foo */", type.getComments());
+		assertEquals("Foo", type.getMethods()[0].getDeclaringTypeName());
+		final Argument argument = (Argument) type.getMethods()[0]
+				.getArguments().get(0);
+		assertEquals(42, ((NumericLiteral) argument.getInitialization())
+				.getIntValue());
+		final CallExpression call = (CallExpression) type.getMethods()[0]
+				.getBody().getStatements().get(1);
+		assertSame(CallArgumentsList.EMPTY, call.getArgs());
+		final VariableReference x = (VariableReference) ((CallExpression) type
+				.getMethods()[0].getBody().getStatements().get(0)).getArgs()
+						.getChilds().get(1);
+		assertSame(VariableKind.ARGUMENT, x.getVariableKind());
+
+		assertEquals(1, entry.problems.getProblems().size());
+		final IProblem problem = entry.problems.getProblems().get(0);
+		// reported in the module the AST is read for
+		assertEquals("b.txt", problem.getOriginatingFileName());
+		assertEquals("Unused x", problem.getMessage());
+		assertArrayEquals(new String[] { "x" }, problem.getArguments());
+		assertSame(ProblemSeverity.WARNING, problem.getSeverity());
+		assertEquals(28, problem.getSourceStart());
+		assertEquals(29, problem.getSourceEnd());
+		assertEquals(3, problem.getSourceLineNumber());
+	}
+
+	@Test
+	public void testEmptyModule() throws Exception {
+		final ASTCacheEntry entry = BinaryASTFormat
+				.read(BinaryASTFormat.write(new ModuleDeclaration(0), null));
+		assertEquals(0,
+				((ModuleDeclaration) entry.module).getStatements().size());
+		assertEquals(0, entry.problems.getProblems().size());
+	}
+
+	@Test
+	public void testUnsupportedNodes() {
+		final ModuleDeclaration module = new ModuleDeclaration(10);
+		module.addStatement(new Expression() {
+			@Override
+			public int getKind() {
+				return 0;
+			}
+		});
+		assertNull(BinaryASTFormat.write(module, null));
+		assertNull(BinaryASTFormat.write(new ModuleDeclaration(10) {
+		}, null));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncated() throws IOException {
+		final byte[] bytes = BinaryASTFormat.write(createModule(), null);
+		final byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+		BinaryASTFormat.read(truncated);
+	}
+
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.dltk.internal.core.ConcurrentElementCache;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link ConcurrentElementCache} class.
+ */
+public class ConcurrentElementCacheTests {
+
+	private static final ConcurrentElementCache.Weigher WEIGHER = new ConcurrentElementCache.Weigher() {
+		@Override
+		public int weigh(Object element, Object info) {
+			return 10;
+		}
+	};
+
+	/**
+	 * Closes the evicted elements by removing them, as the model manager does.
+	 */
+	private static class TestCache extends ConcurrentElementCache {
+		final List<Object> closed = Collections
+				.synchronizedList(new ArrayList<Object>());
+		final Set<Object> unclosable = Collections
+				.synchronizedSet(new HashSet<Object>());
+
+		TestCache(long spaceLimit, int shardCount) {
+			super(spaceLimit, shardCount, WEIGHER);
+		}
+
+		@Override
+		protected boolean close(Object key, Object value) {
+			if (unclosable.contains(key)) {
+				return false;
+			}
+			closed.add(key);
+			remove(key);
+			return true;
+		}
+	}
+
+	@Test
+	public void testEviction() {
+		final TestCache cache = new TestCache(100, 1);
+		for (int i = 0; i < 15; ++i) {
+			cache.put("e" + i, "info" + i);
+		}
+		assertEquals(10, cache.size());
+		assertEquals(100, cache.getCurrentSpace());
+		assertEquals(5, cache.getEvictionCount());
+		assertEquals(list("e0", "e1", "e2", "e3", "e4"), cache.closed);
+		assertNull(cache.get("e0"));
+		assertEquals("info14", cache.get("e14"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		// replacing does not evict
+		cache.put("e14", "info");
+		assertEquals(10, cache.size());
+		assertEquals("info", cache.peek("e14"));
+	}
+
+	@Test
+	public void testUsedElementsKept() {
+		final TestCache cache = new TestCache(100, 1);
+		for (int i = 0; i < 5; ++i) {
+			cache.put("hot" + i, "info");
+		}
+		for (int i = 0; i < 5; ++i) {
+			assertNotNull(cache.get("hot" + i));
+		}
+		for (int i = 0; i < 50; ++i) {
+			cache.put("cold" + i, "info");
+		}
+		for (int i = 0; i < 5; ++i) {
+			assertNotNull(cache.peek("hot" + i));
+		}
+		assertEquals(45, cache.getEvictionCount());
+		assertTrue(!cache.closed.contains("hot0"));
+	}
+
+	@Test
+	public void testUnclosableElements() {
+		final TestCache cache = new TestCache(50, 1);
+		cache.unclosable.add("e0");
+		cache.unclosable.add("e1");
+		for (int i = 0; i < 6; ++i) {
+			cache.put("e" + i, "info");
+		}
+		assertEquals(list("e2"), cache.closed);
+		assertNotNull(cache.peek("e0"));
+		// the cache overflows while the elements can not be closed
+		for (int i = 2; i < 10; ++i) {
+			cache.unclosable.add("e" + i);
+		}
+		for (int i = 6; i < 10; ++i) {
+			cache.put("e" + i, "info");
+		}
+		assertEquals(9, cache.size());
+		cache.unclosable.clear();
+		cache.put("e10", "info");
+		assertEquals(5, cache.size());
+	}
+
+	/**
+	 * Key of the same shard as all the others.
+	 */
+	private static class SkewedKey {
+		final String name;
+
+		SkewedKey(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof SkewedKey
+					&& name.equals(((SkewedKey) obj).name);
+		}
+
+		@Override
+		public int hashCode() {
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	@Test
+	public void testSkewedChildren() {
+		final TestCache cache = new TestCache(100, 16);
+		for (int i = 0; i < 5; ++i) {
+			cache.put("old" + i, "info");
+		}
+		// the children of an opened parent, all in the same shard
+		cache.ensureSpaceLimit(10, 10, null);
+		final List<Object> children = new ArrayList<Object>();
+		for (int i = 0; i < 10; ++i) {
+			final SkewedKey child = new SkewedKey("child" + i);
+			children.add(child);
+			cache.put(child, "info");
+		}
+		for (Object child : children) {
+			assertNotNull(cache.peek(child));
+		}
+		// the oldest elements of the other shards are evicted instead
+		assertEquals(list("old0", "old1"), cache.closed);
+		assertTrue(cache.getCurrentSpace() <= cache.getSpaceLimit());
+	}
+
+	@Test
+	public void testConcurrentAccess() throws InterruptedException {
+		final TestCache cache = new TestCache(1000, 16);
+		final AtomicInteger gets = new AtomicInteger();
+		final Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; ++t) {
+			final Random random = new Random(t);
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 20000; ++i) {
+						final String key = "e" + random.nextInt(500);
+						if (cache.get(key) == null) {
+							cache.put(key, key);
+						}
+						gets.incrementAndGet();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(gets.get(), cache.getHitCount() + cache.getMissCount());
+		assertEquals(cache.closed.size(), cache.getEvictionCount());
+		assertEquals(cache.size() * 10, cache.getCurrentSpace());
+		assertTrue(cache.getCurrentSpace() <= 1000);
+		assertTrue(cache.getHitCount() > 0 && cache.getEvictionCount() > 0);
+	}
+
+	private static List<Object> list(Object... values) {
+		final List<Object> result = new ArrayList<Object>();
+		Collections.addAll(result, values);
+		return result;
+	}
+
+}
@@ -17,17 +17,23 @@ import static org.hamcrest.CoreMatchers.not;
 import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.dltk.ast.declarations.ModuleDeclaration;
+import org.eclipse.dltk.ast.references.SimpleReference;
 import org.eclipse.dltk.core.IModelElement;
 import org.eclipse.dltk.core.IScriptFolder;
 import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.core.ModelException;
+import org.eclipse.dltk.core.RuntimePerformanceMonitor;
+import org.eclipse.dltk.core.RuntimePerformanceMonitor.DataEntry;
 import org.eclipse.dltk.core.SourceParserUtil;
 import org.eclipse.dltk.core.tests.ProjectSetup;
 import org.eclipse.dltk.core.tests.model.ModelTestsPlugin;
+import org.eclipse.dltk.internal.core.SourceModuleInfoCache;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
@@ -197,4 +203,58 @@ public class SourceModuleInfoCacheTest extends Assert {
 		assertThat(modules.get(0), not(IS_CACHED));
 	}
 
+	private static ModuleDeclaration createModuleDeclaration(int statements) {
+		final ModuleDeclaration declaration = new ModuleDeclaration(statements);
+		for (int i = 0; i < statements; ++i) {
+			declaration.addStatement(new SimpleReference(i, i + 1, "a"));
+		}
+		return declaration;
+	}
+
+	@Test
+	public void sizeLimit() throws CoreException {
+		final IScriptFolder folder = project.getScriptFolder("src", "folder1");
+		assertNotNull(folder);
+		final List<ISourceModule> modules = new ArrayList<ISourceModule>();
+		project.getWorkspace().run(monitor -> {
+			for (int i = 0; i < 8; ++i) {
+				modules.add(folder.createSourceModule("s" + i + ".txt", "",
+						false, null));
+			}
+		}, null);
+		final long astSize = SourceModuleInfoCache
+				.estimateSize(createModuleDeclaration(10));
+		final SourceModuleInfoCache cache = new SourceModuleInfoCache(
+				5 * (astSize + 200), 1000);
+		for (ISourceModule module : modules) {
+			cache.get(module).put("ast", createModuleDeclaration(10));
+		}
+		assertEquals(5, cache.size());
+		assertEquals(3, cache.getEvictionCount());
+		assertTrue(cache.getCurrentSize() <= cache.getSizeLimit());
+		assertNotNull(cache.get(modules.get(7)).get("ast"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(8, cache.getMissCount());
+		// too large to be kept, the recently used modules stay
+		final ISourceModule a = project.getSourceModule("src", "folder1/a.txt");
+		cache.get(a).put("ast", createModuleDeclaration(100));
+		assertTrue(cache.get(a).isEmpty());
+		assertNotNull(cache.get(modules.get(7)).get("ast"));
+
+		cache.publishStatistics();
+		cache.get(modules.get(7));
+		cache.publishStatistics();
+		final Map<String, DataEntry> entries = RuntimePerformanceMonitor
+				.getEntries(SourceModuleInfoCache.STATISTICS);
+		final DataEntry bytes = entries.get(SourceModuleInfoCache.CACHED_BYTES);
+		assertEquals(cache.size(), bytes.getCount());
+		assertEquals(cache.getCurrentSize(), bytes.getTotal());
+		assertEquals(cache.getHitCount(),
+				entries.get(SourceModuleInfoCache.HITS).getCount());
+		assertEquals(cache.getMissCount(),
+				entries.get(SourceModuleInfoCache.MISSES).getCount());
+		assertEquals(cache.getEvictionCount(),
+				entries.get(SourceModuleInfoCache.EVICTIONS).getCount());
+	}
+
 }
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.codeassist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.dltk.codeassist.CompletionSession;
+import org.eclipse.dltk.codeassist.ScriptCompletionEngine;
+import org.eclipse.dltk.compiler.env.IModuleSource;
+import org.eclipse.dltk.core.CompletionProposal;
+import org.eclipse.dltk.core.CompletionRequestor;
+import org.eclipse.dltk.core.IMethod;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link CompletionSession} class.
+ */
+public class CompletionSessionTests {
+
+	private static class TestEngine extends ScriptCompletionEngine {
+		final List<IMethod> methods;
+		/**
+		 * Methods of the same kind found after the others, if any
+		 */
+		List<IMethod> moreMethods;
+		boolean alwaysQuery;
+		int queries;
+
+		TestEngine(List<IMethod> methods) {
+			this.methods = methods;
+		}
+
+		@Override
+		public void complete(IModuleSource module, int position, int i) {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Answers if a new completion of the token can narrow the methods.
+		 */
+		boolean canNarrowMethods(String token, int start) {
+			setRequestor(new CompletionRequestor() {
+				@Override
+				public void accept(CompletionProposal proposal) {
+				}
+			});
+			this.actualCompletionPosition = start + token.length();
+			return canNarrow(CompletionProposal.METHOD_REF,
+					token.toCharArray());
+		}
+
+		List<String> complete(String token, int start) {
+			final List<String> names = new ArrayList<String>();
+			setRequestor(new CompletionRequestor() {
+				@Override
+				public void accept(CompletionProposal proposal) {
+					names.add(proposal.getName() + "("
+							+ proposal.getParameterNames().length + ")");
+				}
+			});
+			this.actualCompletionPosition = start + token.length();
+			final char[] chars = token.toCharArray();
+			if (!alwaysQuery
+					&& canNarrow(CompletionProposal.METHOD_REF, chars)) {
+				findMethods(chars, true, null, CompletionProposal.METHOD_REF);
+			} else {
+				++queries;
+				findMethods(chars, true, methods,
+						CompletionProposal.METHOD_REF);
+			}
+			if (moreMethods != null) {
+				findMethods(chars, true, moreMethods,
+						CompletionProposal.METHOD_REF);
+			}
+			return names;
+		}
+	}
+
+	private List<IMethod> methods;
+	private int resolved;
+
+	@Before
+	public void setUp() {
+		methods = new ArrayList<IMethod>();
+		for (int i = 0; i < 1000; ++i) {
+			methods.add(createMethod("method" + i));
+		}
+		methods.add(createMethod("other"));
+		resolved = 0;
+	}
+
+	private IMethod createMethod(final String name) {
+		return (IMethod) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { IMethod.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						final String methodName = method.getName();
+						if ("getElementName".equals(methodName)) {
+							return name;
+						} else if ("getParameterNames".equals(methodName)) {
+							++resolved;
+							return new String[] { "a" };
+						} else if ("getFlags".equals(methodName)) {
+							return 0;
+						} else if ("equals".equals(methodName)) {
+							return proxy == args[0];
+						} else if ("hashCode".equals(methodName)) {
+							return System.identityHashCode(proxy);
+						}
+						return null;
+					}
+				});
+	}
+
+	@Test
+	public void testNarrowing() {
+		final String[] tokens = { "m", "me", "method5", "method59", "method5",
+				"o" };
+		final List<List<String>> expected = new ArrayList<List<String>>();
+		final TestEngine plain = new TestEngine(methods);
+		for (String token : tokens) {
+			expected.add(plain.complete(token, 10));
+		}
+		final int plainResolved = resolved;
+		resolved = 0;
+		final TestEngine engine = new TestEngine(methods);
+		engine.setSession(new CompletionSession());
+		for (int i = 0; i < tokens.length; ++i) {
+			assertEquals(expected.get(i), engine.complete(tokens[i], 10));
+		}
+		// narrowed while typing, queried again after "method5" following
+		// "method59" and for "o"
+		assertEquals(3, engine.queries);
+		assertEquals(plainResolved - 1000 - 111 - 11, resolved);
+	}
+
+	@Test
+	public void testPositionAndReset() {
+		final TestEngine engine = new TestEngine(methods);
+		final CompletionSession session = new CompletionSession();
+		engine.setSession(session);
+		assertEquals(1, engine.complete("other", 10).size());
+		assertEquals(1, engine.queries);
+		assertTrue(engine.canNarrowMethods("otherx", 10));
+		assertFalse(engine.canNarrowMethods("otherx", 20));
+		assertFalse(engine.canNarrowMethods("ot", 10));
+		session.reset();
+		assertFalse(engine.canNarrowMethods("otherx", 10));
+	}
+
+	@Test
+	public void testCanNarrowKeepsCandidates() {
+		final TestEngine engine = new TestEngine(methods);
+		engine.setSession(new CompletionSession());
+		engine.complete("m", 10);
+		assertFalse(engine.canNarrowMethods("other", 10));
+		assertTrue(engine.canNarrowMethods("method5", 10));
+		assertTrue(engine.canNarrowMethods("me", 10));
+		assertEquals(1000, engine.complete("me", 10).size());
+		assertEquals(1, engine.queries);
+	}
+
+	@Test
+	public void testKindCompletedTwice() {
+		final List<IMethod> moreMethods = new ArrayList<IMethod>();
+		for (int i = 0; i < 10; ++i) {
+			moreMethods.add(createMethod("more" + i));
+		}
+		moreMethods.add(createMethod("method_more"));
+		final TestEngine engine = new TestEngine(methods);
+		engine.moreMethods = moreMethods;
+		engine.setSession(new CompletionSession());
+		assertEquals(1000 + 10 + 1, engine.complete("m", 10).size());
+		// not narrowed from the last methods only
+		assertEquals(1000 + 1, engine.complete("me", 10).size());
+		assertEquals(1, engine.complete("method_", 10).size());
+		assertEquals(3, engine.queries);
+	}
+
+	@Test
+	public void testChangedCandidates() {
+		final TestEngine engine = new TestEngine(methods);
+		engine.setSession(new CompletionSession());
+		engine.alwaysQuery = true;
+		engine.complete("m", 10);
+		assertEquals(1000, engine.complete("me", 10).size());
+		methods.add(createMethod("method_new"));
+		final List<String> names = engine.complete("method_", 10);
+		assertEquals(3, engine.queries);
+		assertEquals(1, names.size());
+		assertEquals(1000 + 1, resolved);
+	}
+
+}
@@ -9,9 +9,18 @@
  *******************************************************************************/
 package org.eclipse.dltk.core.tests.ddp;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import junit.framework.Test;
 
@@ -19,14 +28,25 @@ import org.eclipse.dltk.ast.ASTNode;
 import org.eclipse.dltk.ast.expressions.Expression;
 import org.eclipse.dltk.ast.expressions.NumericLiteral;
 import org.eclipse.dltk.ast.references.SimpleReference;
+import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.core.tests.model.SuiteOfTestCases;
+import org.eclipse.dltk.ti.BasicContext;
+import org.eclipse.dltk.ti.ConcurrentGoalEngine;
+import org.eclipse.dltk.ti.CostAwarePruner;
 import org.eclipse.dltk.ti.DefaultTypeInferencer;
+import org.eclipse.dltk.ti.EvaluatorStatistics;
+import org.eclipse.dltk.ti.GoalCost;
+import org.eclipse.dltk.ti.GoalCostModel;
+import org.eclipse.dltk.ti.GoalEngine;
+import org.eclipse.dltk.ti.GoalResultCache;
 import org.eclipse.dltk.ti.GoalState;
 import org.eclipse.dltk.ti.IGoalEvaluatorFactory;
+import org.eclipse.dltk.ti.IPruner;
 import org.eclipse.dltk.ti.ITypeInferencer;
 import org.eclipse.dltk.ti.goals.ExpressionTypeGoal;
 import org.eclipse.dltk.ti.goals.GoalEvaluator;
 import org.eclipse.dltk.ti.goals.IGoal;
+import org.eclipse.dltk.ti.statistics.GoalEvalutationRecorder;
 import org.eclipse.dltk.ti.types.IEvaluatedType;
 
 public class CoreDDPTests extends SuiteOfTestCases {	
@@ -61,6 +81,11 @@ public class CoreDDPTests extends SuiteOfTestCases {
 		public IGoal[] subGoalDone(IGoal goal2, Object result, GoalState state) {
 			return IGoal.NO_GOALS;
 		}
+
+		@Override
+		public boolean isResultCacheable() {
+			return true;
+		}
 				
 		
 	}
@@ -174,12 +199,26 @@ public class CoreDDPTests extends SuiteOfTestCases {
 	}
 
 	public void testCycles() throws Exception {
+		checkCycles(null);
+	}
+
+	public void testConcurrentCycles() throws Exception {
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			checkCycles(pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private void checkCycles(ForkJoinPool pool) {
 		final Expression x = new SimpleReference(0, 0, "x");
 		final Expression y = new SimpleReference(0, 0, "y");
 		final Expression z = new SimpleReference(0, 0, "z");
 		final Expression num = new NumericLiteral(0,0,0);
 		
-		final Collection<GoalEvaluator> evaluators = new ArrayList<GoalEvaluator>();
+		final Collection<GoalEvaluator> evaluators = Collections
+				.synchronizedList(new ArrayList<GoalEvaluator>());
 		IGoalEvaluatorFactory factory = new IGoalEvaluatorFactory() {
 
 			public GoalEvaluator createEvaluator2(IGoal goal) {
@@ -211,7 +250,9 @@ public class CoreDDPTests extends SuiteOfTestCases {
 			
 		};
 
-		final ITypeInferencer man = new DefaultTypeInferencer(factory);
+		final ITypeInferencer man = pool != null
+				? new DefaultTypeInferencer(factory, pool)
+				: new DefaultTypeInferencer(factory);
 
 		ExpressionTypeGoal rootGoal = new ExpressionTypeGoal(null, x);
 		IEvaluatedType answer = man.evaluateType(rootGoal, -1);
@@ -225,4 +266,344 @@ public class CoreDDPTests extends SuiteOfTestCases {
 			}
 		}
 	}
+
+	/**
+	 * Creates the evaluators of "x = y; y = 2" and counts them.
+	 */
+	private static final class AssignmentsFactory implements
+			IGoalEvaluatorFactory {
+		final Expression x = new SimpleReference(0, 0, "x");
+		final Expression y = new SimpleReference(0, 0, "y");
+		final Expression num = new NumericLiteral(0, 0, 0);
+		final BasicContext xContext;
+		final BasicContext yContext;
+		final IEvaluatedType answer;
+		int created;
+		/**
+		 * Whether the evaluator of y allows caching
+		 */
+		boolean yCacheable = true;
+
+		AssignmentsFactory(ISourceModule xModule, ISourceModule yModule,
+				IEvaluatedType answer) {
+			xContext = new BasicContext(xModule, null);
+			yContext = new BasicContext(yModule, null);
+			this.answer = answer;
+		}
+
+		@Override
+		public GoalEvaluator createEvaluator(IGoal goal) {
+			++created;
+			ASTNode expr = ((ExpressionTypeGoal) goal).getExpression();
+			if (expr == x)
+				return createEvaluator(goal,
+						new ExpressionTypeGoal(yContext, y), true);
+			if (expr == y)
+				return createEvaluator(goal,
+						new ExpressionTypeGoal(yContext, num), yCacheable);
+			return new FixedAnswerGoalEvaluator(goal, answer);
+		}
+
+		private GoalEvaluator createEvaluator(IGoal goal,
+				final IGoal dependent, final boolean cacheable) {
+			return new GoalEvaluator(goal) {
+				@Override
+				public IGoal[] init() {
+					return new IGoal[] { dependent };
+				}
+
+				@Override
+				public IGoal[] subGoalDone(IGoal subgoal, Object result,
+						GoalState state) {
+					return IGoal.NO_GOALS;
+				}
+
+				@Override
+				public Object produceResult() {
+					return answer;
+				}
+
+				@Override
+				public boolean isResultCacheable() {
+					return cacheable;
+				}
+			};
+		}
+	}
+
+	private static ISourceModule createSourceModule(final String name) {
+		return (ISourceModule) Proxy.newProxyInstance(
+				ISourceModule.class.getClassLoader(),
+				new Class<?>[] { ISourceModule.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						if (method.getName().equals("getPrimary")) {
+							return proxy;
+						} else if (method.getName().equals("equals")) {
+							return proxy == args[0];
+						} else if (method.getName().equals("hashCode")) {
+							return System.identityHashCode(proxy);
+						} else if (method.getName().equals("getElementName")) {
+							return name;
+						}
+						return null;
+					}
+				});
+	}
+
+	public void testResultCache() throws Exception {
+		ISourceModule xModule = createSourceModule("x");
+		ISourceModule yModule = createSourceModule("y");
+		AssignmentsFactory factory = new AssignmentsFactory(xModule, yModule,
+				new MyNum());
+		GoalResultCache cache = new GoalResultCache();
+		GoalEngine engine = new GoalEngine(factory);
+		engine.setResultCache(cache);
+
+		IGoal xGoal = new ExpressionTypeGoal(factory.xContext, factory.x);
+		assertTrue(engine.evaluateGoal(xGoal, null) instanceof MyNum);
+		assertEquals(3, factory.created);
+		assertEquals(3, cache.size());
+
+		// another engine, as for the next code assist request
+		GoalEngine other = new GoalEngine(factory);
+		other.setResultCache(cache);
+		GoalEvalutationRecorder recorder = new GoalEvalutationRecorder();
+		IGoal yGoal = new ExpressionTypeGoal(factory.yContext, factory.y);
+		assertTrue(other.evaluateGoal(yGoal, null, recorder) instanceof MyNum);
+		assertEquals(3, factory.created);
+		assertEquals(GoalState.CACHED,
+				recorder.getStatisticsForGoal(yGoal).getState());
+		assertEquals(1, cache.getHitCount());
+
+		// x depends on the y module too
+		cache.invalidate(yModule);
+		assertEquals(0, cache.size());
+		assertTrue(engine.evaluateGoal(xGoal, null) instanceof MyNum);
+		assertEquals(6, factory.created);
+
+		// y does not depend on the x module
+		cache.invalidate(xModule);
+		assertEquals(2, cache.size());
+		assertTrue(engine.evaluateGoal(xGoal, null) instanceof MyNum);
+		assertEquals(7, factory.created);
+	}
+
+	public void testResultCacheSkipsUncacheableEvaluators() throws Exception {
+		AssignmentsFactory factory = new AssignmentsFactory(
+				createSourceModule("x"), createSourceModule("y"), new MyNum());
+		factory.yCacheable = false;
+		GoalResultCache cache = new GoalResultCache();
+		GoalEngine engine = new GoalEngine(factory);
+		engine.setResultCache(cache);
+
+		IGoal xGoal = new ExpressionTypeGoal(factory.xContext, factory.x);
+		assertTrue(engine.evaluateGoal(xGoal, null) instanceof MyNum);
+		// only the fixed answer, x depends on y which is not cacheable
+		assertEquals(1, cache.size());
+		assertTrue(engine.evaluateGoal(xGoal, null) instanceof MyNum);
+		assertEquals(5, factory.created);
+	}
+
+	@SuppressWarnings("deprecation")
+	public void testResultCacheSkipsPrunedGoals() throws Exception {
+		final AssignmentsFactory factory = new AssignmentsFactory(
+				createSourceModule("x"), createSourceModule("y"), new MyNum());
+		GoalResultCache cache = new GoalResultCache();
+		GoalEngine engine = new GoalEngine(factory);
+		engine.setResultCache(cache);
+
+		IGoal xGoal = new ExpressionTypeGoal(factory.xContext, factory.x);
+		engine.evaluateGoal(xGoal, new IPruner() {
+			@Override
+			public void init() {
+			}
+
+			@Override
+			public boolean prune(IGoal goal, EvaluatorStatistics stat) {
+				return ((ExpressionTypeGoal) goal).getExpression() == factory.num;
+			}
+		});
+		// only the pruned goal was not evaluated, but x and y are incomplete
+		assertEquals(2, factory.created);
+		assertEquals(0, cache.size());
+	}
+
+	public void testCostAwarePruner() throws Exception {
+		final AssignmentsFactory factory = new AssignmentsFactory(
+				createSourceModule("x"), createSourceModule("y"), new MyNum());
+		GoalCostModel model = new GoalCostModel();
+		GoalEngine engine = new GoalEngine(factory);
+		IGoal xGoal = new ExpressionTypeGoal(factory.xContext, factory.x);
+
+		// no budget, the costs are learned
+		GoalEvalutationRecorder recorder = new GoalEvalutationRecorder();
+		assertTrue(engine.evaluateGoal(xGoal,
+				new CostAwarePruner(model, 0, 0, 0), recorder) instanceof MyNum);
+		assertEquals(3, factory.created);
+		assertNotNull(recorder.getStatisticsForGoal(xGoal).getCost());
+		assertNotNull(recorder.getCostByGoalClass()
+				.get(ExpressionTypeGoal.class));
+		assertNotNull(model.getExpectedCost(ExpressionTypeGoal.class));
+
+		// half of the goals take the whole query budget, without a result
+		for (int i = 0; i < 3; ++i) {
+			model.record(xGoal, null, new GoalCost(0, 10, 0));
+		}
+		engine.evaluateGoal(xGoal, new CostAwarePruner(model, 0, 5, 0));
+		// only the root goal, which is never pruned
+		assertEquals(4, factory.created);
+	}
+
+	public void testCostAwarePrunerRecovery() throws Exception {
+		final IGoal goal = new ExpressionTypeGoal(null,
+				new NumericLiteral(0, 0, 1));
+		GoalCostModel model = new GoalCostModel();
+		for (int i = 0; i < 3; ++i) {
+			model.record(goal, null, new GoalCost(0, 1, 0));
+		}
+		CostAwarePruner pruner = new CostAwarePruner(model, 0, 4, 0);
+		pruner.init();
+		// without a result so far, but some goals are still evaluated
+		int evaluated = 0;
+		for (int i = 0; i < 16; ++i) {
+			if (!pruner.prune(goal, null)) {
+				++evaluated;
+			}
+		}
+		assertEquals(2, evaluated);
+		// the explored goal has a result, its class is evaluated again
+		pruner.goalEvaluated(goal, new MyNum(), new GoalCost(0, 1, 0));
+		assertFalse(pruner.prune(goal, null));
+		assertFalse(pruner.prune(goal, null));
+
+		// the work of the goals waiting for their subgoals counts
+		pruner.costSpent(goal, new GoalCost(0, 4, 0));
+		assertTrue(pruner.prune(goal, null));
+		assertEquals(4, pruner.getSpent().getIndexQueries());
+	}
+
+	public void testConcurrentEngine() throws Exception {
+		final Expression x = new SimpleReference(0, 0, "x");
+		final int count = 32;
+		final IGoal[] subgoals = new IGoal[count];
+		for (int i = 0; i < count; ++i) {
+			subgoals[i] = new ExpressionTypeGoal(null,
+					new NumericLiteral(0, 0, i));
+		}
+		final Set<Thread> threads = Collections
+				.synchronizedSet(new HashSet<Thread>());
+		final AtomicBoolean concurrentCall = new AtomicBoolean();
+		IGoalEvaluatorFactory factory = new IGoalEvaluatorFactory() {
+			@Override
+			public GoalEvaluator createEvaluator(IGoal goal) {
+				if (((ExpressionTypeGoal) goal).getExpression() != x) {
+					return new GoalEvaluator(goal) {
+						@Override
+						public IGoal[] init() {
+							threads.add(Thread.currentThread());
+							try {
+								// as a search would
+								Thread.sleep(10);
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+							}
+							return IGoal.NO_GOALS;
+						}
+
+						@Override
+						public IGoal[] subGoalDone(IGoal subgoal,
+								Object result, GoalState state) {
+							return IGoal.NO_GOALS;
+						}
+
+						@Override
+						public Object produceResult() {
+							return new MyNum();
+						}
+					};
+				}
+				return new GoalEvaluator(goal) {
+					private boolean busy;
+					private int done;
+
+					@Override
+					public IGoal[] init() {
+						return subgoals;
+					}
+
+					@Override
+					public IGoal[] subGoalDone(IGoal subgoal, Object result,
+							GoalState state) {
+						if (busy) {
+							concurrentCall.set(true);
+						}
+						busy = true;
+						Thread.yield();
+						if (state == GoalState.DONE
+								&& result instanceof MyNum) {
+							++done;
+						}
+						busy = false;
+						return IGoal.NO_GOALS;
+					}
+
+					@Override
+					public Object produceResult() {
+						return Integer.valueOf(done);
+					}
+				};
+			}
+		};
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			GoalEngine engine = new ConcurrentGoalEngine(factory, pool);
+			Object result = engine.evaluateGoal(
+					new ExpressionTypeGoal(null, x), null);
+			assertEquals(Integer.valueOf(count), result);
+			assertFalse(concurrentCall.get());
+			assertTrue(threads.size() > 1);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public void testConcurrentEngineDefaultPool() throws Exception {
+		final Expression x = new SimpleReference(0, 0, "x");
+		final Set<Thread> threads = Collections
+				.synchronizedSet(new HashSet<Thread>());
+		IGoalEvaluatorFactory factory = new IGoalEvaluatorFactory() {
+			@Override
+			public GoalEvaluator createEvaluator(IGoal goal) {
+				return new GoalEvaluator(goal) {
+					@Override
+					public IGoal[] init() {
+						threads.add(Thread.currentThread());
+						return IGoal.NO_GOALS;
+					}
+
+					@Override
+					public IGoal[] subGoalDone(IGoal subgoal, Object result,
+							GoalState state) {
+						return IGoal.NO_GOALS;
+					}
+
+					@Override
+					public Object produceResult() {
+						return new MyNum();
+					}
+				};
+			}
+		};
+		GoalEngine engine = new ConcurrentGoalEngine(factory);
+		Object result = engine.evaluateGoal(new ExpressionTypeGoal(null, x),
+				null);
+		assertTrue(result instanceof MyNum);
+		assertEquals(1, threads.size());
+		final Thread thread = threads.iterator().next();
+		assertTrue(thread.getName().startsWith("DLTK Type Inference Worker-"));
+		assertFalse(((ForkJoinWorkerThread) thread)
+				.getPool() == ForkJoinPool.commonPool());
+	}
 }
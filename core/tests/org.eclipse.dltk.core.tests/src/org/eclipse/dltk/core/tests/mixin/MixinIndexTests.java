@@ -11,6 +11,7 @@
  *******************************************************************************/
 package org.eclipse.dltk.core.tests.mixin;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -122,4 +123,69 @@ public class MixinIndexTests {
 		assertTrue(index.hasChanged());
 	}
 
+	private String[] queryKeys(String pattern, int matchRule)
+			throws IOException {
+		EntryResult[] result = index.query(
+				new char[][] { IIndexConstants.MIXIN }, pattern.toCharArray(),
+				matchRule);
+		String[] keys = new String[result.length];
+		for (int i = 0; i < result.length; ++i) {
+			keys[i] = new String(result[i].getWord());
+		}
+		Arrays.sort(keys);
+		return keys;
+	}
+
+	@Test
+	public void testQuerySaved() throws IOException {
+		index.addIndexEntry(IIndexConstants.MIXIN, "Foo".toCharArray(), "A");
+		index.addIndexEntry(IIndexConstants.MIXIN, "foo{bar".toCharArray(),
+				"A");
+		index.addIndexEntry(IIndexConstants.MIXIN, "foo{baz".toCharArray(),
+				"B");
+		index.addIndexEntry(IIndexConstants.MIXIN, "goo".toCharArray(), "B");
+		index.save();
+		index = createIndex(false);
+		assertArrayEquals(new String[] { "foo{bar", "foo{baz" }, queryKeys(
+				"foo{", SearchPattern.R_PREFIX_MATCH
+						| SearchPattern.R_CASE_SENSITIVE));
+		assertArrayEquals(new String[] { "Foo", "foo{bar", "foo{baz" },
+				queryKeys("FOO", SearchPattern.R_PREFIX_MATCH));
+		assertArrayEquals(new String[] { "Foo" }, queryKeys("Foo",
+				SearchPattern.R_EXACT_MATCH | SearchPattern.R_CASE_SENSITIVE));
+		assertArrayEquals(new String[] { "foo{baz" }, queryKeys("f*z",
+				SearchPattern.R_PATTERN_MATCH));
+		assertArrayEquals(new String[] { "Foo", "foo{bar", "foo{baz", "goo" },
+				queryKeys("*o*", SearchPattern.R_PATTERN_MATCH
+						| SearchPattern.R_CASE_SENSITIVE));
+		assertEquals(0, queryKeys("h", SearchPattern.R_PREFIX_MATCH).length);
+		EntryResult[] result = index.query(
+				new char[][] { IIndexConstants.MIXIN }, "goo".toCharArray(),
+				SearchPattern.R_EXACT_MATCH);
+		assertEquals(1, result.length);
+		assertArrayEquals(new String[] { "B" },
+				result[0].getDocumentNames(index));
+	}
+
+	@Test
+	public void testChangeSaved() throws IOException {
+		index.addIndexEntry(IIndexConstants.MIXIN, "key1".toCharArray(), "A");
+		index.addIndexEntry(IIndexConstants.MIXIN, "key2".toCharArray(), "B");
+		index.save();
+		index = createIndex(false);
+		assertFalse(index.hasChanged());
+		index.remove("A");
+		index.addIndexEntry(IIndexConstants.MIXIN, "key3".toCharArray(), "C");
+		assertTrue(index.hasChanged());
+		assertArrayEquals(new String[] { "key3" }, queryKeys("key3",
+				SearchPattern.R_EXACT_MATCH));
+		index.save();
+		index = createIndex(false);
+		assertArrayEquals(new String[] { "key2", "key3" }, queryKeys("key",
+				SearchPattern.R_PREFIX_MATCH));
+		String[] docNames = index.queryDocumentNames(null);
+		Arrays.sort(docNames);
+		assertArrayEquals(new String[] { "B", "C" }, docNames);
+	}
+
 }
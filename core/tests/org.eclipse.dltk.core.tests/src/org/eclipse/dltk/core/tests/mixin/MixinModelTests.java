@@ -11,9 +11,15 @@
  *******************************************************************************/
 package org.eclipse.dltk.core.tests.mixin;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import junit.framework.TestCase;
 
 import org.eclipse.core.resources.IProject;
+import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.core.mixin.IMixinElement;
 import org.eclipse.dltk.core.mixin.MixinModel;
 import org.eclipse.dltk.core.search.index.MixinIndex;
@@ -74,4 +80,67 @@ public class MixinModelTests extends AbstractModelTests {
 			model.stop();
 		}
 	}
+
+	public void testConcurrentReadersAndWriter() throws Throwable {
+		final MixinModel model = new MixinModel(
+				TestLanguageToolkit.getDefault());
+		try {
+			final ISourceModule module = getSourceModule("Mixin0", "", "X.txt");
+			assertNotNull(module);
+			TestCase.assertEquals(3, model.find("{foo*").length);
+			final AtomicBoolean stop = new AtomicBoolean();
+			final List<Throwable> errors = Collections
+					.synchronizedList(new ArrayList<Throwable>());
+			final List<Thread> threads = new ArrayList<Thread>();
+			for (int i = 0; i < 8; ++i) {
+				threads.add(new Thread() {
+					@Override
+					public void run() {
+						try {
+							while (!stop.get()) {
+								model.find("{foo*");
+								IMixinElement element = model.get("{foo");
+								if (element != null) {
+									element.getChildren();
+									element.getSourceModules();
+									element.getAllObjects();
+								}
+								model.keyExists("Module{gamma");
+							}
+						} catch (Throwable e) {
+							errors.add(e);
+						}
+					}
+				});
+			}
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 200; ++i) {
+							model.remove(module);
+							model.reportModule(module);
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					} finally {
+						stop.set(true);
+					}
+				}
+			});
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			if (!errors.isEmpty()) {
+				throw errors.get(0);
+			}
+			TestCase.assertEquals(3, model.find("{foo*").length);
+			TestCase.assertEquals(2, model.get("{foo").getChildren().length);
+		} finally {
+			model.stop();
+		}
+	}
 }
@@ -0,0 +1,309 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.eclipse.dltk.core.search.SearchPattern;
+import org.eclipse.dltk.core.search.index.DiskIndex;
+import org.eclipse.dltk.core.search.index.EntryResult;
+import org.eclipse.dltk.core.search.index.Index;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the conversion of "DLTK INDEX VERSION 1.014" files to the current
+ * {@link DiskIndex} format.
+ */
+public class DiskIndexFormatTests {
+
+	private static final String LEGACY_SIGNATURE = "DLTK INDEX VERSION 1.014";
+
+	private static final int CHUNK_SIZE = 100;
+
+	private static final String TYPE = "typeDecl";
+	private static final String METHOD = "methodDecl";
+	private static final String REF = "ref";
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("legacy", ".index");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	/**
+	 * Writes an index in the 1.014 format: the document name chunks, the
+	 * category tables with fixed size document references and the header.
+	 */
+	private static void writeLegacyIndex(File file, String[] docNames,
+			Map<String, Map<String, List<Integer>>> categories)
+			throws IOException {
+		final DataOutputStream stream = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file), 8192));
+		final int size = docNames.length;
+		final int numberOfChunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		final int sizeOfLastChunk = size - (numberOfChunks - 1) * CHUNK_SIZE;
+		final int referenceSize = size <= 0x7F ? 1 : (size <= 0x7FFF ? 2 : 4);
+		final int[] chunkOffsets = new int[numberOfChunks];
+		final Map<String, Integer> categoryOffsets = new LinkedHashMap<String, Integer>();
+		final int startOfCategoryTables;
+		final int headerOffset;
+		try {
+			stream.writeUTF(LEGACY_SIGNATURE);
+			stream.writeInt(-1);
+			for (int i = 0; i < numberOfChunks; i++) {
+				chunkOffsets[i] = stream.size();
+				final int chunkSize = i == numberOfChunks - 1 ? sizeOfLastChunk
+						: CHUNK_SIZE;
+				String current = docNames[i * CHUNK_SIZE];
+				stream.writeUTF(current);
+				for (int j = 1; j < chunkSize; j++) {
+					final String next = docNames[i * CHUNK_SIZE + j];
+					int len1 = current.length();
+					int len2 = next.length();
+					final int max = Math.min(len1, len2);
+					int start = 0;
+					while (current.charAt(start) == next.charAt(start)) {
+						start++;
+						if (max == start)
+							break;
+					}
+					if (start > 255)
+						start = 255;
+					int end = 0;
+					while (current.charAt(--len1) == next.charAt(--len2)) {
+						end++;
+						if (len2 == start)
+							break;
+						if (len1 == 0)
+							break;
+					}
+					if (end > 255)
+						end = 255;
+					stream.writeByte(start);
+					stream.writeByte(end);
+					final int last = next.length() - end;
+					stream.writeUTF(start < last ? next.substring(start, last)
+							: "");
+					current = next;
+				}
+			}
+			startOfCategoryTables = stream.size() + 1;
+			for (Map.Entry<String, Map<String, List<Integer>>> category : categories
+					.entrySet()) {
+				final Map<String, Integer> largeArrays = new TreeMap<String, Integer>();
+				for (Map.Entry<String, List<Integer>> word : category
+						.getValue().entrySet()) {
+					if (word.getValue().size() >= 256) {
+						largeArrays.put(word.getKey(), stream.size());
+						writeLegacyArray(stream, word.getValue(), referenceSize);
+					}
+				}
+				categoryOffsets.put(category.getKey(), stream.size());
+				stream.writeInt(category.getValue().size());
+				for (Map.Entry<String, List<Integer>> word : category
+						.getValue().entrySet()) {
+					stream.writeUTF(word.getKey());
+					final List<Integer> documents = word.getValue();
+					if (documents.size() == 1) {
+						stream.writeInt(-documents.get(0));
+					} else if (documents.size() < 256) {
+						writeLegacyArray(stream, documents, referenceSize);
+					} else {
+						stream.writeInt(256);
+						stream.writeInt(largeArrays.get(word.getKey()));
+					}
+				}
+			}
+			headerOffset = stream.size();
+			stream.writeInt(numberOfChunks);
+			stream.writeByte(sizeOfLastChunk);
+			stream.writeByte(referenceSize);
+			stream.writeByte('/');
+			for (int i = 0; i < numberOfChunks; i++)
+				stream.writeInt(chunkOffsets[i]);
+			stream.writeInt(startOfCategoryTables);
+			stream.writeInt(categoryOffsets.size());
+			for (Map.Entry<String, Integer> entry : categoryOffsets.entrySet()) {
+				stream.writeUTF(entry.getKey());
+				stream.writeInt(entry.getValue());
+			}
+		} finally {
+			stream.close();
+		}
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(LEGACY_SIGNATURE.length() + 2);
+			raf.writeInt(headerOffset);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static void writeLegacyArray(DataOutputStream stream,
+			List<Integer> documents, int referenceSize) throws IOException {
+		stream.writeInt(documents.size());
+		for (int document : documents) {
+			switch (referenceSize) {
+			case 1:
+				stream.writeByte(document);
+				break;
+			case 2:
+				stream.writeShort(document);
+				break;
+			default:
+				stream.writeInt(document);
+			}
+		}
+	}
+
+	private static void addWord(
+			Map<String, Map<String, List<Integer>>> categories,
+			String category, String word, int document) {
+		Map<String, List<Integer>> words = categories.get(category);
+		if (words == null) {
+			words = new TreeMap<String, List<Integer>>();
+			categories.put(category, words);
+		}
+		List<Integer> documents = words.get(word);
+		if (documents == null) {
+			documents = new ArrayList<Integer>();
+			words.put(word, documents);
+		}
+		if (documents.isEmpty()
+				|| documents.get(documents.size() - 1) != document) {
+			documents.add(document);
+		}
+	}
+
+	private static String readSignature(File file) throws IOException {
+		final DataInputStream stream = new DataInputStream(
+				new FileInputStream(file));
+		try {
+			return stream.readUTF();
+		} finally {
+			stream.close();
+		}
+	}
+
+	private static String[] query(Index index, String category, String key,
+			int matchRule) throws IOException {
+		final EntryResult[] results = index.query(
+				new char[][] { category.toCharArray() }, key.toCharArray(),
+				matchRule);
+		if (results == null) {
+			return new String[0];
+		}
+		final List<String> names = new ArrayList<String>();
+		for (EntryResult result : results) {
+			names.addAll(Arrays.asList(result.getDocumentNames(index)));
+		}
+		final String[] array = names.toArray(new String[names.size()]);
+		Arrays.sort(array);
+		return array;
+	}
+
+	@Test
+	public void testConvertLegacyIndex() throws IOException {
+		final String[] docNames = { "a/A.rb", "a/B.rb", "b/C.rb" };
+		final Map<String, Map<String, List<Integer>>> categories = new TreeMap<String, Map<String, List<Integer>>>();
+		addWord(categories, TYPE, "A", 0);
+		addWord(categories, TYPE, "B", 1);
+		addWord(categories, TYPE, "C", 2);
+		addWord(categories, REF, "A", 1);
+		addWord(categories, REF, "A", 2);
+		addWord(categories, REF, "Abc", 0);
+		writeLegacyIndex(file, docNames, categories);
+
+		final Index index = new Index(file.getPath(), "/container", true);
+		assertEquals(DiskIndex.SIGNATURE, readSignature(file));
+		final int exact = SearchPattern.R_EXACT_MATCH
+				| SearchPattern.R_CASE_SENSITIVE;
+		assertEquals("[a/B.rb]",
+				Arrays.toString(query(index, TYPE, "B", exact)));
+		assertEquals("[a/B.rb, b/C.rb]",
+				Arrays.toString(query(index, REF, "A", exact)));
+		assertEquals("[a/A.rb, a/B.rb, b/C.rb]", Arrays.toString(query(index,
+				REF, "A", SearchPattern.R_PREFIX_MATCH
+						| SearchPattern.R_CASE_SENSITIVE)));
+		final String[] names = index.queryDocumentNames(null);
+		Arrays.sort(names);
+		assertEquals(Arrays.toString(docNames), Arrays.toString(names));
+	}
+
+	/**
+	 * Converts an index with more than 256 documents, so its references are
+	 * not single bytes, and a word found in all of them, then checks the
+	 * converted file is smaller and answers the same queries.
+	 */
+	@Test
+	public void testConvertLargerIndex() throws IOException {
+		final int documents = 1000;
+		final String[] docNames = new String[documents];
+		for (int i = 0; i < documents; i++) {
+			docNames[i] = String.format("lib/package%02d/module%04d.rb",
+					i / 100, i);
+		}
+		final Random random = new Random(1);
+		final Map<String, Map<String, List<Integer>>> categories = new TreeMap<String, Map<String, List<Integer>>>();
+		for (int i = 0; i < documents; i++) {
+			addWord(categories, TYPE, "Module" + i, i);
+			addWord(categories, METHOD, "method" + random.nextInt(100), i);
+			addWord(categories, REF, "common", i);
+		}
+		writeLegacyIndex(file, docNames, categories);
+		final long legacySize = file.length();
+
+		final Index index = new Index(file.getPath(), "/container", true);
+		assertEquals(DiskIndex.SIGNATURE, readSignature(file));
+		assertTrue(file.length() < legacySize);
+
+		final int exact = SearchPattern.R_EXACT_MATCH
+				| SearchPattern.R_CASE_SENSITIVE;
+		for (Map.Entry<String, List<Integer>> word : categories.get(METHOD)
+				.entrySet()) {
+			final List<String> expected = new ArrayList<String>();
+			for (int document : word.getValue()) {
+				expected.add(docNames[document]);
+			}
+			assertEquals(expected.toString(), Arrays
+					.toString(query(index, METHOD, word.getKey(), exact)));
+		}
+		assertEquals(documents, query(index, REF, "common", exact).length);
+		// Module99 and Module990 to Module999
+		assertEquals(11, query(index, TYPE, "Module99",
+				SearchPattern.R_PREFIX_MATCH | SearchPattern.R_CASE_SENSITIVE)
+						.length);
+	}
+}
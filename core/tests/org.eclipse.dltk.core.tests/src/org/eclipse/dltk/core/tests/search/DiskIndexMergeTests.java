@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.search;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.eclipse.dltk.core.search.SearchPattern;
+import org.eclipse.dltk.core.search.index.EntryResult;
+import org.eclipse.dltk.core.search.index.Index;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests merging the changed documents into the on-disk part of an
+ * {@link Index}.
+ */
+public class DiskIndexMergeTests {
+
+	private static final char[] TYPE = "typeDecl".toCharArray();
+	private static final char[] METHOD = "methodDecl".toCharArray();
+	private static final char[] REF = "ref".toCharArray();
+
+	private static final int EXACT = SearchPattern.R_EXACT_MATCH
+			| SearchPattern.R_CASE_SENSITIVE;
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("merge", ".index");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	private static String docName(int document) {
+		return String.format("lib/package%03d/module%06d.rb", document / 1000,
+				document);
+	}
+
+	/**
+	 * Adds the words of a document, which depend on its number and version.
+	 */
+	private static void addDocument(Index index, int document, int version) {
+		final String docName = docName(document);
+		final Random random = new Random(document * 31 + version);
+		index.addIndexEntry(TYPE, ("Module" + document).toCharArray(), docName);
+		for (int j = 0; j < 4; j++) {
+			index.addIndexEntry(METHOD,
+					("method" + random.nextInt(25000)).toCharArray(), docName);
+		}
+		for (int j = 0; j < 6; j++) {
+			// few names are referenced from everywhere
+			final int ref = (int) Math.abs(random.nextGaussian() * 500);
+			index.addIndexEntry(REF, ("ref" + ref).toCharArray(), docName);
+		}
+	}
+
+	/**
+	 * Answers all the words of a category with their sorted document names.
+	 */
+	private static Map<String, Set<String>> queryAll(Index index,
+			char[] category) throws IOException {
+		final Map<String, Set<String>> words = new TreeMap<String, Set<String>>();
+		final EntryResult[] results = index.query(new char[][] { category },
+				null, EXACT);
+		if (results != null) {
+			for (EntryResult result : results) {
+				words.put(new String(result.getWord()), new TreeSet<String>(
+						Arrays.asList(result.getDocumentNames(index))));
+			}
+		}
+		return words;
+	}
+
+	@Test
+	public void testMergeChanges() throws IOException {
+		final Index index = new Index(file.getPath(), "/container", false);
+		final File expectedFile = new File(file.getPath() + ".expected");
+		final Map<Integer, Integer> versions = new HashMap<Integer, Integer>();
+		final Random random = new Random(1);
+		try {
+			for (int round = 0; round < 4; round++) {
+				for (int i = 0; i < 100; i++) {
+					final int document = random.nextInt(300);
+					index.remove(docName(document));
+					if (random.nextInt(4) == 0) {
+						versions.remove(document);
+					} else {
+						final int version = round * 1000 + i;
+						addDocument(index, document, version);
+						versions.put(document, version);
+					}
+				}
+				index.save();
+
+				// the expected index is built from scratch
+				final Index expected = new Index(expectedFile.getPath(),
+						"/container", false);
+				for (Map.Entry<Integer, Integer> entry : versions.entrySet())
+					addDocument(expected, entry.getKey(), entry.getValue());
+				expected.save();
+				for (char[] category : new char[][] { TYPE, METHOD, REF }) {
+					assertEquals(queryAll(expected, category),
+							queryAll(index, category));
+				}
+				final String[] names = index.queryDocumentNames(null);
+				assertEquals(versions.size(), names == null ? 0 : names.length);
+			}
+		} finally {
+			expectedFile.delete();
+		}
+	}
+
+	/**
+	 * Merges removed, changed and new documents into an index saved in
+	 * several steps.
+	 */
+	@Test
+	public void testMergeIntoSavedIndex() throws IOException {
+		final int documents = 2000;
+		final int changes = 200;
+		final Index index = new Index(file.getPath(), "/container", false);
+		for (int i = 0; i < documents; i += documents / 2) {
+			for (int j = i; j < i + documents / 2; j++)
+				addDocument(index, j, 0);
+			index.save();
+		}
+
+		// re-index 160 documents, delete 20 and add 20 new ones
+		final Random random = new Random(1);
+		final Set<Integer> changed = new TreeSet<Integer>();
+		while (changed.size() < changes - changes / 10)
+			changed.add(random.nextInt(documents));
+		int count = 0;
+		for (int document : changed) {
+			index.remove(docName(document));
+			if (count++ >= changes / 10)
+				addDocument(index, document, 1);
+		}
+		for (int document = documents; document < documents + changes / 10; document++)
+			addDocument(index, document, 1);
+		index.save();
+
+		assertEquals(documents, index.queryDocumentNames(null).length);
+		count = 0;
+		for (int document : changed) {
+			final EntryResult[] results = index.query(new char[][] { TYPE },
+					("Module" + document).toCharArray(), EXACT);
+			assertEquals(count++ < changes / 10 ? 0 : 1,
+					results == null ? 0 : results.length);
+		}
+		assertEquals(1, index.query(new char[][] { TYPE },
+				("Module" + documents).toCharArray(), EXACT).length);
+	}
+}
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.dltk.core.search.SearchPattern;
+import org.eclipse.dltk.core.search.index.EntryResult;
+import org.eclipse.dltk.core.search.index.Index;
+import org.eclipse.dltk.core.search.indexing.ReadWriteMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the queries answered by the on-disk part of the {@link Index}.
+ */
+public class DiskIndexTests {
+
+	private static final char[] TYPE = "typeDecl".toCharArray();
+	private static final char[] METHOD = "methodDecl".toCharArray();
+
+	private File file;
+	private Index index;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("disk", ".index");
+		index = new Index(file.getPath(), "/container", false);
+		index.addIndexEntry(TYPE, "Alpha".toCharArray(), "a.rb");
+		index.addIndexEntry(TYPE, "AlphaBeta".toCharArray(), "a.rb");
+		index.addIndexEntry(TYPE, "AlphaBeta".toCharArray(), "b.rb");
+		index.addIndexEntry(TYPE, "Beta".toCharArray(), "b.rb");
+		index.addIndexEntry(TYPE, "\u00E9t\u00E9".toCharArray(), "c.rb");
+		index.addIndexEntry(METHOD, "alpha".toCharArray(), "c.rb");
+		index.addIndexEntry(METHOD, "Alpha".toCharArray(), "c.rb");
+		index.save();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		index = null;
+		file.delete();
+	}
+
+	private static Map<String, String> query(Index index, char[][] categories,
+			String key, int matchRule) throws IOException {
+		final EntryResult[] results = index.query(categories,
+				key != null ? key.toCharArray() : null, matchRule);
+		if (results == null) {
+			return null;
+		}
+		final Map<String, String> words = new TreeMap<String, String>();
+		for (EntryResult result : results) {
+			final String[] names = result.getDocumentNames(index);
+			Arrays.sort(names);
+			words.put(new String(result.getWord()), Arrays.toString(names));
+		}
+		return words;
+	}
+
+	private void assertQuery(String expected, char[][] categories, String key,
+			int matchRule) throws IOException {
+		assertEquals(expected,
+				String.valueOf(query(index, categories, key, matchRule)));
+		final Index reopened = new Index(file.getPath(), "/container", true);
+		assertEquals(expected,
+				String.valueOf(query(reopened, categories, key, matchRule)));
+	}
+
+	@Test
+	public void testExactMatch() throws IOException {
+		final int rule = SearchPattern.R_EXACT_MATCH
+				| SearchPattern.R_CASE_SENSITIVE;
+		assertQuery("{AlphaBeta=[a.rb, b.rb]}", new char[][] { TYPE },
+				"AlphaBeta", rule);
+		assertQuery("{Alpha=[a.rb, c.rb]}", new char[][] { TYPE, METHOD },
+				"Alpha", rule);
+		assertQuery("{\u00E9t\u00E9=[c.rb]}", new char[][] { TYPE },
+				"\u00E9t\u00E9", rule);
+		assertQuery("null", new char[][] { TYPE }, "Alph", rule);
+		assertQuery("null", new char[][] { TYPE }, "Gamma", rule);
+	}
+
+	@Test
+	public void testPrefixMatch() throws IOException {
+		assertQuery("{Alpha=[a.rb], AlphaBeta=[a.rb, b.rb]}",
+				new char[][] { TYPE }, "Alp", SearchPattern.R_PREFIX_MATCH
+						| SearchPattern.R_CASE_SENSITIVE);
+		assertQuery("{Alpha=[a.rb, c.rb], AlphaBeta=[a.rb, b.rb], alpha=[c.rb]}",
+				new char[][] { TYPE, METHOD }, "alp",
+				SearchPattern.R_PREFIX_MATCH);
+		assertQuery("null", new char[][] { TYPE }, "Zeta",
+				SearchPattern.R_PREFIX_MATCH | SearchPattern.R_CASE_SENSITIVE);
+	}
+
+	@Test
+	public void testPatternMatch() throws IOException {
+		assertQuery("{AlphaBeta=[a.rb, b.rb], Beta=[b.rb]}",
+				new char[][] { TYPE }, "*Beta", SearchPattern.R_PATTERN_MATCH
+						| SearchPattern.R_CASE_SENSITIVE);
+		assertQuery("{Alpha=[a.rb], AlphaBeta=[a.rb, b.rb]}",
+				new char[][] { TYPE }, "Alpha.*", SearchPattern.R_REGEXP_MATCH
+						| SearchPattern.R_CASE_SENSITIVE);
+	}
+
+	@Test
+	public void testAllWords() throws IOException {
+		assertQuery("{Alpha=[c.rb], alpha=[c.rb]}", new char[][] { METHOD },
+				null, SearchPattern.R_PREFIX_MATCH);
+		assertQuery("null", new char[][] { "unknown".toCharArray() }, null,
+				SearchPattern.R_PREFIX_MATCH);
+	}
+
+	@Test
+	public void testMemoryChanges() throws IOException {
+		index.remove("a.rb");
+		index.addIndexEntry(TYPE, "Alpha".toCharArray(), "d.rb");
+		final int rule = SearchPattern.R_PREFIX_MATCH
+				| SearchPattern.R_CASE_SENSITIVE;
+		assertEquals("{Alpha=[d.rb], AlphaBeta=[b.rb]}", String.valueOf(query(
+				index, new char[][] { TYPE }, "Alpha", rule)));
+		index.save();
+		assertQuery("{Alpha=[d.rb], AlphaBeta=[b.rb]}", new char[][] { TYPE },
+				"Alpha", rule);
+		String[] names = index.queryDocumentNames(null);
+		Arrays.sort(names);
+		assertEquals("[b.rb, c.rb, d.rb]", Arrays.toString(names));
+	}
+
+	@Test
+	public void testEmptyIndex() throws IOException {
+		index.remove("a.rb");
+		index.remove("b.rb");
+		index.remove("c.rb");
+		index.save();
+		assertNull(query(index, new char[][] { TYPE }, null,
+				SearchPattern.R_PREFIX_MATCH));
+	}
+
+	@Test
+	public void testConcurrentQueries() throws Throwable {
+		final int rule = SearchPattern.R_EXACT_MATCH
+				| SearchPattern.R_CASE_SENSITIVE;
+		final ReadWriteMonitor monitor = index.monitor;
+		final AtomicBoolean done = new AtomicBoolean();
+		// the monitor does not prefer writers, so the readers wait while
+		// entries are added and query while they are saved
+		final AtomicBoolean adding = new AtomicBoolean();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final Thread[] readers = new Thread[4];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						while (!done.get()) {
+							if (adding.get()) {
+								Thread.yield();
+								continue;
+							}
+							monitor.enterRead();
+							try {
+								assertEquals("{AlphaBeta=[a.rb, b.rb]}",
+										String.valueOf(query(index,
+												new char[][] { TYPE },
+												"AlphaBeta", rule)));
+							} finally {
+								monitor.exitRead();
+							}
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+			readers[i].start();
+		}
+		try {
+			for (int i = 0; i < 100; i++) {
+				adding.set(true);
+				monitor.enterWrite();
+				try {
+					for (int j = 0; j < 10; j++)
+						index.addIndexEntry(METHOD, ("m" + i).toCharArray(),
+								"d" + i + "_" + j + ".rb");
+				} finally {
+					monitor.exitWriteEnterRead();
+					adding.set(false);
+				}
+				try {
+					index.save();
+				} finally {
+					monitor.exitRead();
+				}
+			}
+		} finally {
+			done.set(true);
+			for (Thread reader : readers)
+				reader.join();
+		}
+		if (failure.get() != null)
+			throw failure.get();
+		assertEquals(3 + 100 * 10, index.queryDocumentNames(null).length);
+		assertEquals("{m42=[d42_0.rb, d42_1.rb, d42_2.rb, d42_3.rb, d42_4.rb, "
+				+ "d42_5.rb, d42_6.rb, d42_7.rb, d42_8.rb, d42_9.rb]}",
+				String.valueOf(query(index, new char[][] { METHOD }, "m42",
+						rule)));
+	}
+}
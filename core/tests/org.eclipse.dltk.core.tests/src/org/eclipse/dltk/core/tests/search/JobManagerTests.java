@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.dltk.internal.core.search.processing.IContainerJob;
+import org.eclipse.dltk.internal.core.search.processing.IJob;
+import org.eclipse.dltk.internal.core.search.processing.JobManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JobManagerTests {
+
+	private static class TestJobManager extends JobManager {
+		@Override
+		public String processName() {
+			return "Test Job Manager"; //$NON-NLS-1$
+		}
+
+		@Override
+		protected int getWorkerCount() {
+			return 2;
+		}
+	}
+
+	private final List<String> events = new ArrayList<String>();
+
+	private TestJobManager manager;
+
+	private class TestJob implements IJob {
+		final String name;
+
+		TestJob(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public boolean belongsTo(String jobFamily) {
+			return false;
+		}
+
+		@Override
+		public void cancel() {
+		}
+
+		@Override
+		public void ensureReadyToRun() {
+		}
+
+		@Override
+		public boolean execute(IProgressMonitor progress) {
+			log("start " + name);
+			try {
+				run();
+			} catch (InterruptedException e) {
+				log("interrupted " + name);
+			}
+			log("end " + name);
+			return COMPLETE;
+		}
+
+		void run() throws InterruptedException {
+			Thread.sleep(20);
+		}
+	}
+
+	private class TestContainerJob extends TestJob implements IContainerJob {
+		final String container;
+
+		TestContainerJob(String container, String name) {
+			super(name);
+			this.container = container;
+		}
+
+		@Override
+		public Object getContainerKey() {
+			return container;
+		}
+	}
+
+	private void log(String event) {
+		synchronized (events) {
+			events.add(event);
+		}
+	}
+
+	private int indexOf(String event) {
+		synchronized (events) {
+			return events.indexOf(event);
+		}
+	}
+
+	@Before
+	public void setUp() {
+		manager = new TestJobManager();
+		manager.reset();
+	}
+
+	@After
+	public void tearDown() {
+		manager.shutdown();
+	}
+
+	@Test
+	public void testContainersInParallel() {
+		final CountDownLatch started = new CountDownLatch(1);
+		manager.request(new TestContainerJob("a", "a1") {
+			@Override
+			void run() throws InterruptedException {
+				// only completes in time if b1 is executed meanwhile
+				if (!started.await(10, TimeUnit.SECONDS))
+					log("timeout " + name);
+			}
+		});
+		manager.request(new TestContainerJob("b", "b1") {
+			@Override
+			void run() {
+				started.countDown();
+			}
+		});
+		manager.waitUntilReady();
+		assertEquals(0, manager.awaitingJobsCount());
+		assertEquals(-1, indexOf("timeout a1"));
+		assertTrue(indexOf("end b1") < indexOf("end a1"));
+	}
+
+	@Test
+	public void testContainerOrder() {
+		manager.request(new TestContainerJob("a", "a1"));
+		manager.request(new TestContainerJob("b", "b1"));
+		manager.request(new TestContainerJob("a", "a2"));
+		manager.request(new TestContainerJob("a", "a3"));
+		manager.waitUntilReady();
+		assertEquals(0, manager.awaitingJobsCount());
+		assertTrue(indexOf("end a1") < indexOf("start a2"));
+		assertTrue(indexOf("end a2") < indexOf("start a3"));
+	}
+
+	@Test
+	public void testExclusiveJobs() {
+		manager.request(new TestContainerJob("a", "a1"));
+		manager.request(new TestContainerJob("b", "b1"));
+		manager.request(new TestJob("x"));
+		manager.request(new TestContainerJob("c", "c1"));
+		manager.waitUntilReady();
+		assertEquals(0, manager.awaitingJobsCount());
+		// jobs requested before are completed, later ones are not started
+		assertTrue(indexOf("end a1") < indexOf("start x"));
+		assertTrue(indexOf("end b1") < indexOf("start x"));
+		assertTrue(indexOf("end x") < indexOf("start c1"));
+	}
+
+	private class BlockingJob extends TestContainerJob {
+		final CountDownLatch started;
+		final CountDownLatch released;
+
+		BlockingJob(String container, CountDownLatch started,
+				CountDownLatch released) {
+			super(container, container + "1");
+			this.started = started;
+			this.released = released;
+		}
+
+		@Override
+		void run() throws InterruptedException {
+			started.countDown();
+			if (!released.await(10, TimeUnit.SECONDS))
+				log("timeout " + name);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof TestContainerJob
+					&& container.equals(((TestContainerJob) obj).container);
+		}
+
+		@Override
+		public int hashCode() {
+			return container.hashCode();
+		}
+	}
+
+	@Test
+	public void testRequestIfNotWaiting() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(2);
+		final CountDownLatch released = new CountDownLatch(1);
+		manager.request(new BlockingJob("a", started, released));
+		manager.request(new BlockingJob("b", started, released));
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		// the running jobs have already missed the new changes
+		manager.requestIfNotWaiting(new BlockingJob("b", started, released));
+		assertEquals(3, manager.awaitingJobsCount());
+		manager.requestIfNotWaiting(new BlockingJob("b", started, released));
+		assertEquals(3, manager.awaitingJobsCount());
+		released.countDown();
+		manager.waitUntilReady();
+		assertEquals(0, manager.awaitingJobsCount());
+		assertEquals(-1, indexOf("timeout b1"));
+		assertTrue(indexOf("end b1") < events.lastIndexOf("start b1"));
+	}
+}
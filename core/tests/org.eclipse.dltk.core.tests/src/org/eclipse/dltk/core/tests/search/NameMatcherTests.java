@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2017 xored software, Inc. and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.dltk.core.index2.search.ISearchEngine.MatchRule;
+import org.eclipse.dltk.core.index2.search.NameMatcher;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link NameMatcher} class.
+ */
+public class NameMatcherTests {
+
+	private static List<String> rank(final MatchRule matchRule,
+			final String pattern, String... names) {
+		final List<String> result = new ArrayList<String>();
+		for (String name : names) {
+			if (NameMatcher.match(matchRule, pattern,
+					name) != NameMatcher.NO_MATCH) {
+				result.add(name);
+			}
+		}
+		Collections.sort(result, new Comparator<String>() {
+			@Override
+			public int compare(String o1, String o2) {
+				return Integer.compare(NameMatcher.match(matchRule, pattern, o2),
+						NameMatcher.match(matchRule, pattern, o1));
+			}
+		});
+		return result;
+	}
+
+	@Test
+	public void testSubstring() {
+		assertEquals(
+				Arrays.asList("Buffer", "BufferedReader", "StringBuffer",
+						"getbuffer"),
+				rank(MatchRule.SUBSTRING, "Buffer", "getbuffer", "StringBuffer",
+						"Buff", "BufferedReader", "Buffer", "Buf_fer"));
+		assertEquals(NameMatcher.NO_MATCH,
+				NameMatcher.match(MatchRule.SUBSTRING, "abc", "ab"));
+	}
+
+	@Test
+	public void testFuzzy() {
+		assertEquals(
+				Arrays.asList("FileBuffer", "fileBuffer", "FieldBuffer",
+						"FileBufferManager", "profileBuffer"),
+				rank(MatchRule.FUZZY, "FiBu", "findBestFit", "FileBufferManager",
+						"profileBuffer", "fileBuffer", "FieldBuffer",
+						"FileBuffer", "Fbu"));
+		// camel case humps rank first
+		assertTrue(NameMatcher.match(MatchRule.FUZZY, "fb",
+				"fooBar") > NameMatcher.match(MatchRule.FUZZY, "fb", "fabric"));
+		assertEquals(NameMatcher.NO_MATCH,
+				NameMatcher.match(MatchRule.FUZZY, "ba", "ab"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedRule() {
+		NameMatcher.match(MatchRule.PREFIX, "a", "abc");
+	}
+
+}